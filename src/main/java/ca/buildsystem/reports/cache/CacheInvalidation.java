@@ -0,0 +1,47 @@
+package ca.buildsystem.reports.cache;
+
+import lombok.Value;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Event invalidating cache entries by id, or a whole cache region when no ids are given.
+ */
+@Value
+public class CacheInvalidation {
+
+    CacheRegion region;
+    List<UUID> ids;
+
+    /**
+     * Invalidate entries of a region.
+     *
+     * @param region The cache region
+     * @param ids The IDs of the entries
+     * @return The invalidation event
+     */
+    public static CacheInvalidation of(CacheRegion region, Collection<UUID> ids) {
+        return new CacheInvalidation(region, List.copyOf(ids));
+    }
+
+    /**
+     * Invalidate every entry of a region, used when invalidations may have been missed.
+     *
+     * @param region The cache region
+     * @return The invalidation event
+     */
+    public static CacheInvalidation all(CacheRegion region) {
+        return new CacheInvalidation(region, List.of());
+    }
+
+    /**
+     * Check whether the event invalidates the whole region.
+     *
+     * @return true if no ids are given
+     */
+    public boolean isAll() {
+        return ids.isEmpty();
+    }
+}
@@ -0,0 +1,25 @@
+package ca.buildsystem.reports.cache;
+
+import java.util.function.Consumer;
+
+/**
+ * Bus carrying cache invalidations to every node of the deployment.
+ * Events published on a node are delivered to the subscribers of the other nodes; the publishing
+ * node has already applied them.
+ */
+public interface CacheInvalidationBus {
+
+    /**
+     * Publish an invalidation to the other nodes.
+     *
+     * @param invalidation The invalidation event
+     */
+    void publish(CacheInvalidation invalidation);
+
+    /**
+     * Subscribe to the invalidations published by other nodes.
+     *
+     * @param listener Applies an invalidation to a local cache
+     */
+    void subscribe(Consumer<CacheInvalidation> listener);
+}
@@ -0,0 +1,9 @@
+package ca.buildsystem.reports.cache;
+
+/**
+ * Enum of the in-process caches kept consistent across nodes by the invalidation bus.
+ */
+public enum CacheRegion {
+    REPORTS,    // Report DTOs by report ID
+    TEMPLATES   // Template DTOs by template ID
+}
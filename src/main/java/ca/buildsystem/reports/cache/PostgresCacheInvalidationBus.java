@@ -0,0 +1,188 @@
+package ca.buildsystem.reports.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Invalidation bus over PostgreSQL LISTEN/NOTIFY.
+ * Every node listens on one channel and publishes with {@code pg_notify}; the database fans
+ * notifications out to all listeners as soon as the publishing statement commits. The listening
+ * connection is held for the life of the application, so it is opened with the driver from the
+ * {@code spring.datasource} settings rather than taken from the pool, and always reaches the
+ * primary. Payloads are {@code <node>;<region>;<id>,<id>,...}, split so they stay below the
+ * notification size limit. After the listening connection is lost, notifications may have been
+ * missed, so every region is invalidated once it is re-established.
+ */
+@Component
+@ConditionalOnProperty(name = "app.cache.invalidation.transport", havingValue = "postgres")
+@Slf4j
+public class PostgresCacheInvalidationBus implements CacheInvalidationBus, SmartLifecycle {
+
+    /**
+     * Keeps payloads well below PostgreSQL's 8000-byte notification limit.
+     */
+    private static final int MAX_IDS_PER_NOTIFICATION = 150;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final List<Consumer<CacheInvalidation>> listeners = new CopyOnWriteArrayList<>();
+    private final String nodeId = UUID.randomUUID().toString();
+
+    @Value("${spring.datasource.url}")
+    private String url;
+
+    @Value("${spring.datasource.username:}")
+    private String username;
+
+    @Value("${spring.datasource.password:}")
+    private String password;
+
+    @Value("${app.cache.invalidation.channel:report_cache_invalidation}")
+    private String channel;
+
+    @Value("${app.cache.invalidation.poll-timeout-ms:500}")
+    private int pollTimeoutMs;
+
+    @Value("${app.cache.invalidation.reconnect-delay-ms:5000}")
+    private long reconnectDelayMs;
+
+    private volatile boolean running;
+    private Thread listenerThread;
+
+    public PostgresCacheInvalidationBus(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @Override
+    public void publish(CacheInvalidation invalidation) {
+        List<List<UUID>> chunks = new ArrayList<>();
+        List<UUID> ids = invalidation.getIds();
+        for (int start = 0; start < ids.size(); start += MAX_IDS_PER_NOTIFICATION) {
+            chunks.add(ids.subList(start, Math.min(ids.size(), start + MAX_IDS_PER_NOTIFICATION)));
+        }
+        if (chunks.isEmpty()) {
+            chunks.add(List.of());
+        }
+        for (List<UUID> chunk : chunks) {
+            String payload = nodeId + ";" + invalidation.getRegion() + ";"
+                    + chunk.stream().map(UUID::toString).collect(Collectors.joining(","));
+            try {
+                jdbcTemplate.queryForObject("SELECT pg_notify(?, ?)", Object.class, channel, payload);
+            } catch (RuntimeException e) {
+                // Other nodes keep the stale entries until they expire
+                log.warn("Could not publish cache invalidation {}", invalidation, e);
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<CacheInvalidation> listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        listenerThread = new Thread(this::listen, "cache-invalidation-listener");
+        listenerThread.setDaemon(true);
+        listenerThread.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (listenerThread != null) {
+            listenerThread.interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Listen for notifications until stopped, reconnecting after connection failures.
+     */
+    private void listen() {
+        boolean connectedBefore = false;
+        while (running) {
+            try (Connection connection = DriverManager.getConnection(url, username, password)) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + channel);
+                }
+                if (connectedBefore) {
+                    log.info("Cache invalidation listener reconnected; invalidating all cached entries");
+                    for (CacheRegion region : CacheRegion.values()) {
+                        deliver(CacheInvalidation.all(region));
+                    }
+                }
+                connectedBefore = true;
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(pollTimeoutMs);
+                    if (notifications == null) {
+                        continue;
+                    }
+                    for (PGNotification notification : notifications) {
+                        receive(notification.getParameter());
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("Cache invalidation listener lost its connection, retrying in {} ms", reconnectDelayMs, e);
+                try {
+                    Thread.sleep(reconnectDelayMs);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void receive(String payload) {
+        String[] parts = payload.split(";", 3);
+        if (parts.length != 3 || nodeId.equals(parts[0])) {
+            return;
+        }
+        try {
+            CacheRegion region = CacheRegion.valueOf(parts[1]);
+            List<UUID> ids = parts[2].isEmpty() ? List.of()
+                    : Arrays.stream(parts[2].split(",")).map(UUID::fromString).collect(Collectors.toList());
+            deliver(CacheInvalidation.of(region, ids));
+        } catch (IllegalArgumentException e) {
+            log.warn("Ignoring malformed cache invalidation {}", payload);
+        }
+    }
+
+    private void deliver(CacheInvalidation invalidation) {
+        for (Consumer<CacheInvalidation> listener : listeners) {
+            try {
+                listener.accept(invalidation);
+            } catch (RuntimeException e) {
+                log.warn("Error applying cache invalidation {}", invalidation, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package ca.buildsystem.reports.cache;
+
+import ca.buildsystem.reports.model.ReportParameter;
+import ca.buildsystem.reports.model.ReportTemplate;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+
+/**
+ * Eviction of templates from the Hibernate second-level cache.
+ * Hibernate keeps the cache of the node that wrote a template consistent by itself; this
+ * component applies template invalidations from other nodes, dropping the template, its
+ * parameter collection, the parameter entities and the cached active-template queries.
+ */
+@Component
+public class TemplateEntityCache {
+
+    private static final String PARAMETERS_ROLE = ReportTemplate.class.getName() + ".parameters";
+
+    private final Cache cache;
+
+    public TemplateEntityCache(EntityManagerFactory entityManagerFactory, CacheInvalidationBus invalidationBus) {
+        this.cache = entityManagerFactory.unwrap(SessionFactory.class).getCache();
+        invalidationBus.subscribe(this::apply);
+    }
+
+    /**
+     * Evict a template and the queries that may list it.
+     *
+     * @param id The template ID
+     */
+    public void evict(UUID id) {
+        cache.evictEntityData(ReportTemplate.class, id);
+        cache.evictCollectionData(PARAMETERS_ROLE, id);
+        // The IDs of the template's parameters are not known here; template changes are rare enough
+        // to drop every cached parameter rather than look them up
+        cache.evictEntityData(ReportParameter.class);
+        cache.evictQueryRegion(ReportTemplate.QUERY_CACHE_REGION);
+    }
+
+    /**
+     * Evict every template and template query.
+     */
+    public void evictAll() {
+        cache.evictEntityData(ReportTemplate.class);
+        cache.evictCollectionData(PARAMETERS_ROLE);
+        cache.evictEntityData(ReportParameter.class);
+        cache.evictQueryRegion(ReportTemplate.QUERY_CACHE_REGION);
+    }
+
+    private void apply(CacheInvalidation invalidation) {
+        if (invalidation.getRegion() != CacheRegion.TEMPLATES) {
+            return;
+        }
+        if (invalidation.isAll()) {
+            evictAll();
+        } else {
+            invalidation.getIds().forEach(this::evict);
+        }
+    }
+}
@@ -68,6 +68,11 @@ public class SecurityConfig {
         config.addAllowedMethod("*");
         config.addExposedHeader("Authorization");
         config.addExposedHeader("X-Total-Count");
+        config.addExposedHeader("X-Read-Your-Writes-Until");
+        config.addExposedHeader("RateLimit-Limit");
+        config.addExposedHeader("RateLimit-Remaining");
+        config.addExposedHeader("RateLimit-Reset");
+        config.addExposedHeader("Retry-After");
         source.registerCorsConfiguration("/**", config);
         return source;
     }
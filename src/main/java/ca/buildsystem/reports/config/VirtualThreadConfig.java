@@ -0,0 +1,27 @@
+package ca.buildsystem.reports.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configuration running request handling on virtual threads.
+ * Downloads and the other endpoints block on JDBC and file I/O; with virtual threads every
+ * request gets its own thread instead of waiting for a slot in Tomcat's worker pool.
+ * Only active when {@code app.virtual-threads.enabled} is set; if the runtime has no virtual
+ * threads Tomcat keeps its platform-thread pool.
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.virtual-threads.enabled", havingValue = "true")
+public class VirtualThreadConfig {
+
+    /**
+     * Replaces Tomcat's worker pool with a thread per request.
+     */
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+        return protocolHandler -> VirtualThreads.factory("http-vt-")
+                .ifPresent(factory -> protocolHandler.setExecutor(task -> factory.newThread(task).start()));
+    }
+}
@@ -0,0 +1,54 @@
+package ca.buildsystem.reports.config;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Method;
+import java.util.Optional;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to virtual threads without a compile-time dependency on Java 21.
+ * The service is compiled for Java 17 by default; the {@code java21} build profile targets a
+ * runtime where {@code Thread.ofVirtual()} exists. On older runtimes no factory is returned and
+ * callers fall back to platform threads.
+ */
+@Slf4j
+public final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * Check whether the runtime has virtual threads.
+     *
+     * @return True on Java 21 and later
+     */
+    public static boolean isAvailable() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Create a factory of named virtual threads.
+     *
+     * @param prefix The thread name prefix; a counter starting at 1 is appended
+     * @return An optional containing the factory, empty if the runtime has no virtual threads
+     */
+    public static Optional<ThreadFactory> factory(String prefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Method name = builderType.getMethod("name", String.class, long.class);
+            builder = name.invoke(builder, prefix, 1L);
+            return Optional.of((ThreadFactory) builderType.getMethod("factory").invoke(builder));
+        } catch (ReflectiveOperationException e) {
+            log.warn("Virtual threads are not available on Java {}; using platform threads",
+                    Runtime.version().feature());
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package ca.buildsystem.reports.controller;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.WebRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.function.Supplier;
+
+/**
+ * Builder of weak entity tags from the fields that identify a version of a resource, and of the
+ * conditional responses carrying them.
+ */
+final class ETags {
+
+    /**
+     * Authenticated responses may be stored by the client only, and must be revalidated.
+     */
+    private static final CacheControl PRIVATE_REVALIDATE = CacheControl.noCache().cachePrivate();
+
+    private ETags() {
+    }
+
+    /**
+     * Build a weak entity tag.
+     *
+     * @param parts The values that change whenever the representation changes
+     * @return The weak entity tag, quoted
+     */
+    static String weak(Object... parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (Object part : parts) {
+                digest.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            return "W/\"" + HexFormat.of().formatHex(digest.digest(), 0, 16) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Answer 304 if the client's copy matches the entity tag, otherwise build the body.
+     * The body is only loaded and mapped when the client needs it. If the resource changes in
+     * between, the body may be newer than its tag; the next request then fetches it again.
+     *
+     * @param request The web request, for conditional headers
+     * @param eTag The entity tag of the current version
+     * @param body Loads the body
+     * @return 304 without a body, or 200 with the body
+     */
+    static <T> ResponseEntity<T> conditional(WebRequest request, String eTag, Supplier<T> body) {
+        return conditional(request, eTag, PRIVATE_REVALIDATE, body);
+    }
+
+    /**
+     * Answer 304 if the client's copy matches the entity tag, otherwise build the body.
+     *
+     * @param request The web request, for conditional headers
+     * @param eTag The entity tag of the current version
+     * @param cacheControl Who may store the response
+     * @param body Loads the body
+     * @return 304 without a body, or 200 with the body
+     */
+    static <T> ResponseEntity<T> conditional(WebRequest request, String eTag, CacheControl cacheControl,
+                                             Supplier<T> body) {
+        if (request.checkNotModified(eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag)
+                    .cacheControl(cacheControl)
+                    .build();
+        }
+        return ResponseEntity.ok().eTag(eTag)
+                .cacheControl(cacheControl)
+                .body(body.get());
+    }
+}
@@ -1,9 +1,16 @@
 package ca.buildsystem.reports.controller;
 
 import ca.buildsystem.reports.dto.ReportCreateDTO;
+import ca.buildsystem.reports.dto.ReportField;
 import ca.buildsystem.reports.dto.ReportResponseDTO;
 import ca.buildsystem.reports.dto.ReportUpdateDTO;
+import ca.buildsystem.reports.exception.ResourceNotFoundException;
+import ca.buildsystem.reports.exception.UnknownFieldException;
 import ca.buildsystem.reports.model.ReportType;
+import ca.buildsystem.reports.ratelimit.RateLimitBudget;
+import ca.buildsystem.reports.ratelimit.RateLimited;
+import ca.buildsystem.reports.repository.ReportFilter;
+import ca.buildsystem.reports.repository.ReportVersion;
 import ca.buildsystem.reports.service.ReportService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -19,13 +26,19 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.web.PageableDefault;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.Supplier;
 
 /**
  * REST controller for managing financial reports.
@@ -43,44 +56,58 @@ public class ReportController {
     /**
      * GET /api/reports : Get all reports with pagination.
      *
+     * @param fields The fields to return (optional)
      * @param pageable Pagination information
-     * @return A page of reports
+     * @param request The web request, for conditional headers
+     * @return A page of reports, or 304 if the client's copy is current
      */
     @GetMapping
+    @RateLimited(RateLimitBudget.SEARCH)
     @PreAuthorize("hasAnyRole('ADMIN', 'FINANCIAL_MANAGER', 'ACCOUNTANT')")
     @Operation(summary = "Get all reports", description = "Returns a paginated list of all reports")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Successfully retrieved reports",
                     content = @Content(schema = @Schema(implementation = Page.class))),
+            @ApiResponse(responseCode = "304", description = "Reports not modified"),
             @ApiResponse(responseCode = "403", description = "Forbidden")
     })
-    public ResponseEntity<Page<ReportResponseDTO>> getAllReports(
-            @PageableDefault(size = 20) Pageable pageable) {
+    public ResponseEntity<Page<?>> getAllReports(
+            @Parameter(description = "Comma-separated fields to return, e.g. id,name,status; all if omitted")
+            @RequestParam(required = false) String fields,
+            @PageableDefault(size = 20) Pageable pageable,
+            WebRequest request) {
         log.info("REST request to get all Reports");
-        Page<ReportResponseDTO> page = reportService.getAllReports(pageable);
-        return ResponseEntity.ok(page);
+        return listReports(request, fields, () -> reportService.getAllReportVersions(pageable),
+                () -> reportService.getAllReports(pageable),
+                ReportFilter.builder().build(), pageable);
     }
 
     /**
      * GET /api/reports/{id} : Get a report by ID.
+     * The ETag comes from the report's version, read from the database; an unchanged report is
+     * answered with 304 without loading it, and a changed one from the DTO cache if that is current.
      *
      * @param id The report ID
-     * @return The report
+     * @param request The web request, for conditional headers
+     * @return The report, or 304 if the client's copy is current
      */
     @GetMapping("/{id}")
     @PreAuthorize("hasAnyRole('ADMIN', 'FINANCIAL_MANAGER', 'ACCOUNTANT')")
     @Operation(summary = "Get a report by ID", description = "Returns a report based on its ID")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Successfully retrieved report"),
+            @ApiResponse(responseCode = "304", description = "Report not modified"),
             @ApiResponse(responseCode = "404", description = "Report not found"),
             @ApiResponse(responseCode = "403", description = "Forbidden")
     })
     public ResponseEntity<ReportResponseDTO> getReportById(
             @Parameter(description = "Report ID", required = true)
-            @PathVariable UUID id) {
+            @PathVariable UUID id,
+            WebRequest request) {
         log.info("REST request to get Report : {}", id);
-        return reportService.getReportById(id)
-                .map(ResponseEntity::ok)
+        return reportService.getReportVersion(id)
+                .map(version -> ETags.conditional(request, reportETag(version), () -> reportService.getReport(version)
+                        .orElseThrow(() -> new ResourceNotFoundException("Report", "id", id))))
                 .orElse(ResponseEntity.notFound().build());
     }
 
@@ -168,69 +195,124 @@ public class ReportController {
      * GET /api/reports/type/{type} : Get reports by type.
      *
      * @param type The report type
+     * @param fields The fields to return (optional)
      * @param pageable Pagination information
-     * @return A page of reports
+     * @param request The web request, for conditional headers
+     * @return A page of reports, or 304 if the client's copy is current
      */
     @GetMapping("/type/{type}")
+    @RateLimited(RateLimitBudget.SEARCH)
     @PreAuthorize("hasAnyRole('ADMIN', 'FINANCIAL_MANAGER', 'ACCOUNTANT')")
     @Operation(summary = "Get reports by type", description = "Returns a paginated list of reports by type")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Successfully retrieved reports"),
+            @ApiResponse(responseCode = "304", description = "Reports not modified"),
             @ApiResponse(responseCode = "403", description = "Forbidden")
     })
-    public ResponseEntity<Page<ReportResponseDTO>> getReportsByType(
+    public ResponseEntity<Page<?>> getReportsByType(
             @Parameter(description = "Report type", required = true)
             @PathVariable ReportType type,
-            @PageableDefault(size = 20) Pageable pageable) {
+            @Parameter(description = "Comma-separated fields to return, e.g. id,name,status; all if omitted")
+            @RequestParam(required = false) String fields,
+            @PageableDefault(size = 20) Pageable pageable,
+            WebRequest request) {
         log.info("REST request to get Reports by type : {}", type);
-        Page<ReportResponseDTO> page = reportService.findReportsByType(type, pageable);
-        return ResponseEntity.ok(page);
+        return listReports(request, fields, () -> reportService.findReportVersionsByType(type, pageable),
+                () -> reportService.findReportsByType(type, pageable),
+                ReportFilter.builder().type(type).build(), pageable);
     }
 
     /**
      * GET /api/reports/client/{clientId} : Get reports by client ID.
      *
      * @param clientId The client ID
+     * @param fields The fields to return (optional)
      * @param pageable Pagination information
-     * @return A page of reports
+     * @param request The web request, for conditional headers
+     * @return A page of reports, or 304 if the client's copy is current
      */
     @GetMapping("/client/{clientId}")
+    @RateLimited(RateLimitBudget.SEARCH)
     @PreAuthorize("hasAnyRole('ADMIN', 'FINANCIAL_MANAGER', 'ACCOUNTANT')")
     @Operation(summary = "Get reports by client ID", description = "Returns a paginated list of reports by client ID")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Successfully retrieved reports"),
+            @ApiResponse(responseCode = "304", description = "Reports not modified"),
             @ApiResponse(responseCode = "403", description = "Forbidden")
     })
-    public ResponseEntity<Page<ReportResponseDTO>> getReportsByClientId(
+    public ResponseEntity<Page<?>> getReportsByClientId(
             @Parameter(description = "Client ID", required = true)
             @PathVariable UUID clientId,
-            @PageableDefault(size = 20) Pageable pageable) {
+            @Parameter(description = "Comma-separated fields to return, e.g. id,name,status; all if omitted")
+            @RequestParam(required = false) String fields,
+            @PageableDefault(size = 20) Pageable pageable,
+            WebRequest request) {
         log.info("REST request to get Reports by client ID : {}", clientId);
-        Page<ReportResponseDTO> page = reportService.findReportsByClientId(clientId, pageable);
-        return ResponseEntity.ok(page);
+        return listReports(request, fields, () -> reportService.findReportVersionsByClientId(clientId, pageable),
+                () -> reportService.findReportsByClientId(clientId, pageable),
+                ReportFilter.builder().clientId(clientId).build(), pageable);
     }
 
     /**
      * GET /api/reports/project/{projectId} : Get reports by project ID.
      *
      * @param projectId The project ID
+     * @param fields The fields to return (optional)
      * @param pageable Pagination information
-     * @return A page of reports
+     * @param request The web request, for conditional headers
+     * @return A page of reports, or 304 if the client's copy is current
      */
     @GetMapping("/project/{projectId}")
+    @RateLimited(RateLimitBudget.SEARCH)
     @PreAuthorize("hasAnyRole('ADMIN', 'FINANCIAL_MANAGER', 'ACCOUNTANT', 'PROJECT_MANAGER')")
     @Operation(summary = "Get reports by project ID", description = "Returns a paginated list of reports by project ID")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Successfully retrieved reports"),
+            @ApiResponse(responseCode = "304", description = "Reports not modified"),
             @ApiResponse(responseCode = "403", description = "Forbidden")
     })
-    public ResponseEntity<Page<ReportResponseDTO>> getReportsByProjectId(
+    public ResponseEntity<Page<?>> getReportsByProjectId(
             @Parameter(description = "Project ID", required = true)
             @PathVariable UUID projectId,
-            @PageableDefault(size = 20) Pageable pageable) {
+            @Parameter(description = "Comma-separated fields to return, e.g. id,name,status; all if omitted")
+            @RequestParam(required = false) String fields,
+            @PageableDefault(size = 20) Pageable pageable,
+            WebRequest request) {
         log.info("REST request to get Reports by project ID : {}", projectId);
-        Page<ReportResponseDTO> page = reportService.findReportsByProjectId(projectId, pageable);
-        return ResponseEntity.ok(page);
+        return listReports(request, fields, () -> reportService.findReportVersionsByProjectId(projectId, pageable),
+                () -> reportService.findReportsByProjectId(projectId, pageable),
+                ReportFilter.builder().projectId(projectId).build(), pageable);
+    }
+
+    /**
+     * GET /api/reports/{id}/children : Get the child reports of a burst generation.
+     *
+     * @param id The ID of the burst's parent report
+     * @param fields The fields to return (optional)
+     * @param pageable Pagination information
+     * @param request The web request, for conditional headers
+     * @return A page of reports, or 304 if the client's copy is current
+     */
+    @GetMapping("/{id}/children")
+    @RateLimited(RateLimitBudget.SEARCH)
+    @PreAuthorize("hasAnyRole('ADMIN', 'FINANCIAL_MANAGER', 'ACCOUNTANT')")
+    @Operation(summary = "Get burst child reports", description = "Returns a paginated list of the reports generated by a burst generation")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Successfully retrieved reports"),
+            @ApiResponse(responseCode = "304", description = "Reports not modified"),
+            @ApiResponse(responseCode = "403", description = "Forbidden")
+    })
+    public ResponseEntity<Page<?>> getChildReports(
+            @Parameter(description = "Parent report ID", required = true)
+            @PathVariable UUID id,
+            @Parameter(description = "Comma-separated fields to return, e.g. id,name,status; all if omitted")
+            @RequestParam(required = false) String fields,
+            @PageableDefault(size = 20) Pageable pageable,
+            WebRequest request) {
+        log.info("REST request to get child Reports of : {}", id);
+        return listReports(request, fields, () -> reportService.findChildReportVersions(id, pageable),
+                () -> reportService.findChildReports(id, pageable),
+                ReportFilter.builder().parentReportId(id).build(), pageable);
     }
 
     /**
@@ -241,17 +323,21 @@ public class ReportController {
      * @param projectId The project ID (optional)
      * @param startDate The start date (optional)
      * @param endDate The end date (optional)
+     * @param fields The fields to return (optional)
      * @param pageable Pagination information
-     * @return A page of reports
+     * @param request The web request, for conditional headers
+     * @return A page of reports, or 304 if the client's copy is current
      */
     @GetMapping("/search")
+    @RateLimited(RateLimitBudget.SEARCH)
     @PreAuthorize("hasAnyRole('ADMIN', 'FINANCIAL_MANAGER', 'ACCOUNTANT')")
     @Operation(summary = "Search reports by criteria", description = "Returns a paginated list of reports matching the criteria")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Successfully retrieved reports"),
+            @ApiResponse(responseCode = "304", description = "Reports not modified"),
             @ApiResponse(responseCode = "403", description = "Forbidden")
     })
-    public ResponseEntity<Page<ReportResponseDTO>> searchReports(
+    public ResponseEntity<Page<?>> searchReports(
             @Parameter(description = "Report type")
             @RequestParam(required = false) ReportType type,
             @Parameter(description = "Client ID")
@@ -262,11 +348,19 @@ public class ReportController {
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
             @Parameter(description = "End date (ISO format)")
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate,
-            @PageableDefault(size = 20) Pageable pageable) {
+            @Parameter(description = "Comma-separated fields to return, e.g. id,name,status; all if omitted")
+            @RequestParam(required = false) String fields,
+            @PageableDefault(size = 20) Pageable pageable,
+            WebRequest request) {
         log.info("REST request to search Reports by criteria");
-        Page<ReportResponseDTO> page = reportService.findReportsByMultipleCriteria(
-                type, clientId, projectId, startDate, endDate, pageable);
-        return ResponseEntity.ok(page);
+        ReportFilter filter = ReportFilter.builder().type(type).clientId(clientId).projectId(projectId)
+                .createdFrom(startDate).createdTo(endDate).build();
+        return listReports(request, fields,
+                () -> reportService.findReportVersionsByMultipleCriteria(
+                        type, clientId, projectId, startDate, endDate, pageable),
+                () -> reportService.findReportsByMultipleCriteria(
+                        type, clientId, projectId, startDate, endDate, pageable),
+                filter, pageable);
     }
 
     /**
@@ -301,22 +395,79 @@ public class ReportController {
 
     /**
      * GET /api/reports/public/{accessToken} : Get a public report by access token.
+     * Responses carry a weak ETag; clients and shared caches revalidate with If-None-Match and
+     * get 304 while the report is unchanged.
      *
      * @param accessToken The access token
-     * @return The report
+     * @param request The web request, for conditional headers
+     * @return The report, or 304 if the client's copy is current
      */
     @GetMapping("/public/{accessToken}")
+    @RateLimited(RateLimitBudget.PUBLIC)
     @Operation(summary = "Get a public report by access token", description = "Returns a public report based on its access token")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Successfully retrieved report"),
+            @ApiResponse(responseCode = "304", description = "Report not modified"),
             @ApiResponse(responseCode = "404", description = "Report not found")
     })
     public ResponseEntity<ReportResponseDTO> getPublicReportByAccessToken(
             @Parameter(description = "Access token", required = true)
-            @PathVariable String accessToken) {
-        log.info("REST request to get public Report by access token");
+            @PathVariable String accessToken,
+            WebRequest request) {
+        log.debug("REST request to get public Report by access token");
         return reportService.findPublicReportByAccessToken(accessToken)
-                .map(ResponseEntity::ok)
+                .flatMap(report -> reportService.getReportVersion(report.getId())
+                        .map(version -> ETags.conditional(request, reportETag(version),
+                                CacheControl.noCache().cachePublic(),
+                                () -> reportService.getReport(version).orElse(report))))
                 .orElse(ResponseEntity.notFound().build());
     }
+
+    /**
+     * Weak ETag of a report, changing with every update, generation, storage move and rename of
+     * its template.
+     */
+    private static String reportETag(ReportVersion version) {
+        return ETags.weak(version.getId(), version.getUpdatedAt(), version.getStatus(), version.getLastGenerated(),
+                version.getFileSize(), version.getStorageTier(), version.getTemplateId(), version.getTemplateName());
+    }
+
+    /**
+     * Answer a list request with the full reports or, given a sparse fieldset, with only the
+     * requested fields; those are selected in SQL and parameters are only loaded if requested.
+     *
+     * @param request The web request, for conditional headers
+     * @param fields The fields to return, null for all
+     * @param versions Loads the versions of the page
+     * @param reports Loads the full reports of the page
+     * @param filter The criteria of the list, for sparse fieldsets
+     * @param pageable Pagination information
+     * @return The page, or 304 if the client's copy is current
+     * @throws UnknownFieldException if a field does not exist
+     */
+    private ResponseEntity<Page<?>> listReports(WebRequest request, String fields,
+                                                Supplier<Page<ReportVersion>> versions,
+                                                Supplier<Page<ReportResponseDTO>> reports,
+                                                ReportFilter filter, Pageable pageable) {
+        if (fields == null) {
+            return ETags.conditional(request, pageETag(versions.get(), "*"), reports::get);
+        }
+        Set<ReportField> selected = ReportField.parse(fields);
+        return ETags.conditional(request, pageETag(versions.get(), selected),
+                () -> reportService.findReportFields(filter, selected, pageable));
+    }
+
+    /**
+     * Weak ETag of a page of reports, from the versions of its reports, the total count and the
+     * fields returned.
+     */
+    private static String pageETag(Page<ReportVersion> versions, Object fields) {
+        List<Object> parts = new ArrayList<>(versions.getNumberOfElements() + 2);
+        parts.add(fields);
+        parts.add(versions.getTotalElements());
+        for (ReportVersion version : versions) {
+            parts.add(reportETag(version));
+        }
+        return ETags.weak(parts.toArray());
+    }
 }
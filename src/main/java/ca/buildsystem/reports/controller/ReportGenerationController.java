@@ -1,8 +1,20 @@
 package ca.buildsystem.reports.controller;
 
+import ca.buildsystem.reports.dto.ReportBundleRequestDTO;
 import ca.buildsystem.reports.dto.ReportGenerationDTO;
 import ca.buildsystem.reports.dto.ReportResponseDTO;
+import ca.buildsystem.reports.exception.ResourceNotFoundException;
+import ca.buildsystem.reports.generation.GenerationProgressBus;
+import ca.buildsystem.reports.generation.GenerationProgressEvent;
+import ca.buildsystem.reports.generation.GenerationStage;
+import ca.buildsystem.reports.ratelimit.RateLimitBudget;
+import ca.buildsystem.reports.ratelimit.RateLimited;
+import ca.buildsystem.reports.service.IdempotencyService;
+import ca.buildsystem.reports.service.ReportBundleService;
+import ca.buildsystem.reports.service.ReportGenerationExecutor;
 import ca.buildsystem.reports.service.ReportGenerationService;
+import ca.buildsystem.reports.service.ReportService;
+import ca.buildsystem.reports.service.ReportStorageTieringService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -13,15 +25,23 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.core.io.FileSystemResource;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.Principal;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 /**
@@ -36,31 +56,136 @@ import java.util.UUID;
 public class ReportGenerationController {
 
     private final ReportGenerationService reportGenerationService;
+    private final ReportService reportService;
+    private final GenerationProgressBus progressBus;
+    private final IdempotencyService idempotencyService;
+    private final ReportGenerationExecutor generationExecutor;
+    private final ReportBundleService bundleService;
+    private final ReportStorageTieringService tieringService;
+
+    @Value("${app.report.progress.sse-timeout-ms:1800000}")
+    private long sseTimeoutMs;
 
     /**
      * POST /api/reports/generate : Generate a new report.
+     * Requests carrying an Idempotency-Key are generated once; repeats return the original report.
+     * Requests with a burst key fetch the data once and generate one child report per project or
+     * client; the parent report is returned and its children are listed under /api/reports/{id}/children.
+     * A generation interrupted by a shutdown is returned as 202 Accepted and resumes on another node.
      *
      * @param generationDTO The report generation data
+     * @param idempotencyKey The optional client-supplied idempotency key
+     * @param principal The authenticated principal
      * @return The generated report
      */
     @PostMapping
+    @RateLimited(RateLimitBudget.GENERATION)
     @PreAuthorize("hasAnyRole('ADMIN', 'FINANCIAL_MANAGER')")
     @Operation(summary = "Generate a new report", description = "Generates a new report based on the provided data")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Report generated successfully"),
+            @ApiResponse(responseCode = "202", description = "Generation checkpointed, will resume on another node"),
             @ApiResponse(responseCode = "400", description = "Invalid input"),
-            @ApiResponse(responseCode = "403", description = "Forbidden")
+            @ApiResponse(responseCode = "403", description = "Forbidden"),
+            @ApiResponse(responseCode = "409", description = "Idempotency key reused for another request or still in progress"),
+            @ApiResponse(responseCode = "429", description = "Generation capacity exhausted; retry after the Retry-After delay"),
+            @ApiResponse(responseCode = "503", description = "Generation not accepted on this node")
     })
     public ResponseEntity<ReportResponseDTO> generateReport(
             @Parameter(description = "Report generation data", required = true)
-            @Valid @RequestBody ReportGenerationDTO generationDTO) {
+            @Valid @RequestBody ReportGenerationDTO generationDTO,
+            @Parameter(description = "Key making retries of this request safe")
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+            Principal principal) {
         log.info("REST request to generate report: {}", generationDTO.getName());
-        ReportResponseDTO result = reportGenerationService.generateReport(generationDTO);
-        return ResponseEntity.ok(result);
+        ReportResponseDTO result = idempotencyKey == null
+                ? generationExecutor.generate(generationDTO)
+                : idempotencyService.execute(idempotencyKey, principal != null ? principal.getName() : null,
+                        generationDTO, () -> generationExecutor.generate(generationDTO));
+        return generationResponse(result);
+    }
+
+    /**
+     * POST /api/reports/generate/{id}/regenerate : Regenerate an existing report.
+     *
+     * @param id The report ID
+     * @param fullRebuild True to rebuild from scratch instead of merging newly posted data
+     * @return The regenerated report
+     */
+    @PostMapping("/{id}/regenerate")
+    @RateLimited(RateLimitBudget.GENERATION)
+    @PreAuthorize("hasAnyRole('ADMIN', 'FINANCIAL_MANAGER')")
+    @Operation(summary = "Regenerate a report", description = "Regenerates an existing report, incrementally unless a full rebuild is requested")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Report regenerated successfully"),
+            @ApiResponse(responseCode = "202", description = "Generation checkpointed, will resume on another node"),
+            @ApiResponse(responseCode = "404", description = "Report not found"),
+            @ApiResponse(responseCode = "403", description = "Forbidden"),
+            @ApiResponse(responseCode = "409", description = "Report already being generated"),
+            @ApiResponse(responseCode = "429", description = "Generation capacity exhausted; retry after the Retry-After delay"),
+            @ApiResponse(responseCode = "503", description = "Generation not accepted on this node")
+    })
+    public ResponseEntity<ReportResponseDTO> regenerateReport(
+            @Parameter(description = "Report ID", required = true)
+            @PathVariable UUID id,
+            @Parameter(description = "Rebuild from scratch")
+            @RequestParam(defaultValue = "false") boolean fullRebuild) {
+        log.info("REST request to regenerate report: {} (full rebuild: {})", id, fullRebuild);
+        ReportResponseDTO result = generationExecutor.regenerate(id, fullRebuild);
+        return generationResponse(result);
+    }
+
+    /**
+     * GET /api/reports/generate/{id}/progress : Stream the progress of a report generation.
+     * Sends the current state on connect, then every stage transition until the generation
+     * completes or fails; the completion event carries the download link. Generations running on
+     * another node only report their outcome, once the report status shows it.
+     *
+     * @param id The report ID
+     * @return The server-sent event stream
+     */
+    @GetMapping(value = "/{id}/progress", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @PreAuthorize("hasAnyRole('ADMIN', 'FINANCIAL_MANAGER', 'ACCOUNTANT')")
+    @Operation(summary = "Stream generation progress", description = "Pushes stage transitions, row counts, percentage and the download link as server-sent events")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Progress stream opened",
+                    content = @Content(mediaType = MediaType.TEXT_EVENT_STREAM_VALUE)),
+            @ApiResponse(responseCode = "404", description = "Report not found"),
+            @ApiResponse(responseCode = "403", description = "Forbidden")
+    })
+    public SseEmitter streamProgress(
+            @Parameter(description = "Report ID", required = true)
+            @PathVariable UUID id) {
+        log.info("REST request to stream progress of report: {}", id);
+        ReportResponseDTO report = reportService.getReportById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Report", "id", id));
+        
+        SseEmitter emitter = new SseEmitter(sseTimeoutMs);
+        Runnable unsubscribe = progressBus.subscribe(id, event -> sendProgress(emitter, event));
+        emitter.onCompletion(unsubscribe);
+        emitter.onTimeout(unsubscribe);
+        emitter.onError(e -> unsubscribe.run());
+        
+        Optional<GenerationProgressEvent> latest = progressBus.latest(id);
+        if (latest.isPresent()) {
+            sendProgress(emitter, latest.get());
+        } else if ("COMPLETED".equals(report.getStatus()) || "ERROR".equals(report.getStatus())) {
+            // Nothing running: report the outcome of the last generation and close the stream
+            boolean completed = "COMPLETED".equals(report.getStatus());
+            sendProgress(emitter, GenerationProgressEvent.builder()
+                    .reportId(id)
+                    .stage(completed ? GenerationStage.COMPLETED : GenerationStage.FAILED)
+                    .percent(completed ? 100 : 0)
+                    .downloadUrl(completed ? "/api/reports/generate/" + id + "/download" : null)
+                    .timestamp(LocalDateTime.now())
+                    .build());
+        }
+        return emitter;
     }
 
     /**
      * GET /api/reports/generate/{id}/download : Download a generated report.
+     * Files in the cold tier are decompressed while they are sent.
      *
      * @param id The report ID
      * @return The report file
@@ -80,22 +205,78 @@ public class ReportGenerationController {
         log.info("REST request to download report: {}", id);
         
         try {
-            String filePath = reportGenerationService.downloadReport(id);
-            File file = new File(filePath);
-            
-            if (!file.exists()) {
-                return ResponseEntity.notFound().build();
-            }
-            
-            Resource resource = new FileSystemResource(file);
+            ReportStorageTieringService.ReportDownload download = tieringService.openDownload(id);
             
-            return ResponseEntity.ok()
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok()
                     .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + file.getName() + "\"")
-                    .body(resource);
+                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + download.getFileName() + "\"");
+            if (download.getLength() != null) {
+                response.contentLength(download.getLength());
+            }
+            return response.body(download.getResource());
         } catch (Exception e) {
             log.error("Error downloading report", e);
             return ResponseEntity.notFound().build();
         }
     }
+
+    /**
+     * POST /api/reports/generate/bundle : Download several reports as one ZIP archive.
+     * The archive is streamed while it is written; PDF and Excel files are stored without
+     * recompression.
+     *
+     * @param bundleRequest The report ids or search filter selecting the reports
+     * @return The ZIP archive
+     */
+    @PostMapping("/bundle")
+    @RateLimited(RateLimitBudget.GENERATION)
+    @PreAuthorize("hasAnyRole('ADMIN', 'FINANCIAL_MANAGER', 'ACCOUNTANT')")
+    @Operation(summary = "Download a report bundle", description = "Streams the files of the selected reports as a ZIP archive")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Bundle streamed successfully",
+                    content = @Content(mediaType = "application/zip")),
+            @ApiResponse(responseCode = "400", description = "Invalid selection or too many reports"),
+            @ApiResponse(responseCode = "404", description = "A requested report has no generated file"),
+            @ApiResponse(responseCode = "403", description = "Forbidden")
+    })
+    public ResponseEntity<StreamingResponseBody> downloadBundle(
+            @Parameter(description = "Report ids or search filter", required = true)
+            @Valid @RequestBody ReportBundleRequestDTO bundleRequest) {
+        log.info("REST request to download a report bundle");
+        List<ReportBundleService.BundleEntry> entries = bundleService.resolve(bundleRequest);
+        String filename = "reports_" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss")) + ".zip";
+        
+        StreamingResponseBody body = out -> bundleService.write(entries, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/zip"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+                .body(body);
+    }
+
+    /**
+     * Answer 202 Accepted for a generation left pending for resumption, 200 OK otherwise.
+     */
+    private ResponseEntity<ReportResponseDTO> generationResponse(ReportResponseDTO result) {
+        if ("PENDING".equals(result.getStatus())) {
+            return ResponseEntity.accepted().body(result);
+        }
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * Send a progress event, closing the stream after a terminal stage.
+     */
+    private void sendProgress(SseEmitter emitter, GenerationProgressEvent event) {
+        try {
+            emitter.send(SseEmitter.event()
+                    .name(event.getStage().name().toLowerCase())
+                    .data(event, MediaType.APPLICATION_JSON));
+            if (event.getStage().isTerminal()) {
+                emitter.complete();
+            }
+        } catch (IOException e) {
+            emitter.completeWithError(e);
+            throw new UncheckedIOException(e);
+        }
+    }
 }
@@ -2,7 +2,9 @@ package ca.buildsystem.reports.controller;
 
 import ca.buildsystem.reports.dto.TemplateCreateDTO;
 import ca.buildsystem.reports.dto.TemplateResponseDTO;
+import ca.buildsystem.reports.exception.ResourceNotFoundException;
 import ca.buildsystem.reports.model.ReportType;
+import ca.buildsystem.reports.repository.TemplateVersion;
 import ca.buildsystem.reports.service.TemplateService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -21,7 +23,9 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
@@ -42,7 +46,8 @@ public class TemplateController {
      * GET /api/templates : Get all templates with pagination.
      *
      * @param pageable Pagination information
-     * @return A page of templates
+     * @param request The web request, for conditional headers
+     * @return A page of templates, or 304 if the client's copy is current
      */
     @GetMapping
     @PreAuthorize("hasAnyRole('ADMIN', 'FINANCIAL_MANAGER', 'ACCOUNTANT')")
@@ -50,13 +55,15 @@ public class TemplateController {
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Successfully retrieved templates",
                     content = @Content(schema = @Schema(implementation = Page.class))),
+            @ApiResponse(responseCode = "304", description = "Templates not modified"),
             @ApiResponse(responseCode = "403", description = "Forbidden")
     })
     public ResponseEntity<Page<TemplateResponseDTO>> getAllTemplates(
-            @PageableDefault(size = 20) Pageable pageable) {
+            @PageableDefault(size = 20) Pageable pageable,
+            WebRequest request) {
         log.info("REST request to get all Templates");
-        Page<TemplateResponseDTO> page = templateService.getAllTemplates(pageable);
-        return ResponseEntity.ok(page);
+        return ETags.conditional(request, pageETag(templateService.getAllTemplateVersions(pageable)),
+                () -> templateService.getAllTemplates(pageable));
     }
 
     /**
@@ -83,24 +90,31 @@ public class TemplateController {
 
     /**
      * GET /api/templates/{id} : Get a template by ID.
+     * The ETag comes from the template's version, read from the database; an unchanged template is
+     * answered with 304 without loading it.
      *
      * @param id The template ID
-     * @return The template
+     * @param request The web request, for conditional headers
+     * @return The template, or 304 if the client's copy is current
      */
     @GetMapping("/{id}")
     @PreAuthorize("hasAnyRole('ADMIN', 'FINANCIAL_MANAGER', 'ACCOUNTANT')")
     @Operation(summary = "Get a template by ID", description = "Returns a template based on its ID")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Successfully retrieved template"),
+            @ApiResponse(responseCode = "304", description = "Template not modified"),
             @ApiResponse(responseCode = "404", description = "Template not found"),
             @ApiResponse(responseCode = "403", description = "Forbidden")
     })
     public ResponseEntity<TemplateResponseDTO> getTemplateById(
             @Parameter(description = "Template ID", required = true)
-            @PathVariable UUID id) {
+            @PathVariable UUID id,
+            WebRequest request) {
         log.info("REST request to get Template : {}", id);
-        return templateService.getTemplateById(id)
-                .map(ResponseEntity::ok)
+        return templateService.getTemplateVersion(id)
+                .map(version -> ETags.conditional(request, templateETag(version), () -> templateService
+                        .getTemplate(version)
+                        .orElseThrow(() -> new ResourceNotFoundException("Template", "id", id))))
                 .orElse(ResponseEntity.notFound().build());
     }
 
@@ -167,59 +181,92 @@ public class TemplateController {
      *
      * @param type The template type
      * @param pageable Pagination information
-     * @return A page of templates
+     * @param request The web request, for conditional headers
+     * @return A page of templates, or 304 if the client's copy is current
      */
     @GetMapping("/type/{type}")
     @PreAuthorize("hasAnyRole('ADMIN', 'FINANCIAL_MANAGER', 'ACCOUNTANT')")
     @Operation(summary = "Get templates by type", description = "Returns a paginated list of templates by type")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Successfully retrieved templates"),
+            @ApiResponse(responseCode = "304", description = "Templates not modified"),
             @ApiResponse(responseCode = "403", description = "Forbidden")
     })
     public ResponseEntity<Page<TemplateResponseDTO>> getTemplatesByType(
             @Parameter(description = "Template type", required = true)
             @PathVariable ReportType type,
-            @PageableDefault(size = 20) Pageable pageable) {
+            @PageableDefault(size = 20) Pageable pageable,
+            WebRequest request) {
         log.info("REST request to get Templates by type : {}", type);
-        Page<TemplateResponseDTO> page = templateService.findTemplatesByType(type, pageable);
-        return ResponseEntity.ok(page);
+        return ETags.conditional(request, pageETag(templateService.findTemplateVersionsByType(type, pageable)),
+                () -> templateService.findTemplatesByType(type, pageable));
     }
 
     /**
      * GET /api/templates/active : Get active templates.
      *
      * @param pageable Pagination information
-     * @return A page of active templates
+     * @param request The web request, for conditional headers
+     * @return A page of active templates, or 304 if the client's copy is current
      */
     @GetMapping("/active")
     @PreAuthorize("hasAnyRole('ADMIN', 'FINANCIAL_MANAGER', 'ACCOUNTANT')")
     @Operation(summary = "Get active templates", description = "Returns a paginated list of active templates")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Successfully retrieved templates"),
+            @ApiResponse(responseCode = "304", description = "Templates not modified"),
             @ApiResponse(responseCode = "403", description = "Forbidden")
     })
     public ResponseEntity<Page<TemplateResponseDTO>> getActiveTemplates(
-            @PageableDefault(size = 20) Pageable pageable) {
+            @PageableDefault(size = 20) Pageable pageable,
+            WebRequest request) {
         log.info("REST request to get active Templates");
-        Page<TemplateResponseDTO> page = templateService.findActiveTemplates(pageable);
-        return ResponseEntity.ok(page);
+        return ETags.conditional(request, pageETag(templateService.findActiveTemplateVersions(pageable)),
+                () -> templateService.findActiveTemplates(pageable));
     }
 
     /**
      * GET /api/templates/active-non-system : Get all active non-system templates.
      *
-     * @return A list of active non-system templates
+     * @param request The web request, for conditional headers
+     * @return A list of active non-system templates, or 304 if the client's copy is current
      */
     @GetMapping("/active-non-system")
     @PreAuthorize("hasAnyRole('ADMIN', 'FINANCIAL_MANAGER', 'ACCOUNTANT')")
     @Operation(summary = "Get active non-system templates", description = "Returns a list of all active non-system templates")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Successfully retrieved templates"),
+            @ApiResponse(responseCode = "304", description = "Templates not modified"),
             @ApiResponse(responseCode = "403", description = "Forbidden")
     })
-    public ResponseEntity<List<TemplateResponseDTO>> getActiveNonSystemTemplates() {
+    public ResponseEntity<List<TemplateResponseDTO>> getActiveNonSystemTemplates(WebRequest request) {
         log.info("REST request to get active non-system Templates");
-        List<TemplateResponseDTO> templates = templateService.findActiveNonSystemTemplates();
-        return ResponseEntity.ok(templates);
+        List<TemplateVersion> versions = templateService.findActiveNonSystemTemplateVersions();
+        return ETags.conditional(request, listETag(versions.size(), versions),
+                templateService::findActiveNonSystemTemplates);
+    }
+
+    /**
+     * Weak ETag of a template, changing with every update.
+     */
+    private static String templateETag(TemplateVersion version) {
+        return ETags.weak(version.getId(), version.getUpdatedAt(), version.getUpdatedBy(), version.getName(),
+                version.getVersion(), version.isActive());
+    }
+
+    /**
+     * Weak ETag of a page of templates, from the versions of its templates and the total count.
+     */
+    private static String pageETag(Page<TemplateVersion> versions) {
+        return listETag(versions.getTotalElements(), versions.getContent());
+    }
+
+    private static String listETag(long total, List<TemplateVersion> versions) {
+        List<Object> parts = new ArrayList<>(versions.size() + 1);
+        parts.add(total);
+        for (TemplateVersion version : versions) {
+            parts.add(templateETag(version));
+        }
+        return ETags.weak(parts.toArray());
     }
 }
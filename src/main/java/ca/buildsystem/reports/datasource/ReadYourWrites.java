@@ -0,0 +1,73 @@
+package ca.buildsystem.reports.datasource;
+
+import java.util.function.Supplier;
+
+/**
+ * Read-your-writes scope for replica routing.
+ * Read-only transactions started inside the scope use the primary, so a caller that has just
+ * written sees its own changes even if the replica has not replayed them yet.
+ */
+public final class ReadYourWrites {
+
+    private static final ThreadLocal<Integer> DEPTH = ThreadLocal.withInitial(() -> 0);
+
+    private ReadYourWrites() {
+    }
+
+    /**
+     * Open a scope whose read-only transactions use the primary. Scopes may nest.
+     *
+     * @return The scope, to be closed on the same thread
+     */
+    public static Scope require() {
+        DEPTH.set(DEPTH.get() + 1);
+        return new Scope();
+    }
+
+    /**
+     * Run an action whose read-only transactions must see the primary.
+     *
+     * @param action The action
+     * @param <T> The result type
+     * @return The result of the action
+     */
+    public static <T> T onPrimary(Supplier<T> action) {
+        try (Scope scope = require()) {
+            return action.get();
+        }
+    }
+
+    /**
+     * Check whether the current thread requires the primary.
+     *
+     * @return true inside a read-your-writes scope
+     */
+    public static boolean isRequired() {
+        return DEPTH.get() > 0;
+    }
+
+    /**
+     * An open read-your-writes scope.
+     */
+    public static final class Scope implements AutoCloseable {
+
+        private boolean closed;
+
+        private Scope() {
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            int depth = DEPTH.get() - 1;
+            if (depth <= 0) {
+                DEPTH.remove();
+            } else {
+                DEPTH.set(depth);
+            }
+        }
+    }
+}
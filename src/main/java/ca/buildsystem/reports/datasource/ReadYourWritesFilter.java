@@ -0,0 +1,105 @@
+package ca.buildsystem.reports.datasource;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpMethod;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Filter giving each user read-your-writes consistency across requests.
+ * After a user's create, update or delete request, their requests are served from the primary
+ * for a window that covers the replica's allowed lag, so a client reloading what it just saved
+ * never reads an older replica state. Other users keep reading from the replica.
+ * The end of the window travels with the client, in a cookie and in a response header that API
+ * clients echo, so it holds whichever node serves the next request; the node that served the
+ * write also remembers it for clients that send neither. A marker only ever sends its bearer's
+ * reads to the primary, and never for longer than one window from now.
+ */
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+
+    /**
+     * Header carrying the end of the window, in epoch milliseconds.
+     */
+    public static final String HEADER = "X-Read-Your-Writes-Until";
+
+    static final String COOKIE = "read_your_writes_until";
+
+    private final Duration window;
+    private final Cache<String, Long> recentWriters;
+
+    /**
+     * @param window How long a user's reads use the primary after a write
+     * @param maxUsers The number of recent writers tracked on this node
+     */
+    public ReadYourWritesFilter(Duration window, long maxUsers) {
+        this.window = window;
+        this.recentWriters = Caffeine.newBuilder()
+                .expireAfterWrite(window)
+                .maximumSize(maxUsers)
+                .build();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        String user = authentication != null && authentication.isAuthenticated()
+                && !(authentication instanceof AnonymousAuthenticationToken) ? authentication.getName() : null;
+        boolean write = !HttpMethod.GET.matches(request.getMethod()) && !HttpMethod.HEAD.matches(request.getMethod());
+
+        if (user == null || !(write || recentWriters.getIfPresent(user) != null || hasMarker(request))) {
+            chain.doFilter(request, response);
+            return;
+        }
+        if (write) {
+            // Set before the body is written, while headers can still be added
+            long until = System.currentTimeMillis() + window.toMillis();
+            recentWriters.put(user, until);
+            response.setHeader(HEADER, Long.toString(until));
+            Cookie cookie = new Cookie(COOKIE, Long.toString(until));
+            cookie.setPath("/");
+            cookie.setHttpOnly(true);
+            cookie.setSecure(request.isSecure());
+            cookie.setMaxAge((int) Math.max(1, window.toSeconds()));
+            response.addCookie(cookie);
+        }
+        try (ReadYourWrites.Scope scope = ReadYourWrites.require()) {
+            chain.doFilter(request, response);
+        }
+    }
+
+    /**
+     * Check whether the request carries a window that has not ended yet.
+     */
+    private boolean hasMarker(HttpServletRequest request) {
+        String value = request.getHeader(HEADER);
+        if (value == null && request.getCookies() != null) {
+            for (Cookie cookie : request.getCookies()) {
+                if (COOKIE.equals(cookie.getName())) {
+                    value = cookie.getValue();
+                }
+            }
+        }
+        if (value == null) {
+            return false;
+        }
+        try {
+            long until = Long.parseLong(value.trim());
+            long now = System.currentTimeMillis();
+            return until > now && until <= now + window.toMillis();
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package ca.buildsystem.reports.datasource;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+
+/**
+ * Periodic check of the replica's replication lag.
+ * The replica is used only while its last measured lag is within the limit; a failing check
+ * counts as unusable, so reads fall back to the primary until the replica catches up.
+ */
+@Slf4j
+public class ReplicaLagMonitor {
+
+    private final JdbcTemplate replica;
+    private final String lagQuery;
+    private final long maxLagMs;
+
+    private volatile boolean usable;
+    private volatile long lastLagMs = -1;
+
+    /**
+     * @param replica The replica data source
+     * @param lagQuery Query returning the replication lag in milliseconds
+     * @param maxLagMs The largest lag at which the replica is still used
+     */
+    public ReplicaLagMonitor(DataSource replica, String lagQuery, long maxLagMs) {
+        this.replica = new JdbcTemplate(replica);
+        this.replica.setQueryTimeout(5);
+        this.lagQuery = lagQuery;
+        this.maxLagMs = maxLagMs;
+    }
+
+    /**
+     * Measure the replication lag and decide whether the replica may serve reads.
+     */
+    @Scheduled(fixedDelayString = "${app.datasource.replica.lag-check-interval-ms:1000}")
+    public void check() {
+        boolean wasUsable = usable;
+        try {
+            Number lag = replica.queryForObject(lagQuery, Number.class);
+            lastLagMs = lag != null ? lag.longValue() : 0;
+            usable = lastLagMs <= maxLagMs;
+        } catch (RuntimeException e) {
+            lastLagMs = -1;
+            usable = false;
+            if (wasUsable) {
+                log.warn("Replica lag check failed, routing reads to the primary", e);
+            }
+            return;
+        }
+        if (wasUsable && !usable) {
+            log.warn("Replica lags {} ms behind (limit {} ms), routing reads to the primary", lastLagMs, maxLagMs);
+        } else if (!wasUsable && usable) {
+            log.info("Replica lag is {} ms, routing read-only transactions to the replica", lastLagMs);
+        }
+    }
+
+    /**
+     * Check whether read-only transactions may use the replica.
+     *
+     * @return true if the last check found the replica within the lag limit
+     */
+    public boolean isReplicaUsable() {
+        return usable;
+    }
+
+    /**
+     * Get the last measured replication lag.
+     *
+     * @return The lag in milliseconds, or -1 if the replica could not be reached
+     */
+    public long getLastLagMs() {
+        return lastLagMs;
+    }
+}
@@ -0,0 +1,35 @@
+package ca.buildsystem.reports.dto;
+
+import ca.buildsystem.reports.model.ReportType;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.validation.constraints.AssertTrue;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * DTO for bundle download requests.
+ * Selects reports either by id or by the search filter of the report search endpoint,
+ * optionally narrowed to the children of a burst generation.
+ */
+@Data
+public class ReportBundleRequestDTO {
+    private List<UUID> reportIds;
+    private UUID parentReportId;
+    private ReportType type;
+    private UUID clientId;
+    private UUID projectId;
+    private LocalDateTime startDate;
+    private LocalDateTime endDate;
+
+    @JsonIgnore
+    @AssertTrue(message = "Either report ids or at least one filter criterion is required, not both")
+    public boolean isSelectionValid() {
+        boolean byIds = reportIds != null && !reportIds.isEmpty();
+        boolean byFilter = parentReportId != null || type != null || clientId != null || projectId != null
+                || startDate != null || endDate != null;
+        return byIds != byFilter;
+    }
+}
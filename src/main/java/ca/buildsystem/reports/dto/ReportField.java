@@ -0,0 +1,91 @@
+package ca.buildsystem.reports.dto;
+
+import ca.buildsystem.reports.exception.UnknownFieldException;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Fields of {@link ReportResponseDTO} that a sparse fieldset can select, by JSON property name.
+ */
+public enum ReportField {
+    ID("id"),
+    NAME("name"),
+    DESCRIPTION("description"),
+    TYPE("type"),
+    FORMAT("format"),
+    START_DATE("startDate"),
+    END_DATE("endDate"),
+    FILE_PATH("filePath"),
+    FILE_SIZE("fileSize"),
+    STORED_SIZE("storedSize"),
+    STORAGE_TIER("storageTier"),
+    SCHEDULED("scheduled"),
+    SCHEDULE_CRON("scheduleCron"),
+    LAST_GENERATED("lastGenerated"),
+    NEXT_GENERATION("nextGeneration"),
+    TOTAL_AMOUNT("totalAmount"),
+    ROW_COUNT("rowCount"),
+    CURRENCY_CODE("currencyCode"),
+    SUMMARY_GRANULARITY("summaryGranularity"),
+    SORT_KEY("sortKey"),
+    BURST_KEY("burstKey"),
+    PARENT_REPORT_ID("parentReportId"),
+    TEMPLATE_ID("templateId"),
+    TEMPLATE_NAME("templateName"),
+    PROJECT_ID("projectId"),
+    CLIENT_ID("clientId"),
+    PUBLIC("public"),
+    STATUS("status"),
+    PARAMETERS("parameters"),
+    CREATED_AT("createdAt"),
+    CREATED_BY("createdBy"),
+    UPDATED_AT("updatedAt"),
+    UPDATED_BY("updatedBy");
+
+    private static final Map<String, ReportField> BY_NAME = Arrays.stream(values())
+            .collect(Collectors.toUnmodifiableMap(ReportField::getName, Function.identity()));
+
+    private final String name;
+
+    ReportField(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Get the JSON property name of the field.
+     *
+     * @return The property name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Parse a comma-separated sparse fieldset. The ID is always selected.
+     *
+     * @param fields The property names, such as {@code id,name,status}
+     * @return The selected fields
+     * @throws UnknownFieldException if a name is not a report field
+     */
+    public static Set<ReportField> parse(String fields) {
+        Set<ReportField> selected = EnumSet.of(ID);
+        for (String name : fields.split(",")) {
+            String trimmed = name.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            ReportField field = BY_NAME.get(trimmed);
+            if (field == null) {
+                throw new UnknownFieldException(trimmed);
+            }
+            selected.add(field);
+        }
+        return Collections.unmodifiableSet(selected);
+    }
+}
@@ -1,7 +1,10 @@
 package ca.buildsystem.reports.dto;
 
+import ca.buildsystem.reports.model.ReportBurstKey;
 import ca.buildsystem.reports.model.ReportFormat;
+import ca.buildsystem.reports.model.ReportSortKey;
 import ca.buildsystem.reports.model.ReportType;
+import ca.buildsystem.reports.model.RollupGranularity;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import lombok.Data;
@@ -37,5 +40,11 @@ public class ReportGenerationDTO {
     
     private UUID clientId;
     
+    private RollupGranularity summaryGranularity;
+    
+    private ReportSortKey sortKey;
+    
+    private ReportBurstKey burstKey;
+    
     private List<ReportParameterDTO> parameters;
 }
@@ -1,7 +1,11 @@
 package ca.buildsystem.reports.dto;
 
+import ca.buildsystem.reports.model.ReportBurstKey;
 import ca.buildsystem.reports.model.ReportFormat;
+import ca.buildsystem.reports.model.ReportSortKey;
 import ca.buildsystem.reports.model.ReportType;
+import ca.buildsystem.reports.model.RollupGranularity;
+import ca.buildsystem.reports.model.StorageTier;
 import lombok.Data;
 
 import java.math.BigDecimal;
@@ -23,12 +27,19 @@ public class ReportResponseDTO {
     private LocalDateTime endDate;
     private String filePath;
     private Long fileSize;
+    private Long storedSize;
+    private StorageTier storageTier;
     private boolean scheduled;
     private String scheduleCron;
     private LocalDateTime lastGenerated;
     private LocalDateTime nextGeneration;
     private BigDecimal totalAmount;
+    private Long rowCount;
     private String currencyCode;
+    private RollupGranularity summaryGranularity;
+    private ReportSortKey sortKey;
+    private ReportBurstKey burstKey;
+    private UUID parentReportId;
     private UUID templateId;
     private String templateName;
     private UUID projectId;
@@ -0,0 +1,16 @@
+package ca.buildsystem.reports.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Exception thrown when a bundle download selects more reports than allowed.
+ * Results in a 400 Bad Request HTTP response.
+ */
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class BundleTooLargeException extends RuntimeException {
+
+    public BundleTooLargeException(int maxReports) {
+        super(String.format("The bundle selects more than %d reports; narrow the filter", maxReports));
+    }
+}
@@ -0,0 +1,16 @@
+package ca.buildsystem.reports.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Exception thrown when a report is already being generated, on this node or another one.
+ * Results in a 409 Conflict HTTP response.
+ */
+@ResponseStatus(HttpStatus.CONFLICT)
+public class GenerationInProgressException extends RuntimeException {
+
+    public GenerationInProgressException(String message) {
+        super(message);
+    }
+}
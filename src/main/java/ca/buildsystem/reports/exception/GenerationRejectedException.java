@@ -0,0 +1,16 @@
+package ca.buildsystem.reports.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Exception thrown when the generation executor does not accept new work.
+ * Results in a 503 Service Unavailable HTTP response.
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class GenerationRejectedException extends RuntimeException {
+
+    public GenerationRejectedException(String message) {
+        super(message);
+    }
+}
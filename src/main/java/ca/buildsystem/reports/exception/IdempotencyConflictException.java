@@ -0,0 +1,17 @@
+package ca.buildsystem.reports.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Exception thrown when an Idempotency-Key cannot be honoured, either because it was used
+ * with a different request or because the original request is still in progress.
+ * Results in a 409 Conflict HTTP response.
+ */
+@ResponseStatus(HttpStatus.CONFLICT)
+public class IdempotencyConflictException extends RuntimeException {
+
+    public IdempotencyConflictException(String message) {
+        super(message);
+    }
+}
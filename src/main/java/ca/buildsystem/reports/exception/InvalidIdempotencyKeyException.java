@@ -0,0 +1,16 @@
+package ca.buildsystem.reports.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Exception thrown when an Idempotency-Key header is blank or too long.
+ * Results in a 400 Bad Request HTTP response.
+ */
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class InvalidIdempotencyKeyException extends RuntimeException {
+
+    public InvalidIdempotencyKeyException(int maxLength) {
+        super(String.format("Idempotency-Key must be between 1 and %d characters", maxLength));
+    }
+}
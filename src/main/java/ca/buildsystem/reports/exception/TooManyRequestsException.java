@@ -0,0 +1,18 @@
+package ca.buildsystem.reports.exception;
+
+import lombok.Getter;
+
+/**
+ * Exception thrown when a request is refused because capacity is exhausted.
+ * Results in a 429 Too Many Requests HTTP response carrying a Retry-After header.
+ */
+@Getter
+public class TooManyRequestsException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public TooManyRequestsException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
@@ -0,0 +1,16 @@
+package ca.buildsystem.reports.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Exception thrown when a sparse fieldset names a field the resource does not have.
+ * Results in a 400 Bad Request HTTP response.
+ */
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class UnknownFieldException extends RuntimeException {
+
+    public UnknownFieldException(String field) {
+        super(String.format("Unknown field '%s'", field));
+    }
+}
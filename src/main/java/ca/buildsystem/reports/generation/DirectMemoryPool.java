@@ -0,0 +1,63 @@
+package ca.buildsystem.reports.generation;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Direct memory shared by the ledger buffers of every running generation.
+ * A buffer takes a chunk's worth from the pool before allocating the chunk and returns all it
+ * took when it is closed, so concurrent generations together stay within one limit; a buffer
+ * that finds the pool exhausted spills its next chunk instead.
+ */
+public final class DirectMemoryPool {
+
+    private final long limitBytes;
+    private final AtomicLong usedBytes = new AtomicLong();
+
+    /**
+     * @param limitBytes The direct memory all buffers may hold together
+     */
+    public DirectMemoryPool(long limitBytes) {
+        this.limitBytes = limitBytes;
+    }
+
+    /**
+     * Take memory from the pool if enough is left.
+     *
+     * @param bytes The number of bytes
+     * @return True if the memory was taken
+     */
+    public boolean tryAcquire(long bytes) {
+        while (true) {
+            long used = usedBytes.get();
+            if (bytes > limitBytes - used) {
+                return false;
+            }
+            if (usedBytes.compareAndSet(used, used + bytes)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Return memory to the pool.
+     *
+     * @param bytes The number of bytes taken before
+     */
+    public void release(long bytes) {
+        usedBytes.addAndGet(-bytes);
+    }
+
+    /**
+     * @return The bytes currently held by buffers
+     */
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    /**
+     * @return The bytes all buffers may hold together
+     */
+    public long getLimitBytes() {
+        return limitBytes;
+    }
+}
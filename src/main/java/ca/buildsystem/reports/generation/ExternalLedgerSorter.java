@@ -0,0 +1,185 @@
+package ca.buildsystem.reports.generation;
+
+import ca.buildsystem.reports.model.ReportSortKey;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * External merge sort of ledger rows.
+ * Rows are cut into runs of a bounded number of rows; each run is sorted on the heap and
+ * written to a temporary file, and the runs are then combined with a k-way merge. Only one
+ * run, plus one row per merged file, is on the heap at any time. When there are more runs
+ * than the merge fan-in, runs are merged in several passes.
+ */
+@Slf4j
+public final class ExternalLedgerSorter {
+
+    /**
+     * Approximate heap taken by one row of a run: the row object, its date, amount and IDs.
+     */
+    public static final int HEAP_BYTES_PER_ROW = 256;
+
+    private final Path spillDirectory;
+    private final int runRows;
+    private final int mergeFanIn;
+
+    /**
+     * Create a sorter.
+     *
+     * @param spillDirectory Directory in which run files are created
+     * @param runRows Maximum number of rows sorted on the heap at once
+     * @param mergeFanIn Maximum number of runs merged in one pass
+     */
+    public ExternalLedgerSorter(Path spillDirectory, int runRows, int mergeFanIn) {
+        if (runRows < 1 || mergeFanIn < 2) {
+            throw new IllegalArgumentException("Run size must be positive and merge fan-in at least 2");
+        }
+        this.spillDirectory = spillDirectory;
+        this.runRows = runRows;
+        this.mergeFanIn = mergeFanIn;
+    }
+
+    /**
+     * Get the row order of a sort key.
+     * Rows are ordered by the key with missing keys last, then by date.
+     *
+     * @param sortKey The sort key
+     * @return The row comparator
+     */
+    public static Comparator<LedgerRow> order(ReportSortKey sortKey) {
+        Comparator<LedgerRow> byDate = Comparator.comparing(LedgerRow::getDate,
+                Comparator.nullsLast(Comparator.naturalOrder()));
+        return switch (sortKey) {
+            case DATE -> byDate;
+            case ACCOUNT -> byId(LedgerRow::getAccountId).thenComparing(byDate);
+            case PROJECT -> byId(LedgerRow::getProjectId).thenComparing(byDate);
+            case CLIENT -> byId(LedgerRow::getClientId).thenComparing(byDate);
+        };
+    }
+
+    /**
+     * Sort the rows of a buffer in place. The sort is stable.
+     * Buffers that are already in order are left untouched.
+     *
+     * @param ledger The buffer to sort
+     * @param order The row order
+     */
+    public void sort(LedgerColumnBuffer ledger, Comparator<LedgerRow> order) {
+        long size = ledger.size();
+        if (isSorted(ledger, order)) {
+            return;
+        }
+        if (size <= runRows) {
+            List<LedgerRow> rows = new ArrayList<>((int) size);
+            ledger.forEach(rows::add);
+            rows.sort(order);
+            ledger.clear();
+            rows.forEach(ledger::append);
+            return;
+        }
+
+        try (SpillRuns runs = new SpillRuns(spillDirectory)) {
+            List<SpillRuns.Run> sorted = new ArrayList<>();
+            List<LedgerRow> batch = new ArrayList<>(runRows);
+            for (long i = 0; i < size; i++) {
+                batch.add(ledger.row(i));
+                if (batch.size() == runRows || i == size - 1) {
+                    batch.sort(order);
+                    SpillRuns.Run run = runs.newRun();
+                    try (run) {
+                        batch.forEach(run);
+                    }
+                    sorted.add(run);
+                    batch.clear();
+                }
+            }
+            log.debug("Sorting {} ledger rows through {} runs", size, sorted.size());
+
+            // The buffer's chunks are reused for the merged rows
+            ledger.clear();
+            merge(runs, sorted, order, ledger::append);
+        }
+    }
+
+    /**
+     * Merge sorted runs into a single ordered stream. Runs holding equal rows are merged in
+     * list order, so merging keeps the sort stable.
+     *
+     * @param runs The run set receiving intermediate runs
+     * @param sorted The sorted runs, all closed
+     * @param order The row order of the runs
+     * @param sink The consumer receiving the merged rows
+     */
+    void merge(SpillRuns runs, List<SpillRuns.Run> sorted, Comparator<LedgerRow> order, Consumer<LedgerRow> sink) {
+        List<SpillRuns.Run> pending = sorted;
+        while (pending.size() > mergeFanIn) {
+            List<SpillRuns.Run> next = new ArrayList<>();
+            for (int i = 0; i < pending.size(); i += mergeFanIn) {
+                List<SpillRuns.Run> group = pending.subList(i, Math.min(i + mergeFanIn, pending.size()));
+                if (group.size() == 1) {
+                    next.add(group.get(0));
+                    continue;
+                }
+                SpillRuns.Run merged = runs.newRun();
+                try (merged) {
+                    mergeRuns(group, order, merged);
+                }
+                group.forEach(SpillRuns.Run::delete);
+                next.add(merged);
+            }
+            pending = next;
+        }
+        mergeRuns(pending, order, sink);
+    }
+
+    private static void mergeRuns(List<SpillRuns.Run> runs, Comparator<LedgerRow> order, Consumer<LedgerRow> sink) {
+        List<SpillRuns.Cursor> cursors = new ArrayList<>(runs.size());
+        try {
+            // Heap entries are run indexes, ordered by their current row and then by run
+            PriorityQueue<Integer> heap = new PriorityQueue<>(Math.max(1, runs.size()),
+                    Comparator.<Integer, LedgerRow>comparing(run -> cursors.get(run).current(), order)
+                            .thenComparing(Comparator.naturalOrder()));
+            for (int i = 0; i < runs.size(); i++) {
+                SpillRuns.Cursor cursor = runs.get(i).open();
+                cursors.add(cursor);
+                if (cursor.advance()) {
+                    heap.add(i);
+                }
+            }
+            while (!heap.isEmpty()) {
+                int run = heap.poll();
+                SpillRuns.Cursor cursor = cursors.get(run);
+                sink.accept(cursor.current());
+                if (cursor.advance()) {
+                    heap.add(run);
+                }
+            }
+        } finally {
+            cursors.forEach(SpillRuns.Cursor::close);
+        }
+    }
+
+    private static boolean isSorted(LedgerColumnBuffer ledger, Comparator<LedgerRow> order) {
+        LedgerRow previous = null;
+        for (long i = 0; i < ledger.size(); i++) {
+            LedgerRow row = ledger.row(i);
+            if (previous != null && order.compare(previous, row) > 0) {
+                return false;
+            }
+            previous = row;
+        }
+        return true;
+    }
+
+    private static Comparator<LedgerRow> byId(Function<LedgerRow, UUID> id) {
+        return Comparator.comparing(id, Comparator.nullsLast(Comparator.naturalOrder()));
+    }
+}
@@ -0,0 +1,61 @@
+package ca.buildsystem.reports.generation;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.UUID;
+
+/**
+ * Handle through which the generation executor steers a running generation.
+ * The pipeline polls {@link #isCheckpointRequested()} between rows and, when set, persists its
+ * progress and stops so that another node can resume the generation.
+ */
+@Getter
+public class GenerationControl {
+
+    @Getter(lombok.AccessLevel.NONE)
+    private final long startedNanos = System.nanoTime();
+
+    @Setter
+    private volatile UUID reportId;
+
+    private volatile boolean checkpointRequested;
+
+    /**
+     * Ask the generation to checkpoint and stop at the next opportunity.
+     */
+    public void requestCheckpoint() {
+        checkpointRequested = true;
+    }
+
+    /**
+     * Get the time elapsed since the generation started.
+     *
+     * @return The elapsed time in milliseconds
+     */
+    public long elapsedMillis() {
+        return (System.nanoTime() - startedNanos) / 1_000_000;
+    }
+
+    /**
+     * Throw if a checkpoint was requested; called by the pipeline between rows.
+     *
+     * @throws CheckpointRequestedException if the generation should checkpoint and stop
+     */
+    public void checkpointIfRequested() {
+        if (checkpointRequested) {
+            throw new CheckpointRequestedException();
+        }
+    }
+
+    /**
+     * Unchecked signal unwinding a generation out of a ledger source or renderer callback
+     * when a checkpoint is requested.
+     */
+    public static class CheckpointRequestedException extends RuntimeException {
+
+        public CheckpointRequestedException() {
+            super("Checkpoint requested", null, false, false);
+        }
+    }
+}
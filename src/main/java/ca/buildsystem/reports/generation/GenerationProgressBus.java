@@ -0,0 +1,124 @@
+package ca.buildsystem.reports.generation;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Lightweight in-memory event bus carrying generation progress from the pipeline to subscribers.
+ * The latest event of every running generation is retained so late subscribers start from the
+ * current state; it is dropped once a terminal event has been delivered. The bus only carries the
+ * events of this node; {@code GenerationProgressPoller} publishes the outcome of generations that
+ * ended elsewhere.
+ */
+@Component
+@Slf4j
+public class GenerationProgressBus {
+
+    private static final String DOWNLOAD_URL = "/api/reports/generate/%s/download";
+
+    private final Map<UUID, List<Consumer<GenerationProgressEvent>>> subscribers = new ConcurrentHashMap<>();
+    private final Map<UUID, GenerationProgressEvent> latest = new ConcurrentHashMap<>();
+
+    /**
+     * Publish a stage transition or progress update of a generation.
+     *
+     * @param reportId The report ID
+     * @param stage The current stage
+     * @param rowCount The number of rows processed so far
+     * @param percent The estimated completion percentage
+     */
+    public void publish(UUID reportId, GenerationStage stage, long rowCount, int percent) {
+        publish(GenerationProgressEvent.builder()
+                .reportId(reportId)
+                .stage(stage)
+                .rowCount(rowCount)
+                .percent(percent)
+                .downloadUrl(stage == GenerationStage.COMPLETED ? String.format(DOWNLOAD_URL, reportId) : null)
+                .timestamp(LocalDateTime.now())
+                .build());
+    }
+
+    /**
+     * Publish the failure of a generation.
+     *
+     * @param reportId The report ID
+     * @param message The error message
+     */
+    public void publishFailure(UUID reportId, String message) {
+        publish(GenerationProgressEvent.builder()
+                .reportId(reportId)
+                .stage(GenerationStage.FAILED)
+                .message(message)
+                .timestamp(LocalDateTime.now())
+                .build());
+    }
+
+    /**
+     * Publish an event to every subscriber of its report.
+     *
+     * @param event The progress event
+     */
+    public void publish(GenerationProgressEvent event) {
+        if (event.getStage().isTerminal()) {
+            latest.remove(event.getReportId());
+        } else {
+            latest.put(event.getReportId(), event);
+        }
+        List<Consumer<GenerationProgressEvent>> listeners = subscribers.get(event.getReportId());
+        if (listeners == null) {
+            return;
+        }
+        for (Consumer<GenerationProgressEvent> listener : listeners) {
+            try {
+                listener.accept(event);
+            } catch (Exception e) {
+                log.debug("Progress listener for report {} failed", event.getReportId(), e);
+                listeners.remove(listener);
+            }
+        }
+    }
+
+    /**
+     * Subscribe to the progress of a report.
+     *
+     * @param reportId The report ID
+     * @param listener The listener receiving each event
+     * @return A handle removing the subscription when run
+     */
+    public Runnable subscribe(UUID reportId, Consumer<GenerationProgressEvent> listener) {
+        subscribers.computeIfAbsent(reportId, id -> new CopyOnWriteArrayList<>()).add(listener);
+        return () -> subscribers.computeIfPresent(reportId, (id, listeners) -> {
+            listeners.remove(listener);
+            return listeners.isEmpty() ? null : listeners;
+        });
+    }
+
+    /**
+     * Get the reports with at least one subscriber.
+     *
+     * @return A snapshot of the subscribed report IDs
+     */
+    public Set<UUID> subscribedReports() {
+        return Set.copyOf(subscribers.keySet());
+    }
+
+    /**
+     * Get the latest event of a running generation.
+     *
+     * @param reportId The report ID
+     * @return An optional containing the latest event if the generation is in progress
+     */
+    public Optional<GenerationProgressEvent> latest(UUID reportId) {
+        return Optional.ofNullable(latest.get(reportId));
+    }
+}
@@ -0,0 +1,24 @@
+package ca.buildsystem.reports.generation;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Progress notification published while a report is being generated.
+ */
+@Value
+@Builder
+@AllArgsConstructor
+public class GenerationProgressEvent {
+    UUID reportId;
+    GenerationStage stage;
+    long rowCount;
+    int percent;
+    String downloadUrl;
+    String message;
+    LocalDateTime timestamp;
+}
@@ -0,0 +1,21 @@
+package ca.buildsystem.reports.generation;
+
+/**
+ * Enumeration of the stages a report generation goes through.
+ * COMPLETED and FAILED are terminal.
+ */
+public enum GenerationStage {
+    QUEUED,       // Accepted, waiting for a worker
+    FETCHING,     // Reading ledger rows from sources, rollups or a previous state
+    AGGREGATING,  // Sorting the loaded rows and computing totals
+    RENDERING,    // Writing the output file
+    COMPLETED,    // Output file available for download
+    FAILED;       // Generation ended with an error
+
+    /**
+     * @return True if no further events follow this stage
+     */
+    public boolean isTerminal() {
+        return this == COMPLETED || this == FAILED;
+    }
+}
@@ -0,0 +1,138 @@
+package ca.buildsystem.reports.generation;
+
+import ca.buildsystem.reports.model.RollupGranularity;
+import lombok.Value;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * In-memory aggregation of ledger amounts per period, project, client and currency.
+ * Buckets are kept ordered by period so summary rows come out in date order.
+ */
+public final class LedgerAggregator {
+
+    private static final Comparator<BucketKey> BUCKET_ORDER = Comparator
+            .comparing(BucketKey::getPeriodStart)
+            .thenComparing(key -> Objects.toString(key.getProjectId(), ""))
+            .thenComparing(key -> Objects.toString(key.getClientId(), ""))
+            .thenComparing(key -> Objects.toString(key.getCurrencyCode(), ""));
+
+    /**
+     * Order of the summary rows emitted by {@link #drainTo(Consumer)}.
+     */
+    public static final Comparator<LedgerRow> ROW_ORDER = Comparator
+            .comparing(LedgerRow::getDate)
+            .thenComparing(row -> Objects.toString(row.getProjectId(), ""))
+            .thenComparing(row -> Objects.toString(row.getClientId(), ""))
+            .thenComparing(row -> Objects.toString(row.getCurrencyCode(), ""));
+
+    private final RollupGranularity granularity;
+    private final Map<BucketKey, Totals> buckets = new TreeMap<>(BUCKET_ORDER);
+
+    /**
+     * Visitor receiving each aggregated bucket.
+     */
+    @FunctionalInterface
+    public interface BucketVisitor {
+        void visit(LocalDate periodStart, UUID projectId, UUID clientId, String currencyCode,
+                   BigDecimal total, long count);
+    }
+
+    /**
+     * Create an aggregator.
+     *
+     * @param granularity The period length of the buckets
+     */
+    public LedgerAggregator(RollupGranularity granularity) {
+        this.granularity = granularity;
+    }
+
+    /**
+     * Get the first day of the period containing a date.
+     *
+     * @param date The date
+     * @param granularity The period length
+     * @return The first day of the period
+     */
+    public static LocalDate periodStart(LocalDate date, RollupGranularity granularity) {
+        return granularity == RollupGranularity.MONTH ? date.withDayOfMonth(1) : date;
+    }
+
+    /**
+     * Add a ledger row. Rows without a date are ignored.
+     *
+     * @param row The ledger row
+     */
+    public void add(LedgerRow row) {
+        if (row.getDate() != null) {
+            add(row.getDate(), row.getProjectId(), row.getClientId(), row.getCurrencyCode(), row.getAmount(), 1);
+        }
+    }
+
+    /**
+     * Add an amount to the bucket of the period containing a date.
+     *
+     * @param date The date of the amount
+     * @param projectId The project ID (may be null)
+     * @param clientId The client ID (may be null)
+     * @param currencyCode The currency code (may be null)
+     * @param amount The amount to add (may be null)
+     * @param count The number of ledger entries the amount represents
+     */
+    public void add(LocalDate date, UUID projectId, UUID clientId, String currencyCode,
+                    BigDecimal amount, long count) {
+        BucketKey key = new BucketKey(periodStart(date, granularity), projectId, clientId, currencyCode);
+        Totals totals = buckets.computeIfAbsent(key, k -> new Totals());
+        if (amount != null) {
+            totals.total = totals.total.add(amount);
+        }
+        totals.count += count;
+    }
+
+    /**
+     * @return The number of buckets
+     */
+    public int size() {
+        return buckets.size();
+    }
+
+    /**
+     * Visit every bucket in period order.
+     *
+     * @param visitor The bucket visitor
+     */
+    public void forEach(BucketVisitor visitor) {
+        buckets.forEach((key, totals) -> visitor.visit(key.getPeriodStart(), key.getProjectId(), key.getClientId(),
+                key.getCurrencyCode(), totals.total, totals.count));
+    }
+
+    /**
+     * Emit one summary row per bucket in period order.
+     *
+     * @param sink The consumer receiving each summary row
+     */
+    public void drainTo(Consumer<LedgerRow> sink) {
+        forEach((periodStart, projectId, clientId, currencyCode, total, count) ->
+                sink.accept(new LedgerRow(periodStart, total, currencyCode, null, projectId, clientId)));
+    }
+
+    @Value
+    private static class BucketKey {
+        LocalDate periodStart;
+        UUID projectId;
+        UUID clientId;
+        String currencyCode;
+    }
+
+    private static final class Totals {
+        private BigDecimal total = BigDecimal.ZERO;
+        private long count;
+    }
+}
@@ -0,0 +1,115 @@
+package ca.buildsystem.reports.generation;
+
+import ca.buildsystem.reports.model.RollupGranularity;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Factory for ledger buffers and the operators that spill ledger rows to disk.
+ * Applies the configured run sizes and spill location to every new buffer, sorter and
+ * aggregator. Sorters and aggregators are sized to the heap granted to them,
+ * between a small floor and the configured run size or bucket limit.
+ */
+@Component
+public class LedgerBufferFactory {
+
+    private static final int MIN_SORT_RUN_ROWS = 10_000;
+    private static final int MIN_AGGREGATE_BUCKETS = 10_000;
+
+    @Value("${app.report.storage-path:/tmp/reports}")
+    private String reportStoragePath;
+
+    @Value("${app.report.ledger-buffer.sort-run-rows:200000}")
+    private int sortRunRows;
+
+    @Value("${app.report.ledger-buffer.merge-fan-in:64}")
+    private int mergeFanIn;
+
+    @Value("${app.report.ledger-buffer.aggregate-max-buckets:500000}")
+    private int aggregateMaxBuckets;
+
+    @Value("${app.report.ledger-buffer.aggregate-partitions:32}")
+    private int aggregatePartitions;
+
+    /**
+     * Create an empty ledger buffer.
+     *
+     * @param directMemory The pool shared by all ledger buffers; rows beyond it spill to disk
+     * @return A new buffer, to be closed by the caller
+     */
+    public LedgerColumnBuffer create(DirectMemoryPool directMemory) {
+        return new LedgerColumnBuffer(directMemory, spillDirectory().resolve(".spill"));
+    }
+
+    /**
+     * Get the heap a sorter needs for its smallest runs.
+     *
+     * @return The heap in bytes
+     */
+    public long minSortHeapBytes() {
+        return (long) Math.min(MIN_SORT_RUN_ROWS, sortRunRows) * ExternalLedgerSorter.HEAP_BYTES_PER_ROW;
+    }
+
+    /**
+     * Get the heap a sorter uses for runs of the configured size.
+     *
+     * @return The heap in bytes
+     */
+    public long sortHeapBytes() {
+        return (long) sortRunRows * ExternalLedgerSorter.HEAP_BYTES_PER_ROW;
+    }
+
+    /**
+     * Create a sorter writing its runs under the storage path.
+     *
+     * @param heapBytes The heap granted to the sorter's runs
+     * @return A new sorter
+     */
+    public ExternalLedgerSorter createSorter(long heapBytes) {
+        int runRows = (int) Math.max(Math.min(MIN_SORT_RUN_ROWS, sortRunRows),
+                Math.min(sortRunRows, heapBytes / ExternalLedgerSorter.HEAP_BYTES_PER_ROW));
+        return new ExternalLedgerSorter(spillDirectory().resolve(".sort"), runRows, mergeFanIn);
+    }
+
+    /**
+     * Get the heap an aggregator needs for its smallest bucket limit.
+     *
+     * @return The heap in bytes
+     */
+    public long minAggregateHeapBytes() {
+        return (long) Math.min(MIN_AGGREGATE_BUCKETS, aggregateMaxBuckets)
+                * PartitionedLedgerAggregator.HEAP_BYTES_PER_BUCKET;
+    }
+
+    /**
+     * Get the heap an aggregator uses with the configured bucket limit.
+     *
+     * @return The heap in bytes
+     */
+    public long aggregateHeapBytes() {
+        return (long) aggregateMaxBuckets * PartitionedLedgerAggregator.HEAP_BYTES_PER_BUCKET;
+    }
+
+    /**
+     * Create a summary aggregator partitioning its buckets to disk once they outgrow the heap.
+     *
+     * @param granularity The period length of the buckets
+     * @param heapBytes The heap granted to the aggregator's buckets
+     * @return A new aggregator, to be closed by the caller
+     */
+    public PartitionedLedgerAggregator createAggregator(RollupGranularity granularity, long heapBytes) {
+        int maxBuckets = (int) Math.max(Math.min(MIN_AGGREGATE_BUCKETS, aggregateMaxBuckets),
+                Math.min(aggregateMaxBuckets, heapBytes / PartitionedLedgerAggregator.HEAP_BYTES_PER_BUCKET));
+        // Merging the partitions holds one row per partition, not a run
+        return new PartitionedLedgerAggregator(granularity, maxBuckets, aggregatePartitions,
+                new ExternalLedgerSorter(spillDirectory().resolve(".sort"), sortRunRows, mergeFanIn),
+                spillDirectory().resolve(".sort"));
+    }
+
+    private Path spillDirectory() {
+        return Paths.get(reportStoragePath);
+    }
+}
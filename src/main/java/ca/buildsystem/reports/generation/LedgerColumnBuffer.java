@@ -0,0 +1,287 @@
+package ca.buildsystem.reports.generation;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Off-heap, column-oriented buffer of ledger rows.
+ * Rows are stored in fixed-size chunks; inside a chunk every column (date, amount, account,
+ * project, client, currency) is a contiguous primitive array, so aggregations scan a single
+ * column without touching the others. Chunks are allocated as direct buffers while the
+ * {@link DirectMemoryPool} shared by all buffers has room, and otherwise memory-mapped from a
+ * spill file. Nothing but the chunk list lives on the Java heap.
+ */
+@Slf4j
+public final class LedgerColumnBuffer implements AutoCloseable {
+
+    /**
+     * Fixed scale used to store amounts as unscaled longs.
+     */
+    public static final int AMOUNT_SCALE = 4;
+
+    static final int ROWS_PER_CHUNK = 16_384;
+
+    private static final int DATE_OFFSET = 0;
+    private static final int AMOUNT_OFFSET = DATE_OFFSET + ROWS_PER_CHUNK * Integer.BYTES;
+    private static final int ACCOUNT_OFFSET = AMOUNT_OFFSET + ROWS_PER_CHUNK * Long.BYTES;
+    private static final int PROJECT_OFFSET = ACCOUNT_OFFSET + ROWS_PER_CHUNK * 2 * Long.BYTES;
+    private static final int CLIENT_OFFSET = PROJECT_OFFSET + ROWS_PER_CHUNK * 2 * Long.BYTES;
+    private static final int CURRENCY_OFFSET = CLIENT_OFFSET + ROWS_PER_CHUNK * 2 * Long.BYTES;
+    static final int CHUNK_BYTES = CURRENCY_OFFSET + ROWS_PER_CHUNK * Integer.BYTES;
+
+    /**
+     * Bytes of buffer memory taken by one row.
+     */
+    public static final int BYTES_PER_ROW = CHUNK_BYTES / ROWS_PER_CHUNK;
+
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    private final DirectMemoryPool directMemory;
+    private final Path spillDirectory;
+
+    private long directBytes;
+    private long size;
+    private Path spillFile;
+    private FileChannel spillChannel;
+    private long spillBytes;
+
+    /**
+     * Create a new buffer.
+     *
+     * @param directMemory The pool direct chunks are charged to; chunks beyond it spill
+     * @param spillDirectory Directory in which the memory-mapped spill file is created
+     */
+    public LedgerColumnBuffer(DirectMemoryPool directMemory, Path spillDirectory) {
+        this.directMemory = directMemory;
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * Append a row to the buffer.
+     *
+     * @param row The ledger row
+     */
+    public void append(LedgerRow row) {
+        int index = (int) (size % ROWS_PER_CHUNK);
+        int chunkIndex = (int) (size / ROWS_PER_CHUNK);
+        if (chunkIndex == chunks.size()) {
+            chunks.add(allocateChunk());
+        }
+        ByteBuffer chunk = chunks.get(chunkIndex);
+
+        chunk.putInt(DATE_OFFSET + index * Integer.BYTES,
+                row.getDate() != null ? (int) row.getDate().toEpochDay() : Integer.MIN_VALUE);
+        chunk.putLong(AMOUNT_OFFSET + index * Long.BYTES, toUnscaled(row.getAmount()));
+        putUuid(chunk, ACCOUNT_OFFSET, index, row.getAccountId());
+        putUuid(chunk, PROJECT_OFFSET, index, row.getProjectId());
+        putUuid(chunk, CLIENT_OFFSET, index, row.getClientId());
+        chunk.putInt(CURRENCY_OFFSET + index * Integer.BYTES, packCurrency(row.getCurrencyCode()));
+        size++;
+    }
+
+    /**
+     * Discard every row. Allocated chunks are kept and reused by the rows appended next.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * @return The number of rows in the buffer
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return True if part of the buffer has been spilled to a memory-mapped file
+     */
+    public boolean isSpilled() {
+        return spillChannel != null;
+    }
+
+    public LocalDate date(long row) {
+        int epochDay = chunk(row).getInt(DATE_OFFSET + index(row) * Integer.BYTES);
+        return epochDay == Integer.MIN_VALUE ? null : LocalDate.ofEpochDay(epochDay);
+    }
+
+    public long amountUnscaled(long row) {
+        return chunk(row).getLong(AMOUNT_OFFSET + index(row) * Long.BYTES);
+    }
+
+    public BigDecimal amount(long row) {
+        return BigDecimal.valueOf(amountUnscaled(row), AMOUNT_SCALE);
+    }
+
+    public UUID accountId(long row) {
+        return getUuid(chunk(row), ACCOUNT_OFFSET, index(row));
+    }
+
+    public UUID projectId(long row) {
+        return getUuid(chunk(row), PROJECT_OFFSET, index(row));
+    }
+
+    public UUID clientId(long row) {
+        return getUuid(chunk(row), CLIENT_OFFSET, index(row));
+    }
+
+    public String currencyCode(long row) {
+        return unpackCurrency(chunk(row).getInt(CURRENCY_OFFSET + index(row) * Integer.BYTES));
+    }
+
+    /**
+     * Materialize a row as an on-heap object.
+     *
+     * @param row The row index
+     * @return The ledger row
+     */
+    public LedgerRow row(long row) {
+        return new LedgerRow(date(row), amount(row), currencyCode(row),
+                accountId(row), projectId(row), clientId(row));
+    }
+
+    /**
+     * Visit every row in insertion order.
+     *
+     * @param consumer The consumer receiving each row
+     */
+    public void forEach(Consumer<LedgerRow> consumer) {
+        for (long i = 0; i < size; i++) {
+            consumer.accept(row(i));
+        }
+    }
+
+    /**
+     * Sum the amount column without materializing rows.
+     *
+     * @return The total of all amounts
+     */
+    public BigDecimal totalAmount() {
+        long total = 0;
+        int usedChunks = (int) ((size + ROWS_PER_CHUNK - 1) / ROWS_PER_CHUNK);
+        for (int c = 0; c < usedChunks; c++) {
+            ByteBuffer chunk = chunks.get(c);
+            int rows = c == usedChunks - 1 ? (int) (size - (long) c * ROWS_PER_CHUNK) : ROWS_PER_CHUNK;
+            for (int i = 0; i < rows; i++) {
+                total = Math.addExact(total, chunk.getLong(AMOUNT_OFFSET + i * Long.BYTES));
+            }
+        }
+        return BigDecimal.valueOf(total, AMOUNT_SCALE);
+    }
+
+    /**
+     * Sum the amounts of a range of rows.
+     *
+     * @param from The index of the first row
+     * @param to The index after the last row
+     * @return The total of the amounts in the range
+     */
+    public BigDecimal totalAmount(long from, long to) {
+        long total = 0;
+        for (long i = from; i < to; i++) {
+            total = Math.addExact(total, amountUnscaled(i));
+        }
+        return BigDecimal.valueOf(total, AMOUNT_SCALE);
+    }
+
+    /**
+     * Release the spill file and return the direct chunks to the pool. Their memory itself is
+     * freed when the buffer becomes unreachable.
+     */
+    @Override
+    public void close() {
+        chunks.clear();
+        directMemory.release(directBytes);
+        directBytes = 0;
+        if (spillChannel != null) {
+            try {
+                spillChannel.close();
+                Files.deleteIfExists(spillFile);
+            } catch (IOException e) {
+                log.warn("Could not delete ledger spill file {}", spillFile, e);
+            }
+            spillChannel = null;
+        }
+    }
+
+    private ByteBuffer allocateChunk() {
+        if (directMemory.tryAcquire(CHUNK_BYTES)) {
+            directBytes += CHUNK_BYTES;
+            return ByteBuffer.allocateDirect(CHUNK_BYTES);
+        }
+        try {
+            if (spillChannel == null) {
+                Files.createDirectories(spillDirectory);
+                spillFile = Files.createTempFile(spillDirectory, "ledger_", ".col");
+                spillChannel = FileChannel.open(spillFile,
+                        StandardOpenOption.READ, StandardOpenOption.WRITE);
+                log.info("Ledger buffers hold {} of {} bytes of direct memory, spilling to {}",
+                        directMemory.getUsedBytes(), directMemory.getLimitBytes(), spillFile);
+            }
+            ByteBuffer chunk = spillChannel.map(FileChannel.MapMode.READ_WRITE, spillBytes, CHUNK_BYTES);
+            spillBytes += CHUNK_BYTES;
+            return chunk;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not spill ledger buffer to " + spillDirectory, e);
+        }
+    }
+
+    private ByteBuffer chunk(long row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " out of bounds for size " + size);
+        }
+        return chunks.get((int) (row / ROWS_PER_CHUNK));
+    }
+
+    private static int index(long row) {
+        return (int) (row % ROWS_PER_CHUNK);
+    }
+
+    private static long toUnscaled(BigDecimal amount) {
+        if (amount == null) {
+            return 0L;
+        }
+        return amount.setScale(AMOUNT_SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    private static void putUuid(ByteBuffer chunk, int columnOffset, int index, UUID value) {
+        int offset = columnOffset + index * 2 * Long.BYTES;
+        chunk.putLong(offset, value != null ? value.getMostSignificantBits() : 0L);
+        chunk.putLong(offset + Long.BYTES, value != null ? value.getLeastSignificantBits() : 0L);
+    }
+
+    private static UUID getUuid(ByteBuffer chunk, int columnOffset, int index) {
+        int offset = columnOffset + index * 2 * Long.BYTES;
+        long most = chunk.getLong(offset);
+        long least = chunk.getLong(offset + Long.BYTES);
+        return most == 0L && least == 0L ? null : new UUID(most, least);
+    }
+
+    static int packCurrency(String currencyCode) {
+        if (currencyCode == null || currencyCode.length() != 3) {
+            return 0;
+        }
+        return (currencyCode.charAt(0) << 16) | (currencyCode.charAt(1) << 8) | currencyCode.charAt(2);
+    }
+
+    static String unpackCurrency(int packed) {
+        if (packed == 0) {
+            return null;
+        }
+        return new String(new char[] {
+                (char) ((packed >> 16) & 0xFF), (char) ((packed >> 8) & 0xFF), (char) (packed & 0xFF)});
+    }
+}
@@ -0,0 +1,57 @@
+package ca.buildsystem.reports.generation;
+
+import ca.buildsystem.reports.model.Report;
+import ca.buildsystem.reports.model.ReportType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Criteria for fetching ledger rows from a {@link LedgerSource}.
+ * Dates are inclusive; a null project or client matches every project or client.
+ * When {@code changedSince} is set, only rows posted after that instant are returned.
+ */
+@Value
+@Builder(toBuilder = true)
+@AllArgsConstructor
+public class LedgerQuery {
+    ReportType type;
+    LocalDate fromDate;
+    LocalDate toDate;
+    UUID projectId;
+    UUID clientId;
+    LocalDateTime changedSince;
+
+    /**
+     * Build the query matching a report's date range, project and client.
+     *
+     * @param report The report entity
+     * @return The ledger query for the report
+     */
+    public static LedgerQuery forReport(Report report) {
+        return LedgerQuery.builder()
+                .type(report.getType())
+                .fromDate(report.getStartDate() != null ? report.getStartDate().toLocalDate() : null)
+                .toDate(report.getEndDate() != null ? report.getEndDate().toLocalDate() : null)
+                .projectId(report.getProjectId())
+                .clientId(report.getClientId())
+                .build();
+    }
+
+    /**
+     * Build the query of a report that keeps aggregate state between generations.
+     * The state records the last day it covers, so reports without an end date run through
+     * today and the next generation extends the range from there.
+     *
+     * @param report The report entity
+     * @return The ledger query for the report, with an end date
+     */
+    public static LedgerQuery forAggregateState(Report report) {
+        LedgerQuery query = forReport(report);
+        return query.getToDate() != null ? query : query.toBuilder().toDate(LocalDate.now()).build();
+    }
+}
@@ -0,0 +1,25 @@
+package ca.buildsystem.reports.generation;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Value;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.UUID;
+
+/**
+ * A single ledger entry feeding report generation.
+ * Rows are produced by a {@link LedgerSource} and stored in a {@link LedgerColumnBuffer}.
+ */
+@Value
+@Builder
+@AllArgsConstructor
+public class LedgerRow {
+    LocalDate date;
+    BigDecimal amount;
+    String currencyCode;
+    UUID accountId;
+    UUID projectId;
+    UUID clientId;
+}
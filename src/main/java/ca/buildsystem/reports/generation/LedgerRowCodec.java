@@ -0,0 +1,125 @@
+package ca.buildsystem.reports.generation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Compact binary encoding of ledger rows.
+ * A row is an epoch day, an unscaled amount, a packed currency code and a presence byte
+ * followed only by the non-null account, project and client ids.
+ */
+public final class LedgerRowCodec {
+
+    private static final int NULL_DATE = Integer.MIN_VALUE;
+    private static final int HAS_ACCOUNT = 1;
+    private static final int HAS_PROJECT = 2;
+    private static final int HAS_CLIENT = 4;
+
+    private LedgerRowCodec() {
+    }
+
+    /**
+     * Write a row.
+     *
+     * @param out The output to write to
+     * @param row The ledger row
+     * @throws IOException if the row cannot be written
+     */
+    public static void write(DataOutput out, LedgerRow row) throws IOException {
+        out.writeInt(row.getDate() != null ? (int) row.getDate().toEpochDay() : NULL_DATE);
+        out.writeLong(row.getAmount() != null
+                ? row.getAmount().setScale(LedgerColumnBuffer.AMOUNT_SCALE, RoundingMode.HALF_UP)
+                        .unscaledValue().longValueExact()
+                : 0L);
+        out.writeInt(LedgerColumnBuffer.packCurrency(row.getCurrencyCode()));
+        int flags = (row.getAccountId() != null ? HAS_ACCOUNT : 0)
+                | (row.getProjectId() != null ? HAS_PROJECT : 0)
+                | (row.getClientId() != null ? HAS_CLIENT : 0);
+        out.writeByte(flags);
+        writeUuid(out, row.getAccountId());
+        writeUuid(out, row.getProjectId());
+        writeUuid(out, row.getClientId());
+    }
+
+    /**
+     * Read a row written by {@link #write(DataOutput, LedgerRow)}.
+     *
+     * @param in The input to read from
+     * @return The ledger row
+     * @throws IOException if the row cannot be read
+     */
+    public static LedgerRow read(DataInput in) throws IOException {
+        int epochDay = in.readInt();
+        long amount = in.readLong();
+        int currency = in.readInt();
+        int flags = in.readUnsignedByte();
+        UUID accountId = (flags & HAS_ACCOUNT) != 0 ? new UUID(in.readLong(), in.readLong()) : null;
+        UUID projectId = (flags & HAS_PROJECT) != 0 ? new UUID(in.readLong(), in.readLong()) : null;
+        UUID clientId = (flags & HAS_CLIENT) != 0 ? new UUID(in.readLong(), in.readLong()) : null;
+        return new LedgerRow(
+                epochDay == NULL_DATE ? null : LocalDate.ofEpochDay(epochDay),
+                BigDecimal.valueOf(amount, LedgerColumnBuffer.AMOUNT_SCALE),
+                LedgerColumnBuffer.unpackCurrency(currency),
+                accountId, projectId, clientId);
+    }
+
+    /**
+     * Write the first rows of a buffer to a snapshot file, replacing it atomically.
+     *
+     * @param path The snapshot file
+     * @param ledger The buffer to write
+     * @param rows The number of leading rows to write
+     * @throws IOException if the snapshot cannot be written
+     */
+    public static void writeSnapshot(Path path, LedgerColumnBuffer ledger, long rows) throws IOException {
+        Files.createDirectories(path.getParent());
+        Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tempPath)))) {
+            out.writeLong(rows);
+            for (long i = 0; i < rows; i++) {
+                write(out, ledger.row(i));
+            }
+        }
+        Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Read a snapshot file written by {@link #writeSnapshot(Path, LedgerColumnBuffer, long)}.
+     *
+     * @param path The snapshot file
+     * @param sink The consumer receiving each row
+     * @return The number of rows read
+     * @throws IOException if the snapshot cannot be read
+     */
+    public static long readSnapshot(Path path, Consumer<LedgerRow> sink) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(path)))) {
+            long rows = in.readLong();
+            for (long i = 0; i < rows; i++) {
+                sink.accept(read(in));
+            }
+            return rows;
+        }
+    }
+
+    private static void writeUuid(DataOutput out, UUID value) throws IOException {
+        if (value != null) {
+            out.writeLong(value.getMostSignificantBits());
+            out.writeLong(value.getLeastSignificantBits());
+        }
+    }
+}
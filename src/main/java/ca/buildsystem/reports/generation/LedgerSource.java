@@ -0,0 +1,34 @@
+package ca.buildsystem.reports.generation;
+
+import ca.buildsystem.reports.model.ReportType;
+
+import java.util.function.Consumer;
+
+/**
+ * Source of raw ledger rows for report generation.
+ * Implementations wrap the upstream finance services (accounts payable, accounts receivable,
+ * cash flow, project management) and stream the rows matching a report's criteria.
+ * The ledger is append-only: corrections are posted as new entries, which is what allows
+ * incremental regeneration to fetch only the rows posted since the previous run.
+ */
+public interface LedgerSource {
+
+    /**
+     * Check whether this source provides data for the given report type.
+     *
+     * @param type The report type
+     * @return True if this source contributes rows to reports of the given type
+     */
+    boolean supports(ReportType type);
+
+    /**
+     * Stream the ledger rows matching the query, in ascending date order.
+     * Generation checkpoints record the last complete day and resume the fetch from the day after
+     * it, so a row dated before one already streamed fails the generation. Runtime exceptions
+     * thrown by the sink, such as a checkpoint request, must be propagated.
+     *
+     * @param query The date range, project and client to fetch
+     * @param sink The consumer receiving each row
+     */
+    void fetch(LedgerQuery query, Consumer<LedgerRow> sink);
+}
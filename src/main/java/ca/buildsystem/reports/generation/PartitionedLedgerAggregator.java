@@ -0,0 +1,225 @@
+package ca.buildsystem.reports.generation;
+
+import ca.buildsystem.reports.model.RollupGranularity;
+import lombok.extern.slf4j.Slf4j;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Hash-partitioned aggregation of ledger amounts that spills to disk.
+ * Buckets are aggregated on the heap until their number exceeds the configured limit. The
+ * partial totals are then written to partition files chosen by the hash of the bucket key,
+ * so that every bucket lands in exactly one partition, and aggregation starts over on an
+ * empty heap. Draining aggregates one partition at a time into a sorted run and k-way merges
+ * the runs back into period order. A partition that itself holds more buckets than the limit is
+ * split again by a hash with another seed, so that its keys spread over new partitions.
+ */
+@Slf4j
+public final class PartitionedLedgerAggregator implements AutoCloseable {
+
+    /**
+     * Approximate heap taken by one bucket: its tree entry, key and running totals.
+     */
+    public static final int HEAP_BYTES_PER_BUCKET = 256;
+
+    /**
+     * Number of times a partition may be split again before it is aggregated on the heap regardless.
+     */
+    private static final int MAX_SPLIT_DEPTH = 8;
+
+    private final RollupGranularity granularity;
+    private final int maxBuckets;
+    private final ExternalLedgerSorter sorter;
+    private final SpillRuns runs;
+    private final SpillRuns.Run[] partitions;
+
+    private LedgerAggregator buckets;
+    private int spills;
+
+    /**
+     * Create an aggregator.
+     *
+     * @param granularity The period length of the buckets
+     * @param maxBuckets Maximum number of buckets aggregated on the heap before spilling
+     * @param partitions Number of partition files buckets are spread over
+     * @param sorter The sorter merging the aggregated partitions
+     * @param spillDirectory Directory in which partition files are created
+     */
+    public PartitionedLedgerAggregator(RollupGranularity granularity, int maxBuckets, int partitions,
+                                       ExternalLedgerSorter sorter, Path spillDirectory) {
+        this.granularity = granularity;
+        this.maxBuckets = maxBuckets;
+        this.sorter = sorter;
+        this.runs = new SpillRuns(spillDirectory);
+        this.partitions = new SpillRuns.Run[partitions];
+        this.buckets = new LedgerAggregator(granularity);
+    }
+
+    /**
+     * Add a ledger row. Rows without a date are ignored.
+     *
+     * @param row The ledger row
+     */
+    public void add(LedgerRow row) {
+        buckets.add(row);
+        spillIfFull();
+    }
+
+    /**
+     * Add an amount to the bucket of the period containing a date.
+     *
+     * @param date The date of the amount
+     * @param projectId The project ID (may be null)
+     * @param clientId The client ID (may be null)
+     * @param currencyCode The currency code (may be null)
+     * @param amount The amount to add (may be null)
+     * @param count The number of ledger entries the amount represents
+     */
+    public void add(LocalDate date, UUID projectId, UUID clientId, String currencyCode,
+                    BigDecimal amount, long count) {
+        buckets.add(date, projectId, clientId, currencyCode, amount, count);
+        spillIfFull();
+    }
+
+    /**
+     * @return True if buckets have been spilled to partition files
+     */
+    public boolean isSpilled() {
+        return spills > 0;
+    }
+
+    /**
+     * Emit one summary row per bucket in period order.
+     *
+     * @param sink The consumer receiving each summary row
+     */
+    public void drainTo(Consumer<LedgerRow> sink) {
+        if (!isSpilled()) {
+            buckets.drainTo(sink);
+            return;
+        }
+        spill();
+
+        List<SpillRuns.Run> sorted = new ArrayList<>(partitions.length);
+        for (SpillRuns.Run partition : partitions) {
+            if (partition != null) {
+                partition.close();
+                aggregatePartition(partition, 1, sorted);
+            }
+        }
+        log.debug("Merging {} aggregated partitions after {} spills", sorted.size(), spills);
+        sorter.merge(runs, sorted, LedgerAggregator.ROW_ORDER, sink);
+    }
+
+    /**
+     * Aggregate a closed partition into a sorted run, or split it again once its buckets exceed
+     * the limit and aggregate the new partitions in turn.
+     *
+     * @param partition The partition, deleted once read
+     * @param seed The hash seed of the split, distinct at every depth
+     * @param sorted Receives the sorted runs
+     */
+    private void aggregatePartition(SpillRuns.Run partition, int seed, List<SpillRuns.Run> sorted) {
+        LedgerAggregator partial = new LedgerAggregator(granularity);
+        SpillRuns.Run[] split = null;
+        try (SpillRuns.Cursor cursor = partition.open()) {
+            while (cursor.advance()) {
+                LedgerRow row = cursor.current();
+                if (split != null) {
+                    partition(split, row, seed).accept(row);
+                    continue;
+                }
+                partial.add(row);
+                if (partial.size() > maxBuckets) {
+                    if (seed > MAX_SPLIT_DEPTH) {
+                        continue;
+                    }
+                    SpillRuns.Run[] target = new SpillRuns.Run[partitions.length];
+                    partial.drainTo(bucket -> partition(target, bucket, seed).accept(bucket));
+                    split = target;
+                    // Free the heap before the new partitions are aggregated
+                    partial = null;
+                }
+            }
+        }
+        partition.delete();
+
+        if (split == null) {
+            if (partial.size() > maxBuckets) {
+                log.warn("Aggregating {} buckets on the heap after {} splits", partial.size(), MAX_SPLIT_DEPTH);
+            }
+            SpillRuns.Run run = runs.newRun();
+            try (run) {
+                partial.drainTo(run);
+            }
+            sorted.add(run);
+            return;
+        }
+        for (SpillRuns.Run subPartition : split) {
+            if (subPartition != null) {
+                subPartition.close();
+                aggregatePartition(subPartition, seed + 1, sorted);
+            }
+        }
+    }
+
+    /**
+     * Delete the partition files.
+     */
+    @Override
+    public void close() {
+        for (SpillRuns.Run partition : partitions) {
+            if (partition != null) {
+                partition.close();
+            }
+        }
+        runs.close();
+    }
+
+    private void spillIfFull() {
+        if (buckets.size() > maxBuckets) {
+            spill();
+        }
+    }
+
+    private void spill() {
+        if (spills == 0) {
+            log.info("Summary aggregation exceeded {} buckets, spilling to {} partitions",
+                    maxBuckets, partitions.length);
+        }
+        // Partial totals keep the period start as their date, so re-aggregating them is exact
+        buckets.drainTo(row -> partition(partitions, row, 0).accept(row));
+        buckets = new LedgerAggregator(granularity);
+        spills++;
+    }
+
+    private SpillRuns.Run partition(SpillRuns.Run[] target, LedgerRow row, int seed) {
+        int hash = Objects.hash(row.getDate(), row.getProjectId(), row.getClientId(), row.getCurrencyCode());
+        int index = Math.floorMod(mix(hash, seed), target.length);
+        if (target[index] == null) {
+            target[index] = runs.newRun();
+        }
+        return target[index];
+    }
+
+    /**
+     * Scramble a hash with a seed. Every output bit depends on every input bit, so keys that
+     * shared a partition under one seed spread over all partitions under another.
+     */
+    private static int mix(int hash, int seed) {
+        int h = hash ^ (seed * 0x9E3779B9);
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
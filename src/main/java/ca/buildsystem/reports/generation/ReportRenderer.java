@@ -0,0 +1,215 @@
+package ca.buildsystem.reports.generation;
+
+import ca.buildsystem.reports.model.Report;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.springframework.stereotype.Component;
+import org.springframework.web.util.HtmlUtils;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.function.LongConsumer;
+
+/**
+ * Renders report files from a ledger buffer.
+ * Rows are read straight from the buffer columns and streamed to the output file.
+ */
+@Component
+public class ReportRenderer {
+
+    private static final int PROGRESS_INTERVAL = 10_000;
+
+    private static final String[] COLUMNS = {"date", "amount", "currency", "account_id", "project_id", "client_id"};
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    /**
+     * Render the report file in the report's format.
+     *
+     * @param report The report entity
+     * @param ledger The ledger rows of the report
+     * @param filePath The file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void render(Report report, LedgerColumnBuffer ledger, Path filePath) throws IOException {
+        render(report, ledger, filePath, rows -> { });
+    }
+
+    /**
+     * Render the report file in the report's format, reporting progress as rows are written.
+     *
+     * @param report The report entity
+     * @param ledger The ledger rows of the report
+     * @param filePath The file to write
+     * @param onRowsRendered Callback receiving the number of rows written so far
+     * @throws IOException if the file cannot be written
+     */
+    public void render(Report report, LedgerColumnBuffer ledger, Path filePath,
+                       LongConsumer onRowsRendered) throws IOException {
+        render(report, ledger, 0, ledger.size(), filePath, onRowsRendered);
+    }
+
+    /**
+     * Render a range of the ledger rows in the report's format.
+     * Ranges of the same buffer may be rendered concurrently once the buffer is filled.
+     *
+     * @param report The report entity
+     * @param ledger The buffer holding the rows
+     * @param from The index of the first row of the report
+     * @param to The index after the last row of the report
+     * @param filePath The file to write
+     * @param onRowsRendered Callback receiving the number of rows written so far
+     * @throws IOException if the file cannot be written
+     */
+    public void render(Report report, LedgerColumnBuffer ledger, long from, long to, Path filePath,
+                       LongConsumer onRowsRendered) throws IOException {
+        Rows rows = new Rows(ledger, from, to, onRowsRendered);
+        switch (report.getFormat()) {
+            case CSV -> renderCsv(rows, filePath);
+            case JSON -> renderJson(report, rows, filePath);
+            case HTML -> renderHtml(report, rows, filePath);
+            case EXCEL -> renderExcel(report, rows, filePath);
+            // PDF layout comes from the report template; in a real implementation this would
+            // feed the ledger rows into the template engine
+            default -> Files.createFile(filePath);
+        }
+    }
+
+    private void renderCsv(Rows rows, Path filePath) throws IOException {
+        LedgerColumnBuffer ledger = rows.ledger;
+        try (BufferedWriter writer = Files.newBufferedWriter(filePath, StandardCharsets.UTF_8)) {
+            writer.write(String.join(",", COLUMNS));
+            writer.newLine();
+            for (long i = rows.from; i < rows.to; i++) {
+                writer.write(Objects.toString(ledger.date(i), ""));
+                writer.write(',');
+                writer.write(ledger.amount(i).toPlainString());
+                writer.write(',');
+                writer.write(Objects.toString(ledger.currencyCode(i), ""));
+                writer.write(',');
+                writer.write(Objects.toString(ledger.accountId(i), ""));
+                writer.write(',');
+                writer.write(Objects.toString(ledger.projectId(i), ""));
+                writer.write(',');
+                writer.write(Objects.toString(ledger.clientId(i), ""));
+                writer.newLine();
+                rows.rendered(i);
+            }
+        }
+    }
+
+    private void renderJson(Report report, Rows rows, Path filePath) throws IOException {
+        LedgerColumnBuffer ledger = rows.ledger;
+        try (OutputStream out = Files.newOutputStream(filePath);
+             JsonGenerator json = jsonFactory.createGenerator(out, JsonEncoding.UTF8)) {
+            json.writeStartObject();
+            json.writeStringField("name", report.getName());
+            json.writeStringField("type", report.getType().toString());
+            json.writeNumberField("totalAmount", report.getTotalAmount());
+            json.writeArrayFieldStart("rows");
+            for (long i = rows.from; i < rows.to; i++) {
+                json.writeStartObject();
+                json.writeStringField("date", Objects.toString(ledger.date(i), null));
+                json.writeNumberField("amount", ledger.amount(i));
+                json.writeStringField("currency", ledger.currencyCode(i));
+                writeUuid(json, "accountId", ledger.accountId(i));
+                writeUuid(json, "projectId", ledger.projectId(i));
+                writeUuid(json, "clientId", ledger.clientId(i));
+                json.writeEndObject();
+                rows.rendered(i);
+            }
+            json.writeEndArray();
+            json.writeEndObject();
+        }
+    }
+
+    private void renderHtml(Report report, Rows rows, Path filePath) throws IOException {
+        LedgerColumnBuffer ledger = rows.ledger;
+        try (BufferedWriter writer = Files.newBufferedWriter(filePath, StandardCharsets.UTF_8)) {
+            writer.write("<!DOCTYPE html><html><head><meta charset=\"UTF-8\"><title>");
+            writer.write(HtmlUtils.htmlEscape(report.getName()));
+            writer.write("</title></head><body><table><thead><tr>");
+            for (String column : COLUMNS) {
+                writer.write("<th>" + column + "</th>");
+            }
+            writer.write("</tr></thead><tbody>");
+            writer.newLine();
+            for (long i = rows.from; i < rows.to; i++) {
+                writer.write("<tr><td>" + Objects.toString(ledger.date(i), "") + "</td>"
+                        + "<td>" + ledger.amount(i).toPlainString() + "</td>"
+                        + "<td>" + Objects.toString(ledger.currencyCode(i), "") + "</td>"
+                        + "<td>" + Objects.toString(ledger.accountId(i), "") + "</td>"
+                        + "<td>" + Objects.toString(ledger.projectId(i), "") + "</td>"
+                        + "<td>" + Objects.toString(ledger.clientId(i), "") + "</td></tr>");
+                writer.newLine();
+                rows.rendered(i);
+            }
+            writer.write("</tbody></table></body></html>");
+        }
+    }
+
+    private void renderExcel(Report report, Rows rows, Path filePath) throws IOException {
+        LedgerColumnBuffer ledger = rows.ledger;
+        // The streaming workbook keeps only a window of rows in memory
+        SXSSFWorkbook workbook = new SXSSFWorkbook(500);
+        try (OutputStream out = Files.newOutputStream(filePath)) {
+            Sheet sheet = workbook.createSheet(report.getType().toString());
+            Row header = sheet.createRow(0);
+            for (int c = 0; c < COLUMNS.length; c++) {
+                header.createCell(c).setCellValue(COLUMNS[c]);
+            }
+            for (long i = rows.from; i < rows.to; i++) {
+                Row row = sheet.createRow((int) (i - rows.from) + 1);
+                row.createCell(0).setCellValue(Objects.toString(ledger.date(i), ""));
+                row.createCell(1).setCellValue(ledger.amount(i).doubleValue());
+                row.createCell(2).setCellValue(Objects.toString(ledger.currencyCode(i), ""));
+                row.createCell(3).setCellValue(Objects.toString(ledger.accountId(i), ""));
+                row.createCell(4).setCellValue(Objects.toString(ledger.projectId(i), ""));
+                row.createCell(5).setCellValue(Objects.toString(ledger.clientId(i), ""));
+                rows.rendered(i);
+            }
+            workbook.write(out);
+        } finally {
+            workbook.dispose();
+            workbook.close();
+        }
+    }
+
+    /**
+     * The range of buffer rows rendered into one file.
+     */
+    private static final class Rows {
+        private final LedgerColumnBuffer ledger;
+        private final long from;
+        private final long to;
+        private final LongConsumer onRowsRendered;
+
+        private Rows(LedgerColumnBuffer ledger, long from, long to, LongConsumer onRowsRendered) {
+            this.ledger = ledger;
+            this.from = from;
+            this.to = to;
+            this.onRowsRendered = onRowsRendered;
+        }
+
+        private void rendered(long row) {
+            long count = row - from + 1;
+            if (count % PROGRESS_INTERVAL == 0) {
+                onRowsRendered.accept(count);
+            }
+        }
+    }
+
+    private static void writeUuid(JsonGenerator json, String field, UUID value) throws IOException {
+        json.writeStringField(field, value != null ? value.toString() : null);
+    }
+}
@@ -0,0 +1,198 @@
+package ca.buildsystem.reports.generation;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Temporary run files of the spilling ledger operators.
+ * Every run is a sequence of rows in {@link LedgerRowCodec} encoding. All runs live in a
+ * private directory under the spill directory, which is deleted when the run set is closed.
+ */
+@Slf4j
+final class SpillRuns implements AutoCloseable {
+
+    private static final int IO_BUFFER_BYTES = 64 * 1024;
+
+    private final Path spillDirectory;
+    private Path directory;
+    private int nextRun;
+
+    SpillRuns(Path spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * Create an empty run open for writing.
+     *
+     * @return The new run, to be closed once written
+     */
+    Run newRun() {
+        try {
+            if (directory == null) {
+                Files.createDirectories(spillDirectory);
+                directory = Files.createTempDirectory(spillDirectory, "runs_");
+            }
+            return new Run(directory.resolve("run_" + nextRun++ + ".ledger"));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create run file in " + spillDirectory, e);
+        }
+    }
+
+    /**
+     * Delete every run file and the run directory.
+     */
+    @Override
+    public void close() {
+        if (directory == null) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(file);
+            }
+            Files.deleteIfExists(directory);
+        } catch (IOException e) {
+            log.warn("Could not delete spill runs in {}", directory, e);
+        }
+        directory = null;
+    }
+
+    /**
+     * A run file. Rows are appended until the run is closed, after which it can be read back.
+     */
+    static final class Run implements Consumer<LedgerRow>, AutoCloseable {
+
+        private final Path path;
+        private DataOutputStream out;
+        private long rows;
+
+        private Run(Path path) throws IOException {
+            this.path = path;
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), IO_BUFFER_BYTES));
+        }
+
+        @Override
+        public void accept(LedgerRow row) {
+            try {
+                LedgerRowCodec.write(out, row);
+                rows++;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not write run file " + path, e);
+            }
+        }
+
+        long rows() {
+            return rows;
+        }
+
+        /**
+         * Open a cursor over the rows of a closed run.
+         *
+         * @return A cursor positioned before the first row, to be closed by the caller
+         */
+        Cursor open() {
+            try {
+                return new Cursor(path, rows);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read run file " + path, e);
+            }
+        }
+
+        /**
+         * Stream every row of a closed run.
+         *
+         * @param sink The consumer receiving each row
+         */
+        void forEach(Consumer<LedgerRow> sink) {
+            try (Cursor cursor = open()) {
+                while (cursor.advance()) {
+                    sink.accept(cursor.current());
+                }
+            }
+        }
+
+        /**
+         * Delete a run that is no longer needed before the whole run set is closed.
+         */
+        void delete() {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                log.warn("Could not delete run file {}", path, e);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (out == null) {
+                return;
+            }
+            try {
+                out.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not write run file " + path, e);
+            } finally {
+                out = null;
+            }
+        }
+    }
+
+    /**
+     * Forward-only reader over the rows of a run.
+     */
+    static final class Cursor implements AutoCloseable {
+
+        private final Path path;
+        private final DataInputStream in;
+        private long remaining;
+        private LedgerRow current;
+
+        private Cursor(Path path, long rows) throws IOException {
+            this.path = path;
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), IO_BUFFER_BYTES));
+            this.remaining = rows;
+        }
+
+        /**
+         * Move to the next row.
+         *
+         * @return False once the run is exhausted
+         */
+        boolean advance() {
+            if (remaining == 0) {
+                current = null;
+                return false;
+            }
+            try {
+                current = LedgerRowCodec.read(in);
+                remaining--;
+                return true;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read run file " + path, e);
+            }
+        }
+
+        LedgerRow current() {
+            return current;
+        }
+
+        @Override
+        public void close() {
+            try {
+                in.close();
+            } catch (IOException e) {
+                log.warn("Could not close run file {}", path, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package ca.buildsystem.reports.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Entity recording the progress of an interrupted generation.
+ * The snapshot file holds the first rowOffset rows; the generation resumes by loading them,
+ * fetching source sourceIndex from resumeFrom (from the start of the query if null) onwards and
+ * the sources after it in full; a sourceIndex past the last source means nothing is left to
+ * fetch. Sources are counted among those supporting the report type, in their injection order,
+ * and stream their rows in date order, so the rows of one day are either all loaded or all
+ * fetched again.
+ */
+@Entity
+@Table(name = "generation_checkpoints")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class GenerationCheckpoint {
+
+    @Id
+    @Column(name = "report_id")
+    private UUID reportId;
+
+    @Column(name = "checkpoint_path", nullable = false)
+    private String checkpointPath;
+
+    @Column(name = "row_offset", nullable = false)
+    private long rowOffset;
+
+    @Column(name = "source_index", nullable = false)
+    private int sourceIndex;
+
+    @Column(name = "resume_from")
+    private LocalDate resumeFrom;
+
+    @Column(name = "data_watermark")
+    private LocalDateTime dataWatermark;
+
+    @Column(name = "owner_node", length = 100)
+    private String ownerNode;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,53 @@
+package ca.buildsystem.reports.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Entity recording a processed or in-flight request carrying an Idempotency-Key header.
+ * The key is scoped to the requesting principal; the request hash detects reuse of a key
+ * with a different payload. While a request is in flight, the node running it refreshes the
+ * heartbeat, so a claim is only taken over once that node stopped.
+ */
+@Entity
+@Table(name = "idempotency_keys", indexes = @Index(name = "idx_idempotency_keys_expires_at", columnList = "expires_at"))
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class IdempotencyRecord {
+
+    public static final String IN_PROGRESS = "IN_PROGRESS";
+    public static final String COMPLETED = "COMPLETED";
+
+    @Id
+    @Column(name = "idempotency_key", length = 400)
+    private String idempotencyKey;
+
+    @Column(name = "request_hash", nullable = false, length = 64)
+    private String requestHash;
+
+    @Column(name = "status", nullable = false)
+    private String status;
+
+    @Column(name = "report_id")
+    private UUID reportId;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+
+    /**
+     * Last time the node running the request confirmed it is still running.
+     */
+    @Column(name = "heartbeat_at")
+    private LocalDateTime heartbeatAt;
+}
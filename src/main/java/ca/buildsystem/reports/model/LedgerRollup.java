@@ -0,0 +1,78 @@
+package ca.buildsystem.reports.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.LastModifiedDate;
+import org.springframework.data.jpa.domain.support.AuditingEntityListener;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Entity holding a pre-aggregated ledger total for one period.
+ * Totals are kept per source report type, project, client and currency so that
+ * date-range reports can be answered without re-scanning the raw ledger. Missing projects,
+ * clients and currencies are stored as {@link #NO_ID} and {@link #NO_CURRENCY}.
+ */
+@Entity
+@Table(name = "ledger_rollups",
+        uniqueConstraints = @UniqueConstraint(name = "uk_ledger_rollups_bucket", columnNames = {
+                "granularity", "source_type", "period_start", "project_id", "client_id", "currency_code"}),
+        indexes = @Index(name = "idx_ledger_rollups_range", columnList = "granularity, source_type, period_start"))
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@EntityListeners(AuditingEntityListener.class)
+public class LedgerRollup {
+
+    /**
+     * Stored in place of a missing project or client id. Unique constraints treat nulls as
+     * distinct, so nullable key columns would not prevent duplicate buckets.
+     */
+    public static final UUID NO_ID = new UUID(0L, 0L);
+
+    /**
+     * Stored in place of a missing currency code, for the same reason.
+     */
+    public static final String NO_CURRENCY = "";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private RollupGranularity granularity;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "source_type", nullable = false)
+    private ReportType sourceType;
+
+    @Column(name = "period_start", nullable = false)
+    private LocalDate periodStart;
+
+    @Column(name = "project_id", nullable = false)
+    private UUID projectId;
+
+    @Column(name = "client_id", nullable = false)
+    private UUID clientId;
+
+    @Column(name = "currency_code", nullable = false, length = 3)
+    private String currencyCode;
+
+    @Column(name = "total_amount", nullable = false, precision = 19, scale = 4)
+    private BigDecimal totalAmount;
+
+    @Column(name = "entry_count", nullable = false)
+    private long entryCount;
+
+    @LastModifiedDate
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+}
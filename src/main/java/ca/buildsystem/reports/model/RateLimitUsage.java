@@ -0,0 +1,34 @@
+package ca.buildsystem.reports.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Entity counting the tokens all nodes took from one rate limit bucket.
+ * The count only grows while the bucket is in use; each node charges its local bucket with the
+ * growth it did not cause itself. Rows idle for longer than a bucket takes to refill are deleted.
+ * Read and written with plain SQL by the PostgreSQL rate limit store.
+ */
+@Entity
+@Table(name = "rate_limit_usage", indexes = @Index(name = "idx_rate_limit_usage_updated_at", columnList = "updated_at"))
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RateLimitUsage {
+
+    @Id
+    @Column(name = "bucket_key", length = 400)
+    private String bucketKey;
+
+    @Column(name = "consumed", nullable = false)
+    private long consumed;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+}
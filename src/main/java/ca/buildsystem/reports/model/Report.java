@@ -22,7 +22,8 @@ import java.util.UUID;
  * Reports can be generated on-demand or scheduled, and can be exported in various formats.
  */
 @Entity
-@Table(name = "reports")
+@Table(name = "reports",
+        indexes = @Index(name = "idx_reports_access_token_hash", columnList = "access_token_hash"))
 @Data
 @Builder
 @NoArgsConstructor
@@ -60,6 +61,16 @@ public class Report {
     @Column(name = "file_size")
     private Long fileSize;
 
+    @Column(name = "stored_size")
+    private Long storedSize;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "storage_tier")
+    private StorageTier storageTier;
+
+    @Column(name = "tiered_at")
+    private LocalDateTime tieredAt;
+
     @Column(name = "is_scheduled")
     private boolean scheduled;
 
@@ -78,6 +89,21 @@ public class Report {
     @Column(name = "currency_code", length = 3)
     private String currencyCode;
 
+    @Enumerated(EnumType.STRING)
+    @Column(name = "summary_granularity")
+    private RollupGranularity summaryGranularity;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "sort_key")
+    private ReportSortKey sortKey;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "burst_key")
+    private ReportBurstKey burstKey;
+
+    @Column(name = "parent_report_id")
+    private UUID parentReportId;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "template_id")
     private ReportTemplate template;
@@ -97,9 +123,33 @@ public class Report {
     @Column(name = "access_token")
     private String accessToken;
 
+    /**
+     * Hex SHA-256 of the access token, indexed for public lookups.
+     */
+    @Column(name = "access_token_hash", length = 64)
+    private String accessTokenHash;
+
     @Column(name = "status")
     private String status;
 
+    @Column(name = "owner_node", length = 100)
+    private String ownerNode;
+
+    @Column(name = "heartbeat_at")
+    private LocalDateTime heartbeatAt;
+
+    @Column(name = "working_file_path")
+    private String workingFilePath;
+
+    @Column(name = "recovery_count")
+    private Integer recoveryCount;
+
+    @Column(name = "generation_millis")
+    private Long generationMillis;
+
+    @Column(name = "row_count")
+    private Long rowCount;
+
     @CreatedDate
     @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt;
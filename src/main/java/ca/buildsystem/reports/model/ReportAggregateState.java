@@ -0,0 +1,64 @@
+package ca.buildsystem.reports.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.LastModifiedDate;
+import org.springframework.data.jpa.domain.support.AuditingEntityListener;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Entity describing the aggregate state kept from the previous generation of a scheduled report.
+ * The ledger rows themselves are stored in a binary snapshot file at {@code statePath}; the
+ * criteria columns tell whether the snapshot can be extended incrementally on the next run.
+ */
+@Entity
+@Table(name = "report_aggregate_states")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@EntityListeners(AuditingEntityListener.class)
+public class ReportAggregateState {
+
+    @Id
+    @Column(name = "report_id")
+    private UUID reportId;
+
+    @Column(name = "template_version")
+    private String templateVersion;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "summary_granularity")
+    private RollupGranularity summaryGranularity;
+
+    @Column(name = "range_start")
+    private LocalDate rangeStart;
+
+    @Column(name = "range_end")
+    private LocalDate rangeEnd;
+
+    @Column(name = "project_id")
+    private UUID projectId;
+
+    @Column(name = "client_id")
+    private UUID clientId;
+
+    @Column(name = "data_watermark", nullable = false)
+    private LocalDateTime dataWatermark;
+
+    @Column(name = "row_count")
+    private long rowCount;
+
+    @Column(name = "state_path", nullable = false)
+    private String statePath;
+
+    @LastModifiedDate
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+}
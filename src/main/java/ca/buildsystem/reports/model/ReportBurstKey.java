@@ -0,0 +1,10 @@
+package ca.buildsystem.reports.model;
+
+/**
+ * Enumeration of the dimensions a burst generation splits its rows by.
+ * Every distinct value becomes a child report of its own.
+ */
+public enum ReportBurstKey {
+    PROJECT,    // One report per project
+    CLIENT      // One report per client
+}
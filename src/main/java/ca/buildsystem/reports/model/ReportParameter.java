@@ -5,6 +5,8 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.springframework.data.annotation.CreatedBy;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.LastModifiedBy;
@@ -17,9 +19,12 @@ import java.util.UUID;
 /**
  * Entity representing a parameter for a report or report template.
  * Parameters define the inputs required to generate a report.
+ * Cached with their templates in the second-level cache.
  */
 @Entity
 @Table(name = "report_parameters")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "reportParameters")
 @Data
 @Builder
 @NoArgsConstructor
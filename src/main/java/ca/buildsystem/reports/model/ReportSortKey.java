@@ -0,0 +1,12 @@
+package ca.buildsystem.reports.model;
+
+/**
+ * Enumeration of the orderings of report rows.
+ * Rows with the same key are ordered by date.
+ */
+public enum ReportSortKey {
+    DATE,       // Ledger date, the order in which sources stream rows
+    ACCOUNT,    // Vendor or customer account
+    PROJECT,    // Project
+    CLIENT      // Client, oldest entries first as in aging reports
+}
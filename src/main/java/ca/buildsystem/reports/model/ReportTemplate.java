@@ -5,6 +5,8 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.springframework.data.annotation.CreatedBy;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.LastModifiedBy;
@@ -19,9 +21,13 @@ import java.util.UUID;
 /**
  * Entity representing a report template in the system.
  * Templates define the structure and parameters for generating reports.
+ * Templates and their parameters are kept in the second-level cache; they are read by every
+ * templated generation and rarely change.
  */
 @Entity
 @Table(name = "report_templates")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = ReportTemplate.CACHE_REGION)
 @Data
 @Builder
 @NoArgsConstructor
@@ -29,6 +35,10 @@ import java.util.UUID;
 @EntityListeners(AuditingEntityListener.class)
 public class ReportTemplate {
 
+    public static final String CACHE_REGION = "reportTemplates";
+    public static final String PARAMETERS_CACHE_REGION = "reportTemplates.parameters";
+    public static final String QUERY_CACHE_REGION = "reportTemplates.queries";
+
     @Id
     @GeneratedValue(strategy = GenerationType.UUID)
     private UUID id;
@@ -63,6 +73,7 @@ public class ReportTemplate {
     private String version;
 
     @OneToMany(mappedBy = "template", cascade = CascadeType.ALL, orphanRemoval = true)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = ReportTemplate.PARAMETERS_CACHE_REGION)
     private Set<ReportParameter> parameters = new HashSet<>();
 
     @OneToMany(mappedBy = "template")
@@ -0,0 +1,10 @@
+package ca.buildsystem.reports.model;
+
+/**
+ * Enumeration of the period lengths used for pre-aggregated ledger totals.
+ * Also selects the row granularity of summary reports.
+ */
+public enum RollupGranularity {
+    DAY,    // One total per calendar day
+    MONTH   // One total per calendar month
+}
@@ -0,0 +1,38 @@
+package ca.buildsystem.reports.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+/**
+ * Entity recording which days of the raw ledger of a source report type have been rolled up.
+ * Days from {@code rolledFrom} up to and including {@code rolledThrough} are fully covered by
+ * {@link LedgerRollup} rows; earlier days and the un-rolled tail after the watermark are read
+ * from the ledger sources directly.
+ */
+@Entity
+@Table(name = "rollup_watermarks")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RollupWatermark {
+
+    @Id
+    @Enumerated(EnumType.STRING)
+    @Column(name = "source_type")
+    private ReportType sourceType;
+
+    /**
+     * First day covered by rollups.
+     */
+    @Column(name = "rolled_from", nullable = false)
+    private LocalDate rolledFrom;
+
+    @Column(name = "rolled_through", nullable = false)
+    private LocalDate rolledThrough;
+}
@@ -0,0 +1,9 @@
+package ca.buildsystem.reports.model;
+
+/**
+ * Enumeration of the storage tiers holding generated report files.
+ */
+public enum StorageTier {
+    HOT,    // Uncompressed in the report storage path
+    COLD    // Recompressed in the cold storage path, decompressed on download
+}
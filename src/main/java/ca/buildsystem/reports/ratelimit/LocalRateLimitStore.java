@@ -0,0 +1,20 @@
+package ca.buildsystem.reports.ratelimit;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Stand-in store for single-node deployments and tests.
+ * With one node the local buckets already see every request, so nothing is shared.
+ */
+@Component
+@ConditionalOnProperty(name = "app.rate-limit.store", havingValue = "local", matchIfMissing = true)
+public class LocalRateLimitStore implements RateLimitStore {
+
+    @Override
+    public Map<String, Long> exchange(Map<String, Long> consumed) {
+        return Map.of();
+    }
+}
@@ -0,0 +1,150 @@
+package ca.buildsystem.reports.ratelimit;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.PreparedStatement;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Store keeping the buckets of all nodes in step through a table of the reports database.
+ * Each bucket has one row counting the tokens taken from it on every node. An exchange adds this
+ * node's consumption with one upsert returning the new counts, reads the counts of the other
+ * buckets this node has used, and hands back the growth of each count since the last exchange
+ * minus what this node added. Counts are only ever incremented in the database, so nodes
+ * exchanging at the same time never lose each other's consumption. A bucket first seen on this
+ * node is charged from then on, as it would be by a fresh node.
+ */
+@Component
+@ConditionalOnProperty(name = "app.rate-limit.store", havingValue = "postgres")
+@Slf4j
+public class PostgresRateLimitStore implements RateLimitStore {
+
+    private static final String ADD_SQL =
+            "INSERT INTO rate_limit_usage (bucket_key, consumed, updated_at) " +
+            "SELECT u.bucket_key, u.consumed, now() FROM unnest(?::varchar[], ?::bigint[]) AS u(bucket_key, consumed) " +
+            "ON CONFLICT (bucket_key) DO UPDATE SET consumed = rate_limit_usage.consumed + EXCLUDED.consumed, " +
+            "updated_at = EXCLUDED.updated_at " +
+            "RETURNING bucket_key, consumed";
+
+    private static final String READ_SQL =
+            "SELECT bucket_key, consumed FROM rate_limit_usage WHERE bucket_key = ANY(?::varchar[])";
+
+    private static final String DELETE_IDLE_SQL =
+            "DELETE FROM rate_limit_usage WHERE updated_at < now() - make_interval(secs => ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${app.rate-limit.idle-seconds:600}")
+    private long idleSeconds;
+
+    /**
+     * The count of each bucket at the last exchange, for the buckets this node took from within
+     * the idle time. Only used by the exchanging thread.
+     */
+    private final Map<String, Seen> seen = new HashMap<>();
+
+    public PostgresRateLimitStore(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @Override
+    public synchronized Map<String, Long> exchange(Map<String, Long> consumed) {
+        long now = System.nanoTime();
+        long idleNanos = TimeUnit.SECONDS.toNanos(idleSeconds);
+        seen.values().removeIf(entry -> now - entry.usedAt() > idleNanos);
+
+        Map<String, Long> counts = consumed.isEmpty() ? new HashMap<>() : add(consumed);
+        List<String> idle = seen.keySet().stream().filter(key -> !consumed.containsKey(key)).toList();
+        if (!idle.isEmpty()) {
+            counts.putAll(read(idle));
+        }
+        // Rows deleted once idle everywhere start again from zero
+        seen.keySet().removeIf(key -> !counts.containsKey(key));
+
+        Map<String, Long> remote = new HashMap<>();
+        counts.forEach((key, count) -> {
+            long mine = consumed.getOrDefault(key, 0L);
+            Seen previous = seen.get(key);
+            // A count below the last one seen belongs to a row recreated since
+            long others = previous != null ? count - mine - previous.count() : 0;
+            if (others > 0) {
+                remote.put(key, others);
+            }
+            seen.put(key, new Seen(count, mine > 0 || previous == null ? now : previous.usedAt()));
+        });
+        return remote;
+    }
+
+    /**
+     * Delete the counts of buckets no node has taken from for longer than a bucket stays cached.
+     */
+    @Scheduled(fixedDelayString = "${app.rate-limit.cleanup-interval-ms:60000}")
+    public void deleteIdle() {
+        try {
+            int deleted = jdbcTemplate.update(DELETE_IDLE_SQL, idleSeconds);
+            if (deleted > 0) {
+                log.debug("Deleted {} idle rate limit counts", deleted);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Could not delete idle rate limit counts", e);
+        }
+    }
+
+    /**
+     * Add consumption to the shared counts.
+     *
+     * @param consumed Tokens consumed per bucket key
+     * @return The count of each bucket afterwards
+     */
+    Map<String, Long> add(Map<String, Long> consumed) {
+        String[] keys = consumed.keySet().toArray(String[]::new);
+        Long[] tokens = new Long[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            tokens[i] = consumed.get(keys[i]);
+        }
+        Map<String, Long> counts = new HashMap<>();
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(ADD_SQL);
+            statement.setArray(1, connection.createArrayOf("varchar", keys));
+            statement.setArray(2, connection.createArrayOf("bigint", tokens));
+            return statement;
+        }, row -> {
+            counts.put(row.getString("bucket_key"), row.getLong("consumed"));
+        });
+        return counts;
+    }
+
+    /**
+     * Read the shared counts of buckets.
+     *
+     * @param keys The bucket keys
+     * @return The count of each bucket that has one
+     */
+    Map<String, Long> read(Collection<String> keys) {
+        Map<String, Long> counts = new HashMap<>();
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(READ_SQL);
+            statement.setArray(1, connection.createArrayOf("varchar", keys.toArray()));
+            return statement;
+        }, row -> {
+            counts.put(row.getString("bucket_key"), row.getLong("consumed"));
+        });
+        return counts;
+    }
+
+    /**
+     * A bucket's count at the last exchange, and when this node last took from it.
+     */
+    private record Seen(long count, long usedAt) {
+    }
+}
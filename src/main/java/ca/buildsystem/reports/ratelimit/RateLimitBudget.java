@@ -0,0 +1,25 @@
+package ca.buildsystem.reports.ratelimit;
+
+/**
+ * Budgets requests are charged against.
+ * Each budget has its own bucket per client, so a client exhausting its searches can still open
+ * reports and request generations.
+ */
+public enum RateLimitBudget {
+    /**
+     * Detail reads, downloads and single-entity writes; the default.
+     */
+    READ,
+    /**
+     * Paged list and search queries.
+     */
+    SEARCH,
+    /**
+     * Report generation and bundling.
+     */
+    GENERATION,
+    /**
+     * Anonymous lookups of public reports by access token, kept apart from the API's budgets.
+     */
+    PUBLIC
+}
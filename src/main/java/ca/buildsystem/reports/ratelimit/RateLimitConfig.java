@@ -0,0 +1,38 @@
+package ca.buildsystem.reports.ratelimit;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Configuration rate limiting the API per caller.
+ * Active unless {@code app.rate-limit.enabled} is false. Buckets are synchronized across nodes
+ * through the configured {@link RateLimitStore}.
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.rate-limit.enabled", havingValue = "true", matchIfMissing = true)
+@EnableConfigurationProperties(RateLimitProperties.class)
+public class RateLimitConfig implements WebMvcConfigurer {
+
+    private final RateLimitProperties properties;
+    private final RateLimitStore store;
+
+    public RateLimitConfig(RateLimitProperties properties, RateLimitStore store) {
+        this.properties = properties;
+        this.store = store;
+    }
+
+    @Bean
+    public RateLimiter rateLimiter() {
+        return new RateLimiter(properties, store);
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new RateLimitInterceptor(rateLimiter(), properties))
+                .addPathPatterns("/api/**");
+    }
+}
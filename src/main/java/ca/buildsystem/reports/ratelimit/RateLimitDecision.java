@@ -0,0 +1,21 @@
+package ca.buildsystem.reports.ratelimit;
+
+import lombok.Value;
+
+/**
+ * Outcome of charging a request against its bucket, with the values of the RateLimit headers.
+ */
+@Value
+public class RateLimitDecision {
+    boolean allowed;
+    long limit;
+    long remaining;
+    /**
+     * Seconds until the bucket is full again.
+     */
+    long resetSeconds;
+    /**
+     * Seconds until a refused request would be admitted, zero if allowed.
+     */
+    long retryAfterSeconds;
+}
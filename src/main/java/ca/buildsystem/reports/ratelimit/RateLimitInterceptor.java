@@ -0,0 +1,98 @@
+package ca.buildsystem.reports.ratelimit;
+
+import ca.buildsystem.reports.exception.TooManyRequestsException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.util.StringUtils;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.util.Map;
+
+/**
+ * Interceptor charging API requests against the caller's budgets.
+ * Callers are identified by principal and client, so one user's batch job and browser session
+ * have separate buckets; a client is a registered ID from the client header, or else the remote
+ * address. Every authenticated request is also charged to a bucket of the principal, which caps
+ * what all of a user's clients take together. Anonymous callers are identified by address, so
+ * {@code server.forward-headers-strategy} must match the proxies in front. Every response carries
+ * the RateLimit-Limit, RateLimit-Remaining and RateLimit-Reset headers of the tightest bucket it
+ * was charged against, and refused requests are answered with 429 and Retry-After.
+ */
+public class RateLimitInterceptor implements HandlerInterceptor {
+
+    private static final String LIMIT_HEADER = "RateLimit-Limit";
+    private static final String REMAINING_HEADER = "RateLimit-Remaining";
+    private static final String RESET_HEADER = "RateLimit-Reset";
+
+    private final RateLimiter rateLimiter;
+    private final RateLimitProperties properties;
+
+    public RateLimitInterceptor(RateLimiter rateLimiter, RateLimitProperties properties) {
+        this.rateLimiter = rateLimiter;
+        this.properties = properties;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (!(handler instanceof HandlerMethod method)) {
+            return true;
+        }
+        RateLimited annotation = method.getMethodAnnotation(RateLimited.class);
+        RateLimitBudget budget = annotation != null ? annotation.value() : RateLimitBudget.READ;
+
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        boolean authenticated = authentication != null && authentication.isAuthenticated()
+                && !(authentication instanceof AnonymousAuthenticationToken);
+
+        RateLimitDecision decision;
+        if (authenticated) {
+            String client = request.getHeader(properties.getClientHeader());
+            if (!StringUtils.hasText(client) || !properties.getRegisteredClients().contains(client)) {
+                client = request.getRemoteAddr();
+            }
+            double factor = roleFactor(authentication);
+            decision = rateLimiter.tryAcquire(budget, "client|" + authentication.getName() + "|" + client, factor);
+            if (decision.isAllowed()) {
+                decision = tighter(decision, rateLimiter.tryAcquire(budget, "principal|" + authentication.getName(),
+                        factor * properties.getPrincipalFactor()));
+            }
+        } else {
+            decision = rateLimiter.tryAcquire(budget, "address|" + request.getRemoteAddr(), 1.0);
+        }
+        response.setHeader(LIMIT_HEADER, String.valueOf(decision.getLimit()));
+        response.setHeader(REMAINING_HEADER, String.valueOf(decision.getRemaining()));
+        response.setHeader(RESET_HEADER, String.valueOf(decision.getResetSeconds()));
+        if (!decision.isAllowed()) {
+            throw new TooManyRequestsException("Rate limit exceeded for " + budget.name().toLowerCase() + " requests",
+                    decision.getRetryAfterSeconds());
+        }
+        return true;
+    }
+
+    /**
+     * The decision whose headers to send: a refusal, or else the bucket with fewer tokens left.
+     */
+    private static RateLimitDecision tighter(RateLimitDecision client, RateLimitDecision principal) {
+        if (!principal.isAllowed() || principal.getRemaining() < client.getRemaining()) {
+            return principal;
+        }
+        return client;
+    }
+
+    private double roleFactor(Authentication authentication) {
+        Map<String, Double> factors = properties.getRoleFactors();
+        if (factors.isEmpty()) {
+            return 1.0;
+        }
+        double factor = 0;
+        for (GrantedAuthority authority : authentication.getAuthorities()) {
+            factor = Math.max(factor, factors.getOrDefault(authority.getAuthority(), 0.0));
+        }
+        return factor > 0 ? factor : 1.0;
+    }
+}
@@ -0,0 +1,70 @@
+package ca.buildsystem.reports.ratelimit;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Settings of the API rate limiter, bound from {@code app.rate-limit}.
+ */
+@Data
+@ConfigurationProperties(prefix = "app.rate-limit")
+public class RateLimitProperties {
+
+    private boolean enabled = true;
+
+    /**
+     * Request header identifying the calling application; the remote address is used without it.
+     */
+    private String clientHeader = "X-Client-Id";
+
+    /**
+     * Client IDs accepted in the client header. The header is chosen by the caller, so any other
+     * value is ignored and the caller is told apart by address instead.
+     */
+    private Set<String> registeredClients = new HashSet<>();
+
+    /**
+     * The budget shared by all the clients of one principal, as a multiple of one client's budget.
+     */
+    private double principalFactor = 4;
+
+    /**
+     * The number of buckets kept; the least recently used are dropped first.
+     */
+    private long maxKeys = 100000;
+
+    /**
+     * How long an unused bucket is kept. Should exceed the time a bucket takes to refill.
+     */
+    private long idleSeconds = 600;
+
+    private Map<RateLimitBudget, Budget> budgets = new EnumMap<>(Map.of(
+            RateLimitBudget.READ, new Budget(200, 50),
+            RateLimitBudget.SEARCH, new Budget(30, 5),
+            RateLimitBudget.GENERATION, new Budget(10, 0.2),
+            RateLimitBudget.PUBLIC, new Budget(20, 1)));
+
+    /**
+     * Budget multipliers per authority, such as {@code ROLE_ADMIN}; the largest one held applies.
+     */
+    private Map<String, Double> roleFactors = new HashMap<>();
+
+    /**
+     * A token bucket: burst size and sustained rate.
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Budget {
+        private long capacity;
+        private double refillPerSecond;
+    }
+}
@@ -0,0 +1,20 @@
+package ca.buildsystem.reports.ratelimit;
+
+import java.util.Map;
+
+/**
+ * Store shared by the nodes of a deployment to keep their buckets in step.
+ * Each node consumes from its local buckets and periodically exchanges what it consumed for what
+ * the other nodes consumed, which it then charges to its own buckets. A client spread over
+ * several nodes is therefore limited to its budget overall, give or take one sync interval.
+ */
+public interface RateLimitStore {
+
+    /**
+     * Record the tokens this node consumed since the last exchange.
+     *
+     * @param consumed Tokens consumed per bucket key
+     * @return Tokens consumed per bucket key by the other nodes since the last exchange
+     */
+    Map<String, Long> exchange(Map<String, Long> consumed);
+}
@@ -0,0 +1,21 @@
+package ca.buildsystem.reports.ratelimit;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Charges a controller method against a budget other than {@link RateLimitBudget#READ}.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface RateLimited {
+
+    /**
+     * The budget requests to the method are charged against.
+     */
+    RateLimitBudget value();
+}
@@ -0,0 +1,93 @@
+package ca.buildsystem.reports.ratelimit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Token-bucket rate limiter with one bucket per budget and key.
+ * Buckets live in a bounded map and are dropped once idle, by which time they would be full
+ * anyway. Consumption is exchanged with the other nodes through the {@link RateLimitStore} on
+ * a fixed delay; tokens taken elsewhere are charged to the local bucket of the same key.
+ */
+@Slf4j
+public class RateLimiter {
+
+    private final RateLimitProperties properties;
+    private final RateLimitStore store;
+    private final Cache<String, TokenBucket> buckets;
+    private final Set<String> unsynced = ConcurrentHashMap.newKeySet();
+
+    public RateLimiter(RateLimitProperties properties, RateLimitStore store) {
+        this.properties = properties;
+        this.store = store;
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(properties.getMaxKeys())
+                .expireAfterAccess(Duration.ofSeconds(properties.getIdleSeconds()))
+                .build();
+    }
+
+    /**
+     * Charge a request against a bucket.
+     *
+     * @param budget The budget of the request
+     * @param key The caller the bucket belongs to
+     * @param factor The multiplier applied to the budget when the bucket is created
+     * @return The decision, with the values of the RateLimit headers
+     */
+    public RateLimitDecision tryAcquire(RateLimitBudget budget, String key, double factor) {
+        String bucketKey = budget + "|" + key;
+        TokenBucket bucket = buckets.get(bucketKey, ignored -> newBucket(budget, factor));
+        RateLimitDecision decision = bucket.tryConsume(System.nanoTime());
+        if (decision.isAllowed()) {
+            unsynced.add(bucketKey);
+        }
+        return decision;
+    }
+
+    /**
+     * Exchange consumption with the other nodes. Consumption that fails to reach the store is
+     * not retried; the other nodes admit a little more for one interval.
+     */
+    @Scheduled(fixedDelayString = "${app.rate-limit.sync-interval-ms:1000}")
+    public void sync() {
+        Map<String, Long> consumed = new HashMap<>();
+        for (String key : unsynced) {
+            // Remove before draining: a token taken in between marks the key again
+            unsynced.remove(key);
+            TokenBucket bucket = buckets.getIfPresent(key);
+            long tokens = bucket != null ? bucket.drainUnsynced() : 0;
+            if (tokens > 0) {
+                consumed.put(key, tokens);
+            }
+        }
+        Map<String, Long> remote;
+        try {
+            remote = store.exchange(consumed);
+        } catch (RuntimeException e) {
+            log.warn("Could not exchange rate limit consumption for {} buckets", consumed.size(), e);
+            return;
+        }
+        long now = System.nanoTime();
+        remote.forEach((key, tokens) -> {
+            // Callers without a local bucket have their whole budget here, as on a fresh node
+            TokenBucket bucket = buckets.getIfPresent(key);
+            if (bucket != null) {
+                bucket.debit(tokens, now);
+            }
+        });
+    }
+
+    private TokenBucket newBucket(RateLimitBudget budget, double factor) {
+        RateLimitProperties.Budget settings = properties.getBudgets().get(budget);
+        return new TokenBucket(Math.round(settings.getCapacity() * factor), settings.getRefillPerSecond() * factor,
+                System.nanoTime());
+    }
+}
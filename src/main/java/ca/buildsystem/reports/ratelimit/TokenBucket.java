@@ -0,0 +1,78 @@
+package ca.buildsystem.reports.ratelimit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket.
+ * The bucket is kept as the instant at which it will be full again: each token taken pushes that
+ * instant one refill interval later, and a request is refused when it would push it more than a
+ * full bucket's worth into the future. A single compare-and-set on that instant replaces the
+ * usual token count and refill timestamp, so concurrent requests never block each other.
+ */
+final class TokenBucket {
+
+    private final long capacity;
+    private final long intervalNanos;
+    private final long capacityNanos;
+    private final AtomicLong fullAt;
+    private final AtomicLong unsynced = new AtomicLong();
+
+    /**
+     * @param capacity The number of tokens of a full bucket
+     * @param refillPerSecond The number of tokens added per second
+     * @param now The current {@link System#nanoTime()}
+     */
+    TokenBucket(long capacity, double refillPerSecond, long now) {
+        this.capacity = Math.max(1, capacity);
+        this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / refillPerSecond));
+        this.capacityNanos = this.capacity * intervalNanos;
+        this.fullAt = new AtomicLong(now);
+    }
+
+    /**
+     * Take one token if the bucket has one.
+     *
+     * @param now The current {@link System#nanoTime()}
+     * @return The decision, with the state of the bucket afterwards
+     */
+    RateLimitDecision tryConsume(long now) {
+        while (true) {
+            long full = fullAt.get();
+            long base = full - now > 0 ? full : now;
+            long debt = base + intervalNanos - now;
+            if (debt > capacityNanos) {
+                return new RateLimitDecision(false, capacity, 0, seconds(base - now), seconds(debt - capacityNanos));
+            }
+            if (fullAt.compareAndSet(full, now + debt)) {
+                unsynced.incrementAndGet();
+                return new RateLimitDecision(true, capacity, (capacityNanos - debt) / intervalNanos, seconds(debt), 0);
+            }
+        }
+    }
+
+    /**
+     * Charge tokens consumed on other nodes. The bucket never goes below empty.
+     *
+     * @param tokens The number of tokens
+     * @param now The current {@link System#nanoTime()}
+     */
+    void debit(long tokens, long now) {
+        long charge = Math.min(tokens, capacity) * intervalNanos;
+        fullAt.getAndUpdate(full -> {
+            long base = full - now > 0 ? full : now;
+            return Math.min(base + charge, now + capacityNanos);
+        });
+    }
+
+    /**
+     * Get and reset the number of tokens taken locally since the last call.
+     */
+    long drainUnsynced() {
+        return unsynced.getAndSet(0);
+    }
+
+    private static long seconds(long nanos) {
+        return nanos <= 0 ? 0 : (nanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1);
+    }
+}
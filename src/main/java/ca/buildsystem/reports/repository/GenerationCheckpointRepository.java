@@ -0,0 +1,47 @@
+package ca.buildsystem.reports.repository;
+
+import ca.buildsystem.reports.model.GenerationCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Repository for managing GenerationCheckpoint entities.
+ */
+@Repository
+public interface GenerationCheckpointRepository extends JpaRepository<GenerationCheckpoint, UUID> {
+
+    /**
+     * Find the IDs of checkpointed reports that no node is currently generating.
+     *
+     * @return The IDs of reports waiting to be resumed
+     */
+    @Query("SELECT c.reportId FROM GenerationCheckpoint c, Report r WHERE r.id = c.reportId AND r.status = 'PENDING'")
+    List<UUID> findResumableReportIds();
+
+    /**
+     * Delete the checkpoints of reports in bulk. The snapshot files are left to the storage
+     * collector.
+     *
+     * @param reportIds The report IDs
+     * @return The number of deleted checkpoints
+     */
+    @Modifying
+    @Query("DELETE FROM GenerationCheckpoint c WHERE c.reportId IN :reportIds")
+    int deleteAllByReportIds(@Param("reportIds") Collection<UUID> reportIds);
+
+    /**
+     * Find which of the given paths are the snapshot of a checkpoint.
+     *
+     * @param paths The file paths
+     * @return The referenced paths
+     */
+    @Query("SELECT c.checkpointPath FROM GenerationCheckpoint c WHERE c.checkpointPath IN :paths")
+    List<String> findReferencedCheckpointPaths(@Param("paths") Collection<String> paths);
+}
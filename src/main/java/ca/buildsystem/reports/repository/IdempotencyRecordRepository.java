@@ -0,0 +1,84 @@
+package ca.buildsystem.reports.repository;
+
+import ca.buildsystem.reports.model.IdempotencyRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+/**
+ * Repository for managing IdempotencyRecord entities.
+ */
+@Repository
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, String> {
+
+    /**
+     * Insert an in-flight record unless the key is already taken. A concurrent insert of the
+     * same key waits for the other transaction and then inserts nothing, instead of failing
+     * and aborting the transaction.
+     *
+     * @param key The scoped idempotency key
+     * @param requestHash The hash of the request payload
+     * @param now The current time
+     * @param expiresAt The time after which the key may be reused
+     * @return 1 if the record was inserted, 0 if the key was taken
+     */
+    @Modifying
+    @Query(value = "INSERT INTO idempotency_keys " +
+                   "(idempotency_key, request_hash, status, created_at, heartbeat_at, expires_at) " +
+                   "VALUES (:key, :requestHash, 'IN_PROGRESS', :now, :now, :expiresAt) " +
+                   "ON CONFLICT DO NOTHING",
+           nativeQuery = true)
+    int insertIfAbsent(@Param("key") String key, @Param("requestHash") String requestHash,
+                       @Param("now") LocalDateTime now, @Param("expiresAt") LocalDateTime expiresAt);
+
+    /**
+     * Delete all records that expired before the given time.
+     *
+     * @param now The current time
+     * @return The number of deleted records
+     */
+    @Modifying
+    @Query("DELETE FROM IdempotencyRecord r WHERE r.expiresAt < :now")
+    int deleteExpired(@Param("now") LocalDateTime now);
+
+    /**
+     * Delete a record if it has expired.
+     *
+     * @param key The scoped idempotency key
+     * @param now The current time
+     * @return The number of deleted records
+     */
+    @Modifying
+    @Query("DELETE FROM IdempotencyRecord r WHERE r.idempotencyKey = :key AND r.expiresAt < :now")
+    int deleteIfExpired(@Param("key") String key, @Param("now") LocalDateTime now);
+
+    /**
+     * Delete an in-flight record whose heartbeat stopped, so that a claim refreshed in the
+     * meantime is left alone.
+     *
+     * @param key The scoped idempotency key
+     * @param threshold Heartbeats older than this are stale
+     * @return The number of deleted records
+     */
+    @Modifying
+    @Query("DELETE FROM IdempotencyRecord r WHERE r.idempotencyKey = :key AND r.status = 'IN_PROGRESS' AND " +
+           "(r.heartbeatAt < :threshold OR (r.heartbeatAt IS NULL AND r.createdAt < :threshold))")
+    int deleteIfAbandoned(@Param("key") String key, @Param("threshold") LocalDateTime threshold);
+
+    /**
+     * Refresh the heartbeat of in-flight requests.
+     *
+     * @param keys The scoped idempotency keys
+     * @param now The current time
+     * @return The number of refreshed records
+     */
+    @Modifying
+    @Query("UPDATE IdempotencyRecord r SET r.heartbeatAt = :now " +
+           "WHERE r.idempotencyKey IN :keys AND r.status = 'IN_PROGRESS'")
+    int touchHeartbeats(@Param("keys") Collection<String> keys, @Param("now") LocalDateTime now);
+}
@@ -0,0 +1,61 @@
+package ca.buildsystem.reports.repository;
+
+import ca.buildsystem.reports.model.LedgerRollup;
+import ca.buildsystem.reports.model.ReportType;
+import ca.buildsystem.reports.model.RollupGranularity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Repository for managing LedgerRollup entities.
+ * Provides bucket lookups for incremental updates and range queries for summary reports.
+ */
+@Repository
+public interface LedgerRollupRepository extends JpaRepository<LedgerRollup, UUID> {
+
+    /**
+     * Find the rollup bucket for a period, project, client and currency.
+     *
+     * @param granularity The rollup granularity
+     * @param sourceType The source report type
+     * @param periodStart The first day of the period
+     * @param projectId The project ID, or {@link LedgerRollup#NO_ID}
+     * @param clientId The client ID, or {@link LedgerRollup#NO_ID}
+     * @param currencyCode The currency code, or {@link LedgerRollup#NO_CURRENCY}
+     * @return An optional rollup for the bucket
+     */
+    Optional<LedgerRollup> findByGranularityAndSourceTypeAndPeriodStartAndProjectIdAndClientIdAndCurrencyCode(
+            RollupGranularity granularity, ReportType sourceType, LocalDate periodStart,
+            UUID projectId, UUID clientId, String currencyCode);
+
+    /**
+     * Find the rollups of a source type whose period starts within a date range.
+     *
+     * @param granularity The rollup granularity
+     * @param sourceType The source report type
+     * @param fromDate The first period start to include
+     * @param toDate The last period start to include
+     * @param projectId The project ID (optional)
+     * @param clientId The client ID (optional)
+     * @return A list of rollups ordered by period start
+     */
+    @Query("SELECT r FROM LedgerRollup r WHERE r.granularity = :granularity AND r.sourceType = :sourceType AND " +
+           "r.periodStart >= :fromDate AND r.periodStart <= :toDate AND " +
+           "(:projectId IS NULL OR r.projectId = :projectId) AND " +
+           "(:clientId IS NULL OR r.clientId = :clientId) " +
+           "ORDER BY r.periodStart")
+    List<LedgerRollup> findForRange(
+            @Param("granularity") RollupGranularity granularity,
+            @Param("sourceType") ReportType sourceType,
+            @Param("fromDate") LocalDate fromDate,
+            @Param("toDate") LocalDate toDate,
+            @Param("projectId") UUID projectId,
+            @Param("clientId") UUID clientId);
+}
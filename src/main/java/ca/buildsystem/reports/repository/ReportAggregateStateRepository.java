@@ -0,0 +1,39 @@
+package ca.buildsystem.reports.repository;
+
+import ca.buildsystem.reports.model.ReportAggregateState;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Repository for managing ReportAggregateState entities.
+ */
+@Repository
+public interface ReportAggregateStateRepository extends JpaRepository<ReportAggregateState, UUID> {
+
+    /**
+     * Delete the aggregate states of reports in bulk. The snapshot files are left to the
+     * storage collector.
+     *
+     * @param reportIds The report IDs
+     * @return The number of deleted states
+     */
+    @Modifying
+    @Query("DELETE FROM ReportAggregateState s WHERE s.reportId IN :reportIds")
+    int deleteAllByReportIds(@Param("reportIds") Collection<UUID> reportIds);
+
+    /**
+     * Find which of the given paths are the snapshot of an aggregate state.
+     *
+     * @param paths The file paths
+     * @return The referenced paths
+     */
+    @Query("SELECT s.statePath FROM ReportAggregateState s WHERE s.statePath IN :paths")
+    List<String> findReferencedStatePaths(@Param("paths") Collection<String> paths);
+}
@@ -0,0 +1,25 @@
+package ca.buildsystem.reports.repository;
+
+import ca.buildsystem.reports.dto.ReportField;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Queries selecting a caller-chosen subset of report columns.
+ */
+public interface ReportFieldsRepository {
+
+    /**
+     * Find reports, selecting only the given fields.
+     * The parameters are not a column and are never selected here.
+     *
+     * @param filter The criteria the reports match
+     * @param fields The fields to select
+     * @param pageable Pagination information
+     * @return A page of rows, each mapping the property names of the fields to their values
+     */
+    Page<Map<String, Object>> findFields(ReportFilter filter, Set<ReportField> fields, Pageable pageable);
+}
@@ -0,0 +1,122 @@
+package ca.buildsystem.reports.repository;
+
+import ca.buildsystem.reports.dto.ReportField;
+import ca.buildsystem.reports.model.Report;
+import ca.buildsystem.reports.model.ReportTemplate;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.TupleElement;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.JoinType;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.data.support.PageableExecutionUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Criteria implementation of {@link ReportFieldsRepository}.
+ * The select list is built from the requested fields, so the database only reads and returns
+ * those columns; the template is only joined when its name is requested.
+ */
+public class ReportFieldsRepositoryImpl implements ReportFieldsRepository {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public Page<Map<String, Object>> findFields(ReportFilter filter, Set<ReportField> fields, Pageable pageable) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<Report> report = query.from(Report.class);
+        Join<Report, ReportTemplate> template = fields.contains(ReportField.TEMPLATE_NAME)
+                ? report.join("template", JoinType.LEFT) : null;
+
+        List<Selection<?>> selections = new ArrayList<>();
+        for (ReportField field : fields) {
+            Selection<?> selection = select(report, template, field);
+            if (selection != null) {
+                selections.add(selection.alias(field.getName()));
+            }
+        }
+        query.multiselect(selections).where(predicates(cb, report, filter));
+        if (pageable.getSort().isSorted()) {
+            query.orderBy(QueryUtils.toOrders(pageable.getSort(), report, cb));
+        }
+
+        TypedQuery<Tuple> typedQuery = entityManager.createQuery(query);
+        if (pageable.isPaged()) {
+            typedQuery.setFirstResult((int) pageable.getOffset());
+            typedQuery.setMaxResults(pageable.getPageSize());
+        }
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (Tuple tuple : typedQuery.getResultList()) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            for (TupleElement<?> element : tuple.getElements()) {
+                row.put(element.getAlias(), tuple.get(element));
+            }
+            rows.add(row);
+        }
+        return PageableExecutionUtils.getPage(rows, pageable, () -> count(filter));
+    }
+
+    private long count(ReportFilter filter) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> query = cb.createQuery(Long.class);
+        Root<Report> report = query.from(Report.class);
+        query.select(cb.count(report)).where(predicates(cb, report, filter));
+        return entityManager.createQuery(query).getSingleResult();
+    }
+
+    private static Selection<?> select(Root<Report> report, Join<Report, ReportTemplate> template, ReportField field) {
+        switch (field) {
+            case PARAMETERS:
+                return null;
+            case TEMPLATE_ID:
+                // The foreign key column; no join needed
+                return report.get("template").get("id");
+            case TEMPLATE_NAME:
+                return template.get("name");
+            case PUBLIC:
+                return report.get("isPublic");
+            default:
+                return report.get(field.getName());
+        }
+    }
+
+    private static Predicate[] predicates(CriteriaBuilder cb, Root<Report> report, ReportFilter filter) {
+        List<Predicate> predicates = new ArrayList<>();
+        if (filter.getType() != null) {
+            predicates.add(cb.equal(report.get("type"), filter.getType()));
+        }
+        if (filter.getClientId() != null) {
+            predicates.add(cb.equal(report.get("clientId"), filter.getClientId()));
+        }
+        if (filter.getProjectId() != null) {
+            predicates.add(cb.equal(report.get("projectId"), filter.getProjectId()));
+        }
+        if (filter.getParentReportId() != null) {
+            predicates.add(cb.equal(report.get("parentReportId"), filter.getParentReportId()));
+        }
+        if (filter.getCreatedFrom() != null) {
+            predicates.add(cb.greaterThanOrEqualTo(report.<LocalDateTime>get("createdAt"), filter.getCreatedFrom()));
+        }
+        if (filter.getCreatedTo() != null) {
+            predicates.add(cb.lessThanOrEqualTo(report.<LocalDateTime>get("createdAt"), filter.getCreatedTo()));
+        }
+        return predicates.toArray(new Predicate[0]);
+    }
+}
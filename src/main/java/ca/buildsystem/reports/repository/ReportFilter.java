@@ -0,0 +1,22 @@
+package ca.buildsystem.reports.repository;
+
+import ca.buildsystem.reports.model.ReportType;
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Criteria of a report list query; unset criteria match every report.
+ */
+@Value
+@Builder
+public class ReportFilter {
+    ReportType type;
+    UUID clientId;
+    UUID projectId;
+    UUID parentReportId;
+    LocalDateTime createdFrom;
+    LocalDateTime createdTo;
+}
@@ -3,10 +3,12 @@ package ca.buildsystem.reports.repository;
 import ca.buildsystem.reports.model.ParameterType;
 import ca.buildsystem.reports.model.ReportParameter;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -42,6 +44,14 @@ public interface ReportParameterRepository extends JpaRepository<ReportParameter
      */
     List<ReportParameter> findByReportIdOrderByDisplayOrderAsc(UUID reportId);
     
+    /**
+     * Find the parameters of several reports, ordered by display order.
+     *
+     * @param reportIds The report IDs
+     * @return The parameters of the reports, ordered by display order
+     */
+    List<ReportParameter> findByReportIdInOrderByDisplayOrderAsc(Collection<UUID> reportIds);
+    
     /**
      * Find parameters by template ID, ordered by display order.
      *
@@ -109,6 +119,16 @@ public interface ReportParameterRepository extends JpaRepository<ReportParameter
      */
     void deleteByReportId(UUID reportId);
     
+    /**
+     * Delete all parameters of several reports in one statement.
+     *
+     * @param reportIds The report IDs to delete parameters for
+     * @return The number of deleted parameters
+     */
+    @Modifying
+    @Query("DELETE FROM ReportParameter p WHERE p.report.id IN :reportIds")
+    int deleteAllByReportIds(@Param("reportIds") Collection<UUID> reportIds);
+    
     /**
      * Delete all parameters for a template.
      *
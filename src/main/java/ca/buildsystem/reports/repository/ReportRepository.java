@@ -1,15 +1,21 @@
 package ca.buildsystem.reports.repository;
 
 import ca.buildsystem.reports.model.Report;
+import ca.buildsystem.reports.model.ReportFormat;
 import ca.buildsystem.reports.model.ReportType;
+import ca.buildsystem.reports.model.StorageTier;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -19,7 +25,35 @@ import java.util.UUID;
  * Provides methods for CRUD operations and custom queries for reports.
  */
 @Repository
-public interface ReportRepository extends JpaRepository<Report, UUID> {
+public interface ReportRepository extends JpaRepository<Report, UUID>, ReportFieldsRepository {
+
+    /**
+     * Filter of {@link #findByMultipleCriteria}; every criterion is optional.
+     */
+    String MULTIPLE_CRITERIA =
+            "(:type IS NULL OR r.type = :type) AND " +
+            "(:clientId IS NULL OR r.clientId = :clientId) AND " +
+            "(:projectId IS NULL OR r.projectId = :projectId) AND " +
+            "(:startDate IS NULL OR r.createdAt >= :startDate) AND " +
+            "(:endDate IS NULL OR r.createdAt <= :endDate)";
+
+    /**
+     * Select list of the {@link ReportVersion} queries. The template is outer joined, since its
+     * name is part of the report's representation.
+     */
+    String VERSION =
+            "SELECT r.id AS id, r.updatedAt AS updatedAt, r.status AS status, " +
+            "r.lastGenerated AS lastGenerated, r.fileSize AS fileSize, r.storageTier AS storageTier, " +
+            "t.id AS templateId, t.name AS templateName " +
+            "FROM Report r LEFT JOIN r.template t ";
+
+    /**
+     * Filter of {@link #findTieringCandidates} and {@link #findTieringCandidatesAfter}.
+     */
+    String TIERING_CANDIDATES =
+            "r.status = 'COMPLETED' AND r.filePath IS NOT NULL AND " +
+            "(r.storageTier IS NULL OR r.storageTier = ca.buildsystem.reports.model.StorageTier.HOT) AND " +
+            "r.format IN :formats AND r.lastGenerated < :before";
 
     /**
      * Find reports by their type.
@@ -48,6 +82,15 @@ public interface ReportRepository extends JpaRepository<Report, UUID> {
      */
     Page<Report> findByProjectId(UUID projectId, Pageable pageable);
     
+    /**
+     * Find the child reports of a burst generation.
+     *
+     * @param parentReportId The ID of the burst's parent report
+     * @param pageable Pagination information
+     * @return A page of child reports
+     */
+    Page<Report> findByParentReportId(UUID parentReportId, Pageable pageable);
+    
     /**
      * Find reports created by a specific user.
      *
@@ -113,6 +156,95 @@ public interface ReportRepository extends JpaRepository<Report, UUID> {
      */
     Optional<Report> findByIsPublicTrueAndAccessToken(String accessToken);
     
+    /**
+     * Find the ID of a public report by the hash of its access token, using the hash index.
+     *
+     * @param accessTokenHash The hex SHA-256 of the access token
+     * @return An optional containing the report ID
+     */
+    @Query("SELECT r.id FROM Report r WHERE r.isPublic = true AND r.accessTokenHash = :accessTokenHash")
+    Optional<UUID> findPublicReportIdByAccessTokenHash(@Param("accessTokenHash") String accessTokenHash);
+    
+    /**
+     * Find reports with an access token but no token hash, written before hashes were stored.
+     *
+     * @param pageable Pagination information bounding the batch size
+     * @return A batch of reports to backfill
+     */
+    List<Report> findByAccessTokenIsNotNullAndAccessTokenHashIsNull(Pageable pageable);
+    
+    /**
+     * Find the version of a report.
+     *
+     * @param id The report ID
+     * @return An optional containing the report version if found
+     */
+    @Query(VERSION + "WHERE r.id = :id")
+    Optional<ReportVersion> findVersionById(@Param("id") UUID id);
+    
+    /**
+     * Find the versions of reports by their IDs.
+     *
+     * @param ids The report IDs
+     * @return The versions of the reports that exist
+     */
+    @Query(VERSION + "WHERE r.id IN :ids")
+    List<ReportVersion> findVersionsByIdIn(@Param("ids") Collection<UUID> ids);
+    
+    /**
+     * Find the versions of all reports.
+     *
+     * @param pageable Pagination information
+     * @return A page of report versions
+     */
+    @Query(value = VERSION, countQuery = "SELECT COUNT(r) FROM Report r")
+    Page<ReportVersion> findVersions(Pageable pageable);
+    
+    /**
+     * Find the versions of reports by their type.
+     *
+     * @param type The report type to search for
+     * @param pageable Pagination information
+     * @return A page of report versions matching the specified type
+     */
+    @Query(value = VERSION + "WHERE r.type = :type",
+           countQuery = "SELECT COUNT(r) FROM Report r WHERE r.type = :type")
+    Page<ReportVersion> findVersionsByType(@Param("type") ReportType type, Pageable pageable);
+    
+    /**
+     * Find the versions of reports by client ID.
+     *
+     * @param clientId The client ID to search for
+     * @param pageable Pagination information
+     * @return A page of report versions associated with the specified client
+     */
+    @Query(value = VERSION + "WHERE r.clientId = :clientId",
+           countQuery = "SELECT COUNT(r) FROM Report r WHERE r.clientId = :clientId")
+    Page<ReportVersion> findVersionsByClientId(@Param("clientId") UUID clientId, Pageable pageable);
+    
+    /**
+     * Find the versions of reports by project ID.
+     *
+     * @param projectId The project ID to search for
+     * @param pageable Pagination information
+     * @return A page of report versions associated with the specified project
+     */
+    @Query(value = VERSION + "WHERE r.projectId = :projectId",
+           countQuery = "SELECT COUNT(r) FROM Report r WHERE r.projectId = :projectId")
+    Page<ReportVersion> findVersionsByProjectId(@Param("projectId") UUID projectId, Pageable pageable);
+    
+    /**
+     * Find the versions of the child reports of a burst generation.
+     *
+     * @param parentReportId The ID of the burst's parent report
+     * @param pageable Pagination information
+     * @return A page of child report versions
+     */
+    @Query(value = VERSION + "WHERE r.parentReportId = :parentReportId",
+           countQuery = "SELECT COUNT(r) FROM Report r WHERE r.parentReportId = :parentReportId")
+    Page<ReportVersion> findVersionsByParentReportId(@Param("parentReportId") UUID parentReportId,
+                                                     Pageable pageable);
+    
     /**
      * Find reports by multiple criteria.
      *
@@ -124,17 +256,297 @@ public interface ReportRepository extends JpaRepository<Report, UUID> {
      * @param pageable Pagination information
      * @return A page of reports matching the specified criteria
      */
-    @Query("SELECT r FROM Report r WHERE " +
+    @Query("SELECT r FROM Report r WHERE " + MULTIPLE_CRITERIA)
+    Page<Report> findByMultipleCriteria(
+            @Param("type") ReportType type,
+            @Param("clientId") UUID clientId,
+            @Param("projectId") UUID projectId,
+            @Param("startDate") LocalDateTime startDate,
+            @Param("endDate") LocalDateTime endDate,
+            Pageable pageable);
+    
+    /**
+     * Find the versions of the reports matching the specified criteria.
+     * Selects the same page as {@link #findByMultipleCriteria} with the same arguments.
+     *
+     * @param type The report type (optional)
+     * @param clientId The client ID (optional)
+     * @param projectId The project ID (optional)
+     * @param startDate The start date (optional)
+     * @param endDate The end date (optional)
+     * @param pageable Pagination information
+     * @return A page of report versions matching the specified criteria
+     */
+    @Query(value = VERSION + "WHERE " + MULTIPLE_CRITERIA,
+           countQuery = "SELECT COUNT(r) FROM Report r WHERE " + MULTIPLE_CRITERIA)
+    Page<ReportVersion> findVersionsByMultipleCriteria(
+            @Param("type") ReportType type,
+            @Param("clientId") UUID clientId,
+            @Param("projectId") UUID projectId,
+            @Param("startDate") LocalDateTime startDate,
+            @Param("endDate") LocalDateTime endDate,
+            Pageable pageable);
+    
+    /**
+     * Find completed reports with a file matching the specified criteria, oldest first.
+     * Uses the same criteria as {@link #findByMultipleCriteria}, plus the parent of burst reports.
+     *
+     * @param parentReportId The ID of a burst's parent report (optional)
+     * @param type The report type (optional)
+     * @param clientId The client ID (optional)
+     * @param projectId The project ID (optional)
+     * @param startDate The start date (optional)
+     * @param endDate The end date (optional)
+     * @param pageable The maximum number of reports to return
+     * @return The completed reports matching the criteria
+     */
+    @Query("SELECT r FROM Report r WHERE r.status = 'COMPLETED' AND r.filePath IS NOT NULL AND " +
+           "(:parentReportId IS NULL OR r.parentReportId = :parentReportId) AND " +
            "(:type IS NULL OR r.type = :type) AND " +
            "(:clientId IS NULL OR r.clientId = :clientId) AND " +
            "(:projectId IS NULL OR r.projectId = :projectId) AND " +
            "(:startDate IS NULL OR r.createdAt >= :startDate) AND " +
-           "(:endDate IS NULL OR r.createdAt <= :endDate)")
-    Page<Report> findByMultipleCriteria(
+           "(:endDate IS NULL OR r.createdAt <= :endDate) " +
+           "ORDER BY r.createdAt")
+    List<Report> findCompletedByMultipleCriteria(
+            @Param("parentReportId") UUID parentReportId,
             @Param("type") ReportType type,
             @Param("clientId") UUID clientId,
             @Param("projectId") UUID projectId,
             @Param("startDate") LocalDateTime startDate,
             @Param("endDate") LocalDateTime endDate,
             Pageable pageable);
+    
+    /**
+     * Find completed hot-tier reports of the given formats generated before an instant, oldest first.
+     * Reports from before storage tiers were tracked have no tier and count as hot.
+     *
+     * @param formats The report formats worth recompressing
+     * @param before The instant before which the report was last generated
+     * @param pageable The maximum number of reports to return
+     * @return The first reports to move to the cold tier
+     */
+    @Query("SELECT r FROM Report r WHERE " + TIERING_CANDIDATES + " ORDER BY r.lastGenerated, r.id")
+    List<Report> findTieringCandidates(
+            @Param("formats") Collection<ReportFormat> formats,
+            @Param("before") LocalDateTime before,
+            Pageable pageable);
+    
+    /**
+     * Find the tiering candidates following a given one, in the same order.
+     * Paging by the last report seen rather than by offset skips the reports that failed to move
+     * and are still candidates, as well as those moved meanwhile.
+     *
+     * @param formats The report formats worth recompressing
+     * @param before The instant before which the report was last generated
+     * @param afterGenerated The last generation of the last report seen
+     * @param afterId The ID of the last report seen
+     * @param pageable The maximum number of reports to return
+     * @return The next reports to move to the cold tier
+     */
+    @Query("SELECT r FROM Report r WHERE " + TIERING_CANDIDATES + " AND (r.lastGenerated > :afterGenerated " +
+           "OR (r.lastGenerated = :afterGenerated AND r.id > :afterId)) ORDER BY r.lastGenerated, r.id")
+    List<Report> findTieringCandidatesAfter(
+            @Param("formats") Collection<ReportFormat> formats,
+            @Param("before") LocalDateTime before,
+            @Param("afterGenerated") LocalDateTime afterGenerated,
+            @Param("afterId") UUID afterId,
+            Pageable pageable);
+    
+    /**
+     * Point a report at its file in another storage tier, unless it was regenerated meanwhile.
+     *
+     * @param id The report ID
+     * @param expectedPath The file the report must still point at
+     * @param filePath The file in the new tier
+     * @param tier The new storage tier
+     * @param storedSize The size of the file in the new tier
+     * @param tieredAt The instant of the move
+     * @return The number of updated reports, 0 if the report changed
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE Report r SET r.filePath = :filePath, r.storageTier = :tier, r.storedSize = :storedSize, " +
+           "r.tieredAt = :tieredAt WHERE r.id = :id AND r.filePath = :expectedPath AND r.status = 'COMPLETED'")
+    int moveToTier(@Param("id") UUID id,
+                   @Param("expectedPath") String expectedPath,
+                   @Param("filePath") String filePath,
+                   @Param("tier") StorageTier tier,
+                   @Param("storedSize") Long storedSize,
+                   @Param("tieredAt") LocalDateTime tieredAt);
+    
+    /**
+     * Find the most recently generated reports of a type and format with a recorded duration.
+     *
+     * @param type The report type
+     * @param format The report format
+     * @return Up to 20 reports, most recent first
+     */
+    List<Report> findTop20ByTypeAndFormatAndGenerationMillisIsNotNullOrderByLastGeneratedDesc(
+            ReportType type, ReportFormat format);
+    
+    /**
+     * Find a report with its template and parameters loaded.
+     *
+     * @param id The report ID
+     * @return An optional containing the report if found
+     */
+    @EntityGraph(attributePaths = {"template", "parameters"})
+    Optional<Report> findWithTemplateById(UUID id);
+    
+    /**
+     * Mark a report as generating on the given node unless a generation is already running.
+     *
+     * @param id The report ID
+     * @param ownerNode The node taking ownership of the generation
+     * @param now The current time, recorded as the first heartbeat
+     * @return 1 if the report was claimed, 0 otherwise
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE Report r SET r.status = 'GENERATING', r.ownerNode = :ownerNode, r.heartbeatAt = :now " +
+           "WHERE r.id = :id AND (r.status IS NULL OR r.status <> 'GENERATING')")
+    int claimForGeneration(@Param("id") UUID id, @Param("ownerNode") String ownerNode, @Param("now") LocalDateTime now);
+    
+    /**
+     * Release a node's claim on a report whose generation never started.
+     *
+     * @param id The report ID
+     * @param ownerNode The node that claimed the report
+     * @param status The status to restore
+     * @return 1 if the claim was released, 0 if the node no longer holds it
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE Report r SET r.status = :status, r.ownerNode = NULL, r.heartbeatAt = NULL " +
+           "WHERE r.id = :id AND r.ownerNode = :ownerNode AND r.status = 'GENERATING'")
+    int releaseClaim(@Param("id") UUID id, @Param("ownerNode") String ownerNode, @Param("status") String status);
+    
+    /**
+     * Refresh the heartbeat of the generations a node is running.
+     *
+     * @param ids The IDs of the reports being generated
+     * @param ownerNode The node running the generations
+     * @param now The current time
+     * @return The number of heartbeats refreshed
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE Report r SET r.heartbeatAt = :now " +
+           "WHERE r.id IN :ids AND r.ownerNode = :ownerNode AND r.status = 'GENERATING'")
+    int touchHeartbeats(@Param("ids") Collection<UUID> ids, @Param("ownerNode") String ownerNode,
+                        @Param("now") LocalDateTime now);
+    
+    /**
+     * Record the file a running generation is writing.
+     *
+     * @param id The report ID
+     * @param path The path of the file being written
+     * @return The number of updated reports
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE Report r SET r.workingFilePath = :path WHERE r.id = :id")
+    int updateWorkingFilePath(@Param("id") UUID id, @Param("path") String path);
+    
+    /**
+     * Find generations whose owner stopped sending heartbeats, or that belong to a node that restarted.
+     *
+     * @param threshold Heartbeats older than this are stale
+     * @param restartedNode A node whose generations are all stale, or null
+     * @param pageable Pagination information bounding the batch size
+     * @return A batch of stale generating reports
+     */
+    @Query("SELECT r FROM Report r WHERE r.status = 'GENERATING' AND (r.heartbeatAt < :threshold OR " +
+           "(r.heartbeatAt IS NULL AND r.updatedAt < :threshold) OR r.ownerNode = :restartedNode)")
+    List<Report> findStaleGenerations(@Param("threshold") LocalDateTime threshold,
+                                      @Param("restartedNode") String restartedNode,
+                                      Pageable pageable);
+    
+    /**
+     * Move stale generations to a new status, re-checking staleness so that a generation
+     * whose heartbeat resumed in the meantime is left alone.
+     *
+     * @param ids The IDs of the stale reports
+     * @param status The new status
+     * @param nextGeneration The next generation time to set
+     * @param threshold Heartbeats older than this are stale
+     * @param restartedNode A node whose generations are all stale, or null
+     * @return The number of recovered reports
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE Report r SET r.status = :status, r.nextGeneration = :nextGeneration, " +
+           "r.ownerNode = NULL, r.heartbeatAt = NULL, r.recoveryCount = COALESCE(r.recoveryCount, 0) + 1 " +
+           "WHERE r.id IN :ids AND r.status = 'GENERATING' AND (r.heartbeatAt < :threshold OR " +
+           "(r.heartbeatAt IS NULL AND r.updatedAt < :threshold) OR r.ownerNode = :restartedNode)")
+    int recoverStaleGenerations(@Param("ids") Collection<UUID> ids,
+                                @Param("status") String status,
+                                @Param("nextGeneration") LocalDateTime nextGeneration,
+                                @Param("threshold") LocalDateTime threshold,
+                                @Param("restartedNode") String restartedNode);
+    
+    /**
+     * Clear the working file of reports whose partial output has been removed.
+     *
+     * @param ids The report IDs
+     * @return The number of updated reports
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE Report r SET r.workingFilePath = NULL WHERE r.id IN :ids AND r.status <> 'GENERATING'")
+    int clearWorkingFilePaths(@Param("ids") Collection<UUID> ids);
+    
+    /**
+     * Find reports whose last generation, or creation if never generated, is older than the
+     * retention period. Generations in progress are never expired.
+     *
+     * @param before The end of the retention period
+     * @param pageable Pagination information bounding the batch size
+     * @return A batch of expired reports, oldest first
+     */
+    @Query("SELECT r FROM Report r WHERE COALESCE(r.lastGenerated, r.createdAt) < :before " +
+           "AND (r.status IS NULL OR r.status <> 'GENERATING') ORDER BY r.createdAt")
+    List<Report> findExpiredReports(@Param("before") LocalDateTime before, Pageable pageable);
+    
+    /**
+     * Re-check which of the given reports are still expired, so that a report regenerated since
+     * it was selected is kept.
+     *
+     * @param ids The report IDs
+     * @param before The end of the retention period
+     * @return The IDs of the reports that are still expired
+     */
+    @Query("SELECT r.id FROM Report r WHERE r.id IN :ids AND COALESCE(r.lastGenerated, r.createdAt) < :before " +
+           "AND (r.status IS NULL OR r.status <> 'GENERATING')")
+    List<UUID> findExpiredIds(@Param("ids") Collection<UUID> ids, @Param("before") LocalDateTime before);
+    
+    /**
+     * Delete reports in bulk, without loading them.
+     * Parameters, aggregate states and checkpoints must be deleted first.
+     *
+     * @param ids The report IDs
+     * @return The number of deleted reports
+     */
+    @Modifying
+    @Query("DELETE FROM Report r WHERE r.id IN :ids")
+    int deleteAllByIds(@Param("ids") Collection<UUID> ids);
+    
+    /**
+     * Find which of the given paths are the file of a report.
+     *
+     * @param paths The file paths
+     * @return The referenced paths
+     */
+    @Query("SELECT r.filePath FROM Report r WHERE r.filePath IN :paths")
+    List<String> findReferencedFilePaths(@Param("paths") Collection<String> paths);
+    
+    /**
+     * Find which of the given paths are the working file of a report being generated.
+     *
+     * @param paths The file paths
+     * @return The referenced paths
+     */
+    @Query("SELECT r.workingFilePath FROM Report r WHERE r.workingFilePath IN :paths")
+    List<String> findReferencedWorkingFilePaths(@Param("paths") Collection<String> paths);
 }
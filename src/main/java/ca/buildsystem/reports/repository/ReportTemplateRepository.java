@@ -2,9 +2,11 @@ package ca.buildsystem.reports.repository;
 
 import ca.buildsystem.reports.model.ReportTemplate;
 import ca.buildsystem.reports.model.ReportType;
+import jakarta.persistence.QueryHint;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -18,6 +20,23 @@ import java.util.UUID;
 @Repository
 public interface ReportTemplateRepository extends JpaRepository<ReportTemplate, UUID> {
 
+    /**
+     * Find the version of a template.
+     *
+     * @param id The template ID
+     * @return An optional containing the template version if found
+     */
+    Optional<TemplateVersion> findVersionById(UUID id);
+    
+    /**
+     * Find all templates, projected.
+     *
+     * @param pageable Pagination information
+     * @param projection The projection to select
+     * @return A page of projected templates
+     */
+    <T> Page<T> findAllBy(Pageable pageable, Class<T> projection);
+    
     /**
      * Find templates by their type.
      *
@@ -27,14 +46,41 @@ public interface ReportTemplateRepository extends JpaRepository<ReportTemplate,
      */
     Page<ReportTemplate> findByType(ReportType type, Pageable pageable);
     
+    /**
+     * Find templates by their type, projected.
+     *
+     * @param type The report type to search for
+     * @param pageable Pagination information
+     * @param projection The projection to select
+     * @return A page of projected templates matching the specified type
+     */
+    <T> Page<T> findByType(ReportType type, Pageable pageable, Class<T> projection);
+    
     /**
      * Find active templates.
      *
      * @param pageable Pagination information
      * @return A page of active templates
      */
+    @QueryHints({
+            @QueryHint(name = "org.hibernate.cacheable", value = "true"),
+            @QueryHint(name = "org.hibernate.cacheRegion", value = ReportTemplate.QUERY_CACHE_REGION)
+    })
     Page<ReportTemplate> findByActiveTrue(Pageable pageable);
     
+    /**
+     * Find active templates, projected.
+     *
+     * @param pageable Pagination information
+     * @param projection The projection to select
+     * @return A page of projected active templates
+     */
+    @QueryHints({
+            @QueryHint(name = "org.hibernate.cacheable", value = "true"),
+            @QueryHint(name = "org.hibernate.cacheRegion", value = ReportTemplate.QUERY_CACHE_REGION)
+    })
+    <T> Page<T> findByActiveTrue(Pageable pageable, Class<T> projection);
+    
     /**
      * Find system templates.
      *
@@ -50,6 +96,10 @@ public interface ReportTemplateRepository extends JpaRepository<ReportTemplate,
      * @param pageable Pagination information
      * @return A page of active templates matching the specified type
      */
+    @QueryHints({
+            @QueryHint(name = "org.hibernate.cacheable", value = "true"),
+            @QueryHint(name = "org.hibernate.cacheRegion", value = ReportTemplate.QUERY_CACHE_REGION)
+    })
     Page<ReportTemplate> findByTypeAndActiveTrue(ReportType type, Pageable pageable);
     
     /**
@@ -93,4 +143,12 @@ public interface ReportTemplateRepository extends JpaRepository<ReportTemplate,
      * @return A list of active non-system templates
      */
     List<ReportTemplate> findByActiveTrueAndSystemTemplateFalse();
+    
+    /**
+     * Find all active non-system templates, projected.
+     *
+     * @param projection The projection to select
+     * @return A list of projected active non-system templates
+     */
+    <T> List<T> findByActiveTrueAndSystemTemplateFalse(Class<T> projection);
 }
@@ -0,0 +1,31 @@
+package ca.buildsystem.reports.repository;
+
+import ca.buildsystem.reports.model.StorageTier;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Projection of the report columns that change whenever its representation changes.
+ * Generation, recovery and tiering update reports in bulk without touching {@code updatedAt},
+ * so their columns are part of the version too, and so is the name of the template, which is
+ * shown with the report but renamed on the template alone.
+ */
+public interface ReportVersion {
+
+    UUID getId();
+
+    LocalDateTime getUpdatedAt();
+
+    String getStatus();
+
+    LocalDateTime getLastGenerated();
+
+    Long getFileSize();
+
+    StorageTier getStorageTier();
+
+    UUID getTemplateId();
+
+    String getTemplateName();
+}
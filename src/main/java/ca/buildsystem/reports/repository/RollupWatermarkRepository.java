@@ -0,0 +1,30 @@
+package ca.buildsystem.reports.repository;
+
+import ca.buildsystem.reports.model.ReportType;
+import ca.buildsystem.reports.model.RollupWatermark;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+/**
+ * Repository for managing RollupWatermark entities.
+ */
+@Repository
+public interface RollupWatermarkRepository extends JpaRepository<RollupWatermark, ReportType> {
+
+    /**
+     * Find the watermark of a source type and lock it until the transaction ends, so that
+     * corrections and the daily rollup see the same watermark.
+     *
+     * @param sourceType The source report type
+     * @return An optional containing the locked watermark
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT w FROM RollupWatermark w WHERE w.sourceType = :sourceType")
+    Optional<RollupWatermark> findForUpdate(@Param("sourceType") ReportType sourceType);
+}
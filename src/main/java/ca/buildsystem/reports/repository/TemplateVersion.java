@@ -0,0 +1,25 @@
+package ca.buildsystem.reports.repository;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Projection of the template columns that change whenever its representation changes.
+ * {@code updatedAt} alone can miss two updates within the clock's resolution, so the columns
+ * that are edited most, and who edited them, are part of the version too; the content is not,
+ * to keep the query small.
+ */
+public interface TemplateVersion {
+
+    UUID getId();
+
+    LocalDateTime getUpdatedAt();
+
+    String getUpdatedBy();
+
+    String getName();
+
+    String getVersion();
+
+    boolean isActive();
+}
@@ -0,0 +1,77 @@
+package ca.buildsystem.reports.security;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.time.Instant;
+import java.util.Set;
+
+/**
+ * Authentication built from a verified JWT.
+ * Instances are immutable and shared by every request carrying the same token, so they hold no
+ * per-request details; the authorities set is shared by every token with the same roles.
+ */
+public final class JwtAuthentication implements Authentication {
+
+    private final String username;
+    private final Set<GrantedAuthority> authorities;
+    private final Instant expiresAt;
+
+    JwtAuthentication(String username, Set<GrantedAuthority> authorities, Instant expiresAt) {
+        this.username = username;
+        this.authorities = authorities;
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * Get the expiry of the token; tokens without one are rejected.
+     *
+     * @return The expiry
+     */
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+
+    @Override
+    public String getName() {
+        return username;
+    }
+
+    @Override
+    public Set<GrantedAuthority> getAuthorities() {
+        return authorities;
+    }
+
+    @Override
+    public Object getCredentials() {
+        return null;
+    }
+
+    @Override
+    public Object getDetails() {
+        return null;
+    }
+
+    @Override
+    public Object getPrincipal() {
+        return username;
+    }
+
+    @Override
+    public boolean isAuthenticated() {
+        return true;
+    }
+
+    @Override
+    public void setAuthenticated(boolean authenticated) {
+        if (authenticated) {
+            return;
+        }
+        throw new IllegalArgumentException("A verified JWT cannot be marked unauthenticated");
+    }
+
+    @Override
+    public String toString() {
+        return "JwtAuthentication[" + username + ", " + authorities + "]";
+    }
+}
@@ -1,9 +1,7 @@
 package ca.buildsystem.reports.security;
 
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import io.jsonwebtoken.JwtException;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 import org.springframework.web.filter.OncePerRequestFilter;
@@ -16,13 +14,12 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.List;
-import java.util.stream.Collectors;
 
 /**
  * Filter for JWT authentication.
  * Validates JWT tokens and sets up Spring Security context.
+ * Verification is cached per token by {@link JwtTokenVerifier}; invalid tokens leave the
+ * request unauthenticated.
  */
 @Component
 @RequiredArgsConstructor
@@ -32,6 +29,8 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     private static final String AUTHORIZATION_HEADER = "Authorization";
     private static final String BEARER_PREFIX = "Bearer ";
 
+    private final JwtTokenVerifier tokenVerifier;
+
     /**
      * Filters incoming requests to validate JWT tokens.
      */
@@ -40,27 +39,15 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             throws ServletException, IOException {
         try {
             String jwt = getJwtFromRequest(request);
-            
-            // In a real implementation, this would validate the token
-            // For now, we'll just check if it exists and set up a mock authentication
             if (StringUtils.hasText(jwt)) {
-                // Mock user details - in a real implementation, these would come from the token
-                String username = "user"; // This would be extracted from the token
-                List<SimpleGrantedAuthority> authorities = Arrays.asList("ROLE_USER", "ROLE_ADMIN")
-                        .stream()
-                        .map(SimpleGrantedAuthority::new)
-                        .collect(Collectors.toList());
-                
-                UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
-                        username, null, authorities);
-                authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
-                
-                SecurityContextHolder.getContext().setAuthentication(authentication);
+                SecurityContextHolder.getContext().setAuthentication(tokenVerifier.verify(jwt));
             }
+        } catch (JwtException ex) {
+            log.debug("Rejected JWT: {}", ex.getMessage());
         } catch (Exception ex) {
             log.error("Could not set user authentication in security context", ex);
         }
-        
+
         filterChain.doFilter(request, response);
     }
 
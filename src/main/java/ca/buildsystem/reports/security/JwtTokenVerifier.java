@@ -0,0 +1,165 @@
+package ca.buildsystem.reports.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Verifier of the bearer tokens presented to the API.
+ * Clients send the same token on every request until it expires, so verified tokens are cached
+ * by digest until their expiry, capped by a maximum time to live; only the first request with a
+ * token pays for the signature check and claim parsing. Tokens must carry an expiry. Authorities
+ * sets are immutable and shared by every token with the same roles. Rejected tokens are not cached.
+ */
+@Component
+public class JwtTokenVerifier {
+
+    private static final String ROLE_PREFIX = "ROLE_";
+
+    private final JwtParser parser;
+    private final String rolesClaim;
+    private final Cache<String, JwtAuthentication> verified;
+    private final ConcurrentMap<Set<String>, Set<GrantedAuthority>> authoritySets = new ConcurrentHashMap<>();
+
+    public JwtTokenVerifier(MeterRegistry meterRegistry,
+                            @Value("${jwt.secret}") String secret,
+                            @Value("${app.security.jwt.roles-claim:roles}") String rolesClaim,
+                            @Value("${app.security.jwt.clock-skew-seconds:30}") long clockSkewSeconds,
+                            @Value("${app.security.jwt.cache.max-entries:50000}") long maxEntries,
+                            @Value("${app.security.jwt.cache.max-ttl-seconds:900}") long maxTtlSeconds) {
+        this.parser = Jwts.parserBuilder()
+                .setSigningKey(Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8)))
+                .setAllowedClockSkewSeconds(clockSkewSeconds)
+                .build();
+        this.rolesClaim = rolesClaim;
+        this.verified = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfter(new TokenExpiry(Duration.ofSeconds(maxTtlSeconds).toNanos()))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, verified, "verifiedJwts");
+    }
+
+    /**
+     * Verify a token, using the cached result if it was verified before.
+     *
+     * @param token The compact JWT
+     * @return The authentication of the token
+     * @throws JwtException if the token is malformed, expired, wrongly signed or has no expiry
+     */
+    public JwtAuthentication verify(String token) {
+        String digest = digest(token);
+        JwtAuthentication cached = verified.getIfPresent(digest);
+        // The cache expires entries lazily; never serve a token past its expiry
+        if (cached != null && cached.getExpiresAt().isAfter(Instant.now())) {
+            return cached;
+        }
+        JwtAuthentication authentication = parse(token);
+        verified.put(digest, authentication);
+        return authentication;
+    }
+
+    private JwtAuthentication parse(String token) {
+        Claims claims = parser.parseClaimsJws(token).getBody();
+        if (claims.getSubject() == null) {
+            throw new JwtException("Token has no subject");
+        }
+        // A token without an expiry would stay valid forever once leaked
+        if (claims.getExpiration() == null) {
+            throw new JwtException("Token has no expiration");
+        }
+        return new JwtAuthentication(claims.getSubject(), authorities(claims.get(rolesClaim)),
+                claims.getExpiration().toInstant());
+    }
+
+    /**
+     * Get the shared authorities set for the roles of a token.
+     * The claim may be a list or a comma-separated string; roles are prefixed as Spring expects.
+     */
+    private Set<GrantedAuthority> authorities(Object claim) {
+        Set<String> roles = new TreeSet<>();
+        if (claim instanceof Collection<?> values) {
+            values.forEach(value -> addRole(roles, String.valueOf(value)));
+        } else if (claim instanceof String value) {
+            for (String role : value.split(",")) {
+                addRole(roles, role);
+            }
+        }
+        return authoritySets.computeIfAbsent(roles, key -> {
+            Set<GrantedAuthority> authorities = new LinkedHashSet<>();
+            key.forEach(role -> authorities.add(new SimpleGrantedAuthority(role)));
+            return Set.copyOf(authorities);
+        });
+    }
+
+    private static void addRole(Set<String> roles, String role) {
+        String trimmed = role.trim();
+        if (!trimmed.isEmpty()) {
+            roles.add(trimmed.startsWith(ROLE_PREFIX) ? trimmed : ROLE_PREFIX + trimmed);
+        }
+    }
+
+    private static String digest(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Expires each entry with its token, and no later than the maximum time to live.
+     */
+    private static final class TokenExpiry implements Expiry<String, JwtAuthentication> {
+
+        private final long maxTtlNanos;
+
+        TokenExpiry(long maxTtlNanos) {
+            this.maxTtlNanos = maxTtlNanos;
+        }
+
+        @Override
+        public long expireAfterCreate(String key, JwtAuthentication value, long currentTime) {
+            Duration remaining = Duration.between(Instant.now(), value.getExpiresAt());
+            if (remaining.isNegative()) {
+                return 0;
+            }
+            return remaining.compareTo(Duration.ofNanos(maxTtlNanos)) < 0 ? remaining.toNanos() : maxTtlNanos;
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, JwtAuthentication value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, JwtAuthentication value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package ca.buildsystem.reports.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * Helpers for the access tokens of public reports.
+ * Tokens are random UUIDs; lookups go through the SHA-256 of the token so that the indexed
+ * column never holds a usable token.
+ */
+public final class AccessTokens {
+
+    private static final Pattern FORMAT =
+            Pattern.compile("[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}");
+
+    private AccessTokens() {
+    }
+
+    /**
+     * Create a new access token.
+     *
+     * @return The token
+     */
+    public static String generate() {
+        return UUID.randomUUID().toString();
+    }
+
+    /**
+     * Check whether a string can be an access token, so malformed ones are rejected without a lookup.
+     *
+     * @param token The candidate token
+     * @return true if the token has the format of a generated token
+     */
+    public static boolean isWellFormed(String token) {
+        return token != null && token.length() == 36 && FORMAT.matcher(token).matches();
+    }
+
+    /**
+     * Hash an access token for storage and lookup.
+     *
+     * @param token The token
+     * @return The hex SHA-256 of the token
+     */
+    public static String hash(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
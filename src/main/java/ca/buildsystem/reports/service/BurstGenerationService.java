@@ -0,0 +1,331 @@
+package ca.buildsystem.reports.service;
+
+import ca.buildsystem.reports.dto.ReportGenerationDTO;
+import ca.buildsystem.reports.dto.ReportResponseDTO;
+import ca.buildsystem.reports.generation.ExternalLedgerSorter;
+import ca.buildsystem.reports.generation.GenerationControl;
+import ca.buildsystem.reports.generation.GenerationProgressBus;
+import ca.buildsystem.reports.generation.GenerationStage;
+import ca.buildsystem.reports.generation.LedgerBufferFactory;
+import ca.buildsystem.reports.generation.LedgerColumnBuffer;
+import ca.buildsystem.reports.generation.LedgerQuery;
+import ca.buildsystem.reports.generation.LedgerSource;
+import ca.buildsystem.reports.generation.ReportRenderer;
+import ca.buildsystem.reports.model.Report;
+import ca.buildsystem.reports.model.ReportBurstKey;
+import ca.buildsystem.reports.model.ReportFormat;
+import ca.buildsystem.reports.model.ReportSortKey;
+import ca.buildsystem.reports.model.StorageTier;
+import ca.buildsystem.reports.repository.ReportRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Service generating one child report per project or client in a single job.
+ * The rows of the whole selection are fetched once and sorted by the burst key, so that every
+ * partition is a contiguous range of the ledger buffer; the partitions are then rendered in
+ * parallel and the child reports inserted together once every file is written. The parent
+ * report records the job, its totals and its progress, and has no file of its own.
+ * Burst jobs are not checkpointed: one interrupted by a shutdown fails and is not resumed.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class BurstGenerationService {
+
+    private final ReportRepository reportRepository;
+    private final ReportService reportService;
+    private final ReportMapper reportMapper;
+    private final LedgerBufferFactory ledgerBufferFactory;
+    private final ReportRenderer reportRenderer;
+    private final List<LedgerSource> ledgerSources;
+    private final LedgerRollupService ledgerRollupService;
+    private final GenerationProgressBus progressBus;
+    private final GenerationLeaseService leaseService;
+    private final MemoryGovernor memoryGovernor;
+    private final ReportDtoCache dtoCache;
+
+    @Value("${app.report.storage-path:/tmp/reports}")
+    private String reportStoragePath;
+
+    @Value("${app.report.default-format:PDF}")
+    private String defaultFormat;
+
+    @Value("${app.report.burst.parallelism:4}")
+    private int parallelism;
+
+    @Value("${app.report.burst.max-partitions:1000}")
+    private int maxPartitions;
+
+    private ExecutorService renderPool;
+
+    @PostConstruct
+    void initRenderPool() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        renderPool = Executors.newFixedThreadPool(parallelism,
+                runnable -> new Thread(runnable, "report-burst-" + threadNumber.incrementAndGet()));
+    }
+
+    @PreDestroy
+    void shutdownRenderPool() {
+        renderPool.shutdownNow();
+    }
+
+    /**
+     * Generate one child report per distinct value of the burst key.
+     * The project or client of the request, if any, narrows the rows like for a single report;
+     * its template and parameters apply to the parent and every child report.
+     *
+     * @param generationDTO The report generation data, with a burst key
+     * @param control The handle through which the executor steers the generation
+     * @return The parent report DTO
+     */
+    public ReportResponseDTO generateBurst(ReportGenerationDTO generationDTO, GenerationControl control) {
+        log.info("Generating burst report: {} by {}", generationDTO.getName(), generationDTO.getBurstKey());
+
+        Report report = new Report();
+        report.setName(generationDTO.getName());
+        report.setDescription(generationDTO.getDescription());
+        report.setType(generationDTO.getType());
+        report.setFormat(generationDTO.getFormat() != null ? generationDTO.getFormat() : ReportFormat.valueOf(defaultFormat));
+        report.setStartDate(generationDTO.getStartDate());
+        report.setEndDate(generationDTO.getEndDate());
+        report.setProjectId(generationDTO.getProjectId());
+        report.setClientId(generationDTO.getClientId());
+        report.setSummaryGranularity(generationDTO.getSummaryGranularity());
+        report.setBurstKey(generationDTO.getBurstKey());
+        reportService.applyTemplateAndParameters(report, generationDTO.getTemplateId(), generationDTO.getParameters());
+        leaseService.stamp(report);
+
+        Report parent = reportRepository.save(report);
+        leaseService.register(parent.getId());
+        control.setReportId(parent.getId());
+        progressBus.publish(parent.getId(), GenerationStage.QUEUED, 0, 0);
+
+        Queue<Path> writtenFiles = new ConcurrentLinkedQueue<>();
+        try {
+            List<Report> children = generateChildren(parent, writtenFiles);
+            // Inserted together; hibernate.jdbc.batch_size groups the statements
+            reportRepository.saveAll(children);
+
+            parent.setStatus("COMPLETED");
+            parent.setLastGenerated(LocalDateTime.now());
+            parent.setGenerationMillis(control.elapsedMillis());
+            leaseService.clear(parent);
+            parent = reportRepository.save(parent);
+            progressBus.publish(parent.getId(), GenerationStage.COMPLETED, parent.getRowCount(), 100);
+            log.info("Burst report {} generated {} child reports", parent.getId(), children.size());
+
+            return reportMapper.toResponseDTO(parent);
+        } catch (Exception e) {
+            log.error("Error generating burst report", e);
+
+            // Do not leave the files of a failed burst behind
+            for (Path file : writtenFiles) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException deleteError) {
+                    log.warn("Could not delete burst file {}", file, deleteError);
+                }
+            }
+            parent.setStatus("ERROR");
+            leaseService.clear(parent);
+            reportRepository.save(parent);
+            progressBus.publishFailure(parent.getId(), e.getMessage());
+
+            throw new RuntimeException("Error generating burst report: " + e.getMessage(), e);
+        } finally {
+            leaseService.release(parent.getId());
+            dtoCache.evictReport(parent.getId());
+        }
+    }
+
+    /**
+     * Fetch the rows once, split them by the burst key and render every partition.
+     *
+     * @param parent The parent report
+     * @param writtenFiles Collects every file created, for cleanup on failure
+     * @return The unsaved child reports
+     */
+    private List<Report> generateChildren(Report parent, Queue<Path> writtenFiles) throws Exception {
+        UUID parentId = parent.getId();
+        long workingSetBytes = memoryGovernor.workingSetBytes(parent.getFormat(), false);
+        try (MemoryGovernor.Reservation memory = memoryGovernor.reserve(parentId, workingSetBytes, workingSetBytes);
+             LedgerColumnBuffer ledger = ledgerBufferFactory.create(memoryGovernor.getDirectMemory())) {
+            LedgerQuery query = LedgerQuery.forReport(parent);
+            progressBus.publish(parentId, GenerationStage.FETCHING, 0, 0);
+            if (parent.getSummaryGranularity() != null) {
+                ledgerRollupService.loadSummary(parentId, query, parent.getSummaryGranularity(), ledger::append);
+            } else {
+                for (LedgerSource source : ledgerSources) {
+                    if (source.supports(query.getType())) {
+                        source.fetch(query, ledger::append);
+                    }
+                }
+            }
+
+            long rowCount = ledger.size();
+            progressBus.publish(parentId, GenerationStage.AGGREGATING, rowCount, 40);
+            ReportSortKey partitionOrder = parent.getBurstKey() == ReportBurstKey.PROJECT
+                    ? ReportSortKey.PROJECT : ReportSortKey.CLIENT;
+            try (MemoryGovernor.Reservation sortMemory = memoryGovernor.reserve(parentId,
+                    ledgerBufferFactory.minSortHeapBytes(), ledgerBufferFactory.sortHeapBytes())) {
+                ledgerBufferFactory.createSorter(sortMemory.getBytes())
+                        .sort(ledger, ExternalLedgerSorter.order(partitionOrder));
+            }
+            List<Partition> partitions = partition(ledger, parent.getBurstKey());
+            if (partitions.size() > maxPartitions) {
+                throw new IllegalArgumentException(String.format(
+                        "Burst produces %d reports, more than the limit of %d", partitions.size(), maxPartitions));
+            }
+            parent.setTotalAmount(ledger.totalAmount());
+            parent.setRowCount(rowCount);
+            log.info("Burst report {}: {} rows in {} partitions", parentId, rowCount, partitions.size());
+
+            progressBus.publish(parentId, GenerationStage.RENDERING, 0, 50);
+            String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
+            AtomicBoolean failed = new AtomicBoolean();
+            List<Future<Report>> futures = new ArrayList<>(partitions.size());
+            for (Partition partition : partitions) {
+                futures.add(renderPool.submit(() -> failed.get() ? null
+                        : renderChild(parent, ledger, partition, timestamp, writtenFiles)));
+            }
+
+            // Every render must finish before the buffer is closed, even after a failure
+            List<Report> children = new ArrayList<>(partitions.size());
+            Exception failure = null;
+            long renderedRows = 0;
+            for (Future<Report> future : futures) {
+                try {
+                    Report child = future.get();
+                    if (child != null) {
+                        children.add(child);
+                        renderedRows += child.getRowCount();
+                        progressBus.publish(parentId, GenerationStage.RENDERING, renderedRows,
+                                50 + (int) (children.size() * 49L / partitions.size()));
+                    }
+                } catch (InterruptedException e) {
+                    failed.set(true);
+                    Thread.currentThread().interrupt();
+                    throw e;
+                } catch (ExecutionException e) {
+                    failed.set(true);
+                    if (failure == null) {
+                        failure = e.getCause() instanceof Exception cause ? cause : new IllegalStateException(e.getCause());
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return children;
+        }
+    }
+
+    /**
+     * Render one partition into the file of a new child report.
+     */
+    private Report renderChild(Report parent, LedgerColumnBuffer ledger, Partition partition, String timestamp,
+                               Queue<Path> writtenFiles) throws IOException {
+        boolean byProject = parent.getBurstKey() == ReportBurstKey.PROJECT;
+        String label = partition.key != null ? partition.key.toString() : "unassigned";
+
+        Report child = new Report();
+        child.setName(parent.getName() + " - " + label);
+        child.setDescription(parent.getDescription());
+        child.setType(parent.getType());
+        child.setFormat(parent.getFormat());
+        child.setStartDate(parent.getStartDate());
+        child.setEndDate(parent.getEndDate());
+        child.setProjectId(byProject ? partition.key : parent.getProjectId());
+        child.setClientId(byProject ? parent.getClientId() : partition.key);
+        child.setSummaryGranularity(parent.getSummaryGranularity());
+        child.setTemplate(parent.getTemplate());
+        // Every child is a report of its own, with its own copy of the parameters
+        parent.getParameters().forEach(parameter ->
+                child.addParameter(reportMapper.toParameterEntity(reportMapper.toParameterDTO(parameter))));
+        child.setParentReportId(parent.getId());
+        child.setTotalAmount(ledger.totalAmount(partition.from, partition.to));
+        child.setRowCount(partition.to - partition.from);
+
+        String filename = String.format("%s_%s_%s_%s.%s",
+                parent.getType().toString().toLowerCase(),
+                parent.getName().replaceAll("\\s+", "_").toLowerCase(),
+                label,
+                timestamp,
+                parent.getFormat().toString().toLowerCase());
+        Path filePath = Paths.get(reportStoragePath).resolve(filename);
+        Files.createDirectories(filePath.getParent());
+        writtenFiles.add(filePath);
+        reportRenderer.render(child, ledger, partition.from, partition.to, filePath, rows -> { });
+
+        child.setFilePath(filePath.toString());
+        child.setFileSize(Files.size(filePath));
+        child.setStoredSize(child.getFileSize());
+        child.setStorageTier(StorageTier.HOT);
+        child.setStatus("COMPLETED");
+        child.setLastGenerated(LocalDateTime.now());
+        return child;
+    }
+
+    /**
+     * Split a buffer sorted by the burst key into ranges of equal key.
+     */
+    private static List<Partition> partition(LedgerColumnBuffer ledger, ReportBurstKey burstKey) {
+        List<Partition> partitions = new ArrayList<>();
+        long start = 0;
+        UUID current = null;
+        for (long i = 0; i < ledger.size(); i++) {
+            UUID key = burstKey == ReportBurstKey.PROJECT ? ledger.projectId(i) : ledger.clientId(i);
+            if (i == 0) {
+                current = key;
+            } else if (!Objects.equals(key, current)) {
+                partitions.add(new Partition(current, start, i));
+                start = i;
+                current = key;
+            }
+        }
+        if (ledger.size() > 0) {
+            partitions.add(new Partition(current, start, ledger.size()));
+        }
+        return partitions;
+    }
+
+    /**
+     * The rows of one child report: a key and the buffer range holding its rows.
+     */
+    private static final class Partition {
+        private final UUID key;
+        private final long from;
+        private final long to;
+
+        private Partition(UUID key, long from, long to) {
+            this.key = key;
+            this.from = from;
+            this.to = to;
+        }
+    }
+}
@@ -0,0 +1,472 @@
+package ca.buildsystem.reports.service;
+
+import ca.buildsystem.reports.config.VirtualThreads;
+import ca.buildsystem.reports.exception.TooManyRequestsException;
+import ca.buildsystem.reports.model.ReportFormat;
+import ca.buildsystem.reports.model.ReportType;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Service admitting generations under global, per-format and per-report-type concurrency limits.
+ * Requests wait in one of two lanes: interactive requests from users and scheduled regenerations.
+ * Free capacity goes to the lane with the lowest weighted virtual time, charged by estimated cost,
+ * and the scheduled lane never takes the slots reserved for interactive requests, so a wave of
+ * scheduled reports uses idle capacity without delaying users. Inside a lane, clients take turns,
+ * preferring the client with the fewest running generations. A scheduled request that has waited
+ * past the bypass limit goes first whenever the scheduled lane gets a slot, so a busy client's
+ * regenerations are not held back indefinitely; it never takes the interactive reserve or the
+ * interactive lane's share, and while it does not fit the limits, other requests start around it.
+ * Generations estimated to run longer than the large-job threshold share a small number of slots,
+ * so that one giant report cannot hold all capacity while many small ones wait. When a lane's queue
+ * is full or an interactive wait times out, the request is refused with a Retry-After estimate.
+ * On virtual threads, a waiting generation costs no worker thread, so the global limit is the
+ * separate virtual-thread limit; the per-format limits keep the CPU-bound renderers in check.
+ */
+@Service
+@Slf4j
+public class GenerationAdmissionService {
+
+    private static final long MAX_RETRY_AFTER_SECONDS = 300;
+
+    /**
+     * Queue a generation waits in.
+     */
+    public enum Lane {
+        INTERACTIVE,
+        SCHEDULED
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<Lane, LaneQueue> lanes = new EnumMap<>(Lane.class);
+    private final Set<Ticket> running = new HashSet<>();
+    private final Map<ReportFormat, Integer> runningByFormat = new EnumMap<>(ReportFormat.class);
+    private final Map<ReportType, Integer> runningByType = new EnumMap<>(ReportType.class);
+    private int runningLarge;
+
+    private final Map<ReportFormat, Integer> formatLimits = new EnumMap<>(ReportFormat.class);
+    private final Map<ReportType, Integer> typeLimits = new EnumMap<>(ReportType.class);
+    private final Map<Lane, Integer> laneWeights = new EnumMap<>(Lane.class);
+
+    @Value("${app.report.admission.max-concurrent:${app.report.executor.pool-size:4}}")
+    private int maxConcurrent;
+
+    @Value("${app.report.admission.virtual-thread-max-concurrent:64}")
+    private int virtualThreadMaxConcurrent;
+
+    @Value("${app.virtual-threads.enabled:false}")
+    private boolean virtualThreads;
+
+    @Value("${app.report.admission.format-limits:PDF=2,EXCEL=2}")
+    private String formatLimitsSpec;
+
+    @Value("${app.report.admission.type-limits:}")
+    private String typeLimitsSpec;
+
+    @Value("${app.report.admission.lane-weights:INTERACTIVE=4,SCHEDULED=1}")
+    private String laneWeightsSpec;
+
+    @Value("${app.report.admission.interactive-reserve:1}")
+    private int interactiveReserve;
+
+    @Value("${app.report.admission.queue-capacity:50}")
+    private int queueCapacity;
+
+    @Value("${app.report.admission.scheduled-queue-capacity:500}")
+    private int scheduledQueueCapacity;
+
+    @Value("${app.report.admission.max-wait-ms:30000}")
+    private long maxWaitMs;
+
+    @Value("${app.report.admission.large-job-ms:300000}")
+    private long largeJobMs;
+
+    @Value("${app.report.admission.max-large-jobs:1}")
+    private int maxLargeJobs;
+
+    @Value("${app.report.admission.bypass-limit-ms:10000}")
+    private long bypassLimitMs;
+
+    @PostConstruct
+    void parseLimits() {
+        if (virtualThreads && VirtualThreads.isAvailable()) {
+            maxConcurrent = virtualThreadMaxConcurrent;
+        }
+        parseLimits(formatLimitsSpec, ReportFormat::valueOf, formatLimits);
+        parseLimits(typeLimitsSpec, ReportType::valueOf, typeLimits);
+        parseLimits(laneWeightsSpec, Lane::valueOf, laneWeights);
+        if (interactiveReserve < 0 || interactiveReserve >= maxConcurrent) {
+            // Scheduled reports would never be admitted
+            throw new IllegalArgumentException("Invalid admission setting: interactive-reserve " + interactiveReserve
+                    + " must be below max-concurrent " + maxConcurrent);
+        }
+        lanes.put(Lane.INTERACTIVE, new LaneQueue(laneWeights.getOrDefault(Lane.INTERACTIVE, 1), queueCapacity));
+        lanes.put(Lane.SCHEDULED, new LaneQueue(laneWeights.getOrDefault(Lane.SCHEDULED, 1), scheduledQueueCapacity));
+        log.info("Generation admission: {} concurrent, format limits {}, type limits {}, lane weights {}, "
+                + "{} reserved for interactive", maxConcurrent, formatLimits, typeLimits, laneWeights, interactiveReserve);
+    }
+
+    /**
+     * Wait in the interactive lane until a generation may start.
+     *
+     * @param client The requesting client, for fairness between clients
+     * @param type The report type
+     * @param format The report format
+     * @param estimatedMs The estimated duration of the generation
+     * @return The admission ticket, to be closed when the generation ends
+     * @throws TooManyRequestsException if the queue is full or the wait timed out
+     */
+    public Ticket admit(String client, ReportType type, ReportFormat format, long estimatedMs) {
+        Ticket ticket = enqueue(Lane.INTERACTIVE, client, type, format, estimatedMs);
+        try {
+            ticket.granted.get(maxWaitMs, TimeUnit.MILLISECONDS);
+            return ticket;
+        } catch (TimeoutException e) {
+            if (withdraw(ticket)) {
+                throw new TooManyRequestsException("Timed out waiting for report generation capacity",
+                        retryAfterSeconds(Lane.INTERACTIVE));
+            }
+            // Granted while timing out
+            return ticket;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (!withdraw(ticket)) {
+                ticket.close();
+            }
+            throw new IllegalStateException("Interrupted while waiting for report generation capacity", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Queue a generation without waiting; the ticket's grant completes when it may start.
+     *
+     * @param lane The lane to wait in
+     * @param client The requesting client, for fairness between clients
+     * @param type The report type
+     * @param format The report format
+     * @param estimatedMs The estimated duration of the generation
+     * @return The admission ticket, to be closed when the generation ends
+     * @throws TooManyRequestsException if the lane's queue is full
+     */
+    public Ticket enqueue(Lane lane, String client, ReportType type, ReportFormat format, long estimatedMs) {
+        Ticket ticket = new Ticket(lane, client != null ? client : "", type, format, estimatedMs,
+                estimatedMs >= largeJobMs);
+        List<Ticket> granted;
+        lock.lock();
+        try {
+            LaneQueue queue = lanes.get(lane);
+            if (queue.size >= queue.capacity) {
+                throw new TooManyRequestsException("Report generation queue is full", retryAfterSeconds(lane));
+            }
+            if (queue.size == 0) {
+                // A lane returning from idle does not bank credit for the time it had nothing to run
+                lanes.values().stream()
+                        .filter(other -> other != queue && other.size > 0)
+                        .mapToDouble(other -> other.virtualTime)
+                        .min()
+                        .ifPresent(min -> queue.virtualTime = Math.max(queue.virtualTime, min));
+            }
+            queue.add(ticket);
+            granted = grantWaiting();
+        } finally {
+            lock.unlock();
+        }
+        notifyGranted(granted);
+        return ticket;
+    }
+
+    /**
+     * Remove a ticket that has not been granted from its lane.
+     *
+     * @return True if the ticket was still waiting
+     */
+    private boolean withdraw(Ticket ticket) {
+        List<Ticket> granted;
+        lock.lock();
+        try {
+            if (!lanes.get(ticket.lane).remove(ticket)) {
+                return false;
+            }
+            granted = grantWaiting();
+        } finally {
+            lock.unlock();
+        }
+        notifyGranted(granted);
+        return true;
+    }
+
+    private void finish(Ticket ticket) {
+        List<Ticket> granted;
+        lock.lock();
+        try {
+            if (!running.remove(ticket)) {
+                return;
+            }
+            runningByFormat.merge(ticket.format, -1, Integer::sum);
+            runningByType.merge(ticket.type, -1, Integer::sum);
+            if (ticket.large) {
+                runningLarge--;
+            }
+            LaneQueue queue = lanes.get(ticket.lane);
+            queue.running--;
+            queue.runningByClient.merge(ticket.client, -1, Integer::sum);
+            granted = grantWaiting();
+        } finally {
+            lock.unlock();
+        }
+        notifyGranted(granted);
+    }
+
+    /**
+     * Start waiting generations while capacity remains, choosing the lane with the lowest
+     * virtual time among those that have a generation able to start. In the scheduled lane, the
+     * oldest generation that has waited past the bypass limit and fits goes first.
+     * Must be called with the lock held; the returned tickets are notified after unlocking.
+     */
+    private List<Ticket> grantWaiting() {
+        List<Ticket> granted = new ArrayList<>();
+        long overdueBefore = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(bypassLimitMs);
+        while (running.size() < maxConcurrent) {
+            boolean reserveOnly = running.size() >= maxConcurrent - interactiveReserve;
+            LaneQueue chosenLane = null;
+            Ticket chosen = null;
+            for (Map.Entry<Lane, LaneQueue> entry : lanes.entrySet()) {
+                LaneQueue queue = entry.getValue();
+                if (entry.getKey() == Lane.SCHEDULED && reserveOnly) {
+                    continue;
+                }
+                if (chosenLane != null && queue.virtualTime >= chosenLane.virtualTime) {
+                    continue;
+                }
+                Ticket candidate = entry.getKey() == Lane.SCHEDULED ? queue.overdue(overdueBefore, this::fits) : null;
+                if (candidate == null) {
+                    candidate = queue.next(this::fits);
+                }
+                if (candidate != null) {
+                    chosenLane = queue;
+                    chosen = candidate;
+                }
+            }
+            if (chosen == null) {
+                break;
+            }
+            grant(chosen, granted);
+        }
+        return granted;
+    }
+
+    private void grant(Ticket ticket, List<Ticket> granted) {
+        LaneQueue queue = lanes.get(ticket.lane);
+        queue.remove(ticket);
+        queue.virtualTime += (double) ticket.estimatedMs / queue.weight;
+        start(ticket);
+        granted.add(ticket);
+    }
+
+    private boolean fits(Ticket ticket) {
+        return runningByFormat.getOrDefault(ticket.format, 0) < formatLimits.getOrDefault(ticket.format, maxConcurrent)
+                && runningByType.getOrDefault(ticket.type, 0) < typeLimits.getOrDefault(ticket.type, maxConcurrent)
+                && (!ticket.large || runningLarge < maxLargeJobs);
+    }
+
+    private void start(Ticket ticket) {
+        ticket.startedNanos = System.nanoTime();
+        running.add(ticket);
+        runningByFormat.merge(ticket.format, 1, Integer::sum);
+        runningByType.merge(ticket.type, 1, Integer::sum);
+        if (ticket.large) {
+            runningLarge++;
+        }
+        LaneQueue queue = lanes.get(ticket.lane);
+        queue.running++;
+        queue.runningByClient.merge(ticket.client, 1, Integer::sum);
+    }
+
+    private static void notifyGranted(List<Ticket> granted) {
+        granted.forEach(ticket -> ticket.granted.complete(null));
+    }
+
+    /**
+     * Estimate when capacity frees up: the earliest expected end of a running generation plus
+     * the lane's queued work spread over the concurrency limit.
+     */
+    private long retryAfterSeconds(Lane lane) {
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            long earliestEndMs = running.stream()
+                    .mapToLong(t -> t.estimatedMs - TimeUnit.NANOSECONDS.toMillis(now - t.startedNanos))
+                    .min()
+                    .orElse(0);
+            long queuedMs = lanes.get(lane).queuedMillis() / Math.max(1, maxConcurrent);
+            long seconds = (Math.max(0, earliestEndMs) + queuedMs + 999) / 1000;
+            return Math.min(MAX_RETRY_AFTER_SECONDS, Math.max(1, seconds));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static <K extends Enum<K>> void parseLimits(String spec, Function<String, K> parser, Map<K, Integer> limits) {
+        if (spec == null || spec.isBlank()) {
+            return;
+        }
+        for (String entry : spec.split(",")) {
+            String[] parts = entry.trim().split("=");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Invalid admission setting: " + entry);
+            }
+            limits.put(parser.apply(parts[0].trim().toUpperCase()), Integer.parseInt(parts[1].trim()));
+        }
+    }
+
+    /**
+     * Waiting generations of one lane, queued per client in turn order.
+     */
+    private static final class LaneQueue {
+
+        private final int weight;
+        private final int capacity;
+        private final LinkedHashMap<String, Deque<Ticket>> byClient = new LinkedHashMap<>();
+        private final Map<String, Integer> runningByClient = new HashMap<>();
+        private double virtualTime;
+        private int size;
+        private int running;
+
+        private LaneQueue(int weight, int capacity) {
+            this.weight = Math.max(1, weight);
+            this.capacity = capacity;
+        }
+
+        private void add(Ticket ticket) {
+            byClient.computeIfAbsent(ticket.client, c -> new ArrayDeque<>()).addLast(ticket);
+            size++;
+        }
+
+        private boolean remove(Ticket ticket) {
+            Deque<Ticket> tickets = byClient.get(ticket.client);
+            if (tickets == null || !tickets.remove(ticket)) {
+                return false;
+            }
+            size--;
+            // Move the client to the back of the turn order
+            byClient.remove(ticket.client);
+            if (!tickets.isEmpty()) {
+                byClient.put(ticket.client, tickets);
+            }
+            return true;
+        }
+
+        /**
+         * Find the next generation to start: from the client with the fewest running generations,
+         * earliest in turn order, its oldest generation that fits.
+         */
+        private Ticket next(Predicate<Ticket> fits) {
+            Ticket best = null;
+            int bestRunning = Integer.MAX_VALUE;
+            for (Map.Entry<String, Deque<Ticket>> entry : byClient.entrySet()) {
+                int clientRunning = runningByClient.getOrDefault(entry.getKey(), 0);
+                if (clientRunning >= bestRunning) {
+                    continue;
+                }
+                for (Ticket ticket : entry.getValue()) {
+                    if (fits.test(ticket)) {
+                        best = ticket;
+                        bestRunning = clientRunning;
+                        break;
+                    }
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Find the oldest generation enqueued before the given time that fits, skipping those
+         * that do not.
+         */
+        private Ticket overdue(long enqueuedBefore, Predicate<Ticket> fits) {
+            Ticket oldest = null;
+            for (Deque<Ticket> tickets : byClient.values()) {
+                for (Ticket ticket : tickets) {
+                    if (ticket.enqueuedNanos > enqueuedBefore
+                            || (oldest != null && ticket.enqueuedNanos >= oldest.enqueuedNanos)) {
+                        break;
+                    }
+                    if (fits.test(ticket)) {
+                        oldest = ticket;
+                        break;
+                    }
+                }
+            }
+            return oldest;
+        }
+
+        private long queuedMillis() {
+            return byClient.values().stream()
+                    .flatMap(Deque::stream)
+                    .mapToLong(ticket -> ticket.estimatedMs)
+                    .sum();
+        }
+    }
+
+    /**
+     * Admission of one generation; closing it frees the capacity.
+     */
+    public final class Ticket implements AutoCloseable {
+
+        private final Lane lane;
+        private final String client;
+        private final ReportType type;
+        private final ReportFormat format;
+        private final long estimatedMs;
+        private final boolean large;
+        private final long enqueuedNanos = System.nanoTime();
+        private final CompletableFuture<Void> granted = new CompletableFuture<>();
+        private long startedNanos;
+
+        private Ticket(Lane lane, String client, ReportType type, ReportFormat format, long estimatedMs,
+                       boolean large) {
+            this.lane = lane;
+            this.client = client;
+            this.type = type;
+            this.format = format;
+            this.estimatedMs = estimatedMs;
+            this.large = large;
+        }
+
+        /**
+         * Run an action once the generation may start.
+         *
+         * @param action The action, run on the thread that frees the capacity
+         */
+        public void whenGranted(Runnable action) {
+            granted.thenRun(action);
+        }
+
+        @Override
+        public void close() {
+            finish(this);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package ca.buildsystem.reports.service;
+
+import ca.buildsystem.reports.generation.LedgerColumnBuffer;
+import ca.buildsystem.reports.generation.LedgerRowCodec;
+import ca.buildsystem.reports.model.GenerationCheckpoint;
+import ca.buildsystem.reports.repository.GenerationCheckpointRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Service persisting checkpoints of generations interrupted by a shutdown.
+ * Snapshots are written to the shared report storage so that any node can resume them.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class GenerationCheckpointService {
+
+    private final GenerationCheckpointRepository checkpointRepository;
+    private final GenerationLeaseService leaseService;
+
+    @Value("${app.report.storage-path:/tmp/reports}")
+    private String reportStoragePath;
+
+    /**
+     * Persist the first rows of an interrupted generation.
+     *
+     * @param reportId The report ID
+     * @param ledger The rows loaded so far
+     * @param rowOffset The number of leading rows that are complete
+     * @param sourceIndex The source being fetched, among those supporting the report type, or
+     *                    their count once every row is loaded
+     * @param resumeFrom The first ledger day still to be fetched from that source, or null for all
+     * @param dataWatermark The instant the generation started reading the ledger
+     * @throws IOException if the snapshot cannot be written
+     */
+    @Transactional
+    public void save(UUID reportId, LedgerColumnBuffer ledger, long rowOffset, int sourceIndex,
+                     LocalDate resumeFrom, LocalDateTime dataWatermark) throws IOException {
+        Path checkpointPath = Paths.get(reportStoragePath, ".checkpoint", reportId + ".ledger");
+        LedgerRowCodec.writeSnapshot(checkpointPath, ledger, rowOffset);
+        checkpointRepository.save(GenerationCheckpoint.builder()
+                .reportId(reportId)
+                .checkpointPath(checkpointPath.toString())
+                .rowOffset(rowOffset)
+                .sourceIndex(sourceIndex)
+                .resumeFrom(resumeFrom)
+                .dataWatermark(dataWatermark)
+                .ownerNode(leaseService.getNodeId())
+                .createdAt(LocalDateTime.now())
+                .build());
+        log.info("Checkpointed report {} at row {} (resume source {} from {})",
+                reportId, rowOffset, sourceIndex, resumeFrom);
+    }
+
+    /**
+     * Find the checkpoint of a report if its snapshot is still present.
+     *
+     * @param reportId The report ID
+     * @return An optional containing the checkpoint
+     */
+    @Transactional(readOnly = true)
+    public Optional<GenerationCheckpoint> find(UUID reportId) {
+        return checkpointRepository.findById(reportId)
+                .filter(checkpoint -> Files.exists(Paths.get(checkpoint.getCheckpointPath())));
+    }
+
+    /**
+     * Load the rows of a checkpoint into a buffer.
+     *
+     * @param checkpoint The checkpoint
+     * @param ledger The buffer receiving the rows
+     * @throws IOException if the snapshot cannot be read
+     */
+    public void load(GenerationCheckpoint checkpoint, LedgerColumnBuffer ledger) throws IOException {
+        LedgerRowCodec.readSnapshot(Paths.get(checkpoint.getCheckpointPath()), ledger::append);
+    }
+
+    /**
+     * Find the reports waiting to be resumed from a checkpoint.
+     *
+     * @return The report IDs
+     */
+    @Transactional(readOnly = true)
+    public List<UUID> findResumableReportIds() {
+        return checkpointRepository.findResumableReportIds();
+    }
+
+    /**
+     * Delete the checkpoint of a report.
+     *
+     * @param reportId The report ID
+     */
+    @Transactional
+    public void delete(UUID reportId) {
+        checkpointRepository.findById(reportId).ifPresent(checkpoint -> {
+            checkpointRepository.delete(checkpoint);
+            // A rollback keeps the row, which must still find its snapshot
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    try {
+                        Files.deleteIfExists(Paths.get(checkpoint.getCheckpointPath()));
+                    } catch (IOException e) {
+                        log.warn("Could not delete checkpoint file {}", checkpoint.getCheckpointPath(), e);
+                    }
+                }
+            });
+        });
+    }
+}
@@ -0,0 +1,134 @@
+package ca.buildsystem.reports.service;
+
+import ca.buildsystem.reports.model.Report;
+import ca.buildsystem.reports.model.ReportFormat;
+import ca.buildsystem.reports.model.ReportType;
+import ca.buildsystem.reports.repository.ReportRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Service estimating how long a generation will take and how many rows it will load.
+ * Estimates are the length of the report's date range times the milliseconds and rows per day
+ * observed for the same type and format, seeded from recently generated reports and updated as
+ * generations complete.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class GenerationCostEstimator {
+
+    private static final double SMOOTHING = 0.2;
+
+    private final ReportRepository reportRepository;
+
+    private final Map<String, Rates> rates = new ConcurrentHashMap<>();
+
+    @Value("${app.report.admission.default-millis-per-day:20}")
+    private double defaultMillisPerDay;
+
+    @Value("${app.report.admission.default-rows-per-day:500}")
+    private double defaultRowsPerDay;
+
+    @Value("${app.report.admission.open-range-days:3650}")
+    private long openRangeDays;
+
+    @Value("${app.report.admission.min-estimate-ms:1000}")
+    private long minEstimateMs;
+
+    /**
+     * Estimate the duration of a generation.
+     *
+     * @param type The report type
+     * @param format The report format
+     * @param startDate The start of the report range, or null for all history
+     * @param endDate The end of the report range, or null for today
+     * @return The estimated duration in milliseconds
+     */
+    public long estimateMillis(ReportType type, ReportFormat format, LocalDateTime startDate, LocalDateTime endDate) {
+        double rate = rates(type, format).millisPerDay;
+        return Math.max(minEstimateMs, (long) (rangeDays(startDate, endDate) * rate));
+    }
+
+    /**
+     * Estimate the number of ledger rows a generation loads.
+     *
+     * @param type The report type
+     * @param format The report format
+     * @param startDate The start of the report range, or null for all history
+     * @param endDate The end of the report range, or null for today
+     * @return The estimated row count
+     */
+    public long estimateRows(ReportType type, ReportFormat format, LocalDateTime startDate, LocalDateTime endDate) {
+        return (long) Math.ceil(rangeDays(startDate, endDate) * rates(type, format).rowsPerDay);
+    }
+
+    /**
+     * Fold a completed generation into the estimates of its type and format.
+     *
+     * @param type The report type
+     * @param format The report format
+     * @param startDate The start of the report range
+     * @param endDate The end of the report range
+     * @param millis The generation duration in milliseconds
+     * @param rows The number of rows loaded, or null if unknown
+     */
+    public void record(ReportType type, ReportFormat format, LocalDateTime startDate, LocalDateTime endDate,
+                       long millis, Long rows) {
+        long days = rangeDays(startDate, endDate);
+        Rates current = rates(type, format);
+        synchronized (current) {
+            current.millisPerDay += SMOOTHING * ((double) millis / days - current.millisPerDay);
+            if (rows != null) {
+                current.rowsPerDay += SMOOTHING * ((double) rows / days - current.rowsPerDay);
+            }
+        }
+    }
+
+    private Rates rates(ReportType type, ReportFormat format) {
+        return rates.computeIfAbsent(type + ":" + format, key -> loadHistory(type, format));
+    }
+
+    private Rates loadHistory(ReportType type, ReportFormat format) {
+        List<Report> recent = reportRepository
+                .findTop20ByTypeAndFormatAndGenerationMillisIsNotNullOrderByLastGeneratedDesc(type, format);
+        Rates seeded = new Rates();
+        seeded.millisPerDay = recent.stream()
+                .mapToDouble(r -> (double) r.getGenerationMillis() / rangeDays(r.getStartDate(), r.getEndDate()))
+                .average()
+                .orElse(defaultMillisPerDay);
+        seeded.rowsPerDay = recent.stream()
+                .filter(r -> Objects.nonNull(r.getRowCount()))
+                .mapToDouble(r -> (double) r.getRowCount() / rangeDays(r.getStartDate(), r.getEndDate()))
+                .average()
+                .orElse(defaultRowsPerDay);
+        log.debug("Seeded generation cost of {} {} from {} reports: {} ms/day, {} rows/day",
+                type, format, recent.size(), seeded.millisPerDay, seeded.rowsPerDay);
+        return seeded;
+    }
+
+    private long rangeDays(LocalDateTime startDate, LocalDateTime endDate) {
+        if (startDate == null) {
+            return openRangeDays;
+        }
+        LocalDateTime end = endDate != null ? endDate : LocalDateTime.now();
+        return Math.max(1, Duration.between(startDate, end).toDays() + 1);
+    }
+
+    /**
+     * Smoothed per-day rates of one report type and format.
+     */
+    private static final class Rates {
+        private double millisPerDay;
+        private double rowsPerDay;
+    }
+}
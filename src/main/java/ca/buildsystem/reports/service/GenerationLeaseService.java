@@ -0,0 +1,156 @@
+package ca.buildsystem.reports.service;
+
+import ca.buildsystem.reports.model.Report;
+import ca.buildsystem.reports.repository.ReportRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Service tracking which node owns each running generation.
+ * A generating report is stamped with the owning node and a heartbeat that this node refreshes
+ * while the generation runs; a report whose heartbeat stops is picked up by the recovery sweeper.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class GenerationLeaseService {
+
+    private final ReportRepository reportRepository;
+
+    private final Set<UUID> activeReports = ConcurrentHashMap.newKeySet();
+
+    @Value("${app.report.recovery.node-id:${HOSTNAME:}}")
+    private String configuredNodeId;
+
+    private String nodeId;
+
+    @PostConstruct
+    void initNodeId() {
+        nodeId = configuredNodeId == null || configuredNodeId.isBlank()
+                ? UUID.randomUUID().toString() : configuredNodeId;
+        log.info("Generation lease node ID: {}", nodeId);
+    }
+
+    /**
+     * Get the ID this node stamps on the generations it owns.
+     *
+     * @return The node ID
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Stamp a new, not yet saved report as generating on this node.
+     *
+     * @param report The report entity
+     */
+    public void stamp(Report report) {
+        report.setStatus("GENERATING");
+        report.setOwnerNode(nodeId);
+        report.setHeartbeatAt(LocalDateTime.now());
+    }
+
+    /**
+     * Start sending heartbeats for a stamped report once it has been saved.
+     *
+     * @param reportId The report ID
+     */
+    public void register(UUID reportId) {
+        activeReports.add(reportId);
+    }
+
+    /**
+     * Claim an existing report for generation on this node.
+     *
+     * @param reportId The report ID
+     * @return True if claimed, false if the report is already being generated
+     */
+    public boolean claim(UUID reportId) {
+        if (reportRepository.claimForGeneration(reportId, nodeId, LocalDateTime.now()) == 0) {
+            return false;
+        }
+        activeReports.add(reportId);
+        return true;
+    }
+
+    /**
+     * Give up a claim whose generation never started, restoring the report's previous status.
+     * A claim already recovered elsewhere is left alone.
+     *
+     * @param reportId The report ID
+     * @param previousStatus The status the report had before it was claimed
+     */
+    public void abandon(UUID reportId, String previousStatus) {
+        activeReports.remove(reportId);
+        reportRepository.releaseClaim(reportId, nodeId, previousStatus);
+    }
+
+    /**
+     * Record the file a generation writes, so that a crash does not leave it behind.
+     *
+     * @param reportId The report ID
+     * @param filePath The file being written
+     */
+    public void recordWorkingFile(UUID reportId, Path filePath) {
+        reportRepository.updateWorkingFilePath(reportId, filePath.toString());
+    }
+
+    /**
+     * Clear the lease fields of a report whose generation finished, before it is saved.
+     *
+     * @param report The report entity
+     */
+    public void clear(Report report) {
+        report.setOwnerNode(null);
+        report.setHeartbeatAt(null);
+        report.setWorkingFilePath(null);
+    }
+
+    /**
+     * Stop sending heartbeats for a report.
+     *
+     * @param reportId The report ID
+     */
+    public void release(UUID reportId) {
+        activeReports.remove(reportId);
+    }
+
+    /**
+     * Check whether this node is running the generation of a report.
+     *
+     * @param reportId The report ID
+     * @return True if the generation runs on this node
+     */
+    public boolean isActive(UUID reportId) {
+        return activeReports.contains(reportId);
+    }
+
+    /**
+     * Refresh the heartbeat of every generation running on this node in one update.
+     */
+    @Scheduled(fixedDelayString = "${app.report.recovery.heartbeat-interval-ms:15000}")
+    public void heartbeat() {
+        if (activeReports.isEmpty()) {
+            return;
+        }
+        List<UUID> ids = new ArrayList<>(activeReports);
+        int touched = reportRepository.touchHeartbeats(ids, nodeId, LocalDateTime.now());
+        if (touched < ids.size()) {
+            log.warn("Heartbeat refreshed {} of {} running generations; the others were recovered elsewhere",
+                    touched, ids.size());
+        }
+    }
+}
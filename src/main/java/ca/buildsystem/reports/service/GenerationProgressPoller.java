@@ -0,0 +1,48 @@
+package ca.buildsystem.reports.service;
+
+import ca.buildsystem.reports.generation.GenerationProgressBus;
+import ca.buildsystem.reports.generation.GenerationStage;
+import ca.buildsystem.reports.repository.ReportVersion;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Scheduled job closing the progress streams of generations that ended out of this node's sight.
+ * The progress bus only carries the events of generations running on this node, so a stream
+ * opened on another node, or one that missed the terminal event, would stay open until its
+ * timeout. The status of every watched report is read in one query, and the outcome of reports
+ * that completed or failed is published to their subscribers.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class GenerationProgressPoller {
+
+    private final GenerationProgressBus progressBus;
+    private final ReportService reportService;
+
+    /**
+     * Publish the outcome of every watched report whose generation has ended.
+     */
+    @Scheduled(fixedDelayString = "${app.report.progress.status-poll-interval-ms:5000}")
+    public void publishEndedGenerations() {
+        Set<UUID> watched = progressBus.subscribedReports();
+        if (watched.isEmpty()) {
+            return;
+        }
+        for (ReportVersion version : reportService.findReportVersions(watched)) {
+            if ("COMPLETED".equals(version.getStatus())) {
+                log.debug("Report {} completed elsewhere, closing its progress streams", version.getId());
+                progressBus.publish(version.getId(), GenerationStage.COMPLETED, 0, 100);
+            } else if ("ERROR".equals(version.getStatus())) {
+                log.debug("Report {} failed elsewhere, closing its progress streams", version.getId());
+                progressBus.publishFailure(version.getId(), "Report generation failed");
+            }
+        }
+    }
+}
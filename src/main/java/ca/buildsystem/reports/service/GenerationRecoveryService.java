@@ -0,0 +1,169 @@
+package ca.buildsystem.reports.service;
+
+import ca.buildsystem.reports.model.Report;
+import ca.buildsystem.reports.repository.ReportRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Service recovering generations abandoned by a node that died.
+ * On startup and periodically, generating reports with a stale heartbeat are found in batches;
+ * scheduled reports are re-queued for the scheduler, or failed until their next scheduled run
+ * once out of attempts, on-demand reports are failed, and the partial files they were writing
+ * are removed.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class GenerationRecoveryService {
+
+    private final ReportRepository reportRepository;
+    private final GenerationLeaseService leaseService;
+    private final ReportDtoCache dtoCache;
+
+    @Value("${app.report.recovery.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.report.recovery.stale-after-ms:120000}")
+    private long staleAfterMs;
+
+    @Value("${app.report.recovery.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${app.report.recovery.batch-size:500}")
+    private int batchSize;
+
+    /**
+     * Recover the generations this node owned before it restarted, then any other stale ones.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void recoverOnStartup() {
+        if (!enabled) {
+            return;
+        }
+        int recovered = recover(leaseService.getNodeId());
+        log.info("Recovered {} interrupted generations on startup", recovered);
+    }
+
+    /**
+     * Recover generations whose owner stopped sending heartbeats.
+     */
+    @Scheduled(fixedDelayString = "${app.report.recovery.sweep-interval-ms:60000}",
+            initialDelayString = "${app.report.recovery.sweep-interval-ms:60000}")
+    public void sweep() {
+        if (!enabled) {
+            return;
+        }
+        int recovered = recover(null);
+        if (recovered > 0) {
+            log.warn("Recovered {} generations with a stale heartbeat", recovered);
+        }
+    }
+
+    /**
+     * Recover stale generations in batches.
+     *
+     * @param restartedNode A node whose generations are all stale, or null
+     * @return The number of recovered reports
+     */
+    private int recover(String restartedNode) {
+        int recovered = 0;
+        while (true) {
+            LocalDateTime now = LocalDateTime.now();
+            LocalDateTime threshold = now.minusNanos(staleAfterMs * 1_000_000);
+            List<Report> stale = reportRepository.findStaleGenerations(
+                    threshold, restartedNode, PageRequest.of(0, batchSize));
+            stale.removeIf(report -> leaseService.isActive(report.getId()));
+            if (stale.isEmpty()) {
+                return recovered;
+            }
+
+            List<UUID> requeue = new ArrayList<>();
+            List<UUID> fail = new ArrayList<>();
+            Map<LocalDateTime, List<UUID>> failScheduled = new HashMap<>();
+            for (Report report : stale) {
+                int attempts = report.getRecoveryCount() != null ? report.getRecoveryCount() : 0;
+                if (!report.isScheduled()) {
+                    fail.add(report.getId());
+                } else if (attempts + 1 < maxAttempts) {
+                    requeue.add(report.getId());
+                } else {
+                    // Out of attempts: fail this run but keep the schedule, as a failed regeneration does
+                    failScheduled.computeIfAbsent(ReportSchedules.nextGeneration(report), next -> new ArrayList<>())
+                            .add(report.getId());
+                }
+            }
+            int changed = 0;
+            if (!requeue.isEmpty()) {
+                // Due immediately, so the scheduler picks them up on its next poll
+                changed += reportRepository.recoverStaleGenerations(requeue, "PENDING", now, threshold, restartedNode);
+            }
+            if (!fail.isEmpty()) {
+                changed += reportRepository.recoverStaleGenerations(fail, "ERROR", null, threshold, restartedNode);
+            }
+            for (Map.Entry<LocalDateTime, List<UUID>> entry : failScheduled.entrySet()) {
+                changed += reportRepository.recoverStaleGenerations(
+                        entry.getValue(), "ERROR", entry.getKey(), threshold, restartedNode);
+            }
+            // Reports another node revived meanwhile are evicted too; that is harmless
+            dtoCache.evictReports(stale.stream().map(Report::getId).collect(Collectors.toList()));
+            removePartialFiles(stale);
+            recovered += changed;
+
+            if (changed == 0 || stale.size() < batchSize) {
+                return recovered;
+            }
+        }
+    }
+
+    /**
+     * Delete the files the recovered generations were writing.
+     * Reports are re-read first, so a generation that completed in the meantime keeps its file.
+     */
+    private void removePartialFiles(List<Report> stale) {
+        Map<UUID, String> workingFiles = stale.stream()
+                .filter(report -> report.getWorkingFilePath() != null)
+                .collect(Collectors.toMap(Report::getId, Report::getWorkingFilePath));
+        if (workingFiles.isEmpty()) {
+            return;
+        }
+        Map<UUID, Report> current = reportRepository.findAllById(workingFiles.keySet()).stream()
+                .collect(Collectors.toMap(Report::getId, Function.identity()));
+        List<UUID> cleaned = new ArrayList<>();
+        workingFiles.forEach((id, path) -> {
+            Report report = current.get(id);
+            if (report == null || "GENERATING".equals(report.getStatus())
+                    || Objects.equals(path, report.getFilePath())) {
+                return;
+            }
+            try {
+                Files.deleteIfExists(Paths.get(path));
+                cleaned.add(id);
+            } catch (IOException e) {
+                log.warn("Could not delete partial report file {}", path, e);
+            }
+        });
+        if (!cleaned.isEmpty()) {
+            reportRepository.clearWorkingFilePaths(cleaned);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package ca.buildsystem.reports.service;
+
+import ca.buildsystem.reports.model.IdempotencyRecord;
+import ca.buildsystem.reports.repository.IdempotencyRecordRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Persisted store of idempotency keys.
+ * Every operation commits on its own so that other requests and nodes see claims immediately.
+ */
+@Component
+@RequiredArgsConstructor
+public class IdempotencyKeyStore {
+
+    private final IdempotencyRecordRepository recordRepository;
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW, readOnly = true)
+    public Optional<IdempotencyRecord> find(String key) {
+        return recordRepository.findById(key);
+    }
+
+    /**
+     * Claim a key for an in-flight request.
+     *
+     * @param key The scoped idempotency key
+     * @param requestHash The hash of the request payload
+     * @param expiresAt The time after which the key may be reused
+     * @return True if the key was claimed, false if another request holds it
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public boolean tryClaim(String key, String requestHash, LocalDateTime expiresAt) {
+        // A failed insert would abort the transaction, so a concurrent claim must not raise one
+        return recordRepository.insertIfAbsent(key, requestHash, LocalDateTime.now(), expiresAt) > 0;
+    }
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void complete(String key, UUID reportId) {
+        recordRepository.findById(key).ifPresent(record -> {
+            record.setStatus(IdempotencyRecord.COMPLETED);
+            record.setReportId(reportId);
+            recordRepository.save(record);
+        });
+    }
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void release(String key) {
+        recordRepository.deleteById(key);
+    }
+
+    /**
+     * Release a key whose record has expired.
+     *
+     * @param key The scoped idempotency key
+     * @return True if the expired record was deleted
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public boolean releaseExpired(String key) {
+        return recordRepository.deleteIfExpired(key, LocalDateTime.now()) > 0;
+    }
+
+    /**
+     * Release an in-flight key whose heartbeat is older than the threshold.
+     *
+     * @param key The scoped idempotency key
+     * @param threshold Heartbeats older than this are stale
+     * @return True if the abandoned claim was deleted
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public boolean releaseAbandoned(String key, LocalDateTime threshold) {
+        return recordRepository.deleteIfAbandoned(key, threshold) > 0;
+    }
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public int touchHeartbeats(Collection<String> keys) {
+        return recordRepository.touchHeartbeats(keys, LocalDateTime.now());
+    }
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public int deleteExpired() {
+        return recordRepository.deleteExpired(LocalDateTime.now());
+    }
+}
@@ -0,0 +1,235 @@
+package ca.buildsystem.reports.service;
+
+import ca.buildsystem.reports.dto.ReportResponseDTO;
+import ca.buildsystem.reports.exception.IdempotencyConflictException;
+import ca.buildsystem.reports.exception.InvalidIdempotencyKeyException;
+import ca.buildsystem.reports.exception.ResourceNotFoundException;
+import ca.buildsystem.reports.model.IdempotencyRecord;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Service suppressing duplicate report requests carrying the same Idempotency-Key.
+ * The first request claims the key in the persisted store and runs; a repeat of a completed
+ * request returns the original report, and a concurrent repeat waits for the in-flight one,
+ * on this node through a shared future and on other nodes by polling the store. The node running
+ * a request keeps its claim alive with heartbeats on the generation lease cadence; a claim is
+ * only taken over once its heartbeat is as stale as an abandoned generation's.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class IdempotencyService {
+
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private final IdempotencyKeyStore keyStore;
+    private final ReportService reportService;
+    private final ObjectMapper objectMapper;
+
+    private final ConcurrentMap<String, CompletableFuture<ReportResponseDTO>> inFlight = new ConcurrentHashMap<>();
+
+    @Value("${app.idempotency.ttl-hours:24}")
+    private long ttlHours;
+
+    @Value("${app.idempotency.wait-timeout-ms:30000}")
+    private long waitTimeoutMs;
+
+    @Value("${app.idempotency.poll-interval-ms:250}")
+    private long pollIntervalMs;
+
+    @Value("${app.report.recovery.stale-after-ms:120000}")
+    private long staleAfterMs;
+
+    /**
+     * Run a report request at most once per idempotency key.
+     *
+     * @param key The Idempotency-Key header value
+     * @param principal The name of the requesting principal, which scopes the key
+     * @param request The request payload, used to detect reuse of a key for another request
+     * @param action The request to run if the key is new
+     * @return The report created by the first request with this key
+     */
+    public ReportResponseDTO execute(String key, String principal, Object request,
+                                     Supplier<ReportResponseDTO> action) {
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            throw new InvalidIdempotencyKeyException(MAX_KEY_LENGTH);
+        }
+        String scopedKey = (principal != null ? principal : "anonymous") + ":" + key;
+        String requestHash = hash(request);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitTimeoutMs);
+
+        while (true) {
+            CompletableFuture<ReportResponseDTO> running = inFlight.get(scopedKey);
+            if (running != null) {
+                ReportResponseDTO result = await(running, deadline);
+                if (result != null) {
+                    return result;
+                }
+                continue;
+            }
+
+            Optional<IdempotencyRecord> existing = keyStore.find(scopedKey);
+            if (existing.isEmpty()) {
+                CompletableFuture<ReportResponseDTO> future = new CompletableFuture<>();
+                if (inFlight.putIfAbsent(scopedKey, future) != null) {
+                    continue;
+                }
+                try {
+                    return runClaimed(scopedKey, requestHash, action, future);
+                } finally {
+                    inFlight.remove(scopedKey, future);
+                }
+            }
+
+            IdempotencyRecord record = existing.get();
+            if (record.getExpiresAt().isBefore(LocalDateTime.now())) {
+                // Expired keys may be reused even before the purge deletes them
+                keyStore.releaseExpired(scopedKey);
+                continue;
+            }
+            if (!record.getRequestHash().equals(requestHash)) {
+                throw new IdempotencyConflictException("Idempotency-Key was already used for a different request");
+            }
+            if (IdempotencyRecord.COMPLETED.equals(record.getStatus())) {
+                log.info("Returning report {} for repeated Idempotency-Key", record.getReportId());
+                return reportService.getReportById(record.getReportId())
+                        .orElseThrow(() -> new ResourceNotFoundException("Report", "id", record.getReportId()));
+            }
+            LocalDateTime staleThreshold = LocalDateTime.now().minusNanos(staleAfterMs * 1_000_000);
+            LocalDateTime lastSeen = record.getHeartbeatAt() != null ? record.getHeartbeatAt() : record.getCreatedAt();
+            if (lastSeen.isBefore(staleThreshold) && keyStore.releaseAbandoned(scopedKey, staleThreshold)) {
+                // The node running the request stopped before completing it
+                log.warn("Released abandoned Idempotency-Key claimed at {}, last heartbeat {}",
+                        record.getCreatedAt(), record.getHeartbeatAt());
+                continue;
+            }
+            // In flight on another node
+            sleepUntilNextPoll(deadline);
+        }
+    }
+
+    /**
+     * Refresh the heartbeat of every request this node is running in one update.
+     * Keys claimed elsewhere and only awaited here are not refreshed.
+     */
+    @Scheduled(fixedDelayString = "${app.report.recovery.heartbeat-interval-ms:15000}")
+    public void heartbeat() {
+        List<String> running = inFlight.entrySet().stream()
+                .filter(entry -> !entry.getValue().isDone())
+                .map(Map.Entry::getKey)
+                .toList();
+        if (!running.isEmpty()) {
+            keyStore.touchHeartbeats(running);
+        }
+    }
+
+    /**
+     * Delete expired keys.
+     */
+    @Scheduled(cron = "${app.idempotency.cleanup-cron:0 30 * * * *}")
+    public void purgeExpiredKeys() {
+        int deleted = keyStore.deleteExpired();
+        if (deleted > 0) {
+            log.info("Purged {} expired idempotency keys", deleted);
+        }
+    }
+
+    /**
+     * Claim the key and run the request, completing the future local waiters share.
+     * A null result tells local waiters that the key was claimed elsewhere and to look again.
+     */
+    private ReportResponseDTO runClaimed(String scopedKey, String requestHash, Supplier<ReportResponseDTO> action,
+                                         CompletableFuture<ReportResponseDTO> future) {
+        if (!keyStore.tryClaim(scopedKey, requestHash, LocalDateTime.now().plusHours(ttlHours))) {
+            future.complete(null);
+            return awaitOtherNode(scopedKey, requestHash);
+        }
+        try {
+            ReportResponseDTO result = action.get();
+            keyStore.complete(scopedKey, result.getId());
+            future.complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            // Let the client retry the failed request with the same key
+            keyStore.release(scopedKey);
+            future.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private ReportResponseDTO awaitOtherNode(String scopedKey, String requestHash) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitTimeoutMs);
+        while (true) {
+            Optional<IdempotencyRecord> record = keyStore.find(scopedKey);
+            if (record.isEmpty()) {
+                throw new IdempotencyConflictException("The original request with this Idempotency-Key failed; retry the request");
+            }
+            if (!record.get().getRequestHash().equals(requestHash)) {
+                throw new IdempotencyConflictException("Idempotency-Key was already used for a different request");
+            }
+            if (IdempotencyRecord.COMPLETED.equals(record.get().getStatus())) {
+                return reportService.getReportById(record.get().getReportId())
+                        .orElseThrow(() -> new ResourceNotFoundException("Report", "id", record.get().getReportId()));
+            }
+            sleepUntilNextPoll(deadline);
+        }
+    }
+
+    private ReportResponseDTO await(CompletableFuture<ReportResponseDTO> future, long deadline) {
+        try {
+            return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new IdempotencyConflictException("A request with this Idempotency-Key is still in progress");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for an in-flight request", e);
+        }
+    }
+
+    private void sleepUntilNextPoll(long deadline) {
+        if (System.nanoTime() >= deadline) {
+            throw new IdempotencyConflictException("A request with this Idempotency-Key is still in progress");
+        }
+        try {
+            Thread.sleep(pollIntervalMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for an in-flight request", e);
+        }
+    }
+
+    private String hash(Object request) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(objectMapper.writeValueAsBytes(request)));
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Could not hash request", e);
+        }
+    }
+}
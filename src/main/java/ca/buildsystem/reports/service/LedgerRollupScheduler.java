@@ -0,0 +1,61 @@
+package ca.buildsystem.reports.service;
+
+import ca.buildsystem.reports.model.ReportType;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+
+/**
+ * Scheduled job advancing the ledger rollups over closed days.
+ * Each day is rolled up in its own transaction, so an interrupted run resumes where it stopped.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class LedgerRollupScheduler {
+
+    private final LedgerRollupService rollupService;
+
+    @Value("${app.report.rollup.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.report.rollup.initial-lookback-days:1825}")
+    private int initialLookbackDays;
+
+    @Value("${app.report.rollup.max-days-per-run:400}")
+    private int maxDaysPerRun;
+
+    /**
+     * Roll up every closed day after the current watermark of each source type.
+     */
+    @Scheduled(cron = "${app.report.rollup.cron:0 15 0 * * *}")
+    public void rollUpClosedDays() {
+        if (!enabled) {
+            return;
+        }
+        LocalDate lastClosedDay = LocalDate.now().minusDays(1);
+
+        for (ReportType sourceType : rollupService.getRollupSourceTypes()) {
+            LocalDate day = rollupService.getWatermark(sourceType)
+                    .map(watermark -> watermark.plusDays(1))
+                    .orElse(lastClosedDay.minusDays(initialLookbackDays));
+            int rolled = 0;
+            try {
+                while (!day.isAfter(lastClosedDay) && rolled < maxDaysPerRun) {
+                    rollupService.rollUpDay(sourceType, day);
+                    day = day.plusDays(1);
+                    rolled++;
+                }
+            } catch (Exception e) {
+                log.error("Error rolling up {} ledger for {}", sourceType, day, e);
+            }
+            if (rolled > 0) {
+                log.info("Rolled up {} days of {} ledger data", rolled, sourceType);
+            }
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package ca.buildsystem.reports.service;
+
+import ca.buildsystem.reports.generation.LedgerAggregator;
+import ca.buildsystem.reports.generation.LedgerBufferFactory;
+import ca.buildsystem.reports.generation.LedgerQuery;
+import ca.buildsystem.reports.generation.LedgerRow;
+import ca.buildsystem.reports.generation.LedgerSource;
+import ca.buildsystem.reports.generation.PartitionedLedgerAggregator;
+import ca.buildsystem.reports.model.LedgerRollup;
+import ca.buildsystem.reports.model.ReportType;
+import ca.buildsystem.reports.model.RollupGranularity;
+import ca.buildsystem.reports.model.RollupWatermark;
+import ca.buildsystem.reports.repository.LedgerRollupRepository;
+import ca.buildsystem.reports.repository.RollupWatermarkRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Service maintaining pre-aggregated daily and monthly ledger totals.
+ * Totals are updated incrementally as ledger data arrives, and summary reports are answered
+ * from the rollups plus only the un-rolled tail after the watermark.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class LedgerRollupService {
+
+    private final LedgerRollupRepository rollupRepository;
+    private final RollupWatermarkRepository watermarkRepository;
+    private final List<LedgerSource> ledgerSources;
+    private final LedgerBufferFactory ledgerBufferFactory;
+    private final MemoryGovernor memoryGovernor;
+
+    /**
+     * Find the report types for which at least one ledger source exists.
+     *
+     * @return The set of source report types that can be rolled up
+     */
+    public Set<ReportType> getRollupSourceTypes() {
+        Set<ReportType> types = EnumSet.noneOf(ReportType.class);
+        for (ReportType type : ReportType.values()) {
+            if (ledgerSources.stream().anyMatch(source -> source.supports(type))) {
+                types.add(type);
+            }
+        }
+        return types;
+    }
+
+    /**
+     * Get the last day fully covered by rollups for a source type.
+     *
+     * @param sourceType The source report type
+     * @return An optional containing the watermark date if any day has been rolled up
+     */
+    @Transactional(readOnly = true)
+    public Optional<LocalDate> getWatermark(ReportType sourceType) {
+        return watermarkRepository.findById(sourceType).map(RollupWatermark::getRolledThrough);
+    }
+
+    /**
+     * Roll up one closed day of a source type and advance its watermark.
+     * The day's rows and the watermark are written in the same transaction.
+     *
+     * @param sourceType The source report type
+     * @param day The day to roll up; must directly follow the current watermark
+     */
+    @Transactional
+    public void rollUpDay(ReportType sourceType, LocalDate day) {
+        RollupWatermark watermark = watermarkRepository.findForUpdate(sourceType)
+                .orElseGet(() -> RollupWatermark.builder().sourceType(sourceType).rolledFrom(day).build());
+        if (watermark.getRolledThrough() != null && !day.equals(watermark.getRolledThrough().plusDays(1))) {
+            throw new IllegalStateException(String.format(
+                    "Cannot roll up %s for %s, rolled through %s", day, sourceType, watermark.getRolledThrough()));
+        }
+
+        List<LedgerRow> rows = new ArrayList<>();
+        LedgerQuery query = LedgerQuery.builder().type(sourceType).fromDate(day).toDate(day).build();
+        for (LedgerSource source : ledgerSources) {
+            if (source.supports(sourceType)) {
+                source.fetch(query, rows::add);
+            }
+        }
+        addToRollups(sourceType, rows);
+
+        watermark.setRolledThrough(day);
+        watermarkRepository.save(watermark);
+        log.debug("Rolled up {} ledger rows of {} for {}", rows.size(), sourceType, day);
+    }
+
+    /**
+     * Fold late corrections into the daily and monthly totals of their own dates.
+     * Called by ingest paths once the corrections are visible to the ledger sources. Only
+     * corrections dated within the rolled-up range are added: days before it and after the
+     * watermark are read from the ledger sources, which already return them, and a day after the
+     * watermark picks them up when it is rolled up.
+     *
+     * @param sourceType The source report type
+     * @param rows The ledger rows to add
+     */
+    @Transactional
+    public void record(ReportType sourceType, Collection<LedgerRow> rows) {
+        Optional<RollupWatermark> watermark = watermarkRepository.findForUpdate(sourceType);
+        if (watermark.isEmpty()) {
+            return;
+        }
+        LocalDate rolledFrom = watermark.get().getRolledFrom();
+        LocalDate rolledThrough = watermark.get().getRolledThrough();
+        List<LedgerRow> rolled = rows.stream()
+                .filter(row -> row.getDate() != null
+                        && !row.getDate().isBefore(rolledFrom) && !row.getDate().isAfter(rolledThrough))
+                .toList();
+        addToRollups(sourceType, rolled);
+    }
+
+    private void addToRollups(ReportType sourceType, Collection<LedgerRow> rows) {
+        LedgerAggregator daily = new LedgerAggregator(RollupGranularity.DAY);
+        LedgerAggregator monthly = new LedgerAggregator(RollupGranularity.MONTH);
+        for (LedgerRow row : rows) {
+            daily.add(row);
+            monthly.add(row);
+        }
+        upsert(RollupGranularity.DAY, sourceType, daily);
+        upsert(RollupGranularity.MONTH, sourceType, monthly);
+    }
+
+    /**
+     * Stream summary rows for a query, one per period, project, client and currency.
+     * Whole months inside the rolled-up range are read from monthly rollups, partial months
+     * from daily rollups, and days before the first rolled-up day or after the watermark from
+     * the ledger sources.
+     * Buckets that outgrow the heap are partitioned to disk and merged back in period order.
+     *
+     * @param reportId The report the summary is generated for, for memory accounting
+     * @param query The report criteria
+     * @param granularity The period length of the summary rows
+     * @param sink The consumer receiving each summary row, ordered by period
+     */
+    @Transactional(readOnly = true)
+    public void loadSummary(UUID reportId, LedgerQuery query, RollupGranularity granularity,
+                            Consumer<LedgerRow> sink) {
+        if (query.getFromDate() == null || query.getToDate() == null) {
+            throw new IllegalArgumentException("Summary reports require a start and end date");
+        }
+        try (MemoryGovernor.Reservation memory = memoryGovernor.reserve(reportId,
+                ledgerBufferFactory.minAggregateHeapBytes(), ledgerBufferFactory.aggregateHeapBytes());
+             PartitionedLedgerAggregator aggregator = ledgerBufferFactory.createAggregator(granularity,
+                     memory.getBytes())) {
+            aggregate(query, granularity, aggregator);
+            aggregator.drainTo(sink);
+        }
+    }
+
+    private void aggregate(LedgerQuery query, RollupGranularity granularity, PartitionedLedgerAggregator aggregator) {
+        LocalDate from = query.getFromDate();
+        LocalDate to = query.getToDate();
+        LocalDate tailFrom = from;
+        Optional<RollupWatermark> watermark = watermarkRepository.findById(query.getType());
+        LocalDate rolledFrom = watermark.map(RollupWatermark::getRolledFrom).orElse(null);
+        LocalDate rolledThrough = watermark.map(RollupWatermark::getRolledThrough).orElse(null);
+        if (watermark.isPresent() && !rolledFrom.isAfter(rolledThrough)
+                && !from.isAfter(rolledThrough) && !to.isBefore(rolledFrom)) {
+            LocalDate rolledStart = from.isBefore(rolledFrom) ? rolledFrom : from;
+            LocalDate rolledEnd = to.isBefore(rolledThrough) ? to : rolledThrough;
+            LocalDate firstFullMonth = rolledStart.getDayOfMonth() == 1
+                    ? rolledStart : rolledStart.withDayOfMonth(1).plusMonths(1);
+            LocalDate lastFullMonthEnd = rolledEnd.plusDays(1).getDayOfMonth() == 1
+                    ? rolledEnd : rolledEnd.withDayOfMonth(1).minusDays(1);
+
+            if (granularity == RollupGranularity.MONTH && !firstFullMonth.isAfter(lastFullMonthEnd)) {
+                addRollups(RollupGranularity.MONTH, query, firstFullMonth, lastFullMonthEnd, aggregator);
+                addRollups(RollupGranularity.DAY, query, rolledStart, firstFullMonth.minusDays(1), aggregator);
+                addRollups(RollupGranularity.DAY, query, lastFullMonthEnd.plusDays(1), rolledEnd, aggregator);
+            } else {
+                addRollups(RollupGranularity.DAY, query, rolledStart, rolledEnd, aggregator);
+            }
+            if (from.isBefore(rolledStart)) {
+                addLedger(query, from, rolledStart.minusDays(1), aggregator);
+                log.debug("Read {} to {} of {} before the first rollup from ledger sources",
+                        from, rolledStart.minusDays(1), query.getType());
+            }
+            tailFrom = rolledEnd.plusDays(1);
+        }
+
+        if (!tailFrom.isAfter(to)) {
+            addLedger(query, tailFrom, to, aggregator);
+            log.debug("Read un-rolled tail {} to {} of {} from ledger sources", tailFrom, to, query.getType());
+        }
+    }
+
+    private void addLedger(LedgerQuery query, LocalDate from, LocalDate to, PartitionedLedgerAggregator aggregator) {
+        LedgerQuery range = query.toBuilder().fromDate(from).toDate(to).build();
+        for (LedgerSource source : ledgerSources) {
+            if (source.supports(query.getType())) {
+                source.fetch(range, row -> aggregator.add(row.getDate() != null ? row.getDate() : from,
+                        row.getProjectId(), row.getClientId(), row.getCurrencyCode(), row.getAmount(), 1));
+            }
+        }
+    }
+
+    private void addRollups(RollupGranularity source, LedgerQuery query, LocalDate from, LocalDate to,
+                            PartitionedLedgerAggregator aggregator) {
+        if (from.isAfter(to)) {
+            return;
+        }
+        for (LedgerRollup rollup : rollupRepository.findForRange(
+                source, query.getType(), from, to, query.getProjectId(), query.getClientId())) {
+            aggregator.add(rollup.getPeriodStart(), fromKey(rollup.getProjectId()), fromKey(rollup.getClientId()),
+                    fromKey(rollup.getCurrencyCode()), rollup.getTotalAmount(), rollup.getEntryCount());
+        }
+    }
+
+    private void upsert(RollupGranularity granularity, ReportType sourceType, LedgerAggregator buckets) {
+        List<LedgerRollup> changed = new ArrayList<>(buckets.size());
+        buckets.forEach((periodStart, project, client, currency, total, count) -> {
+            UUID projectId = project != null ? project : LedgerRollup.NO_ID;
+            UUID clientId = client != null ? client : LedgerRollup.NO_ID;
+            String currencyCode = currency != null ? currency : LedgerRollup.NO_CURRENCY;
+            LedgerRollup rollup = rollupRepository
+                    .findByGranularityAndSourceTypeAndPeriodStartAndProjectIdAndClientIdAndCurrencyCode(
+                            granularity, sourceType, periodStart, projectId, clientId, currencyCode)
+                    .orElseGet(() -> LedgerRollup.builder()
+                            .granularity(granularity)
+                            .sourceType(sourceType)
+                            .periodStart(periodStart)
+                            .projectId(projectId)
+                            .clientId(clientId)
+                            .currencyCode(currencyCode)
+                            .totalAmount(BigDecimal.ZERO)
+                            .build());
+            rollup.setTotalAmount(rollup.getTotalAmount().add(total));
+            rollup.setEntryCount(rollup.getEntryCount() + count);
+            changed.add(rollup);
+        });
+        rollupRepository.saveAll(changed);
+    }
+
+    private static UUID fromKey(UUID id) {
+        return LedgerRollup.NO_ID.equals(id) ? null : id;
+    }
+
+    private static String fromKey(String currencyCode) {
+        return LedgerRollup.NO_CURRENCY.equals(currencyCode) ? null : currencyCode;
+    }
+}
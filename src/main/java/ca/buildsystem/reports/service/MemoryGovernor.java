@@ -0,0 +1,189 @@
+package ca.buildsystem.reports.service;
+
+import ca.buildsystem.reports.generation.DirectMemoryPool;
+import ca.buildsystem.reports.model.ReportFormat;
+import com.sun.management.HotSpotDiagnosticMXBean;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.lang.management.ManagementFactory;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Global memory budgets shared by all running generations: one for the heap and one for direct
+ * memory, which the JVM limits separately. The heap budget is a fraction of the maximum heap and
+ * covers renderers, sort runs and aggregation buckets; memory a generation uses whatever it is
+ * granted, such as the renderer's working set or the smallest sort run, is reserved as required:
+ * it is always charged, even beyond the budget, so that later grants account for it. A
+ * generation that does not fit the remaining heap budget is not refused: it is granted what is
+ * left, or nothing, and runs beyond the grant spill to disk. The direct budget is a configured
+ * size, or else a fraction of the JVM's direct memory limit; it is the pool every off-heap ledger
+ * buffer charges its chunks to as it grows, and chunks beyond it spill to a memory-mapped file.
+ */
+@Service
+@Slf4j
+public class MemoryGovernor {
+
+    private static final long MB = 1024L * 1024L;
+
+    private final AtomicLong reservedBytes = new AtomicLong();
+
+    @Value("${app.report.memory.heap-fraction:0.5}")
+    private double heapFraction;
+
+    @Value("${app.report.memory.direct-budget-mb:0}")
+    private long directBudgetMb;
+
+    @Value("${app.report.memory.direct-fraction:0.5}")
+    private double directFraction;
+
+    @Value("${app.report.memory.min-grant-mb:4}")
+    private long minGrantMb;
+
+    @Value("${app.report.memory.template-overhead-mb:16}")
+    private long templateOverheadMb;
+
+    private long budgetBytes;
+    private DirectMemoryPool directMemory;
+
+    @PostConstruct
+    void initBudget() {
+        budgetBytes = (long) (Runtime.getRuntime().maxMemory() * heapFraction);
+        directMemory = new DirectMemoryPool(
+                directBudgetMb > 0 ? directBudgetMb * MB : (long) (maxDirectMemory() * directFraction));
+        log.info("Generation memory budget: {} MB ({} of max heap), {} MB of direct memory",
+                budgetBytes / MB, heapFraction, directMemory.getLimitBytes() / MB);
+    }
+
+    /**
+     * Get the JVM's direct memory limit: -XX:MaxDirectMemorySize, which defaults to the maximum heap.
+     */
+    private static long maxDirectMemory() {
+        try {
+            HotSpotDiagnosticMXBean diagnostics = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+            long configured = Long.parseLong(diagnostics.getVMOption("MaxDirectMemorySize").getValue());
+            if (configured > 0) {
+                return configured;
+            }
+        } catch (RuntimeException e) {
+            log.debug("Could not read MaxDirectMemorySize, assuming the default", e);
+        }
+        return Runtime.getRuntime().maxMemory();
+    }
+
+    /**
+     * Estimate the memory a generation uses besides its ledger rows: the working set of its
+     * renderer and, with a template, the layout engine's state. It cannot spill.
+     *
+     * @param format The report format
+     * @param templated True if the report is rendered from a template
+     * @return The working set in bytes
+     */
+    public long workingSetBytes(ReportFormat format, boolean templated) {
+        long rendererBytes = switch (format) {
+            // Streaming workbook window, styles and shared strings
+            case EXCEL -> 32 * MB;
+            case PDF -> 24 * MB;
+            case HTML, CSV, JSON -> MB;
+        };
+        return rendererBytes + (templated ? templateOverheadMb * MB : 0);
+    }
+
+    /**
+     * Reserve memory for a generation, granting at most what is left of the budget.
+     * Grants smaller than the minimum are not worth keeping in memory and become zero.
+     *
+     * @param reportId The report ID, for logging
+     * @param requestedBytes The estimated footprint
+     * @return The reservation, to be closed when the generation ends
+     */
+    public Reservation reserve(UUID reportId, long requestedBytes) {
+        return reserve(reportId, 0, requestedBytes);
+    }
+
+    /**
+     * Reserve memory for a generation: the required part in any case, and the rest of the
+     * requested memory as far as the budget allows.
+     * Optional grants smaller than the minimum are not worth keeping in memory and become zero.
+     *
+     * @param reportId The report ID, for logging
+     * @param requiredBytes The memory used whatever is granted
+     * @param requestedBytes The estimated footprint, including the required part
+     * @return The reservation of at least the required bytes, to be closed when the generation ends
+     */
+    public Reservation reserve(UUID reportId, long requiredBytes, long requestedBytes) {
+        long granted;
+        while (true) {
+            long reserved = reservedBytes.get();
+            long optional = Math.max(0, Math.min(requestedBytes - requiredBytes,
+                    budgetBytes - reserved - requiredBytes));
+            if (optional < minGrantMb * MB) {
+                optional = 0;
+            }
+            granted = requiredBytes + optional;
+            if (reservedBytes.compareAndSet(reserved, reserved + granted)) {
+                break;
+            }
+        }
+        if (granted < requestedBytes) {
+            log.info("Report {} over memory budget: granted {} of {} MB, the rest spills to disk",
+                    reportId, granted / MB, requestedBytes / MB);
+        }
+        return new Reservation(granted);
+    }
+
+    /**
+     * Get the memory currently reserved by running generations.
+     *
+     * @return The reserved bytes
+     */
+    public long getReservedBytes() {
+        return reservedBytes.get();
+    }
+
+    /**
+     * Get the total memory budget.
+     *
+     * @return The budget in bytes
+     */
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    /**
+     * Get the direct memory pool the ledger buffers of all generations charge their chunks to.
+     *
+     * @return The pool
+     */
+    public DirectMemoryPool getDirectMemory() {
+        return directMemory;
+    }
+
+    /**
+     * Memory granted to one generation; closing it returns the memory to the budget.
+     */
+    public final class Reservation implements AutoCloseable {
+
+        private final long bytes;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Reservation(long bytes) {
+            this.bytes = bytes;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                reservedBytes.addAndGet(-bytes);
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package ca.buildsystem.reports.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Bounded cache resolving public access tokens to report IDs.
+ * Known tokens map to their report; unknown tokens are remembered for a shorter time, so
+ * repeated hits on dead or mistyped links do not reach the database. Concurrent misses on the
+ * same token share one lookup. Entries are keyed by token hash, like the database index.
+ */
+@Component
+public class PublicReportTokenCache {
+
+    private final Cache<String, UUID> known;
+    private final Cache<String, Boolean> unknown;
+
+    public PublicReportTokenCache(MeterRegistry meterRegistry,
+                                  @Value("${app.cache.public-tokens.max-entries:100000}") long maxKnown,
+                                  @Value("${app.cache.public-tokens.ttl-seconds:600}") long knownTtlSeconds,
+                                  @Value("${app.cache.public-tokens.negative-max-entries:100000}") long maxUnknown,
+                                  @Value("${app.cache.public-tokens.negative-ttl-seconds:60}") long unknownTtlSeconds) {
+        this.known = Caffeine.newBuilder()
+                .maximumSize(maxKnown)
+                .expireAfterWrite(Duration.ofSeconds(knownTtlSeconds))
+                .recordStats()
+                .build();
+        this.unknown = Caffeine.newBuilder()
+                .maximumSize(maxUnknown)
+                .expireAfterWrite(Duration.ofSeconds(unknownTtlSeconds))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, known, "publicTokens");
+        CaffeineCacheMetrics.monitor(meterRegistry, unknown, "publicTokensUnknown");
+    }
+
+    /**
+     * Resolve a token hash to the ID of its public report.
+     *
+     * @param tokenHash The hash of the access token
+     * @param loader Looks the hash up in the database
+     * @return An optional containing the report ID, empty if the token is unknown
+     */
+    public Optional<UUID> resolve(String tokenHash, Function<String, Optional<UUID>> loader) {
+        if (unknown.getIfPresent(tokenHash) != null) {
+            return Optional.empty();
+        }
+        UUID id = known.get(tokenHash, hash -> loader.apply(hash).orElse(null));
+        if (id == null) {
+            unknown.put(tokenHash, Boolean.TRUE);
+        }
+        return Optional.ofNullable(id);
+    }
+
+    /**
+     * Remember a token as unknown, for a report that was deleted or made private.
+     *
+     * @param tokenHash The hash of the access token
+     */
+    public void markUnknown(String tokenHash) {
+        known.invalidate(tokenHash);
+        unknown.put(tokenHash, Boolean.TRUE);
+    }
+
+    /**
+     * Forget a token, for a report whose visibility changed.
+     *
+     * @param tokenHash The hash of the access token
+     */
+    public void evict(String tokenHash) {
+        known.invalidate(tokenHash);
+        unknown.invalidate(tokenHash);
+    }
+}
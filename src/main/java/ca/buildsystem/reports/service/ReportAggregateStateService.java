@@ -0,0 +1,214 @@
+package ca.buildsystem.reports.service;
+
+import ca.buildsystem.reports.generation.LedgerBufferFactory;
+import ca.buildsystem.reports.generation.LedgerColumnBuffer;
+import ca.buildsystem.reports.generation.LedgerQuery;
+import ca.buildsystem.reports.generation.LedgerRow;
+import ca.buildsystem.reports.generation.LedgerRowCodec;
+import ca.buildsystem.reports.generation.LedgerSource;
+import ca.buildsystem.reports.generation.PartitionedLedgerAggregator;
+import ca.buildsystem.reports.model.Report;
+import ca.buildsystem.reports.model.ReportAggregateState;
+import ca.buildsystem.reports.repository.ReportAggregateStateRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Service persisting the aggregate state of scheduled reports between generations.
+ * A reusable state lets the next run read the previous rows from a snapshot, fetch only the
+ * ledger rows posted since the previous run, merge them and re-render.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ReportAggregateStateService {
+
+    private final ReportAggregateStateRepository stateRepository;
+    private final List<LedgerSource> ledgerSources;
+    private final LedgerBufferFactory ledgerBufferFactory;
+    private final MemoryGovernor memoryGovernor;
+
+    @Value("${app.report.storage-path:/tmp/reports}")
+    private String reportStoragePath;
+
+    /**
+     * Find the previous state of a report if it can be extended incrementally.
+     * The state is discarded when the template version, granularity, project, client or range
+     * start changed, or when the range end moved backwards.
+     *
+     * @param report The report entity
+     * @param query The ledger query of the upcoming generation
+     * @return An optional containing the reusable state
+     */
+    @Transactional(readOnly = true)
+    public Optional<ReportAggregateState> findReusableState(Report report, LedgerQuery query) {
+        return stateRepository.findById(report.getId())
+                .filter(state -> Objects.equals(state.getTemplateVersion(), templateVersion(report)))
+                .filter(state -> state.getSummaryGranularity() == report.getSummaryGranularity())
+                .filter(state -> Objects.equals(state.getProjectId(), query.getProjectId()))
+                .filter(state -> Objects.equals(state.getClientId(), query.getClientId()))
+                .filter(state -> Objects.equals(state.getRangeStart(), query.getFromDate()))
+                .filter(state -> state.getRangeEnd() != null && query.getToDate() != null
+                        && !query.getToDate().isBefore(state.getRangeEnd()))
+                .filter(state -> Files.exists(Paths.get(state.getStatePath())));
+    }
+
+    /**
+     * Load the previous rows of a report and merge the rows posted since the previous run.
+     * Days added to the end of the range are fetched in full.
+     *
+     * @param report The report entity
+     * @param state The reusable state
+     * @param query The ledger query of the current generation
+     * @param ledger The buffer receiving the merged rows
+     * @throws IOException if the snapshot cannot be read
+     */
+    public void loadIncremental(Report report, ReportAggregateState state, LedgerQuery query,
+                                LedgerColumnBuffer ledger) throws IOException {
+        long previousRows;
+        if (report.getSummaryGranularity() != null) {
+            try (MemoryGovernor.Reservation memory = memoryGovernor.reserve(report.getId(),
+                         ledgerBufferFactory.minAggregateHeapBytes(), ledgerBufferFactory.aggregateHeapBytes());
+                 PartitionedLedgerAggregator aggregator = ledgerBufferFactory.createAggregator(
+                         report.getSummaryGranularity(), memory.getBytes())) {
+                previousRows = merge(state, query, aggregator::add);
+                aggregator.drainTo(ledger::append);
+            }
+        } else {
+            previousRows = merge(state, query, ledger::append);
+        }
+        log.info("Incremental generation of report {}: {} previous rows, {} rows after merge",
+                report.getId(), previousRows, ledger.size());
+    }
+
+    /**
+     * Persist the rows of a completed generation as the report's new aggregate state.
+     * The snapshot is written next to the current one and only replaces it once the state row
+     * has committed, so the row never describes a snapshot it was not written with.
+     *
+     * @param report The report entity
+     * @param query The ledger query of the generation
+     * @param ledger The generated rows
+     * @param dataWatermark The instant the ledger was read at
+     * @throws IOException if the snapshot cannot be written
+     */
+    @Transactional
+    public void saveState(Report report, LedgerQuery query, LedgerColumnBuffer ledger,
+                          LocalDateTime dataWatermark) throws IOException {
+        Path statePath = stateDirectory().resolve(report.getId() + ".ledger");
+        Path pendingPath = statePath.resolveSibling(statePath.getFileName() + ".pending");
+        LedgerRowCodec.writeSnapshot(pendingPath, ledger, ledger.size());
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    publishSnapshot(pendingPath, statePath);
+                } else {
+                    deleteQuietly(pendingPath);
+                }
+            }
+        });
+
+        ReportAggregateState state = stateRepository.findById(report.getId())
+                .orElseGet(() -> ReportAggregateState.builder().reportId(report.getId()).build());
+        state.setTemplateVersion(templateVersion(report));
+        state.setSummaryGranularity(report.getSummaryGranularity());
+        state.setRangeStart(query.getFromDate());
+        state.setRangeEnd(query.getToDate());
+        state.setProjectId(query.getProjectId());
+        state.setClientId(query.getClientId());
+        state.setDataWatermark(dataWatermark);
+        state.setRowCount(ledger.size());
+        state.setStatePath(statePath.toString());
+        stateRepository.save(state);
+    }
+
+    /**
+     * Delete the aggregate state of a report.
+     *
+     * @param reportId The report ID
+     */
+    @Transactional
+    public void deleteState(UUID reportId) {
+        stateRepository.findById(reportId).ifPresent(state -> {
+            stateRepository.delete(state);
+            // A rollback keeps the row, which must still find its snapshot
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    deleteQuietly(Paths.get(state.getStatePath()));
+                }
+            });
+        });
+    }
+
+    /**
+     * Replace the snapshot of a committed state. If that fails, the previous snapshot is deleted
+     * so the state is not reused with rows it does not describe; the next run rebuilds in full.
+     */
+    private static void publishSnapshot(Path pendingPath, Path statePath) {
+        try {
+            Files.move(pendingPath, statePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Could not replace aggregate state file {}, discarding it", statePath, e);
+            deleteQuietly(statePath);
+            deleteQuietly(pendingPath);
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Could not delete aggregate state file {}", path, e);
+        }
+    }
+
+    private long merge(ReportAggregateState state, LedgerQuery query, Consumer<LedgerRow> sink) throws IOException {
+        long previousRows = LedgerRowCodec.readSnapshot(Paths.get(state.getStatePath()), sink);
+
+        LedgerQuery delta = query.toBuilder()
+                .toDate(state.getRangeEnd())
+                .changedSince(state.getDataWatermark())
+                .build();
+        fetch(delta, sink);
+        if (query.getToDate().isAfter(state.getRangeEnd())) {
+            fetch(query.toBuilder().fromDate(state.getRangeEnd().plusDays(1)).build(), sink);
+        }
+        return previousRows;
+    }
+
+    private void fetch(LedgerQuery query, Consumer<LedgerRow> sink) {
+        for (LedgerSource source : ledgerSources) {
+            if (source.supports(query.getType())) {
+                source.fetch(query, sink);
+            }
+        }
+    }
+
+    private Path stateDirectory() {
+        return Paths.get(reportStoragePath, ".state");
+    }
+
+    private static String templateVersion(Report report) {
+        return report.getTemplate() != null
+                ? report.getTemplate().getId() + ":" + report.getTemplate().getVersion() : null;
+    }
+}
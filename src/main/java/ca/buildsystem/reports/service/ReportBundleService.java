@@ -0,0 +1,152 @@
+package ca.buildsystem.reports.service;
+
+import ca.buildsystem.reports.dto.ReportBundleRequestDTO;
+import ca.buildsystem.reports.exception.BundleTooLargeException;
+import ca.buildsystem.reports.exception.ResourceNotFoundException;
+import ca.buildsystem.reports.model.Report;
+import ca.buildsystem.reports.model.ReportFormat;
+import ca.buildsystem.reports.repository.ReportRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Service streaming several report files as one ZIP archive.
+ * The archive is written straight to the response; formats that are already compressed are
+ * stored as they are and the others are deflated on the fly. Files in the cold tier are
+ * decompressed and deflated again, so the archive holds the original content.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ReportBundleService {
+
+    private static final Set<ReportFormat> COMPRESSED_FORMATS = EnumSet.of(ReportFormat.PDF, ReportFormat.EXCEL);
+
+    private final ReportRepository reportRepository;
+    private final ReportStorageTieringService tieringService;
+
+    @Value("${app.report.bundle.max-reports:5000}")
+    private int maxReports;
+
+    /**
+     * Resolve the report files of a bundle.
+     * Done before the response starts, so that a missing report still produces an error status.
+     *
+     * @param request The report ids or search filter
+     * @return The entries of the bundle, in archive order
+     * @throws ResourceNotFoundException if a requested report has no generated file
+     * @throws BundleTooLargeException if more reports are selected than allowed
+     */
+    @Transactional(readOnly = true)
+    public List<BundleEntry> resolve(ReportBundleRequestDTO request) {
+        List<Report> reports;
+        if (request.getReportIds() != null && !request.getReportIds().isEmpty()) {
+            Set<UUID> ids = new LinkedHashSet<>(request.getReportIds());
+            if (ids.size() > maxReports) {
+                throw new BundleTooLargeException(maxReports);
+            }
+            Map<UUID, Report> found = reportRepository.findAllById(ids).stream()
+                    .collect(Collectors.toMap(Report::getId, Function.identity()));
+            reports = new ArrayList<>(ids.size());
+            for (UUID id : ids) {
+                Report report = found.get(id);
+                if (report == null || report.getFilePath() == null || !Files.exists(Paths.get(report.getFilePath()))) {
+                    throw new ResourceNotFoundException("Report file", "id", id);
+                }
+                reports.add(report);
+            }
+        } else {
+            reports = reportRepository.findCompletedByMultipleCriteria(request.getParentReportId(), request.getType(),
+                    request.getClientId(), request.getProjectId(), request.getStartDate(), request.getEndDate(),
+                    PageRequest.of(0, maxReports + 1));
+            if (reports.size() > maxReports) {
+                throw new BundleTooLargeException(maxReports);
+            }
+        }
+
+        List<BundleEntry> entries = new ArrayList<>(reports.size());
+        Set<String> names = new HashSet<>();
+        for (Report report : reports) {
+            Path path = Paths.get(report.getFilePath());
+            if (!Files.exists(path)) {
+                log.warn("Skipping report {} in bundle, file {} is missing", report.getId(), path);
+                continue;
+            }
+            String name = tieringService.fileName(report);
+            if (!names.add(name)) {
+                name = report.getId() + "_" + name;
+                names.add(name);
+            }
+            entries.add(new BundleEntry(name, path, report.getFormat(), tieringService.isCold(report),
+                    report.getFileSize() != null ? report.getFileSize() : 0L));
+        }
+        return entries;
+    }
+
+    /**
+     * Write the bundle as a ZIP archive.
+     * A file deleted after the bundle was resolved is left out of the archive.
+     *
+     * @param entries The entries resolved by {@link #resolve(ReportBundleRequestDTO)}
+     * @param out The stream receiving the archive
+     * @throws IOException if a file cannot be read or the archive cannot be written
+     */
+    public void write(List<BundleEntry> entries, OutputStream out) throws IOException {
+        ZipStreamWriter zip = new ZipStreamWriter(Channels.newChannel(out));
+        int written = 0;
+        for (BundleEntry entry : entries) {
+            if (!Files.exists(entry.getPath())) {
+                log.warn("Skipping {} in bundle, file was deleted", entry.getPath());
+                continue;
+            }
+            if (entry.isCold()) {
+                // Cold files are gzip streams; decompress them and deflate the content again
+                try (InputStream in = tieringService.openCold(entry.getPath())) {
+                    zip.addDeflated(entry.getName(), in, entry.getSize(), Files.getLastModifiedTime(entry.getPath()));
+                }
+            } else if (COMPRESSED_FORMATS.contains(entry.getFormat())) {
+                zip.addStored(entry.getName(), entry.getPath());
+            } else {
+                zip.addDeflated(entry.getName(), entry.getPath());
+            }
+            written++;
+        }
+        zip.finish();
+        out.flush();
+        log.info("Streamed bundle of {} report files", written);
+    }
+
+    /**
+     * A report file in a bundle.
+     */
+    @lombok.Value
+    public static class BundleEntry {
+        String name;
+        Path path;
+        ReportFormat format;
+        boolean cold;
+        long size;
+    }
+}
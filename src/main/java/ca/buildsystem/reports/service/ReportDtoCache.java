@@ -0,0 +1,156 @@
+package ca.buildsystem.reports.service;
+
+import ca.buildsystem.reports.cache.CacheInvalidation;
+import ca.buildsystem.reports.cache.CacheInvalidationBus;
+import ca.buildsystem.reports.cache.CacheRegion;
+import ca.buildsystem.reports.datasource.ReadYourWrites;
+import ca.buildsystem.reports.dto.ReportResponseDTO;
+import ca.buildsystem.reports.dto.TemplateResponseDTO;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Bounded in-process cache of the report and template DTOs served by the detail endpoints.
+ * Entries are evicted by id when the service changes them; writes made outside the services,
+ * such as lease claims and recovery, are bounded by a short time to live. Evictions are
+ * published on the invalidation bus once the writing transaction completes, so the other nodes
+ * drop their copies too. Hit, miss and eviction counts are published as {@code cache.*} metrics.
+ */
+@Component
+public class ReportDtoCache {
+
+    private final Cache<UUID, ReportResponseDTO> reports;
+    private final Cache<UUID, TemplateResponseDTO> templates;
+    private final CacheInvalidationBus invalidationBus;
+
+    public ReportDtoCache(MeterRegistry meterRegistry,
+                          CacheInvalidationBus invalidationBus,
+                          @Value("${app.cache.reports.max-entries:10000}") long maxReports,
+                          @Value("${app.cache.reports.ttl-seconds:30}") long reportTtlSeconds,
+                          @Value("${app.cache.templates.max-entries:1000}") long maxTemplates,
+                          @Value("${app.cache.templates.ttl-seconds:300}") long templateTtlSeconds) {
+        this.reports = build(maxReports, reportTtlSeconds);
+        this.templates = build(maxTemplates, templateTtlSeconds);
+        CaffeineCacheMetrics.monitor(meterRegistry, reports, "reportDtos");
+        CaffeineCacheMetrics.monitor(meterRegistry, templates, "templateDtos");
+        this.invalidationBus = invalidationBus;
+        invalidationBus.subscribe(this::apply);
+    }
+
+    /**
+     * Get a report DTO, loading it on a miss. Missing reports are not cached.
+     *
+     * @param id The report ID
+     * @param loader Loads the DTO, returning an empty optional if the report does not exist
+     * @return An optional containing the report DTO if found
+     */
+    public Optional<ReportResponseDTO> getReport(UUID id, Function<UUID, Optional<ReportResponseDTO>> loader) {
+        return Optional.ofNullable(reports.get(id, key -> load(loader, key)));
+    }
+
+    /**
+     * Get a template DTO, loading it on a miss. Missing templates are not cached.
+     *
+     * @param id The template ID
+     * @param loader Loads the DTO, returning an empty optional if the template does not exist
+     * @return An optional containing the template DTO if found
+     */
+    public Optional<TemplateResponseDTO> getTemplate(UUID id, Function<UUID, Optional<TemplateResponseDTO>> loader) {
+        return Optional.ofNullable(templates.get(id, key -> load(loader, key)));
+    }
+
+    /**
+     * Evict a report DTO.
+     *
+     * @param id The report ID
+     */
+    public void evictReport(UUID id) {
+        evict(CacheInvalidation.of(CacheRegion.REPORTS, List.of(id)));
+    }
+
+    /**
+     * Evict several report DTOs.
+     *
+     * @param ids The report IDs
+     */
+    public void evictReports(Collection<UUID> ids) {
+        evict(CacheInvalidation.of(CacheRegion.REPORTS, ids));
+    }
+
+    /**
+     * Evict every report DTO, for changes that show in many reports.
+     */
+    public void evictAllReports() {
+        evict(CacheInvalidation.all(CacheRegion.REPORTS));
+    }
+
+    /**
+     * Evict a template DTO.
+     *
+     * @param id The template ID
+     */
+    public void evictTemplate(UUID id) {
+        evict(CacheInvalidation.of(CacheRegion.TEMPLATES, List.of(id)));
+    }
+
+    /**
+     * Evict now and, inside a transaction, again once it completes, so that a read racing the
+     * transaction cannot put back the state from before the commit. Other nodes are notified
+     * once the change is visible to them.
+     */
+    private void evict(CacheInvalidation invalidation) {
+        apply(invalidation);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    apply(invalidation);
+                    invalidationBus.publish(invalidation);
+                }
+            });
+        } else {
+            invalidationBus.publish(invalidation);
+        }
+    }
+
+    /**
+     * Apply an invalidation from this or another node to the local caches.
+     */
+    private void apply(CacheInvalidation invalidation) {
+        Cache<UUID, ?> cache = invalidation.getRegion() == CacheRegion.REPORTS ? reports : templates;
+        if (invalidation.isAll()) {
+            cache.invalidateAll();
+        } else {
+            cache.invalidateAll(invalidation.getIds());
+        }
+    }
+
+    /**
+     * Load an entry from the primary; a lagging replica would keep a stale copy cached for the
+     * whole time to live.
+     */
+    private static <V> V load(Function<UUID, Optional<V>> loader, UUID id) {
+        return ReadYourWrites.onPrimary(() -> loader.apply(id).orElse(null));
+    }
+
+    private static <V> Cache<UUID, V> build(long maxEntries, long ttlSeconds) {
+        return Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+    }
+}
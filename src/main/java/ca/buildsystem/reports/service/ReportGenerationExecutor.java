@@ -0,0 +1,383 @@
+package ca.buildsystem.reports.service;
+
+import ca.buildsystem.reports.config.VirtualThreads;
+import ca.buildsystem.reports.dto.ReportGenerationDTO;
+import ca.buildsystem.reports.dto.ReportResponseDTO;
+import ca.buildsystem.reports.exception.GenerationInProgressException;
+import ca.buildsystem.reports.exception.GenerationRejectedException;
+import ca.buildsystem.reports.exception.ResourceNotFoundException;
+import ca.buildsystem.reports.exception.TooManyRequestsException;
+import ca.buildsystem.reports.generation.GenerationControl;
+import ca.buildsystem.reports.generation.GenerationProgressBus;
+import ca.buildsystem.reports.generation.GenerationProgressEvent;
+import ca.buildsystem.reports.model.ReportFormat;
+import ca.buildsystem.reports.model.ReportType;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Executor running report generations on a bounded worker pool.
+ * Every generation is first admitted by the admission service, which applies the concurrency
+ * limits and queues or refuses requests based on their estimated cost. User requests wait in the
+ * interactive lane; due scheduled reports are queued in the scheduled lane without blocking the scheduler.
+ * On shutdown it stops accepting work, cancels queued generations, lets generations that are
+ * expected to finish within the drain timeout complete, and asks the others to checkpoint so
+ * that another node can resume them.
+ * With {@code app.virtual-threads.enabled} every admitted generation starts on its own virtual
+ * thread, so generations blocked on JDBC, upstream services or file I/O do not hold platform threads
+ * and the admission limits alone bound concurrency. Platform threads remain the fallback on runtimes
+ * without virtual threads.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ReportGenerationExecutor implements SmartLifecycle {
+
+    private static final String SHUTTING_DOWN = "Report generation is shutting down on this node; retry the request";
+
+    /**
+     * Part of the termination grace period left for closing the rest of the context.
+     */
+    private static final long CONTEXT_CLOSE_MARGIN_MS = 5000;
+
+    private final ReportGenerationService reportGenerationService;
+    private final BurstGenerationService burstGenerationService;
+    private final ReportService reportService;
+    private final GenerationProgressBus progressBus;
+    private final GenerationAdmissionService admissionService;
+    private final GenerationCostEstimator costEstimator;
+
+    private final Set<GenerationControl> running = ConcurrentHashMap.newKeySet();
+    private final Set<UUID> queuedScheduledReports = ConcurrentHashMap.newKeySet();
+
+    @Value("${app.report.default-format:PDF}")
+    private String defaultFormat;
+
+    @Value("${app.report.executor.pool-size:4}")
+    private int poolSize;
+
+    @Value("${app.report.executor.queue-capacity:100}")
+    private int queueCapacity;
+
+    @Value("${app.report.executor.drain-timeout-ms:15000}")
+    private long drainTimeoutMs;
+
+    @Value("${app.report.executor.checkpoint-timeout-ms:10000}")
+    private long checkpointTimeoutMs;
+
+    @Value("${app.report.executor.termination-grace-ms:30000}")
+    private long terminationGraceMs;
+
+    @Value("${app.virtual-threads.enabled:false}")
+    private boolean virtualThreads;
+
+    private ThreadPoolExecutor executor;
+
+    private volatile boolean accepting;
+
+    @PostConstruct
+    void initExecutor() {
+        executor = newWorkerPool(virtualThreads, poolSize, queueCapacity);
+    }
+
+    /**
+     * Create the pool generations run on.
+     * With virtual threads there is no worker limit and no queue: every admitted generation starts
+     * on a new virtual thread at once. Otherwise a fixed pool of platform threads takes generations
+     * from a bounded queue.
+     *
+     * @param virtual True to use virtual threads if the runtime has them
+     * @param poolSize The number of platform threads
+     * @param queueCapacity The number of generations waiting for a platform thread
+     * @return The worker pool
+     */
+    static ThreadPoolExecutor newWorkerPool(boolean virtual, int poolSize, int queueCapacity) {
+        Optional<ThreadFactory> virtualThreadFactory = virtual
+                ? VirtualThreads.factory("report-generation-vt-") : Optional.empty();
+        if (virtualThreadFactory.isPresent()) {
+            log.info("Report generation runs on virtual threads, bounded by admission control only");
+            return new ThreadPoolExecutor(0, Integer.MAX_VALUE, 0L, TimeUnit.MILLISECONDS,
+                    new SynchronousQueue<>(), virtualThreadFactory.get());
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        return new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(queueCapacity),
+                runnable -> new Thread(runnable, "report-generation-" + threadNumber.incrementAndGet()));
+    }
+
+    /**
+     * Generate a new report on the worker pool and wait for it.
+     * A request with a burst key generates one child report per project or client instead.
+     *
+     * @param generationDTO The report generation data
+     * @return The generated report, the pending report if it was checkpointed, or the parent of a burst
+     * @throws GenerationRejectedException if the executor does not accept work
+     * @throws TooManyRequestsException if the generation is not admitted
+     */
+    public ReportResponseDTO generate(ReportGenerationDTO generationDTO) {
+        ReportFormat format = generationDTO.getFormat() != null
+                ? generationDTO.getFormat() : ReportFormat.valueOf(defaultFormat);
+        if (generationDTO.getBurstKey() != null) {
+            return run(generationDTO.getType(), format, generationDTO.getStartDate(), generationDTO.getEndDate(),
+                    control -> burstGenerationService.generateBurst(generationDTO, control));
+        }
+        return run(generationDTO.getType(), format, generationDTO.getStartDate(), generationDTO.getEndDate(),
+                control -> reportGenerationService.generateReport(generationDTO, control));
+    }
+
+    /**
+     * Regenerate an existing report on the worker pool and wait for it.
+     * The report is claimed before it waits for admission and a worker; if the regeneration never
+     * starts, the claim is given up and the report keeps its previous status.
+     *
+     * @param id The report ID
+     * @param fullRebuild True to ignore the previous aggregate state and any checkpoint
+     * @return The regenerated report, or the pending report if it was checkpointed
+     * @throws GenerationRejectedException if the executor does not accept work
+     * @throws TooManyRequestsException if the generation is not admitted
+     * @throws ResourceNotFoundException if the report is not found
+     */
+    public ReportResponseDTO regenerate(UUID id, boolean fullRebuild) {
+        ReportResponseDTO report = reportService.getReportById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Report", "id", id));
+        String previousStatus = reportGenerationService.claimForRegeneration(id);
+        AtomicBoolean started = new AtomicBoolean();
+        try {
+            return run(report.getType(), report.getFormat(), report.getStartDate(), report.getEndDate(),
+                    control -> {
+                        started.set(true);
+                        return reportGenerationService.regenerateClaimedReport(id, fullRebuild, control);
+                    });
+        } finally {
+            if (!started.get()) {
+                reportGenerationService.abandonRegeneration(id, previousStatus);
+            }
+        }
+    }
+
+    /**
+     * Queue the regeneration of a due scheduled report in the scheduled lane without waiting for it.
+     *
+     * @param id The report ID
+     * @return True if queued, false if the report is already queued on this node or work is not accepted
+     * @throws TooManyRequestsException if the scheduled lane is full
+     * @throws ResourceNotFoundException if the report is not found
+     */
+    public boolean submitScheduled(UUID id) {
+        if (!accepting || !queuedScheduledReports.add(id)) {
+            return false;
+        }
+        try {
+            ReportResponseDTO report = reportService.getReportById(id)
+                    .orElseThrow(() -> new ResourceNotFoundException("Report", "id", id));
+            long estimatedMs = costEstimator.estimateMillis(
+                    report.getType(), report.getFormat(), report.getStartDate(), report.getEndDate());
+            GenerationAdmissionService.Ticket ticket = admissionService.enqueue(GenerationAdmissionService.Lane.SCHEDULED,
+                    null, report.getType(), report.getFormat(), estimatedMs);
+            ticket.whenGranted(() -> {
+                Runnable done = () -> {
+                    ticket.close();
+                    queuedScheduledReports.remove(id);
+                };
+                try {
+                    executor.execute(new ScheduledGeneration(() -> {
+                        try {
+                            execute(report.getType(), report.getFormat(), report.getStartDate(), report.getEndDate(),
+                                    control -> reportGenerationService.regenerateReport(id, false, control));
+                        } catch (GenerationInProgressException e) {
+                            log.debug("Scheduled report {} is already being generated", id);
+                        } catch (Exception e) {
+                            log.error("Error generating scheduled report {}", id, e);
+                        }
+                    }, done));
+                } catch (RejectedExecutionException e) {
+                    done.run();
+                }
+            });
+            return true;
+        } catch (RuntimeException e) {
+            queuedScheduledReports.remove(id);
+            throw e;
+        }
+    }
+
+    private ReportResponseDTO run(ReportType type, ReportFormat format, LocalDateTime startDate,
+                                  LocalDateTime endDate, Function<GenerationControl, ReportResponseDTO> job) {
+        if (!accepting) {
+            throw new GenerationRejectedException(SHUTTING_DOWN);
+        }
+        long estimatedMs = costEstimator.estimateMillis(type, format, startDate, endDate);
+        try (GenerationAdmissionService.Ticket ticket = admissionService.admit(
+                currentClient(), type, format, estimatedMs)) {
+            return await(submit(() -> execute(type, format, startDate, endDate, job)));
+        }
+    }
+
+    /**
+     * Run a generation on the current worker thread, exposing its control handle to shutdown.
+     */
+    private ReportResponseDTO execute(ReportType type, ReportFormat format, LocalDateTime startDate,
+                                      LocalDateTime endDate, Function<GenerationControl, ReportResponseDTO> job) {
+        GenerationControl control = new GenerationControl();
+        running.add(control);
+        try {
+            ReportResponseDTO result = job.apply(control);
+            if ("COMPLETED".equals(result.getStatus())) {
+                costEstimator.record(type, format, startDate, endDate, control.elapsedMillis(), result.getRowCount());
+            }
+            return result;
+        } finally {
+            running.remove(control);
+        }
+    }
+
+    private static String currentClient() {
+        return Optional.ofNullable(SecurityContextHolder.getContext().getAuthentication())
+                .map(Authentication::getName)
+                .orElse(null);
+    }
+
+    private Future<ReportResponseDTO> submit(Callable<ReportResponseDTO> task) {
+        try {
+            return executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            throw new GenerationRejectedException(accepting
+                    ? "Report generation queue is full; retry the request" : SHUTTING_DOWN);
+        }
+    }
+
+    private ReportResponseDTO await(Future<ReportResponseDTO> future) {
+        try {
+            return future.get();
+        } catch (CancellationException e) {
+            throw new GenerationRejectedException(SHUTTING_DOWN);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for report generation", e);
+        }
+    }
+
+    @Override
+    public void start() {
+        accepting = true;
+    }
+
+    /**
+     * Drain the executor before the application context closes.
+     * The drain and the checkpoints together fit the termination grace period, less a margin for
+     * the rest of the context, so the process is not killed while generations are checkpointing.
+     */
+    @Override
+    public void stop() {
+        accepting = false;
+        long budgetMs = Math.max(0, terminationGraceMs - CONTEXT_CLOSE_MARGIN_MS);
+        long checkpointMs = Math.min(checkpointTimeoutMs, budgetMs / 2);
+        long drainMs = Math.min(drainTimeoutMs, budgetMs - checkpointMs);
+        List<Runnable> queued = new ArrayList<>();
+        executor.getQueue().drainTo(queued);
+        for (Runnable task : queued) {
+            // Interactive requests are released with 503; queued scheduled reports stay due for other nodes
+            if (task instanceof Future<?> future) {
+                future.cancel(false);
+            } else if (task instanceof ScheduledGeneration scheduled) {
+                scheduled.done.run();
+            }
+        }
+
+        List<GenerationControl> current = new ArrayList<>(running);
+        int checkpointed = 0;
+        for (GenerationControl control : current) {
+            if (!finishesWithin(control, drainMs)) {
+                control.requestCheckpoint();
+                checkpointed++;
+            }
+        }
+        log.info("Draining report generation: {} queued cancelled, {} running, {} asked to checkpoint",
+                queued.size(), current.size(), checkpointed);
+
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(drainMs, TimeUnit.MILLISECONDS)) {
+                log.warn("Generations still running after {} ms; asking all to checkpoint", drainMs);
+                running.forEach(GenerationControl::requestCheckpoint);
+                if (!executor.awaitTermination(checkpointMs, TimeUnit.MILLISECONDS)) {
+                    // Left to the recovery sweeper once this node's heartbeats stop
+                    log.warn("Abandoning {} generations that did not checkpoint in time", running.size());
+                    executor.shutdownNow();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return accepting;
+    }
+
+    /**
+     * Queued regeneration of a scheduled report; done closes its admission ticket whether it runs or is dropped.
+     */
+    private record ScheduledGeneration(Runnable work, Runnable done) implements Runnable {
+
+        @Override
+        public void run() {
+            try {
+                work.run();
+            } finally {
+                done.run();
+            }
+        }
+    }
+
+    /**
+     * Estimate whether a generation finishes within the drain time from its progress so far.
+     */
+    private boolean finishesWithin(GenerationControl control, long drainMs) {
+        if (control.getReportId() == null) {
+            return false;
+        }
+        int percent = progressBus.latest(control.getReportId())
+                .map(GenerationProgressEvent::getPercent)
+                .orElse(0);
+        if (percent <= 0) {
+            return false;
+        }
+        long remainingMs = control.elapsedMillis() * (100 - percent) / percent;
+        return remainingMs <= drainMs;
+    }
+}
@@ -1,10 +1,29 @@
 package ca.buildsystem.reports.service;
 
+import ca.buildsystem.reports.datasource.ReadYourWrites;
 import ca.buildsystem.reports.dto.ReportGenerationDTO;
 import ca.buildsystem.reports.dto.ReportResponseDTO;
+import ca.buildsystem.reports.generation.ExternalLedgerSorter;
+import ca.buildsystem.reports.generation.GenerationControl;
+import ca.buildsystem.reports.generation.LedgerBufferFactory;
+import ca.buildsystem.reports.generation.LedgerColumnBuffer;
+import ca.buildsystem.reports.generation.LedgerQuery;
+import ca.buildsystem.reports.generation.LedgerRow;
+import ca.buildsystem.reports.generation.LedgerSource;
+import ca.buildsystem.reports.generation.ReportRenderer;
+import ca.buildsystem.reports.exception.GenerationInProgressException;
+import ca.buildsystem.reports.exception.ResourceNotFoundException;
+import ca.buildsystem.reports.generation.GenerationProgressBus;
+import ca.buildsystem.reports.generation.GenerationStage;
+import ca.buildsystem.reports.model.GenerationCheckpoint;
 import ca.buildsystem.reports.model.Report;
+import ca.buildsystem.reports.model.ReportAggregateState;
 import ca.buildsystem.reports.model.ReportFormat;
+import ca.buildsystem.reports.model.ReportSortKey;
+import ca.buildsystem.reports.model.ReportType;
+import ca.buildsystem.reports.model.StorageTier;
 import ca.buildsystem.reports.repository.ReportRepository;
+import ca.buildsystem.reports.repository.ReportVersion;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -15,9 +34,14 @@ import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 /**
  * Service for generating financial reports.
@@ -28,9 +52,21 @@ import java.util.UUID;
 @Slf4j
 public class ReportGenerationService {
 
+    private static final int PROGRESS_INTERVAL = 10_000;
+
     private final ReportRepository reportRepository;
     private final ReportService reportService;
     private final ReportMapper reportMapper;
+    private final LedgerBufferFactory ledgerBufferFactory;
+    private final ReportRenderer reportRenderer;
+    private final List<LedgerSource> ledgerSources;
+    private final LedgerRollupService ledgerRollupService;
+    private final ReportAggregateStateService aggregateStateService;
+    private final GenerationProgressBus progressBus;
+    private final GenerationLeaseService leaseService;
+    private final GenerationCheckpointService checkpointService;
+    private final MemoryGovernor memoryGovernor;
+    private final ReportDtoCache dtoCache;
     
     @Value("${app.report.storage-path:/tmp/reports}")
     private String reportStoragePath;
@@ -40,12 +76,27 @@ public class ReportGenerationService {
 
     /**
      * Generate a report based on the provided data.
+     * The generating report is saved first, stamped with this node's lease, so that an
+     * interrupted generation is visible to the recovery sweeper.
      *
      * @param generationDTO The report generation data
      * @return The generated report DTO
      */
-    @Transactional
     public ReportResponseDTO generateReport(ReportGenerationDTO generationDTO) {
+        return generateReport(generationDTO, new GenerationControl());
+    }
+    
+    /**
+     * Generate a report under the control of the generation executor.
+     * If the executor requests a checkpoint, the report is left PENDING with a checkpoint
+     * from which any node can resume it.
+     *
+     * @param generationDTO The report generation data
+     * @param control The handle through which the executor steers the generation
+     * @return The generated report DTO, or the pending report if it was checkpointed
+     * @throws ResourceNotFoundException if the requested template is not found
+     */
+    public ReportResponseDTO generateReport(ReportGenerationDTO generationDTO, GenerationControl control) {
         log.info("Generating report: {}", generationDTO.getName());
         
         // Create a new report entity
@@ -58,45 +109,225 @@ public class ReportGenerationService {
         report.setEndDate(generationDTO.getEndDate());
         report.setProjectId(generationDTO.getProjectId());
         report.setClientId(generationDTO.getClientId());
-        report.setStatus("GENERATING");
+        report.setSummaryGranularity(generationDTO.getSummaryGranularity());
+        report.setSortKey(generationDTO.getSortKey());
+        reportService.applyTemplateAndParameters(report, generationDTO.getTemplateId(), generationDTO.getParameters());
+        leaseService.stamp(report);
         
         // Save the initial report
         Report savedReport = reportRepository.save(report);
+        leaseService.register(savedReport.getId());
+        control.setReportId(savedReport.getId());
+        progressBus.publish(savedReport.getId(), GenerationStage.QUEUED, 0, 0);
         
         try {
             // Generate the report file
-            String filePath = generateReportFile(savedReport);
+            String filePath = generateReportFile(savedReport, true, control);
             
             // Update the report with the file path and status
             savedReport.setFilePath(filePath);
             savedReport.setFileSize(new File(filePath).length());
+            savedReport.setStoredSize(savedReport.getFileSize());
+            savedReport.setStorageTier(StorageTier.HOT);
             savedReport.setStatus("COMPLETED");
             savedReport.setLastGenerated(LocalDateTime.now());
+            savedReport.setGenerationMillis(control.elapsedMillis());
+            leaseService.clear(savedReport);
             
             // Save the updated report
             savedReport = reportRepository.save(savedReport);
+            progressBus.publish(savedReport.getId(), GenerationStage.COMPLETED, 0, 100);
             
             return reportMapper.toResponseDTO(savedReport);
+        } catch (GenerationControl.CheckpointRequestedException e) {
+            return markPending(savedReport);
         } catch (Exception e) {
             log.error("Error generating report", e);
             
             // Update the report with error status
             savedReport.setStatus("ERROR");
+            leaseService.clear(savedReport);
             reportRepository.save(savedReport);
+            progressBus.publishFailure(savedReport.getId(), e.getMessage());
             
             throw new RuntimeException("Error generating report: " + e.getMessage(), e);
+        } finally {
+            leaseService.release(savedReport.getId());
+            dtoCache.evictReport(savedReport.getId());
+        }
+    }
+    
+    /**
+     * Regenerate an existing report in place.
+     * Scheduled reports are regenerated incrementally from their previous aggregate state
+     * unless a full rebuild is requested or the state cannot be reused.
+     *
+     * @param id The report ID
+     * @param fullRebuild True to ignore the previous aggregate state
+     * @return The regenerated report DTO
+     * @throws ResourceNotFoundException if the report is not found
+     * @throws GenerationInProgressException if the report is already being generated
+     */
+    public ReportResponseDTO regenerateReport(UUID id, boolean fullRebuild) {
+        return regenerateReport(id, fullRebuild, new GenerationControl());
+    }
+    
+    /**
+     * Regenerate an existing report under the control of the generation executor.
+     * A report interrupted by an earlier checkpoint resumes from it unless a full rebuild is requested.
+     *
+     * @param id The report ID
+     * @param fullRebuild True to ignore the previous aggregate state and any checkpoint
+     * @param control The handle through which the executor steers the generation
+     * @return The regenerated report DTO, or the pending report if it was checkpointed again
+     * @throws ResourceNotFoundException if the report is not found
+     * @throws GenerationInProgressException if the report is already being generated
+     */
+    public ReportResponseDTO regenerateReport(UUID id, boolean fullRebuild, GenerationControl control) {
+        claimForRegeneration(id);
+        return regenerateClaimedReport(id, fullRebuild, control);
+    }
+    
+    /**
+     * Claim a report for regeneration on this node.
+     * The executor claims a report when its regeneration is submitted, before it waits for
+     * admission, so that from then on the report shows it is being generated and progress streams
+     * do not take the outcome of the previous generation for that of the new one.
+     *
+     * @param id The report ID
+     * @return The status of the report before the claim, to restore if the regeneration never starts
+     * @throws ResourceNotFoundException if the report is not found
+     * @throws GenerationInProgressException if the report is already being generated
+     */
+    public String claimForRegeneration(UUID id) {
+        String previousStatus = reportRepository.findVersionById(id)
+                .map(ReportVersion::getStatus)
+                .orElseThrow(() -> new ResourceNotFoundException("Report", "id", id));
+        
+        // The claim is committed on its own so other nodes see the lease immediately
+        if (!leaseService.claim(id)) {
+            throw new GenerationInProgressException("Report " + id + " is already being generated");
+        }
+        dtoCache.evictReport(id);
+        progressBus.publish(id, GenerationStage.QUEUED, 0, 0);
+        return previousStatus;
+    }
+    
+    /**
+     * Give up the claim of a regeneration that never started, restoring the report's status.
+     *
+     * @param id The report ID
+     * @param previousStatus The status {@link #claimForRegeneration} returned
+     */
+    public void abandonRegeneration(UUID id, String previousStatus) {
+        leaseService.abandon(id, previousStatus);
+        dtoCache.evictReport(id);
+    }
+    
+    /**
+     * Regenerate a report this node has claimed with {@link #claimForRegeneration}.
+     *
+     * @param id The report ID
+     * @param fullRebuild True to ignore the previous aggregate state and any checkpoint
+     * @param control The handle through which the executor steers the generation
+     * @return The regenerated report DTO, or the pending report if it was checkpointed again
+     * @throws ResourceNotFoundException if the report is not found
+     */
+    public ReportResponseDTO regenerateClaimedReport(UUID id, boolean fullRebuild, GenerationControl control) {
+        log.info("Regenerating report with ID: {} (full rebuild: {})", id, fullRebuild);
+        
+        // Loaded from the primary after the claim, so saving the result keeps the lease columns it wrote
+        Report report = ReadYourWrites.onPrimary(() -> reportRepository.findWithTemplateById(id)).orElse(null);
+        if (report == null) {
+            leaseService.release(id);
+            throw new ResourceNotFoundException("Report", "id", id);
+        }
+        String previousFilePath = report.getFilePath();
+        control.setReportId(id);
+        progressBus.publish(id, GenerationStage.QUEUED, 0, 0);
+        
+        try {
+            String filePath = generateReportFile(report, fullRebuild, control);
+            
+            report.setFilePath(filePath);
+            report.setFileSize(new File(filePath).length());
+            report.setStoredSize(report.getFileSize());
+            report.setStorageTier(StorageTier.HOT);
+            report.setTieredAt(null);
+            report.setStatus("COMPLETED");
+            report.setLastGenerated(LocalDateTime.now());
+            report.setGenerationMillis(control.elapsedMillis());
+            report.setRecoveryCount(null);
+            if (report.isScheduled()) {
+                report.setNextGeneration(ReportSchedules.nextGeneration(report));
+            }
+            leaseService.clear(report);
+            reportRepository.save(report);
+            progressBus.publish(id, GenerationStage.COMPLETED, 0, 100);
+            
+            // The previous output is superseded by the new file
+            if (previousFilePath != null && !previousFilePath.equals(filePath)) {
+                Files.deleteIfExists(Paths.get(previousFilePath));
+            }
+            
+            return reportMapper.toResponseDTO(report);
+        } catch (GenerationControl.CheckpointRequestedException e) {
+            return markPending(report);
+        } catch (Exception e) {
+            log.error("Error regenerating report", e);
+            
+            report.setStatus("ERROR");
+            if (report.isScheduled()) {
+                // Retry on the next scheduled run rather than on every scheduler poll
+                report.setNextGeneration(ReportSchedules.nextGeneration(report));
+            }
+            leaseService.clear(report);
+            reportRepository.save(report);
+            progressBus.publishFailure(id, e.getMessage());
+            
+            throw new RuntimeException("Error regenerating report: " + e.getMessage(), e);
+        } finally {
+            leaseService.release(id);
+            dtoCache.evictReport(id);
         }
     }
     
+    /**
+     * Leave a checkpointed report PENDING for another node to resume.
+     * Callers evict the cached report once they release the lease, as for any other outcome.
+     *
+     * @param report The checkpointed report
+     * @return The pending report DTO
+     */
+    private ReportResponseDTO markPending(Report report) {
+        log.info("Generation of report {} checkpointed for resumption", report.getId());
+        report.setStatus("PENDING");
+        leaseService.clear(report);
+        reportRepository.save(report);
+        progressBus.publish(report.getId(), GenerationStage.QUEUED, 0, 0);
+        return reportMapper.toResponseDTO(report);
+    }
+    
     /**
      * Generate the actual report file.
-     * In a real implementation, this would use a template engine and data sources.
+     * Ledger rows from every source supporting the report type are collected into an
+     * off-heap column buffer, aggregated, and rendered from the buffer. Summary reports
+     * are answered from the ledger rollups instead of the raw rows. Scheduled reports keep
+     * their aggregate state so the next run only has to merge newly posted rows.
+     * Stage transitions and row counts are published on the progress bus.
+     * The buffer holds in memory only what the memory governor grants for the estimated row
+     * count beyond the renderer's working set; rows beyond the grant spill to disk. Sorting
+     * runs on heap granted separately.
+     * When the executor requests a checkpoint, the rows loaded so far are persisted: up to the
+     * last complete ledger day of the source being fetched, all of them once fetching is done.
      *
      * @param report The report entity
+     * @param fullRebuild True to ignore any previous aggregate state or checkpoint
+     * @param control The handle through which the executor steers the generation
      * @return The path to the generated file
      * @throws Exception if an error occurs during file generation
      */
-    private String generateReportFile(Report report) throws Exception {
+    private String generateReportFile(Report report, boolean fullRebuild, GenerationControl control) throws Exception {
         // Create the storage directory if it doesn't exist
         Path storagePath = Paths.get(reportStoragePath);
         if (!Files.exists(storagePath)) {
@@ -112,14 +343,203 @@ public class ReportGenerationService {
                 report.getFormat().toString().toLowerCase());
         
         Path filePath = storagePath.resolve(filename);
+        leaseService.recordWorkingFile(report.getId(), filePath);
+        
+        // Rows posted after this instant are picked up by the next incremental run
+        LocalDateTime dataWatermark = LocalDateTime.now();
         
-        // In a real implementation, this would generate the actual report content
-        // For now, we'll just create an empty file
-        Files.createFile(filePath);
+        UUID reportId = report.getId();
+        boolean templated = report.getTemplate() != null;
+        long workingSetBytes = memoryGovernor.workingSetBytes(report.getFormat(), templated);
+        // The renderer's working set is charged to the heap; ledger chunks to the shared direct memory pool
+        try (MemoryGovernor.Reservation memory = memoryGovernor.reserve(reportId, workingSetBytes, workingSetBytes);
+             LedgerColumnBuffer ledger = ledgerBufferFactory.create(memoryGovernor.getDirectMemory())) {
+            LedgerQuery query = report.isScheduled()
+                    ? LedgerQuery.forAggregateState(report) : LedgerQuery.forReport(report);
+            progressBus.publish(reportId, GenerationStage.FETCHING, 0, 0);
+            FetchCursor cursor = new FetchCursor();
+            Consumer<LedgerRow> sink = fetchProgressSink(reportId, query, ledger, control, cursor);
+            
+            try {
+                Optional<GenerationCheckpoint> checkpoint = fullRebuild ? Optional.empty()
+                        : checkpointService.find(reportId).filter(c -> c.getRowOffset() > 0);
+                Optional<ReportAggregateState> previousState = fullRebuild || checkpoint.isPresent()
+                        ? Optional.empty() : aggregateStateService.findReusableState(report, query);
+                if (checkpoint.isPresent()) {
+                    checkpointService.load(checkpoint.get(), ledger);
+                    dataWatermark = checkpoint.get().getDataWatermark();
+                    log.info("Resuming report {} from checkpoint at row {}", reportId, ledger.size());
+                    fetchAll(query, sink, ledger, cursor, checkpoint.get().getSourceIndex(),
+                            checkpoint.get().getResumeFrom());
+                } else if (previousState.isPresent()) {
+                    aggregateStateService.loadIncremental(report, previousState.get(), query, ledger);
+                } else if (report.getSummaryGranularity() != null) {
+                    ledgerRollupService.loadSummary(reportId, query, report.getSummaryGranularity(), sink);
+                } else {
+                    fetchAll(query, sink, ledger, cursor, 0, null);
+                }
+                control.checkpointIfRequested();
+                cursor.fetchComplete = true;
+                log.info("Loaded {} ledger rows for report {} (spilled: {})",
+                        ledger.size(), reportId, ledger.isSpilled());
+                
+                long rowCount = ledger.size();
+                progressBus.publish(reportId, GenerationStage.AGGREGATING, rowCount, 60);
+                ReportSortKey sortKey = sortKey(report);
+                if (sortKey != null) {
+                    // Rows that do not fit the granted heap are sorted through run files under the storage path
+                    try (MemoryGovernor.Reservation sortMemory = memoryGovernor.reserve(reportId,
+                            ledgerBufferFactory.minSortHeapBytes(), ledgerBufferFactory.sortHeapBytes())) {
+                        ledgerBufferFactory.createSorter(sortMemory.getBytes())
+                                .sort(ledger, ExternalLedgerSorter.order(sortKey));
+                    }
+                }
+                report.setTotalAmount(ledger.totalAmount());
+                report.setRowCount(rowCount);
+                
+                progressBus.publish(reportId, GenerationStage.RENDERING, 0, 70);
+                reportRenderer.render(report, ledger, filePath, rendered -> {
+                    control.checkpointIfRequested();
+                    progressBus.publish(reportId, GenerationStage.RENDERING, rendered,
+                            70 + (int) (rendered * 29 / rowCount));
+                });
+            } catch (GenerationControl.CheckpointRequestedException e) {
+                checkpoint(reportId, query.getType(), ledger, cursor, dataWatermark);
+                throw e;
+            }
+            
+            if (report.isScheduled()) {
+                aggregateStateService.saveState(report, query, ledger, dataWatermark);
+            }
+            checkpointService.delete(reportId);
+        } catch (Exception e) {
+            // Do not leave a partial file behind
+            Files.deleteIfExists(filePath);
+            throw e;
+        }
         
         return filePath.toString();
     }
     
+    /**
+     * Persist the complete rows of an interrupted generation.
+     * Once every row is loaded the checkpoint points past the last source, so nothing is fetched
+     * on resume; without a complete day of raw rows, an empty checkpoint makes the next node
+     * start over.
+     */
+    private void checkpoint(UUID reportId, ReportType type, LedgerColumnBuffer ledger, FetchCursor cursor,
+                            LocalDateTime dataWatermark) throws Exception {
+        if (cursor.fetchComplete) {
+            int sources = (int) ledgerSources.stream().filter(source -> source.supports(type)).count();
+            checkpointService.save(reportId, ledger, ledger.size(), sources, null, dataWatermark);
+        } else if (cursor.tracking) {
+            checkpointService.save(reportId, ledger, cursor.completedRows, cursor.sourceIndex, cursor.currentDay,
+                    dataWatermark);
+        } else {
+            checkpointService.save(reportId, ledger, 0, 0, null, dataWatermark);
+        }
+    }
+    
+    /**
+     * Get the row order of a report. Raw accounts receivable reports default to client order,
+     * oldest entries first, which is the layout of an aging report.
+     */
+    private static ReportSortKey sortKey(Report report) {
+        if (report.getSortKey() != null) {
+            return report.getSortKey();
+        }
+        return report.getType() == ReportType.ACCOUNTS_RECEIVABLE && report.getSummaryGranularity() == null
+                ? ReportSortKey.CLIENT : null;
+    }
+    
+    /**
+     * Stream the rows matching a query from every source supporting the report type, one source
+     * after the other. Sources before firstSource are already loaded, firstSource is fetched from
+     * resumeFrom (or the start of the query if null), and the sources after it in full.
+     * The cursor follows the source being fetched, for checkpoints.
+     */
+    private void fetchAll(LedgerQuery query, Consumer<LedgerRow> sink, LedgerColumnBuffer ledger, FetchCursor cursor,
+                          int firstSource, LocalDate resumeFrom) {
+        int sourceIndex = 0;
+        for (LedgerSource source : ledgerSources) {
+            if (!source.supports(query.getType())) {
+                continue;
+            }
+            if (sourceIndex > firstSource || (sourceIndex == firstSource && resumeFrom == null)) {
+                // Every row loaded so far belongs to a source that is complete
+                cursor.start(sourceIndex, ledger.size(), null);
+                source.fetch(query, sink);
+            } else if (sourceIndex == firstSource
+                    && (query.getToDate() == null || !resumeFrom.isAfter(query.getToDate()))) {
+                cursor.start(sourceIndex, ledger.size(), resumeFrom);
+                source.fetch(query.toBuilder().fromDate(resumeFrom).build(), sink);
+            }
+            sourceIndex++;
+        }
+    }
+    
+    /**
+     * Wrap the ledger buffer in a sink publishing fetch progress every few thousand rows.
+     * The percentage is estimated from the position of the latest row date in the report range,
+     * since sources stream rows in date order. While raw rows are fetched, the sink also tracks
+     * the last complete ledger day, rejects rows out of date order and honours checkpoint requests.
+     *
+     * @param reportId The report ID
+     * @param query The ledger query of the generation
+     * @param ledger The buffer receiving the rows
+     * @param control The handle through which the executor steers the generation
+     * @param cursor The position of the fetch, for checkpoints
+     * @return The progress-reporting sink
+     */
+    private Consumer<LedgerRow> fetchProgressSink(UUID reportId, LedgerQuery query, LedgerColumnBuffer ledger,
+                                                  GenerationControl control, FetchCursor cursor) {
+        long rangeDays = query.getFromDate() != null && query.getToDate() != null
+                ? ChronoUnit.DAYS.between(query.getFromDate(), query.getToDate()) + 1 : 0;
+        return row -> {
+            if (cursor.tracking) {
+                control.checkpointIfRequested();
+                if (row.getDate() != null && cursor.currentDay != null && row.getDate().isBefore(cursor.currentDay)) {
+                    // A resumed fetch would skip or repeat rows of a source breaking its contract
+                    throw new IllegalStateException(String.format("Ledger source %d returned a row of %s after %s",
+                            cursor.sourceIndex, row.getDate(), cursor.currentDay));
+                }
+                if (row.getDate() != null && (cursor.currentDay == null || row.getDate().isAfter(cursor.currentDay))) {
+                    // Every row before this one belongs to a complete day
+                    cursor.completedRows = ledger.size();
+                    cursor.currentDay = row.getDate();
+                }
+            }
+            ledger.append(row);
+            if (ledger.size() % PROGRESS_INTERVAL == 0) {
+                int percent = 0;
+                if (rangeDays > 0 && row.getDate() != null) {
+                    long elapsed = ChronoUnit.DAYS.between(query.getFromDate(), row.getDate());
+                    percent = (int) Math.max(0, Math.min(59, elapsed * 60 / rangeDays));
+                }
+                progressBus.publish(reportId, GenerationStage.FETCHING, ledger.size(), percent);
+            }
+        };
+    }
+    
+    /**
+     * Position of a raw ledger fetch: rows before completedRows cover every source before
+     * sourceIndex and every day of that source before currentDay (none if currentDay is null).
+     */
+    private static final class FetchCursor {
+        private boolean tracking;
+        private boolean fetchComplete;
+        private int sourceIndex;
+        private long completedRows;
+        private LocalDate currentDay;
+        
+        private void start(int source, long rows, LocalDate day) {
+            tracking = true;
+            sourceIndex = source;
+            completedRows = rows;
+            currentDay = day;
+        }
+    }
+    
     /**
      * Download a report by its ID.
      *
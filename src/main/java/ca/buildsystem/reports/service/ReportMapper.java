@@ -42,12 +42,19 @@ public class ReportMapper {
         dto.setEndDate(report.getEndDate());
         dto.setFilePath(report.getFilePath());
         dto.setFileSize(report.getFileSize());
+        dto.setStoredSize(report.getStoredSize());
+        dto.setStorageTier(report.getStorageTier());
         dto.setScheduled(report.isScheduled());
         dto.setScheduleCron(report.getScheduleCron());
         dto.setLastGenerated(report.getLastGenerated());
         dto.setNextGeneration(report.getNextGeneration());
         dto.setTotalAmount(report.getTotalAmount());
+        dto.setRowCount(report.getRowCount());
         dto.setCurrencyCode(report.getCurrencyCode());
+        dto.setSummaryGranularity(report.getSummaryGranularity());
+        dto.setSortKey(report.getSortKey());
+        dto.setBurstKey(report.getBurstKey());
+        dto.setParentReportId(report.getParentReportId());
         dto.setProjectId(report.getProjectId());
         dto.setClientId(report.getClientId());
         dto.setPublic(report.isPublic());
@@ -0,0 +1,32 @@
+package ca.buildsystem.reports.service;
+
+import ca.buildsystem.reports.model.Report;
+import org.springframework.scheduling.support.CronExpression;
+
+import java.time.LocalDateTime;
+
+/**
+ * Schedule arithmetic of scheduled reports.
+ */
+final class ReportSchedules {
+
+    private ReportSchedules() {
+    }
+
+    /**
+     * Compute the next generation time of a scheduled report from its cron expression.
+     *
+     * @param report The scheduled report
+     * @return The next generation time, or 24 hours from now if the expression is missing or invalid
+     */
+    static LocalDateTime nextGeneration(Report report) {
+        LocalDateTime now = LocalDateTime.now();
+        if (report.getScheduleCron() != null && CronExpression.isValidExpression(report.getScheduleCron())) {
+            LocalDateTime next = CronExpression.parse(report.getScheduleCron()).next(now);
+            if (next != null) {
+                return next;
+            }
+        }
+        return now.plusHours(24);
+    }
+}
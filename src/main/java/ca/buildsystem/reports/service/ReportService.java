@@ -2,24 +2,45 @@ package ca.buildsystem.reports.service;
 
 import ca.buildsystem.reports.dto.ReportResponseDTO;
 import ca.buildsystem.reports.dto.ReportCreateDTO;
+import ca.buildsystem.reports.dto.ReportField;
+import ca.buildsystem.reports.dto.ReportParameterDTO;
 import ca.buildsystem.reports.dto.ReportUpdateDTO;
+import ca.buildsystem.reports.exception.ResourceNotFoundException;
 import ca.buildsystem.reports.model.Report;
 import ca.buildsystem.reports.model.ReportFormat;
 import ca.buildsystem.reports.model.ReportParameter;
 import ca.buildsystem.reports.model.ReportType;
+import ca.buildsystem.reports.repository.GenerationCheckpointRepository;
+import ca.buildsystem.reports.repository.ReportAggregateStateRepository;
+import ca.buildsystem.reports.repository.ReportFilter;
 import ca.buildsystem.reports.repository.ReportParameterRepository;
 import ca.buildsystem.reports.repository.ReportRepository;
 import ca.buildsystem.reports.repository.ReportTemplateRepository;
+import ca.buildsystem.reports.repository.ReportVersion;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -32,10 +53,18 @@ import java.util.stream.Collectors;
 @Slf4j
 public class ReportService {
 
+    private static final int TOKEN_BACKFILL_BATCH_SIZE = 500;
+
     private final ReportRepository reportRepository;
     private final ReportTemplateRepository templateRepository;
     private final ReportParameterRepository parameterRepository;
     private final ReportMapper reportMapper;
+    private final ReportAggregateStateService aggregateStateService;
+    private final GenerationCheckpointService checkpointService;
+    private final ReportAggregateStateRepository aggregateStateRepository;
+    private final GenerationCheckpointRepository checkpointRepository;
+    private final ReportDtoCache dtoCache;
+    private final PublicReportTokenCache publicTokenCache;
 
     /**
      * Retrieve all reports with pagination.
@@ -52,15 +81,44 @@ public class ReportService {
 
     /**
      * Retrieve a report by its ID.
+     * Not transactional, so cache hits do not take a connection; a miss loads the report with its
+     * template and parameters in one query.
      *
      * @param id The report ID
      * @return An optional containing the report DTO if found
      */
-    @Transactional(readOnly = true)
     public Optional<ReportResponseDTO> getReportById(UUID id) {
         log.info("Retrieving report with ID: {}", id);
-        return reportRepository.findById(id)
-                .map(reportMapper::toResponseDTO);
+        return dtoCache.getReport(id, key -> reportRepository.findWithTemplateById(key)
+                .map(reportMapper::toResponseDTO));
+    }
+
+    /**
+     * Retrieve a report at least as new as a version read before.
+     * A cached copy older than the version is evicted and the report reloaded, so a response
+     * tagged with the version never carries an older body.
+     *
+     * @param version The version of the report
+     * @return An optional containing the report DTO, empty if it has been deleted since
+     */
+    public Optional<ReportResponseDTO> getReport(ReportVersion version) {
+        Optional<ReportResponseDTO> report = getReportById(version.getId());
+        if (report.isPresent() && !isAt(report.get(), version)) {
+            dtoCache.evictReport(version.getId());
+            return getReportById(version.getId());
+        }
+        return report;
+    }
+
+    /**
+     * Get the version of a report, without loading the report or going through the DTO cache.
+     *
+     * @param id The report ID
+     * @return An optional containing the report version if found
+     */
+    @Transactional(readOnly = true)
+    public Optional<ReportVersion> getReportVersion(UUID id) {
+        return reportRepository.findVersionById(id);
     }
 
     /**
@@ -86,7 +144,10 @@ public class ReportService {
         
         // Generate access token for public reports
         if (report.isPublic() && report.getAccessToken() == null) {
-            report.setAccessToken(UUID.randomUUID().toString());
+            report.setAccessToken(AccessTokens.generate());
+        }
+        if (report.getAccessToken() != null) {
+            report.setAccessTokenHash(AccessTokens.hash(report.getAccessToken()));
         }
         
         // Set status to "PENDING" for new reports
@@ -110,6 +171,25 @@ public class ReportService {
         return reportMapper.toResponseDTO(savedReport);
     }
 
+    /**
+     * Attach the template and parameters of a generation request to a new, unsaved report.
+     * The parameters are saved with the report.
+     *
+     * @param report The report to be generated
+     * @param templateId The template ID, or null for none
+     * @param parameters The parameters, or null for none
+     * @throws ResourceNotFoundException if the template is not found
+     */
+    public void applyTemplateAndParameters(Report report, UUID templateId, List<ReportParameterDTO> parameters) {
+        if (templateId != null) {
+            report.setTemplate(templateRepository.findById(templateId)
+                    .orElseThrow(() -> new ResourceNotFoundException("Template", "id", templateId)));
+        }
+        if (parameters != null) {
+            parameters.forEach(paramDTO -> report.addParameter(reportMapper.toParameterEntity(paramDTO)));
+        }
+    }
+
     /**
      * Update an existing report.
      *
@@ -125,7 +205,14 @@ public class ReportService {
         Report existingReport = reportRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Report not found with ID: " + id));
         
+        boolean wasPublic = existingReport.isPublic();
         reportMapper.updateEntityFromDTO(updateDTO, existingReport);
+        if (existingReport.isPublic() && existingReport.getAccessToken() == null) {
+            existingReport.setAccessToken(AccessTokens.generate());
+            existingReport.setAccessTokenHash(AccessTokens.hash(existingReport.getAccessToken()));
+        } else if (wasPublic != existingReport.isPublic() && existingReport.getAccessTokenHash() != null) {
+            publicTokenCache.evict(existingReport.getAccessTokenHash());
+        }
         
         // Update parameters if provided
         if (updateDTO.getParameters() != null) {
@@ -142,9 +229,13 @@ public class ReportService {
                     .collect(Collectors.toList());
             
             parameterRepository.saveAll(parameters);
+            // The parameters are part of the report's representation; touching the report makes
+            // auditing bump updatedAt, and with it the report's version
+            existingReport.setUpdatedAt(LocalDateTime.now());
         }
         
         Report updatedReport = reportRepository.save(existingReport);
+        dtoCache.evictReport(id);
         return reportMapper.toResponseDTO(updatedReport);
     }
 
@@ -158,15 +249,46 @@ public class ReportService {
     public void deleteReport(UUID id) {
         log.info("Deleting report with ID: {}", id);
         
-        if (!reportRepository.existsById(id)) {
-            throw new RuntimeException("Report not found with ID: " + id);
-        }
+        Report report = reportRepository.findById(id)
+                .orElseThrow(() -> new RuntimeException("Report not found with ID: " + id));
         
         // Delete parameters first to avoid foreign key constraints
         parameterRepository.deleteByReportId(id);
+        aggregateStateService.deleteState(id);
+        checkpointService.delete(id);
         
-        // Delete the report
-        reportRepository.deleteById(id);
+        // Delete the report, and its files once the deletion has committed
+        reportRepository.delete(report);
+        dtoCache.evictReport(id);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                deleteFile(report.getFilePath());
+                deleteFile(report.getWorkingFilePath());
+            }
+        });
+    }
+
+    /**
+     * Delete expired reports in bulk, with their parameters, aggregate states and checkpoints.
+     * Reports regenerated since they were selected are kept. Files are left to the caller.
+     *
+     * @param ids The IDs of reports found expired
+     * @param before The end of the retention period
+     * @return The IDs of the deleted reports
+     */
+    @Transactional
+    public List<UUID> purgeExpiredReports(Collection<UUID> ids, LocalDateTime before) {
+        List<UUID> expired = reportRepository.findExpiredIds(ids, before);
+        if (expired.isEmpty()) {
+            return expired;
+        }
+        parameterRepository.deleteAllByReportIds(expired);
+        aggregateStateRepository.deleteAllByReportIds(expired);
+        checkpointRepository.deleteAllByReportIds(expired);
+        reportRepository.deleteAllByIds(expired);
+        dtoCache.evictReports(expired);
+        return expired;
     }
 
     /**
@@ -211,6 +333,20 @@ public class ReportService {
                 .map(reportMapper::toResponseDTO);
     }
 
+    /**
+     * Find the child reports of a burst generation with pagination.
+     *
+     * @param parentReportId The ID of the burst's parent report
+     * @param pageable Pagination information
+     * @return A page of report DTOs
+     */
+    @Transactional(readOnly = true)
+    public Page<ReportResponseDTO> findChildReports(UUID parentReportId, Pageable pageable) {
+        log.info("Finding child reports of burst report: {}", parentReportId);
+        return reportRepository.findByParentReportId(parentReportId, pageable)
+                .map(reportMapper::toResponseDTO);
+    }
+
     /**
      * Find reports by date range with pagination.
      *
@@ -248,6 +384,126 @@ public class ReportService {
                 .map(reportMapper::toResponseDTO);
     }
 
+    /**
+     * Get the versions of a page of all reports, without loading the reports.
+     *
+     * @param pageable Pagination information
+     * @return The versions of the reports {@link #getAllReports} returns
+     */
+    @Transactional(readOnly = true)
+    public Page<ReportVersion> getAllReportVersions(Pageable pageable) {
+        return reportRepository.findVersions(pageable);
+    }
+
+    /**
+     * Get the versions of a page of reports by type, without loading the reports.
+     *
+     * @param type The report type
+     * @param pageable Pagination information
+     * @return The versions of the reports {@link #findReportsByType} returns
+     */
+    @Transactional(readOnly = true)
+    public Page<ReportVersion> findReportVersionsByType(ReportType type, Pageable pageable) {
+        return reportRepository.findVersionsByType(type, pageable);
+    }
+
+    /**
+     * Get the versions of a page of reports by client ID, without loading the reports.
+     *
+     * @param clientId The client ID
+     * @param pageable Pagination information
+     * @return The versions of the reports {@link #findReportsByClientId} returns
+     */
+    @Transactional(readOnly = true)
+    public Page<ReportVersion> findReportVersionsByClientId(UUID clientId, Pageable pageable) {
+        return reportRepository.findVersionsByClientId(clientId, pageable);
+    }
+
+    /**
+     * Get the versions of a page of reports by project ID, without loading the reports.
+     *
+     * @param projectId The project ID
+     * @param pageable Pagination information
+     * @return The versions of the reports {@link #findReportsByProjectId} returns
+     */
+    @Transactional(readOnly = true)
+    public Page<ReportVersion> findReportVersionsByProjectId(UUID projectId, Pageable pageable) {
+        return reportRepository.findVersionsByProjectId(projectId, pageable);
+    }
+
+    /**
+     * Get the versions of a page of child reports, without loading the reports.
+     *
+     * @param parentReportId The ID of the burst's parent report
+     * @param pageable Pagination information
+     * @return The versions of the reports {@link #findChildReports} returns
+     */
+    @Transactional(readOnly = true)
+    public Page<ReportVersion> findChildReportVersions(UUID parentReportId, Pageable pageable) {
+        return reportRepository.findVersionsByParentReportId(parentReportId, pageable);
+    }
+
+    /**
+     * Get the versions of a page of reports matching multiple criteria, without loading the reports.
+     *
+     * @param type The report type (optional)
+     * @param clientId The client ID (optional)
+     * @param projectId The project ID (optional)
+     * @param startDate The start date (optional)
+     * @param endDate The end date (optional)
+     * @param pageable Pagination information
+     * @return The versions of the reports {@link #findReportsByMultipleCriteria} returns
+     */
+    @Transactional(readOnly = true)
+    public Page<ReportVersion> findReportVersionsByMultipleCriteria(
+            ReportType type, UUID clientId, UUID projectId,
+            LocalDateTime startDate, LocalDateTime endDate, Pageable pageable) {
+        return reportRepository.findVersionsByMultipleCriteria(
+                type, clientId, projectId, startDate, endDate, pageable);
+    }
+
+    /**
+     * Get the versions of several reports, without loading the reports.
+     *
+     * @param ids The report IDs
+     * @return The versions of the reports that exist
+     */
+    @Transactional(readOnly = true)
+    public List<ReportVersion> findReportVersions(Collection<UUID> ids) {
+        return reportRepository.findVersionsByIdIn(ids);
+    }
+
+    /**
+     * Find reports, loading only the requested fields.
+     * Only the selected columns are read; parameters are loaded, in one query for the whole
+     * page, only when they are requested.
+     *
+     * @param filter The criteria the reports match
+     * @param fields The fields to return
+     * @param pageable Pagination information
+     * @return A page of rows mapping the property names of the fields to their values
+     */
+    @Transactional(readOnly = true)
+    public Page<Map<String, Object>> findReportFields(ReportFilter filter, Set<ReportField> fields, Pageable pageable) {
+        log.info("Finding report fields {} by {}", fields, filter);
+        Page<Map<String, Object>> page = reportRepository.findFields(filter, fields, pageable);
+        if (!fields.contains(ReportField.PARAMETERS) || !page.hasContent()) {
+            return page;
+        }
+        Map<UUID, List<ReportParameterDTO>> parameters = new HashMap<>();
+        List<UUID> ids = page.getContent().stream()
+                .map(row -> (UUID) row.get(ReportField.ID.getName()))
+                .collect(Collectors.toList());
+        for (ReportParameter parameter : parameterRepository.findByReportIdInOrderByDisplayOrderAsc(ids)) {
+            parameters.computeIfAbsent(parameter.getReport().getId(), id -> new ArrayList<>())
+                    .add(reportMapper.toParameterDTO(parameter));
+        }
+        // Like the full representation, reports without parameters have none rather than an empty list
+        page.forEach(row -> row.put(ReportField.PARAMETERS.getName(),
+                parameters.get((UUID) row.get(ReportField.ID.getName()))));
+        return page;
+    }
+
     /**
      * Find scheduled reports that are due for generation.
      *
@@ -292,19 +548,71 @@ public class ReportService {
         }
         
         Report updatedReport = reportRepository.save(report);
+        dtoCache.evictReport(id);
         return reportMapper.toResponseDTO(updatedReport);
     }
 
+    private static boolean isAt(ReportResponseDTO report, ReportVersion version) {
+        return Objects.equals(report.getUpdatedAt(), version.getUpdatedAt())
+                && Objects.equals(report.getStatus(), version.getStatus())
+                && Objects.equals(report.getLastGenerated(), version.getLastGenerated())
+                && Objects.equals(report.getFileSize(), version.getFileSize())
+                && report.getStorageTier() == version.getStorageTier()
+                && Objects.equals(report.getTemplateId(), version.getTemplateId())
+                && Objects.equals(report.getTemplateName(), version.getTemplateName());
+    }
+
     /**
      * Find a public report by its access token.
+     * Malformed tokens are rejected without a lookup, and tokens are resolved through the token
+     * cache and the DTO cache, so repeated hits on popular or dead links stay off the database.
      *
      * @param accessToken The access token
      * @return An optional containing the report DTO if found
      */
-    @Transactional(readOnly = true)
     public Optional<ReportResponseDTO> findPublicReportByAccessToken(String accessToken) {
-        log.info("Finding public report by access token");
-        return reportRepository.findByIsPublicTrueAndAccessToken(accessToken)
-                .map(reportMapper::toResponseDTO);
+        log.debug("Finding public report by access token");
+        if (!AccessTokens.isWellFormed(accessToken)) {
+            return Optional.empty();
+        }
+        String tokenHash = AccessTokens.hash(accessToken);
+        Optional<ReportResponseDTO> report = publicTokenCache
+                .resolve(tokenHash, reportRepository::findPublicReportIdByAccessTokenHash)
+                .flatMap(this::getReportById)
+                .filter(ReportResponseDTO::isPublic);
+        if (report.isEmpty()) {
+            publicTokenCache.markUnknown(tokenHash);
+        }
+        return report;
+    }
+
+    /**
+     * Store the token hash of reports created before hashes were stored, so that their public
+     * links resolve through the index.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillAccessTokenHashes() {
+        int backfilled = 0;
+        List<Report> batch;
+        while (!(batch = reportRepository.findByAccessTokenIsNotNullAndAccessTokenHashIsNull(
+                PageRequest.of(0, TOKEN_BACKFILL_BATCH_SIZE))).isEmpty()) {
+            batch.forEach(report -> report.setAccessTokenHash(AccessTokens.hash(report.getAccessToken())));
+            reportRepository.saveAll(batch);
+            backfilled += batch.size();
+        }
+        if (backfilled > 0) {
+            log.info("Stored access token hashes of {} reports", backfilled);
+        }
+    }
+
+    private void deleteFile(String path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(Paths.get(path));
+        } catch (IOException e) {
+            log.warn("Could not delete report file {}", path, e);
+        }
     }
 }
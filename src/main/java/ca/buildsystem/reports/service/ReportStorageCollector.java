@@ -0,0 +1,314 @@
+package ca.buildsystem.reports.service;
+
+import ca.buildsystem.reports.model.Report;
+import ca.buildsystem.reports.repository.GenerationCheckpointRepository;
+import ca.buildsystem.reports.repository.ReportAggregateStateRepository;
+import ca.buildsystem.reports.repository.ReportRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Scheduled garbage collector of report storage.
+ * Reports past the retention period are deleted with bulk statements, then every storage
+ * directory is reconciled against the database in streaming batches: files that no report,
+ * aggregate state or checkpoint points to are deleted once they are older than a grace period,
+ * which protects files being written. Each batch of files is matched with one query per table,
+ * on both the path as listed and its absolute normalized form; files are written under the
+ * configured storage path, so a row holds one of the two.
+ * Deletions are paced so the collector's I/O stays in the background of running generations.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ReportStorageCollector {
+
+    private final ReportRepository reportRepository;
+    private final ReportAggregateStateRepository aggregateStateRepository;
+    private final GenerationCheckpointRepository checkpointRepository;
+    private final ReportService reportService;
+
+    @Value("${app.report.gc.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.report.gc.retention-days:${compliance.pipeda.data-retention-days:2555}}")
+    private int retentionDays;
+
+    @Value("${app.report.gc.orphan-grace-hours:24}")
+    private long orphanGraceHours;
+
+    @Value("${app.report.gc.batch-size:500}")
+    private int batchSize;
+
+    @Value("${app.report.gc.max-deletes-per-second:50}")
+    private int maxDeletesPerSecond;
+
+    @Value("${app.report.gc.batch-pause-ms:200}")
+    private long batchPauseMs;
+
+    @Value("${app.report.storage-path:/tmp/reports}")
+    private String reportStoragePath;
+
+    @Value("${app.report.tiering.cold-path:/tmp/reports/cold}")
+    private String coldPath;
+
+    /**
+     * Delete expired reports, then orphaned files.
+     */
+    @Scheduled(cron = "${app.report.gc.cron:0 0 4 * * *}")
+    public void collect() {
+        if (!enabled) {
+            return;
+        }
+        Pacer pacer = new Pacer(maxDeletesPerSecond);
+        try {
+            int expired = deleteExpiredReports(pacer);
+            long orphans = deleteOrphanFiles(pacer);
+            if (expired > 0 || orphans > 0) {
+                log.info("Storage collection deleted {} expired reports and {} orphaned files", expired, orphans);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Storage collection interrupted");
+        } catch (Exception e) {
+            log.error("Error collecting report storage", e);
+        }
+    }
+
+    /**
+     * Delete reports past the retention period in batches, rows first and files afterwards; a
+     * file left behind by a failure is an orphan for the next run.
+     */
+    private int deleteExpiredReports(Pacer pacer) throws InterruptedException {
+        LocalDateTime before = LocalDateTime.now().minusDays(retentionDays);
+        int deleted = 0;
+        while (true) {
+            List<Report> batch = reportRepository.findExpiredReports(before, PageRequest.of(0, batchSize));
+            if (batch.isEmpty()) {
+                return deleted;
+            }
+            List<UUID> purged = reportService.purgeExpiredReports(
+                    batch.stream().map(Report::getId).collect(Collectors.toList()), before);
+            Set<UUID> purgedIds = new HashSet<>(purged);
+            for (Report report : batch) {
+                if (purgedIds.contains(report.getId())) {
+                    deleteIfPresent(report.getFilePath(), pacer);
+                    deleteIfPresent(report.getWorkingFilePath(), pacer);
+                }
+            }
+            deleted += purged.size();
+            if (purged.isEmpty() || batch.size() < batchSize) {
+                return deleted;
+            }
+            Thread.sleep(batchPauseMs);
+        }
+    }
+
+    /**
+     * Reconcile each storage directory against the table that references its files.
+     * Spill and sort runs are never referenced; they only outlive a generation when its node died.
+     */
+    private long deleteOrphanFiles(Pacer pacer) throws IOException, InterruptedException {
+        Path storage = Paths.get(reportStoragePath);
+        FileTime cutoff = FileTime.from(Instant.now().minus(orphanGraceHours, ChronoUnit.HOURS));
+        long deleted = 0;
+
+        deleted += reconcile(storage, cutoff, pacer, paths -> {
+            Set<String> referenced = new HashSet<>(reportRepository.findReferencedFilePaths(paths));
+            referenced.addAll(reportRepository.findReferencedWorkingFilePaths(paths));
+            return referenced;
+        });
+        deleted += reconcile(storage.resolve(".state"), cutoff, pacer,
+                aggregateStateRepository::findReferencedStatePaths);
+        deleted += reconcile(storage.resolve(".checkpoint"), cutoff, pacer,
+                checkpointRepository::findReferencedCheckpointPaths);
+        deleted += deleteStale(storage.resolve(".spill"), cutoff, pacer);
+        deleted += deleteStale(storage.resolve(".sort"), cutoff, pacer);
+
+        // Cold files sit in one directory per report
+        Path cold = Paths.get(coldPath);
+        if (Files.isDirectory(cold)) {
+            try (DirectoryStream<Path> directories = Files.newDirectoryStream(cold, Files::isDirectory)) {
+                for (Path directory : directories) {
+                    deleted += reconcile(directory, cutoff, pacer, reportRepository::findReferencedFilePaths);
+                    deleteIfEmpty(directory, cutoff);
+                }
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Stream the regular files of a directory in batches and delete those not referenced.
+     *
+     * @param directory The directory; subdirectories are skipped
+     * @param cutoff Files modified after this are kept
+     * @param references Which of a batch of paths a table references
+     * @return The number of deleted files
+     */
+    private long reconcile(Path directory, FileTime cutoff, Pacer pacer,
+                           Function<Collection<String>, Collection<String>> references)
+            throws IOException, InterruptedException {
+        if (!Files.isDirectory(directory)) {
+            return 0;
+        }
+        long deleted = 0;
+        List<Path> batch = new ArrayList<>(batchSize);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+                file -> Files.isRegularFile(file) && Files.getLastModifiedTime(file).compareTo(cutoff) < 0)) {
+            for (Path file : files) {
+                batch.add(file);
+                if (batch.size() == batchSize) {
+                    deleted += deleteUnreferenced(batch, references, pacer);
+                    batch.clear();
+                    Thread.sleep(batchPauseMs);
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            deleted += deleteUnreferenced(batch, references, pacer);
+        }
+        return deleted;
+    }
+
+    private long deleteUnreferenced(List<Path> batch, Function<Collection<String>, Collection<String>> references,
+                                    Pacer pacer)
+            throws InterruptedException {
+        Set<String> paths = new HashSet<>();
+        for (Path file : batch) {
+            paths.add(file.toString());
+            paths.add(normalize(file.toString()));
+        }
+        Set<String> kept = references.apply(paths).stream()
+                .map(ReportStorageCollector::normalize)
+                .collect(Collectors.toSet());
+        long deleted = 0;
+        for (Path file : batch) {
+            if (kept.contains(normalize(file.toString()))) {
+                continue;
+            }
+            if (deleteIfPresent(file.toString(), pacer)) {
+                log.debug("Deleted orphaned report file {}", file);
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * The absolute, normalized form of a stored path, or the path itself if it is not valid here.
+     */
+    private static String normalize(String path) {
+        try {
+            return Paths.get(path).toAbsolutePath().normalize().toString();
+        } catch (InvalidPathException e) {
+            return path;
+        }
+    }
+
+    /**
+     * Delete every file under a directory of temporary runs that is older than the cutoff.
+     */
+    private long deleteStale(Path directory, FileTime cutoff, Pacer pacer) throws IOException, InterruptedException {
+        if (!Files.isDirectory(directory)) {
+            return 0;
+        }
+        List<Path> stale = new ArrayList<>();
+        Files.walkFileTree(directory, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (attributes.lastModifiedTime().compareTo(cutoff) < 0) {
+                    stale.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+                if (!dir.equals(directory)) {
+                    stale.add(dir);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        long deleted = 0;
+        for (Path path : stale) {
+            if (Files.isDirectory(path)) {
+                deleteIfEmpty(path, cutoff);
+            } else if (deleteIfPresent(path.toString(), pacer)) {
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    private boolean deleteIfPresent(String path, Pacer pacer) throws InterruptedException {
+        if (path == null) {
+            return false;
+        }
+        pacer.acquire();
+        try {
+            return Files.deleteIfExists(Paths.get(path));
+        } catch (IOException e) {
+            log.warn("Could not delete report file {}", path, e);
+            return false;
+        }
+    }
+
+    private void deleteIfEmpty(Path directory, FileTime cutoff) {
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            if (!entries.iterator().hasNext() && Files.getLastModifiedTime(directory).compareTo(cutoff) < 0) {
+                Files.delete(directory);
+            }
+        } catch (IOException e) {
+            log.debug("Could not delete directory {}", directory, e);
+        }
+    }
+
+    /**
+     * Spaces deletions evenly so that no more than the configured number happen per second.
+     */
+    private static final class Pacer {
+
+        private final long intervalNanos;
+        private long next = System.nanoTime();
+
+        private Pacer(int perSecond) {
+            this.intervalNanos = perSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / perSecond : 0;
+        }
+
+        private void acquire() throws InterruptedException {
+            long now = System.nanoTime();
+            if (next > now) {
+                TimeUnit.NANOSECONDS.sleep(next - now);
+            }
+            next = Math.max(next, now) + intervalNanos;
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package ca.buildsystem.reports.service;
+
+import ca.buildsystem.reports.exception.ResourceNotFoundException;
+import ca.buildsystem.reports.model.Report;
+import ca.buildsystem.reports.model.ReportFormat;
+import ca.buildsystem.reports.model.StorageTier;
+import ca.buildsystem.reports.repository.ReportRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Service moving aged report files to a compressed cold tier and reading them back.
+ * Text formats compress well and are rarely downloaded once they are a few months old, so they
+ * are recompressed at the highest level into the cold directory. Downloads and bundles
+ * decompress cold files on the fly; clients always receive the original content.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ReportStorageTieringService {
+
+    /**
+     * Formats worth recompressing; PDF and Excel files are already compressed.
+     */
+    private static final Set<ReportFormat> TIERED_FORMATS =
+            EnumSet.of(ReportFormat.CSV, ReportFormat.JSON, ReportFormat.HTML);
+
+    private static final String COLD_SUFFIX = ".gz";
+    private static final int IO_BUFFER_BYTES = 64 * 1024;
+
+    private final ReportRepository reportRepository;
+    private final ReportDtoCache dtoCache;
+
+    @Value("${app.report.tiering.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.report.tiering.age-days:90}")
+    private int ageDays;
+
+    @Value("${app.report.tiering.cold-path:/tmp/reports/cold}")
+    private String coldPath;
+
+    @Value("${app.report.tiering.batch-size:100}")
+    private int batchSize;
+
+    /**
+     * Move every text report not regenerated for the configured age to the cold tier.
+     * Reports that fail to move stay hot and are retried on the next run.
+     */
+    @Scheduled(cron = "${app.report.tiering.cron:0 0 3 * * *}")
+    public void moveAgedReports() {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime before = LocalDateTime.now().minusDays(ageDays);
+        int moved = 0;
+        long savedBytes = 0;
+
+        List<Report> batch = reportRepository.findTieringCandidates(TIERED_FORMATS, before,
+                PageRequest.of(0, batchSize));
+        while (!batch.isEmpty()) {
+            for (Report report : batch) {
+                try {
+                    long saved = moveToCold(report);
+                    if (saved >= 0) {
+                        moved++;
+                        savedBytes += saved;
+                    }
+                } catch (IOException e) {
+                    log.warn("Error moving report {} to the cold tier", report.getId(), e);
+                }
+            }
+            // Failed reports are still candidates; continue after the last one seen rather than from the top
+            Report last = batch.get(batch.size() - 1);
+            batch = reportRepository.findTieringCandidatesAfter(TIERED_FORMATS, before,
+                    last.getLastGenerated(), last.getId(), PageRequest.of(0, batchSize));
+        }
+        if (moved > 0) {
+            log.info("Moved {} reports to the cold tier, saving {} bytes", moved, savedBytes);
+        }
+    }
+
+    /**
+     * Open the file of a report for download.
+     *
+     * @param id The report ID
+     * @return The download, with the original file name and length
+     * @throws ResourceNotFoundException if the report or its file does not exist
+     */
+    @Transactional(readOnly = true)
+    public ReportDownload openDownload(UUID id) {
+        Report report = reportRepository.findById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Report", "id", id));
+        if (report.getFilePath() == null || !Files.exists(Paths.get(report.getFilePath()))) {
+            throw new ResourceNotFoundException("Report file", "id", id);
+        }
+        Path path = Paths.get(report.getFilePath());
+        if (!isCold(report)) {
+            return new ReportDownload(path.getFileName().toString(), report.getFileSize(), new FileSystemResource(path));
+        }
+        try {
+            return new ReportDownload(fileName(report), report.getFileSize(), new InputStreamResource(openCold(path)));
+        } catch (IOException e) {
+            throw new ResourceNotFoundException("Report file", "id", id);
+        }
+    }
+
+    /**
+     * Check whether the file of a report is in the cold tier.
+     *
+     * @param report The report
+     * @return true if the file is compressed
+     */
+    public boolean isCold(Report report) {
+        return report.getStorageTier() == StorageTier.COLD;
+    }
+
+    /**
+     * Get the original name of the file of a report, whichever tier it is in.
+     *
+     * @param report The report with a file
+     * @return The file name clients see
+     */
+    public String fileName(Report report) {
+        String name = Paths.get(report.getFilePath()).getFileName().toString();
+        if (isCold(report) && name.endsWith(COLD_SUFFIX)) {
+            return name.substring(0, name.length() - COLD_SUFFIX.length());
+        }
+        return name;
+    }
+
+    /**
+     * Open a cold file, decompressing it while it is read.
+     *
+     * @param path The cold file
+     * @return The original content
+     * @throws IOException if the file cannot be opened
+     */
+    public InputStream openCold(Path path) throws IOException {
+        InputStream in = Files.newInputStream(path);
+        try {
+            return new GZIPInputStream(new BufferedInputStream(in, IO_BUFFER_BYTES), IO_BUFFER_BYTES);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Recompress the file of a report into the cold tier.
+     * The report is only repointed if it still refers to the hot file, so a regeneration running
+     * meanwhile wins and the cold copy is dropped.
+     *
+     * @return The bytes saved, or -1 if the report was not moved
+     */
+    private long moveToCold(Report report) throws IOException {
+        Path hot = Paths.get(report.getFilePath());
+        if (!Files.exists(hot)) {
+            log.warn("Skipping report {} in tiering, file {} is missing", report.getId(), hot);
+            return -1;
+        }
+        // One directory per report keeps the original file name without collisions
+        Path directory = Paths.get(coldPath, report.getId().toString());
+        Files.createDirectories(directory);
+        Path cold = directory.resolve(hot.getFileName() + COLD_SUFFIX);
+        Path temp = Files.createTempFile(directory, "tier_", ".tmp");
+        try {
+            try (InputStream in = Files.newInputStream(hot);
+                 OutputStream out = new GZIPOutputStream(Files.newOutputStream(temp), IO_BUFFER_BYTES) {
+                     {
+                         def.setLevel(Deflater.BEST_COMPRESSION);
+                     }
+                 }) {
+                in.transferTo(out);
+            }
+            Files.move(temp, cold, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+
+        long hotSize = Files.size(hot);
+        long coldSize = Files.size(cold);
+        int updated = reportRepository.moveToTier(report.getId(), report.getFilePath(), cold.toString(),
+                StorageTier.COLD, coldSize, LocalDateTime.now());
+        if (updated == 0) {
+            log.debug("Report {} changed while tiering, keeping it hot", report.getId());
+            Files.deleteIfExists(cold);
+            return -1;
+        }
+        dtoCache.evictReport(report.getId());
+        Files.deleteIfExists(hot);
+        return hotSize - coldSize;
+    }
+
+    /**
+     * A report file opened for download.
+     */
+    @lombok.Value
+    public static class ReportDownload {
+        String fileName;
+        Long length;
+        Resource resource;
+    }
+}
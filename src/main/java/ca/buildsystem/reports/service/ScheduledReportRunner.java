@@ -0,0 +1,56 @@
+package ca.buildsystem.reports.service;
+
+import ca.buildsystem.reports.dto.ReportResponseDTO;
+import ca.buildsystem.reports.exception.TooManyRequestsException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Scheduled job regenerating the reports whose next generation time has passed.
+ * Reports are regenerated incrementally from their previous aggregate state when possible,
+ * and generations checkpointed by a node that shut down are resumed. Due reports are queued in
+ * the scheduled lane of the generation executor, which runs them as capacity allows.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ScheduledReportRunner {
+
+    private final ReportService reportService;
+    private final ReportGenerationExecutor generationExecutor;
+    private final GenerationCheckpointService checkpointService;
+
+    @Value("${app.report.scheduler.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * Queue every scheduled report that is due and every checkpointed generation.
+     */
+    @Scheduled(fixedDelayString = "${app.report.scheduler.poll-interval-ms:60000}")
+    public void generateDueReports() {
+        if (!enabled) {
+            return;
+        }
+        Set<UUID> due = new LinkedHashSet<>(checkpointService.findResumableReportIds());
+        for (ReportResponseDTO report : reportService.findReportsDueForGeneration()) {
+            due.add(report.getId());
+        }
+        for (UUID id : due) {
+            try {
+                generationExecutor.submitScheduled(id);
+            } catch (TooManyRequestsException e) {
+                log.info("Scheduled lane is full; deferring remaining scheduled reports");
+                return;
+            } catch (Exception e) {
+                log.error("Error queueing scheduled report {}", id, e);
+            }
+        }
+    }
+}
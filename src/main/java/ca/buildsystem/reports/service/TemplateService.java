@@ -6,6 +6,7 @@ import ca.buildsystem.reports.exception.ResourceNotFoundException;
 import ca.buildsystem.reports.model.ReportTemplate;
 import ca.buildsystem.reports.model.ReportType;
 import ca.buildsystem.reports.repository.ReportTemplateRepository;
+import ca.buildsystem.reports.repository.TemplateVersion;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
@@ -14,6 +15,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.stream.Collectors;
@@ -21,6 +23,8 @@ import java.util.stream.Collectors;
 /**
  * Service for managing report templates.
  * Handles template creation, retrieval, updating, and deletion.
+ * Writes publish a template invalidation, which evicts the template DTO and, through
+ * {@link ca.buildsystem.reports.cache.TemplateEntityCache}, the second-level cache of every node.
  */
 @Service
 @RequiredArgsConstructor
@@ -29,6 +33,7 @@ public class TemplateService {
 
     private final ReportTemplateRepository templateRepository;
     private final ReportMapper reportMapper;
+    private final ReportDtoCache dtoCache;
 
     /**
      * Retrieve all templates with pagination.
@@ -52,8 +57,8 @@ public class TemplateService {
     @Transactional(readOnly = true)
     public Optional<TemplateResponseDTO> getTemplateById(UUID id) {
         log.info("Retrieving template with ID: {}", id);
-        return templateRepository.findById(id)
-                .map(reportMapper::toTemplateResponseDTO);
+        return dtoCache.getTemplate(id, key -> templateRepository.findById(key)
+                .map(reportMapper::toTemplateResponseDTO));
     }
 
     /**
@@ -77,6 +82,8 @@ public class TemplateService {
         template.setActive(true);
         
         ReportTemplate savedTemplate = templateRepository.save(template);
+        // Other nodes drop their cached active-template queries
+        dtoCache.evictTemplate(savedTemplate.getId());
         
         return reportMapper.toTemplateResponseDTO(savedTemplate);
     }
@@ -96,6 +103,8 @@ public class TemplateService {
         ReportTemplate existingTemplate = templateRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Template", "id", id));
         
+        boolean renamed = !Objects.equals(existingTemplate.getName(), updateDTO.getName());
+        
         // Update fields from DTO
         existingTemplate.setName(updateDTO.getName());
         existingTemplate.setDescription(updateDTO.getDescription());
@@ -118,6 +127,11 @@ public class TemplateService {
         }
         
         ReportTemplate updatedTemplate = templateRepository.save(existingTemplate);
+        dtoCache.evictTemplate(id);
+        if (renamed) {
+            // Report DTOs show the template's name
+            dtoCache.evictAllReports();
+        }
         return reportMapper.toTemplateResponseDTO(updatedTemplate);
     }
 
@@ -136,6 +150,7 @@ public class TemplateService {
         }
         
         templateRepository.deleteById(id);
+        dtoCache.evictTemplate(id);
     }
 
     /**
@@ -178,4 +193,85 @@ public class TemplateService {
                 .map(reportMapper::toTemplateResponseDTO)
                 .collect(Collectors.toList());
     }
+
+    /**
+     * Retrieve a template at least as new as a version read before.
+     * A cached copy older than the version is evicted and the template reloaded, so a response
+     * tagged with the version never carries an older body.
+     *
+     * @param version The version of the template
+     * @return An optional containing the template DTO, empty if it has been deleted since
+     */
+    @Transactional(readOnly = true)
+    public Optional<TemplateResponseDTO> getTemplate(TemplateVersion version) {
+        Optional<TemplateResponseDTO> template = getTemplateById(version.getId());
+        if (template.isPresent() && !isAt(template.get(), version)) {
+            dtoCache.evictTemplate(version.getId());
+            return getTemplateById(version.getId());
+        }
+        return template;
+    }
+
+    /**
+     * Get the version of a template, without loading the template or going through the DTO cache.
+     *
+     * @param id The template ID
+     * @return An optional containing the template version if found
+     */
+    @Transactional(readOnly = true)
+    public Optional<TemplateVersion> getTemplateVersion(UUID id) {
+        return templateRepository.findVersionById(id);
+    }
+
+    /**
+     * Get the versions of a page of all templates, without loading the templates.
+     *
+     * @param pageable Pagination information
+     * @return The versions of the templates {@link #getAllTemplates} returns
+     */
+    @Transactional(readOnly = true)
+    public Page<TemplateVersion> getAllTemplateVersions(Pageable pageable) {
+        return templateRepository.findAllBy(pageable, TemplateVersion.class);
+    }
+
+    /**
+     * Get the versions of a page of templates by type, without loading the templates.
+     *
+     * @param type The template type
+     * @param pageable Pagination information
+     * @return The versions of the templates {@link #findTemplatesByType} returns
+     */
+    @Transactional(readOnly = true)
+    public Page<TemplateVersion> findTemplateVersionsByType(ReportType type, Pageable pageable) {
+        return templateRepository.findByType(type, pageable, TemplateVersion.class);
+    }
+
+    /**
+     * Get the versions of a page of active templates, without loading the templates.
+     *
+     * @param pageable Pagination information
+     * @return The versions of the templates {@link #findActiveTemplates} returns
+     */
+    @Transactional(readOnly = true)
+    public Page<TemplateVersion> findActiveTemplateVersions(Pageable pageable) {
+        return templateRepository.findByActiveTrue(pageable, TemplateVersion.class);
+    }
+
+    /**
+     * Get the versions of all active non-system templates, without loading the templates.
+     *
+     * @return The versions of the templates {@link #findActiveNonSystemTemplates} returns
+     */
+    @Transactional(readOnly = true)
+    public List<TemplateVersion> findActiveNonSystemTemplateVersions() {
+        return templateRepository.findByActiveTrueAndSystemTemplateFalse(TemplateVersion.class);
+    }
+
+    private static boolean isAt(TemplateResponseDTO template, TemplateVersion version) {
+        return Objects.equals(template.getUpdatedAt(), version.getUpdatedAt())
+                && Objects.equals(template.getUpdatedBy(), version.getUpdatedBy())
+                && Objects.equals(template.getName(), version.getName())
+                && Objects.equals(template.getVersion(), version.getVersion())
+                && template.isActive() == version.isActive();
+    }
 }
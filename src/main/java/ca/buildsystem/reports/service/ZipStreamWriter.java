@@ -0,0 +1,330 @@
+package ca.buildsystem.reports.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writer streaming a ZIP archive to a channel, one file at a time.
+ * Stored entries are checksummed first and then transferred from their file channel, so their
+ * checksum and sizes sit in the local header as every reader requires for them; a file changing
+ * between the two passes fails the archive. Deflated entries are compressed on the fly, read
+ * once, with the checksum and sizes of the bytes actually written in a data descriptor.
+ * Nothing is buffered beyond the central directory, and ZIP64 records are written once sizes,
+ * offsets or the entry count outgrow the classic format.
+ */
+final class ZipStreamWriter {
+
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int DATA_DESCRIPTOR = 0x08074b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int ZIP64_END = 0x06064b50;
+    private static final int ZIP64_LOCATOR = 0x07064b50;
+    private static final int END = 0x06054b50;
+
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+    private static final short ZIP64_EXTRA = 0x0001;
+    private static final int VERSION = 20;
+    private static final int VERSION_ZIP64 = 45;
+    private static final int FLAG_DATA_DESCRIPTOR = 1 << 3;
+    private static final int FLAG_UTF8 = 1 << 11;
+    private static final long MAX_32 = 0xFFFFFFFFL;
+    private static final int MAX_16 = 0xFFFF;
+    private static final int IO_BUFFER_BYTES = 64 * 1024;
+
+    private final WritableByteChannel out;
+    private final List<Entry> entries = new ArrayList<>();
+    private long offset;
+
+    ZipStreamWriter(WritableByteChannel out) {
+        this.out = out;
+    }
+
+    /**
+     * Add a file without compression, for formats that are already compressed.
+     *
+     * @param name The entry name
+     * @param file The file to copy
+     * @throws IOException if the file cannot be read or the archive cannot be written
+     */
+    void addStored(String name, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            FileTime lastModified = Files.getLastModifiedTime(file);
+            long size = channel.size();
+            boolean zip64 = size >= MAX_32;
+            Entry entry = new Entry(name, METHOD_STORED, 0, dosTime(lastModified), offset);
+            entry.crc = crc(channel, size);
+            entry.compressedSize = size;
+            entry.size = size;
+            writeLocalHeader(entry, zip64);
+
+            long copied = 0;
+            while (copied < size) {
+                long transferred = channel.transferTo(copied, size - copied, out);
+                if (transferred <= 0) {
+                    throw new IOException("File " + file + " shrank while it was archived");
+                }
+                copied += transferred;
+            }
+            if (channel.size() != size || !Files.getLastModifiedTime(file).equals(lastModified)) {
+                throw new IOException("File " + file + " changed while it was archived");
+            }
+            offset += size;
+            entries.add(entry);
+        }
+    }
+
+    /**
+     * Add a file compressed with deflate.
+     *
+     * @param name The entry name
+     * @param file The file to compress
+     * @throws IOException if the file cannot be read or the archive cannot be written
+     */
+    void addDeflated(String name, Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            addDeflated(name, in, Files.size(file), Files.getLastModifiedTime(file));
+        }
+    }
+
+    /**
+     * Add the content of a stream compressed with deflate.
+     *
+     * @param name The entry name
+     * @param in The content; read to its end but not closed
+     * @param size The expected size of the content, deciding whether ZIP64 sizes are written
+     * @param lastModified The modification time of the entry
+     * @throws IOException if the content cannot be read or the archive cannot be written
+     */
+    void addDeflated(String name, InputStream in, long size, FileTime lastModified) throws IOException {
+        // Deflate can only expand slightly, so content below the limit compresses below it too
+        boolean zip64 = size >= MAX_32 - MAX_32 / 100;
+        Entry entry = new Entry(name, METHOD_DEFLATED, FLAG_DATA_DESCRIPTOR, dosTime(lastModified), offset);
+        writeLocalHeader(entry, zip64);
+
+        CRC32 crc = new CRC32();
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            byte[] input = new byte[IO_BUFFER_BYTES];
+            byte[] output = new byte[IO_BUFFER_BYTES];
+            long compressed = 0;
+            int read;
+            while ((read = in.read(input)) >= 0) {
+                crc.update(input, 0, read);
+                deflater.setInput(input, 0, read);
+                while (!deflater.needsInput()) {
+                    compressed += write(output, deflater.deflate(output));
+                }
+            }
+            deflater.finish();
+            while (!deflater.finished()) {
+                compressed += write(output, deflater.deflate(output));
+            }
+            entry.crc = crc.getValue();
+            entry.compressedSize = compressed;
+            entry.size = deflater.getBytesRead();
+        } finally {
+            deflater.end();
+        }
+        offset += entry.compressedSize;
+        writeDataDescriptor(entry, zip64);
+        entries.add(entry);
+    }
+
+    /**
+     * Write the central directory. No entries may be added afterwards.
+     *
+     * @throws IOException if the archive cannot be written
+     */
+    void finish() throws IOException {
+        long directoryOffset = offset;
+        for (Entry entry : entries) {
+            writeCentralHeader(entry);
+        }
+        long directorySize = offset - directoryOffset;
+
+        if (entries.size() >= MAX_16 || directoryOffset >= MAX_32 || directorySize >= MAX_32) {
+            long zip64EndOffset = offset;
+            ByteBuffer zip64End = buffer(56 + 20);
+            zip64End.putInt(ZIP64_END).putLong(44)
+                    .putShort((short) VERSION_ZIP64).putShort((short) VERSION_ZIP64)
+                    .putInt(0).putInt(0)
+                    .putLong(entries.size()).putLong(entries.size())
+                    .putLong(directorySize).putLong(directoryOffset);
+            zip64End.putInt(ZIP64_LOCATOR).putInt(0).putLong(zip64EndOffset).putInt(1);
+            write(zip64End);
+        }
+
+        ByteBuffer end = buffer(22);
+        end.putInt(END).putShort((short) 0).putShort((short) 0)
+                .putShort((short) Math.min(entries.size(), MAX_16))
+                .putShort((short) Math.min(entries.size(), MAX_16))
+                .putInt((int) Math.min(directorySize, MAX_32))
+                .putInt((int) Math.min(directoryOffset, MAX_32))
+                .putShort((short) 0);
+        write(end);
+    }
+
+    /**
+     * The checksum of the first bytes of a file, read through a direct buffer.
+     */
+    private static long crc(FileChannel channel, long size) throws IOException {
+        CRC32 crc = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(IO_BUFFER_BYTES);
+        long position = 0;
+        while (position < size) {
+            buffer.limit((int) Math.min(buffer.capacity(), size - position));
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("File shrank while it was checksummed");
+            }
+            buffer.flip();
+            crc.update(buffer);
+            buffer.clear();
+            position += read;
+        }
+        return crc.getValue();
+    }
+
+    private void writeLocalHeader(Entry entry, boolean zip64) throws IOException {
+        boolean descriptor = (entry.flags & FLAG_DATA_DESCRIPTOR) != 0;
+        ByteBuffer header = buffer(30 + entry.name.length + (zip64 ? 20 : 0));
+        header.putInt(LOCAL_HEADER)
+                .putShort((short) (zip64 ? VERSION_ZIP64 : VERSION))
+                .putShort((short) entry.flags)
+                .putShort((short) entry.method)
+                .putInt(entry.dosTime)
+                .putInt(descriptor ? 0 : (int) entry.crc)
+                .putInt(zip64 ? (int) MAX_32 : (int) entry.compressedSize)
+                .putInt(zip64 ? (int) MAX_32 : (int) entry.size)
+                .putShort((short) entry.name.length)
+                .putShort((short) (zip64 ? 20 : 0))
+                .put(entry.name);
+        if (zip64) {
+            header.putShort(ZIP64_EXTRA).putShort((short) 16)
+                    .putLong(descriptor ? 0 : entry.size)
+                    .putLong(descriptor ? 0 : entry.compressedSize);
+        }
+        write(header);
+    }
+
+    private void writeDataDescriptor(Entry entry, boolean zip64) throws IOException {
+        ByteBuffer descriptor = buffer(zip64 ? 24 : 16);
+        descriptor.putInt(DATA_DESCRIPTOR).putInt((int) entry.crc);
+        if (zip64) {
+            descriptor.putLong(entry.compressedSize).putLong(entry.size);
+        } else {
+            descriptor.putInt((int) entry.compressedSize).putInt((int) entry.size);
+        }
+        write(descriptor);
+    }
+
+    private void writeCentralHeader(Entry entry) throws IOException {
+        boolean largeSize = entry.size >= MAX_32;
+        boolean largeCompressedSize = entry.compressedSize >= MAX_32;
+        boolean largeOffset = entry.offset >= MAX_32;
+        int extraLength = (largeSize ? 8 : 0) + (largeCompressedSize ? 8 : 0) + (largeOffset ? 8 : 0);
+        boolean zip64 = extraLength > 0;
+
+        ByteBuffer header = buffer(46 + entry.name.length + (zip64 ? 4 + extraLength : 0));
+        header.putInt(CENTRAL_HEADER)
+                .putShort((short) VERSION_ZIP64)
+                .putShort((short) (zip64 ? VERSION_ZIP64 : VERSION))
+                .putShort((short) entry.flags)
+                .putShort((short) entry.method)
+                .putInt(entry.dosTime)
+                .putInt((int) entry.crc)
+                .putInt((int) Math.min(entry.compressedSize, MAX_32))
+                .putInt((int) Math.min(entry.size, MAX_32))
+                .putShort((short) entry.name.length)
+                .putShort((short) (zip64 ? 4 + extraLength : 0))
+                .putShort((short) 0)
+                .putShort((short) 0)
+                .putShort((short) 0)
+                .putInt(0)
+                .putInt((int) Math.min(entry.offset, MAX_32))
+                .put(entry.name);
+        if (zip64) {
+            header.putShort(ZIP64_EXTRA).putShort((short) extraLength);
+            if (largeSize) {
+                header.putLong(entry.size);
+            }
+            if (largeCompressedSize) {
+                header.putLong(entry.compressedSize);
+            }
+            if (largeOffset) {
+                header.putLong(entry.offset);
+            }
+        }
+        write(header);
+    }
+
+    private int write(byte[] bytes, int length) throws IOException {
+        if (length > 0) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, length);
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+        }
+        return length;
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        offset += buffer.remaining();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    private static ByteBuffer buffer(int capacity) {
+        return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Encode a modification time as an MS-DOS date and time.
+     */
+    private static int dosTime(FileTime lastModified) {
+        LocalDateTime time = LocalDateTime.ofInstant(lastModified.toInstant(), ZoneId.systemDefault());
+        if (time.getYear() < 1980) {
+            time = LocalDateTime.of(1980, 1, 1, 0, 0);
+        }
+        int date = ((time.getYear() - 1980) << 9) | (time.getMonthValue() << 5) | time.getDayOfMonth();
+        int clock = (time.getHour() << 11) | (time.getMinute() << 5) | (time.getSecond() / 2);
+        return (date << 16) | clock;
+    }
+
+    private static final class Entry {
+        private final byte[] name;
+        private final int method;
+        private final int flags;
+        private final int dosTime;
+        private final long offset;
+        private long crc;
+        private long compressedSize;
+        private long size;
+
+        private Entry(String name, int method, int flags, int dosTime, long offset) {
+            this.name = name.getBytes(StandardCharsets.UTF_8);
+            this.method = method;
+            this.flags = flags | FLAG_UTF8;
+            this.dosTime = dosTime;
+            this.offset = offset;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package ca.buildsystem.reports.controller;
+
+import ca.buildsystem.reports.dto.ReportResponseDTO;
+import ca.buildsystem.reports.dto.TemplateResponseDTO;
+import ca.buildsystem.reports.exception.ResourceNotFoundException;
+import ca.buildsystem.reports.repository.ReportVersion;
+import ca.buildsystem.reports.repository.TemplateVersion;
+import ca.buildsystem.reports.service.ReportService;
+import ca.buildsystem.reports.service.TemplateService;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.WebRequest;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ConditionalGetTest {
+
+    private static final LocalDateTime UPDATED = LocalDateTime.of(2024, 3, 1, 12, 0);
+    private static final UUID TEMPLATE_ID = UUID.randomUUID();
+
+    private final ReportService reportService = mock(ReportService.class);
+    private final TemplateService templateService = mock(TemplateService.class);
+    private final ReportController reportController = new ReportController(reportService);
+    private final TemplateController templateController = new TemplateController(templateService);
+
+    @Test
+    void answersAnUnchangedReportWith304WithoutLoadingIt() {
+        UUID id = UUID.randomUUID();
+        ReportVersion version = reportVersion(id, "Expenses");
+        when(reportService.getReportVersion(id)).thenReturn(Optional.of(version));
+
+        String eTag = reportETag(id, version);
+        clearInvocations(reportService);
+        ResponseEntity<ReportResponseDTO> response = reportController.getReportById(id, request(eTag));
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(response.getHeaders().getETag()).isEqualTo(eTag);
+        assertThat(response.getBody()).isNull();
+        verify(reportService, never()).getReport(any());
+        verify(reportService, never()).getReportById(any());
+    }
+
+    @Test
+    void answersAChangedReportWithItsBody() {
+        UUID id = UUID.randomUUID();
+        String stale = reportETag(id, reportVersion(id, "Expenses"));
+        ReportVersion version = reportVersion(id, "Expenses", UPDATED.plusSeconds(1));
+        ReportResponseDTO report = report(id);
+        when(reportService.getReportVersion(id)).thenReturn(Optional.of(version));
+        when(reportService.getReport(version)).thenReturn(Optional.of(report));
+
+        ResponseEntity<ReportResponseDTO> response = reportController.getReportById(id, request(stale));
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getHeaders().getETag()).isNotEqualTo(stale);
+        assertThat(response.getBody()).isSameAs(report);
+    }
+
+    @Test
+    void changesTheReportETagWhenItsTemplateIsRenamed() {
+        UUID id = UUID.randomUUID();
+
+        assertThat(reportETag(id, reportVersion(id, "Expenses")))
+                .isNotEqualTo(reportETag(id, reportVersion(id, "Expenses by project")));
+    }
+
+    @Test
+    void answersAMissingReportWith404() {
+        UUID id = UUID.randomUUID();
+        when(reportService.getReportVersion(id)).thenReturn(Optional.empty());
+
+        ResponseEntity<ReportResponseDTO> response = reportController.getReportById(id, request(null));
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+        verify(reportService, never()).getReport(any());
+    }
+
+    @Test
+    void answersAReportDeletedAfterItsVersionWith404() {
+        UUID id = UUID.randomUUID();
+        ReportVersion version = reportVersion(id, "Expenses");
+        when(reportService.getReportVersion(id)).thenReturn(Optional.of(version));
+        when(reportService.getReport(version)).thenReturn(Optional.empty());
+
+        assertThatThrownBy(() -> reportController.getReportById(id, request(null)))
+                .isInstanceOf(ResourceNotFoundException.class);
+    }
+
+    @Test
+    void answersAnUnchangedTemplateWith304WithoutLoadingIt() {
+        UUID id = UUID.randomUUID();
+        TemplateVersion version = templateVersion(id, "Expenses", true);
+        when(templateService.getTemplateVersion(id)).thenReturn(Optional.of(version));
+
+        String eTag = templateETag(id, version);
+        clearInvocations(templateService);
+        ResponseEntity<TemplateResponseDTO> response = templateController.getTemplateById(id, request(eTag));
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(response.getHeaders().getETag()).isEqualTo(eTag);
+        verify(templateService, never()).getTemplate(any());
+        verify(templateService, never()).getTemplateById(any());
+    }
+
+    @Test
+    void changesTheTemplateETagWithMoreThanItsUpdateTime() {
+        UUID id = UUID.randomUUID();
+        String eTag = templateETag(id, templateVersion(id, "Expenses", true));
+
+        assertThat(templateETag(id, templateVersion(id, "Expenses", false))).isNotEqualTo(eTag);
+        assertThat(templateETag(id, templateVersion(id, "Expenses by project", true))).isNotEqualTo(eTag);
+    }
+
+    /**
+     * The ETag the report endpoint sends for a version, read from a response to an unconditional request.
+     */
+    private String reportETag(UUID id, ReportVersion version) {
+        when(reportService.getReportVersion(id)).thenReturn(Optional.of(version));
+        when(reportService.getReport(version)).thenReturn(Optional.of(report(id)));
+        return reportController.getReportById(id, request(null)).getHeaders().getETag();
+    }
+
+    /**
+     * The ETag the template endpoint sends for a version, read from a response to an unconditional request.
+     */
+    private String templateETag(UUID id, TemplateVersion version) {
+        when(templateService.getTemplateVersion(id)).thenReturn(Optional.of(version));
+        when(templateService.getTemplate(version)).thenReturn(Optional.of(template(id)));
+        return templateController.getTemplateById(id, request(null)).getHeaders().getETag();
+    }
+
+    private static WebRequest request(String ifNoneMatch) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/resource");
+        if (ifNoneMatch != null) {
+            request.addHeader(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        }
+        return new ServletWebRequest(request, new MockHttpServletResponse());
+    }
+
+    private static ReportResponseDTO report(UUID id) {
+        ReportResponseDTO report = new ReportResponseDTO();
+        report.setId(id);
+        return report;
+    }
+
+    private static TemplateResponseDTO template(UUID id) {
+        TemplateResponseDTO template = new TemplateResponseDTO();
+        template.setId(id);
+        return template;
+    }
+
+    private static ReportVersion reportVersion(UUID id, String templateName) {
+        return reportVersion(id, templateName, UPDATED);
+    }
+
+    private static ReportVersion reportVersion(UUID id, String templateName, LocalDateTime updatedAt) {
+        ReportVersion version = mock(ReportVersion.class);
+        when(version.getId()).thenReturn(id);
+        when(version.getUpdatedAt()).thenReturn(updatedAt);
+        when(version.getStatus()).thenReturn("COMPLETED");
+        when(version.getTemplateId()).thenReturn(TEMPLATE_ID);
+        when(version.getTemplateName()).thenReturn(templateName);
+        return version;
+    }
+
+    private static TemplateVersion templateVersion(UUID id, String name, boolean active) {
+        TemplateVersion version = mock(TemplateVersion.class);
+        when(version.getId()).thenReturn(id);
+        when(version.getUpdatedAt()).thenReturn(UPDATED);
+        when(version.getName()).thenReturn(name);
+        when(version.isActive()).thenReturn(active);
+        return version;
+    }
+}
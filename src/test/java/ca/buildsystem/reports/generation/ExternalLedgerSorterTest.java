@@ -0,0 +1,115 @@
+package ca.buildsystem.reports.generation;
+
+import ca.buildsystem.reports.model.ReportSortKey;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ExternalLedgerSorterTest {
+
+    private static final LocalDate START = LocalDate.of(2024, 1, 1);
+
+    @TempDir
+    Path spillDirectory;
+
+    @Test
+    void sortsSmallBuffersOnTheHeap() {
+        List<LedgerRow> rows = randomRows(50, 1);
+
+        List<LedgerRow> sorted = sort(rows, 100, 4, ReportSortKey.DATE);
+
+        assertThat(sorted).isSortedAccordingTo(ExternalLedgerSorter.order(ReportSortKey.DATE));
+        assertThat(sorted).containsExactlyInAnyOrderElementsOf(rows);
+    }
+
+    @Test
+    void sortsThroughRunsAndSeveralMergePasses() throws IOException {
+        List<LedgerRow> rows = randomRows(1000, 2);
+
+        // 1000 rows in runs of 10 give 100 runs, merged 3 at a time
+        List<LedgerRow> sorted = sort(rows, 10, 3, ReportSortKey.CLIENT);
+
+        assertThat(sorted).isSortedAccordingTo(ExternalLedgerSorter.order(ReportSortKey.CLIENT));
+        assertThat(sorted).containsExactlyInAnyOrderElementsOf(rows);
+        try (Stream<Path> files = Files.walk(spillDirectory)) {
+            assertThat(files.filter(Files::isRegularFile)
+                    .filter(path -> path.startsWith(spillDirectory.resolve(".sort")))).isEmpty();
+        }
+    }
+
+    @Test
+    void keepsRowsWithEqualKeysInTheirOriginalOrder() {
+        UUID client = UUID.randomUUID();
+        List<LedgerRow> rows = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            // Same client and date: only the amount tells the rows apart
+            rows.add(new LedgerRow(START, amount(i), "CAD", null, null, client));
+        }
+        rows.add(0, new LedgerRow(START, amount(1), "CAD", null, null, null));
+
+        List<LedgerRow> sorted = sort(rows, 7, 2, ReportSortKey.CLIENT);
+
+        assertThat(sorted.subList(0, 100)).containsExactlyElementsOf(rows.subList(1, 101));
+        assertThat(sorted.get(100).getClientId()).isNull();
+    }
+
+    @Test
+    void putsMissingKeysLast() {
+        Comparator<LedgerRow> order = ExternalLedgerSorter.order(ReportSortKey.PROJECT);
+        LedgerRow withProject = new LedgerRow(START, BigDecimal.ONE, "CAD", null, UUID.randomUUID(), null);
+        LedgerRow withoutProject = new LedgerRow(START.minusDays(1), BigDecimal.ONE, "CAD", null, null, null);
+
+        assertThat(order.compare(withProject, withoutProject)).isNegative();
+    }
+
+    @Test
+    void rejectsRunsThatCannotMerge() {
+        assertThatThrownBy(() -> new ExternalLedgerSorter(spillDirectory, 10, 1))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private List<LedgerRow> sort(List<LedgerRow> rows, int runRows, int fanIn, ReportSortKey key) {
+        try (LedgerColumnBuffer buffer = new LedgerColumnBuffer(new DirectMemoryPool(Long.MAX_VALUE),
+                spillDirectory.resolve(".spill"))) {
+            rows.forEach(buffer::append);
+            new ExternalLedgerSorter(spillDirectory.resolve(".sort"), runRows, fanIn)
+                    .sort(buffer, ExternalLedgerSorter.order(key));
+            List<LedgerRow> sorted = new ArrayList<>();
+            buffer.forEach(sorted::add);
+            return sorted;
+        }
+    }
+
+    /**
+     * Amounts at the buffer's scale, so rows compare equal after a round trip.
+     */
+    private static BigDecimal amount(long unscaled) {
+        return BigDecimal.valueOf(unscaled, LedgerColumnBuffer.AMOUNT_SCALE);
+    }
+
+    private static List<LedgerRow> randomRows(int count, long seed) {
+        Random random = new Random(seed);
+        List<UUID> clients = List.of(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID());
+        List<LedgerRow> rows = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            UUID client = random.nextInt(4) == 0 ? null : clients.get(random.nextInt(clients.size()));
+            rows.add(new LedgerRow(START.plusDays(random.nextInt(60)), amount(i), "CAD",
+                    null, null, client));
+        }
+        return rows;
+    }
+}
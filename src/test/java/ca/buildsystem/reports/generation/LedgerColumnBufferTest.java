@@ -0,0 +1,158 @@
+package ca.buildsystem.reports.generation;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LedgerColumnBufferTest {
+
+    @TempDir
+    Path spillDirectory;
+
+    @Test
+    void storesEveryColumnOfARow() {
+        LedgerRow row = new LedgerRow(LocalDate.of(2024, 3, 31), new BigDecimal("1234.5678"), "CAD",
+                UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID());
+        try (LedgerColumnBuffer buffer = new LedgerColumnBuffer(unlimited(), spillDirectory)) {
+            buffer.append(row);
+
+            assertThat(buffer.size()).isEqualTo(1);
+            assertThat(buffer.row(0)).isEqualTo(row);
+            assertThat(buffer.amountUnscaled(0)).isEqualTo(12_345_678L);
+        }
+    }
+
+    @Test
+    void keepsNullColumnsNull() {
+        LedgerRow row = new LedgerRow(null, null, null, null, null, null);
+        try (LedgerColumnBuffer buffer = new LedgerColumnBuffer(unlimited(), spillDirectory)) {
+            buffer.append(row);
+
+            assertThat(buffer.date(0)).isNull();
+            assertThat(buffer.amount(0)).isEqualByComparingTo(BigDecimal.ZERO);
+            assertThat(buffer.currencyCode(0)).isNull();
+            assertThat(buffer.accountId(0)).isNull();
+            assertThat(buffer.projectId(0)).isNull();
+            assertThat(buffer.clientId(0)).isNull();
+        }
+    }
+
+    @Test
+    void roundsAmountsToTheFixedScale() {
+        try (LedgerColumnBuffer buffer = new LedgerColumnBuffer(unlimited(), spillDirectory)) {
+            buffer.append(row(LocalDate.of(2024, 1, 1), "0.00005"));
+            buffer.append(row(LocalDate.of(2024, 1, 1), "-0.00005"));
+
+            assertThat(buffer.amount(0)).isEqualTo(new BigDecimal("0.0001"));
+            assertThat(buffer.amount(1)).isEqualTo(new BigDecimal("-0.0001"));
+        }
+    }
+
+    @Test
+    void spansChunksAndTotalsTheAmountColumn() {
+        long rows = LedgerColumnBuffer.ROWS_PER_CHUNK * 2L + 7;
+        try (LedgerColumnBuffer buffer = new LedgerColumnBuffer(unlimited(), spillDirectory)) {
+            for (long i = 0; i < rows; i++) {
+                buffer.append(row(LocalDate.of(2024, 1, 1).plusDays(i % 365), "1.25"));
+            }
+
+            assertThat(buffer.size()).isEqualTo(rows);
+            assertThat(buffer.isSpilled()).isFalse();
+            assertThat(buffer.totalAmount()).isEqualByComparingTo(new BigDecimal("1.25").multiply(BigDecimal.valueOf(rows)));
+            assertThat(buffer.totalAmount(LedgerColumnBuffer.ROWS_PER_CHUNK - 1, LedgerColumnBuffer.ROWS_PER_CHUNK + 1))
+                    .isEqualByComparingTo("2.50");
+            assertThat(buffer.date(rows - 1)).isEqualTo(LocalDate.of(2024, 1, 1).plusDays((rows - 1) % 365));
+        }
+    }
+
+    @Test
+    void spillsToAMappedFileBeyondTheDirectBudget() throws Exception {
+        LedgerColumnBuffer buffer = new LedgerColumnBuffer(new DirectMemoryPool(LedgerColumnBuffer.CHUNK_BYTES),
+                spillDirectory);
+        long rows = LedgerColumnBuffer.ROWS_PER_CHUNK + 1L;
+        for (long i = 0; i < rows; i++) {
+            buffer.append(row(LocalDate.of(2024, 1, 1), String.valueOf(i)));
+        }
+
+        assertThat(buffer.isSpilled()).isTrue();
+        assertThat(buffer.amount(rows - 1)).isEqualByComparingTo(String.valueOf(rows - 1));
+        try (var files = Files.list(spillDirectory)) {
+            assertThat(files.count()).isEqualTo(1);
+        }
+
+        buffer.close();
+        try (var files = Files.list(spillDirectory)) {
+            assertThat(files.count()).isZero();
+        }
+    }
+
+    @Test
+    void sharesOneDirectMemoryPoolBetweenBuffers() {
+        DirectMemoryPool pool = new DirectMemoryPool(LedgerColumnBuffer.CHUNK_BYTES);
+        LedgerColumnBuffer first = new LedgerColumnBuffer(pool, spillDirectory);
+        try (LedgerColumnBuffer second = new LedgerColumnBuffer(pool, spillDirectory)) {
+            first.append(row(LocalDate.of(2024, 1, 1), "1"));
+            second.append(row(LocalDate.of(2024, 1, 1), "2"));
+
+            assertThat(first.isSpilled()).isFalse();
+            assertThat(second.isSpilled()).isTrue();
+            assertThat(pool.getUsedBytes()).isEqualTo(LedgerColumnBuffer.CHUNK_BYTES);
+        }
+        first.close();
+        assertThat(pool.getUsedBytes()).isZero();
+
+        try (LedgerColumnBuffer third = new LedgerColumnBuffer(pool, spillDirectory)) {
+            third.append(row(LocalDate.of(2024, 1, 1), "3"));
+            assertThat(third.isSpilled()).isFalse();
+        }
+    }
+
+    @Test
+    void reusesChunksAfterClear() {
+        try (LedgerColumnBuffer buffer = new LedgerColumnBuffer(unlimited(), spillDirectory)) {
+            buffer.append(row(LocalDate.of(2024, 1, 1), "10"));
+            buffer.clear();
+            buffer.append(row(LocalDate.of(2024, 2, 1), "20"));
+
+            List<LedgerRow> rows = new ArrayList<>();
+            buffer.forEach(rows::add);
+            assertThat(rows).extracting(LedgerRow::getDate).containsExactly(LocalDate.of(2024, 2, 1));
+            assertThat(buffer.totalAmount()).isEqualByComparingTo("20");
+        }
+    }
+
+    @Test
+    void rejectsRowsOutOfBounds() {
+        try (LedgerColumnBuffer buffer = new LedgerColumnBuffer(unlimited(), spillDirectory)) {
+            buffer.append(row(LocalDate.of(2024, 1, 1), "1"));
+
+            assertThatThrownBy(() -> buffer.row(1)).isInstanceOf(IndexOutOfBoundsException.class);
+            assertThatThrownBy(() -> buffer.row(-1)).isInstanceOf(IndexOutOfBoundsException.class);
+        }
+    }
+
+    @Test
+    void packsCurrencyCodes() {
+        assertThat(LedgerColumnBuffer.unpackCurrency(LedgerColumnBuffer.packCurrency("USD"))).isEqualTo("USD");
+        assertThat(LedgerColumnBuffer.packCurrency("EURO")).isZero();
+        assertThat(LedgerColumnBuffer.packCurrency(null)).isZero();
+    }
+
+    private static DirectMemoryPool unlimited() {
+        return new DirectMemoryPool(Long.MAX_VALUE);
+    }
+
+    private static LedgerRow row(LocalDate date, String amount) {
+        return new LedgerRow(date, new BigDecimal(amount), "CAD", null, null, null);
+    }
+}
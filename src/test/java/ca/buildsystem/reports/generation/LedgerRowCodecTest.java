@@ -0,0 +1,80 @@
+package ca.buildsystem.reports.generation;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LedgerRowCodecTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void roundTripsAFullRow() throws IOException {
+        LedgerRow row = new LedgerRow(LocalDate.of(2023, 12, 1), new BigDecimal("-42.1000"), "USD",
+                UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID());
+
+        assertThat(roundTrip(row)).isEqualTo(row);
+    }
+
+    @Test
+    void writesOnlyThePresentIds() throws IOException {
+        LedgerRow row = new LedgerRow(LocalDate.of(2023, 12, 1), new BigDecimal("1.0000"), "CAD",
+                null, UUID.randomUUID(), null);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        LedgerRowCodec.write(new DataOutputStream(bytes), row);
+
+        // Day, amount, currency and flags, then a single id
+        assertThat(bytes.size()).isEqualTo(Integer.BYTES + Long.BYTES + Integer.BYTES + 1 + 2 * Long.BYTES);
+        assertThat(roundTrip(row)).isEqualTo(row);
+    }
+
+    @Test
+    void roundTripsNullColumns() throws IOException {
+        LedgerRow decoded = roundTrip(new LedgerRow(null, null, null, null, null, null));
+
+        assertThat(decoded.getDate()).isNull();
+        assertThat(decoded.getAmount()).isEqualByComparingTo(BigDecimal.ZERO);
+        assertThat(decoded.getCurrencyCode()).isNull();
+        assertThat(decoded.getAccountId()).isNull();
+    }
+
+    @Test
+    void snapshotsTheLeadingRowsOfABuffer() throws IOException {
+        Path snapshot = directory.resolve("state").resolve("ledger.snap");
+        try (LedgerColumnBuffer buffer = new LedgerColumnBuffer(new DirectMemoryPool(Long.MAX_VALUE), directory)) {
+            for (int i = 0; i < 5; i++) {
+                buffer.append(new LedgerRow(LocalDate.of(2024, 1, 1 + i), BigDecimal.valueOf(i, 4), "CAD",
+                        null, null, null));
+            }
+            LedgerRowCodec.writeSnapshot(snapshot, buffer, 3);
+        }
+
+        List<LedgerRow> rows = new ArrayList<>();
+        assertThat(LedgerRowCodec.readSnapshot(snapshot, rows::add)).isEqualTo(3);
+        assertThat(rows).extracting(LedgerRow::getDate)
+                .containsExactly(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 2), LocalDate.of(2024, 1, 3));
+        assertThat(Files.exists(snapshot.resolveSibling("ledger.snap.tmp"))).isFalse();
+    }
+
+    private static LedgerRow roundTrip(LedgerRow row) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        LedgerRowCodec.write(new DataOutputStream(bytes), row);
+        return LedgerRowCodec.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+}
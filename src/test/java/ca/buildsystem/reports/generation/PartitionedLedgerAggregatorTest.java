@@ -0,0 +1,103 @@
+package ca.buildsystem.reports.generation;
+
+import ca.buildsystem.reports.model.RollupGranularity;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PartitionedLedgerAggregatorTest {
+
+    private static final LocalDate START = LocalDate.of(2024, 1, 1);
+
+    @TempDir
+    Path spillDirectory;
+
+    @Test
+    void aggregatesOnTheHeapBelowTheLimit() {
+        try (PartitionedLedgerAggregator aggregator = aggregator(RollupGranularity.MONTH, 10, 4)) {
+            aggregator.add(row(START, "1.50"));
+            aggregator.add(row(START.plusDays(10), "2.25"));
+            aggregator.add(row(START.plusMonths(1), "4"));
+
+            List<LedgerRow> rows = drain(aggregator);
+
+            assertThat(aggregator.isSpilled()).isFalse();
+            assertThat(rows).extracting(LedgerRow::getDate).containsExactly(START, START.plusMonths(1));
+            assertThat(rows).extracting(LedgerRow::getAmount)
+                    .usingElementComparator(BigDecimal::compareTo)
+                    .containsExactly(new BigDecimal("3.75"), new BigDecimal("4"));
+        }
+    }
+
+    @Test
+    void mergesSpilledPartitionsBackIntoPeriodOrder() {
+        List<LedgerRow> expected = new ArrayList<>();
+        try (PartitionedLedgerAggregator aggregator = aggregator(RollupGranularity.DAY, 20, 4)) {
+            for (int day = 0; day < 100; day++) {
+                // Every day is added twice, in two passes, so spilled partial totals must be combined
+                aggregator.add(row(START.plusDays(day), "1"));
+            }
+            for (int day = 0; day < 100; day++) {
+                aggregator.add(row(START.plusDays(day), "2"));
+                expected.add(row(START.plusDays(day), "3"));
+            }
+
+            List<LedgerRow> rows = drain(aggregator);
+
+            assertThat(aggregator.isSpilled()).isTrue();
+            assertThat(rows).isSortedAccordingTo(LedgerAggregator.ROW_ORDER);
+            assertThat(rows).extracting(LedgerRow::getDate)
+                    .containsExactlyElementsOf(expected.stream().map(LedgerRow::getDate).toList());
+            assertThat(rows).allSatisfy(row -> assertThat(row.getAmount()).isEqualByComparingTo("3"));
+        }
+    }
+
+    @Test
+    void splitsPartitionsThatOutgrowTheLimit() throws IOException {
+        UUID project = UUID.randomUUID();
+        try (PartitionedLedgerAggregator aggregator = aggregator(RollupGranularity.DAY, 5, 2)) {
+            // 200 buckets over 2 partitions leave about 100 per partition, far above the limit of 5
+            for (int pass = 0; pass < 2; pass++) {
+                for (int day = 0; day < 200; day++) {
+                    aggregator.add(new LedgerRow(START.plusDays(day), BigDecimal.ONE, "CAD", null, project, null));
+                }
+            }
+
+            List<LedgerRow> rows = drain(aggregator);
+
+            assertThat(rows).hasSize(200);
+            assertThat(rows).isSortedAccordingTo(LedgerAggregator.ROW_ORDER);
+            assertThat(rows).allSatisfy(row -> assertThat(row.getAmount()).isEqualByComparingTo("2"));
+        }
+        try (Stream<Path> files = Files.walk(spillDirectory)) {
+            assertThat(files.filter(Files::isRegularFile)).isEmpty();
+        }
+    }
+
+    private PartitionedLedgerAggregator aggregator(RollupGranularity granularity, int maxBuckets, int partitions) {
+        Path sortDirectory = spillDirectory.resolve(".sort");
+        return new PartitionedLedgerAggregator(granularity, maxBuckets, partitions,
+                new ExternalLedgerSorter(sortDirectory, 100, 4), sortDirectory);
+    }
+
+    private static List<LedgerRow> drain(PartitionedLedgerAggregator aggregator) {
+        List<LedgerRow> rows = new ArrayList<>();
+        aggregator.drainTo(rows::add);
+        return rows;
+    }
+
+    private static LedgerRow row(LocalDate date, String amount) {
+        return new LedgerRow(date, new BigDecimal(amount), "CAD", null, null, null);
+    }
+}
@@ -0,0 +1,110 @@
+package ca.buildsystem.reports.ratelimit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.sql.DataSource;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class PostgresRateLimitStoreTest {
+
+    private static final String KEY = "READ|client|alice|10.0.0.1";
+
+    /**
+     * The rate_limit_usage table shared by the nodes.
+     */
+    private final Map<String, Long> table = new ConcurrentHashMap<>();
+
+    @Test
+    void limitsAClientSpreadOverTwoNodesToOneBudget() {
+        RateLimiter first = limiter(10);
+        RateLimiter second = limiter(10);
+        assertThat(acquire(first)).isTrue();
+        assertThat(acquire(second)).isTrue();
+        first.sync();
+        second.sync();
+
+        for (int i = 0; i < 8; i++) {
+            assertThat(acquire(first)).isTrue();
+        }
+        first.sync();
+        second.sync();
+
+        // Only the tokens taken before the nodes first exchanged escape the shared budget
+        assertThat(acquire(first)).isFalse();
+        assertThat(acquire(second)).isTrue();
+        assertThat(acquire(second)).isFalse();
+    }
+
+    @Test
+    void returnsOnlyWhatOtherNodesConsumed() {
+        PostgresRateLimitStore first = store();
+        PostgresRateLimitStore second = store();
+
+        assertThat(first.exchange(Map.of(KEY, 5L))).isEmpty();
+        assertThat(second.exchange(Map.of(KEY, 1L))).isEmpty();
+        assertThat(first.exchange(Map.of(KEY, 3L))).containsExactly(Map.entry(KEY, 1L));
+        assertThat(first.exchange(Map.of())).isEmpty();
+
+        second.exchange(Map.of(KEY, 4L));
+        assertThat(first.exchange(Map.of())).containsExactly(Map.entry(KEY, 4L));
+    }
+
+    @Test
+    void startsAgainFromADeletedCount() {
+        PostgresRateLimitStore first = store();
+        PostgresRateLimitStore second = store();
+        first.exchange(Map.of(KEY, 8L));
+
+        table.clear();
+        second.exchange(Map.of(KEY, 2L));
+
+        assertThat(first.exchange(Map.of())).isEmpty();
+        second.exchange(Map.of(KEY, 3L));
+        assertThat(first.exchange(Map.of())).containsExactly(Map.entry(KEY, 3L));
+    }
+
+    private RateLimiter limiter(long capacity) {
+        RateLimitProperties properties = new RateLimitProperties();
+        properties.setBudgets(Map.of(RateLimitBudget.READ, new RateLimitProperties.Budget(capacity, 0.001)));
+        return new RateLimiter(properties, store());
+    }
+
+    private static boolean acquire(RateLimiter limiter) {
+        return limiter.tryAcquire(RateLimitBudget.READ, "client|alice|10.0.0.1", 1.0).isAllowed();
+    }
+
+    /**
+     * A store whose statements run against the in-memory table.
+     */
+    private PostgresRateLimitStore store() {
+        PostgresRateLimitStore store = new PostgresRateLimitStore(mock(DataSource.class)) {
+            @Override
+            Map<String, Long> add(Map<String, Long> consumed) {
+                Map<String, Long> counts = new HashMap<>();
+                consumed.forEach((key, tokens) -> counts.put(key, table.merge(key, tokens, Long::sum)));
+                return counts;
+            }
+
+            @Override
+            Map<String, Long> read(Collection<String> keys) {
+                Map<String, Long> counts = new HashMap<>();
+                for (String key : keys) {
+                    Long count = table.get(key);
+                    if (count != null) {
+                        counts.put(key, count);
+                    }
+                }
+                return counts;
+            }
+        };
+        ReflectionTestUtils.setField(store, "idleSeconds", 600L);
+        return store;
+    }
+}
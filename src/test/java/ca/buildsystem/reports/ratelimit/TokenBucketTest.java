@@ -0,0 +1,111 @@
+package ca.buildsystem.reports.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenBucketTest {
+
+    private static final long START = TimeUnit.HOURS.toNanos(1);
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void allowsABurstUpToTheCapacity() {
+        TokenBucket bucket = new TokenBucket(3, 1, START);
+
+        assertThat(bucket.tryConsume(START).getRemaining()).isEqualTo(2);
+        assertThat(bucket.tryConsume(START).getRemaining()).isEqualTo(1);
+        RateLimitDecision last = bucket.tryConsume(START);
+        RateLimitDecision refused = bucket.tryConsume(START);
+
+        assertThat(last.isAllowed()).isTrue();
+        assertThat(last.getRemaining()).isZero();
+        assertThat(last.getResetSeconds()).isEqualTo(3);
+        assertThat(refused.isAllowed()).isFalse();
+        assertThat(refused.getLimit()).isEqualTo(3);
+        assertThat(refused.getRetryAfterSeconds()).isEqualTo(1);
+    }
+
+    @Test
+    void refillsAtTheSustainedRate() {
+        TokenBucket bucket = new TokenBucket(2, 2, START);
+        drain(bucket, START);
+
+        assertThat(bucket.tryConsume(START + SECOND / 4).isAllowed()).isFalse();
+        assertThat(bucket.tryConsume(START + SECOND / 2).isAllowed()).isTrue();
+        assertThat(bucket.tryConsume(START + SECOND / 2).isAllowed()).isFalse();
+    }
+
+    @Test
+    void neverHoldsMoreThanAFullBucket() {
+        TokenBucket bucket = new TokenBucket(3, 1, START);
+        long later = START + TimeUnit.HOURS.toNanos(1);
+
+        assertThat(drain(bucket, later)).isEqualTo(3);
+    }
+
+    @Test
+    void chargesTokensTakenOnOtherNodes() {
+        TokenBucket bucket = new TokenBucket(3, 1, START);
+
+        bucket.debit(2, START);
+
+        assertThat(drain(bucket, START)).isEqualTo(1);
+    }
+
+    @Test
+    void neverGoesBelowEmpty() {
+        TokenBucket bucket = new TokenBucket(3, 1, START);
+
+        bucket.debit(100, START);
+
+        assertThat(bucket.tryConsume(START).isAllowed()).isFalse();
+        assertThat(bucket.tryConsume(START + SECOND).isAllowed()).isTrue();
+    }
+
+    @Test
+    void countsLocalConsumptionUntilDrained() {
+        TokenBucket bucket = new TokenBucket(5, 1, START);
+        bucket.tryConsume(START);
+        bucket.tryConsume(START);
+        bucket.debit(1, START);
+
+        assertThat(bucket.drainUnsynced()).isEqualTo(2);
+        assertThat(bucket.drainUnsynced()).isZero();
+    }
+
+    @Test
+    void allowsEveryTokenOnceUnderConcurrency() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(1000, 0.001, START);
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 500; j++) {
+                    bucket.tryConsume(START);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(bucket.drainUnsynced()).isEqualTo(1000);
+        assertThat(bucket.tryConsume(START).isAllowed()).isFalse();
+    }
+
+    /**
+     * Take tokens until the bucket refuses.
+     *
+     * @return The number of tokens taken
+     */
+    private static int drain(TokenBucket bucket, long now) {
+        int taken = 0;
+        while (bucket.tryConsume(now).isAllowed()) {
+            taken++;
+        }
+        return taken;
+    }
+}
@@ -0,0 +1,197 @@
+package ca.buildsystem.reports.service;
+
+import ca.buildsystem.reports.exception.TooManyRequestsException;
+import ca.buildsystem.reports.model.ReportFormat;
+import ca.buildsystem.reports.model.ReportType;
+import ca.buildsystem.reports.service.GenerationAdmissionService.Lane;
+import ca.buildsystem.reports.service.GenerationAdmissionService.Ticket;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class GenerationAdmissionServiceTest {
+
+    private static final ReportType TYPE = ReportType.EXPENSE;
+    private static final long SMALL_MS = 1000;
+
+    private GenerationAdmissionService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new GenerationAdmissionService();
+        ReflectionTestUtils.setField(service, "maxConcurrent", 3);
+        ReflectionTestUtils.setField(service, "formatLimitsSpec", "PDF=1");
+        ReflectionTestUtils.setField(service, "typeLimitsSpec", "");
+        ReflectionTestUtils.setField(service, "laneWeightsSpec", "INTERACTIVE=4,SCHEDULED=1");
+        ReflectionTestUtils.setField(service, "interactiveReserve", 1);
+        ReflectionTestUtils.setField(service, "queueCapacity", 2);
+        ReflectionTestUtils.setField(service, "scheduledQueueCapacity", 10);
+        ReflectionTestUtils.setField(service, "maxWaitMs", 50L);
+        ReflectionTestUtils.setField(service, "largeJobMs", 60_000L);
+        ReflectionTestUtils.setField(service, "maxLargeJobs", 1);
+        ReflectionTestUtils.setField(service, "bypassLimitMs", 60_000L);
+    }
+
+    @Test
+    void grantsUpToTheConcurrencyLimitAndReleasesOnClose() {
+        service.parseLimits();
+        Ticket first = enqueue(Lane.INTERACTIVE, "a", ReportFormat.CSV);
+        enqueue(Lane.INTERACTIVE, "b", ReportFormat.CSV);
+        enqueue(Lane.INTERACTIVE, "c", ReportFormat.CSV);
+        Ticket fourth = enqueue(Lane.INTERACTIVE, "d", ReportFormat.CSV);
+
+        assertThat(granted(fourth)).isFalse();
+        first.close();
+        assertThat(granted(fourth)).isTrue();
+    }
+
+    @Test
+    void appliesFormatLimits() {
+        service.parseLimits();
+        enqueue(Lane.INTERACTIVE, "a", ReportFormat.PDF);
+        Ticket secondPdf = enqueue(Lane.INTERACTIVE, "b", ReportFormat.PDF);
+        Ticket csv = enqueue(Lane.INTERACTIVE, "c", ReportFormat.CSV);
+
+        assertThat(granted(secondPdf)).isFalse();
+        assertThat(granted(csv)).isTrue();
+    }
+
+    @Test
+    void keepsReservedSlotsForInteractiveRequests() {
+        service.parseLimits();
+        enqueue(Lane.SCHEDULED, null, ReportFormat.CSV);
+        enqueue(Lane.SCHEDULED, null, ReportFormat.CSV);
+        Ticket thirdScheduled = enqueue(Lane.SCHEDULED, null, ReportFormat.CSV);
+        Ticket interactive = enqueue(Lane.INTERACTIVE, "a", ReportFormat.CSV);
+
+        assertThat(granted(thirdScheduled)).isFalse();
+        assertThat(granted(interactive)).isTrue();
+    }
+
+    @Test
+    void prefersClientsWithFewerRunningGenerations() {
+        service.parseLimits();
+        enqueue(Lane.INTERACTIVE, "a", ReportFormat.PDF);
+        enqueue(Lane.INTERACTIVE, "a", ReportFormat.CSV);
+        Ticket blocker = enqueue(Lane.INTERACTIVE, "c", ReportFormat.CSV);
+        Ticket busyClient = enqueue(Lane.INTERACTIVE, "a", ReportFormat.CSV);
+        Ticket idleClient = enqueue(Lane.INTERACTIVE, "b", ReportFormat.CSV);
+
+        blocker.close();
+
+        assertThat(granted(busyClient)).isFalse();
+        assertThat(granted(idleClient)).isTrue();
+    }
+
+    @Test
+    void startsTheOldestOverdueScheduledRequestFirst() {
+        ReflectionTestUtils.setField(service, "bypassLimitMs", 0L);
+        service.parseLimits();
+        enqueue(Lane.SCHEDULED, "x", ReportFormat.CSV);
+        Ticket other = enqueue(Lane.SCHEDULED, "y", ReportFormat.CSV);
+        Ticket overdue = enqueue(Lane.SCHEDULED, "x", ReportFormat.CSV);
+        Ticket idleClient = enqueue(Lane.SCHEDULED, "z", ReportFormat.CSV);
+
+        other.close();
+
+        assertThat(granted(overdue)).isTrue();
+        assertThat(granted(idleClient)).isFalse();
+    }
+
+    @Test
+    void startsInteractiveRequestsWhileAnOverdueScheduledRequestIsBlocked() {
+        ReflectionTestUtils.setField(service, "bypassLimitMs", 0L);
+        ReflectionTestUtils.setField(service, "maxConcurrent", 4);
+        service.parseLimits();
+        enqueue(Lane.INTERACTIVE, "a", ReportFormat.PDF);
+        Ticket blockedPdf = enqueue(Lane.SCHEDULED, null, ReportFormat.PDF);
+        Ticket interactive = enqueue(Lane.INTERACTIVE, "b", ReportFormat.CSV);
+        Ticket scheduled = enqueue(Lane.SCHEDULED, null, ReportFormat.CSV);
+
+        assertThat(granted(blockedPdf)).isFalse();
+        assertThat(granted(interactive)).isTrue();
+        assertThat(granted(scheduled)).isTrue();
+    }
+
+    @Test
+    void doesNotLetAnOverdueScheduledRequestOvertakeInteractiveRequests() {
+        ReflectionTestUtils.setField(service, "bypassLimitMs", 0L);
+        ReflectionTestUtils.setField(service, "interactiveReserve", 0);
+        service.parseLimits();
+        Ticket firstScheduled = enqueue(Lane.SCHEDULED, null, ReportFormat.CSV);
+        enqueue(Lane.SCHEDULED, null, ReportFormat.CSV);
+        enqueue(Lane.INTERACTIVE, "a", ReportFormat.CSV);
+        Ticket overdueScheduled = enqueue(Lane.SCHEDULED, null, ReportFormat.CSV);
+        Ticket interactive = enqueue(Lane.INTERACTIVE, "b", ReportFormat.CSV);
+
+        firstScheduled.close();
+
+        assertThat(granted(interactive)).isTrue();
+        assertThat(granted(overdueScheduled)).isFalse();
+    }
+
+    @Test
+    void letsInteractiveRequestsUseTheReserveWhileAnOverdueScheduledRequestWaits() {
+        ReflectionTestUtils.setField(service, "bypassLimitMs", 0L);
+        service.parseLimits();
+        Ticket firstScheduled = enqueue(Lane.SCHEDULED, null, ReportFormat.CSV);
+        enqueue(Lane.SCHEDULED, null, ReportFormat.CSV);
+        Ticket waitingScheduled = enqueue(Lane.SCHEDULED, null, ReportFormat.CSV);
+        Ticket interactive = enqueue(Lane.INTERACTIVE, "a", ReportFormat.CSV);
+        Ticket laterInteractive = enqueue(Lane.INTERACTIVE, "b", ReportFormat.CSV);
+
+        assertThat(granted(interactive)).isTrue();
+        firstScheduled.close();
+        assertThat(granted(laterInteractive)).isTrue();
+        assertThat(granted(waitingScheduled)).isFalse();
+        interactive.close();
+        laterInteractive.close();
+        assertThat(granted(waitingScheduled)).isTrue();
+    }
+
+    @Test
+    void refusesRequestsWhenTheLaneIsFull() {
+        ReflectionTestUtils.setField(service, "maxConcurrent", 2);
+        service.parseLimits();
+        enqueue(Lane.INTERACTIVE, "a", ReportFormat.CSV);
+        enqueue(Lane.INTERACTIVE, "a", ReportFormat.CSV);
+        enqueue(Lane.INTERACTIVE, "a", ReportFormat.CSV);
+        enqueue(Lane.INTERACTIVE, "a", ReportFormat.CSV);
+
+        assertThatThrownBy(() -> enqueue(Lane.INTERACTIVE, "a", ReportFormat.CSV))
+                .isInstanceOf(TooManyRequestsException.class);
+    }
+
+    @Test
+    void timesOutInteractiveWaits() {
+        service.parseLimits();
+        enqueue(Lane.INTERACTIVE, "a", ReportFormat.PDF);
+
+        assertThatThrownBy(() -> service.admit("b", TYPE, ReportFormat.PDF, SMALL_MS))
+                .isInstanceOf(TooManyRequestsException.class);
+    }
+
+    @Test
+    void rejectsAReserveTakingEverySlot() {
+        ReflectionTestUtils.setField(service, "interactiveReserve", 3);
+
+        assertThatThrownBy(() -> service.parseLimits())
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("interactive-reserve");
+    }
+
+    private Ticket enqueue(Lane lane, String client, ReportFormat format) {
+        return service.enqueue(lane, client, TYPE, format, SMALL_MS);
+    }
+
+    private boolean granted(Ticket ticket) {
+        AtomicBoolean granted = new AtomicBoolean();
+        ticket.whenGranted(() -> granted.set(true));
+        return granted.get();
+    }
+}
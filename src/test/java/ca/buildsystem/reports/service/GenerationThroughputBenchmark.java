@@ -0,0 +1,104 @@
+package ca.buildsystem.reports.service;
+
+import ca.buildsystem.reports.model.ReportFormat;
+import ca.buildsystem.reports.model.ReportType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the generation pipeline on platform and virtual threads.
+ * A batch of generations goes through admission control and the worker pool the way scheduled
+ * regenerations do; each generation blocks for a while, standing in for JDBC, the upstream
+ * finance services and file I/O, and burns a little CPU for rendering. The score is the time
+ * to finish the whole batch.
+ * Virtual threads need Java 21: {@code mvn -Pjava21,benchmark test-compile exec:exec}. On older
+ * runtimes both modes fall back to platform threads and score the same.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class GenerationThroughputBenchmark {
+
+    @Param({"false", "true"})
+    public boolean virtualThreads;
+
+    @Param({"200"})
+    public int generations;
+
+    @Param({"20"})
+    public long blockingMs;
+
+    private GenerationAdmissionService admission;
+    private ThreadPoolExecutor workers;
+
+    @Setup
+    public void setUp() {
+        admission = new GenerationAdmissionService();
+        ReflectionTestUtils.setField(admission, "maxConcurrent", 4);
+        ReflectionTestUtils.setField(admission, "virtualThreadMaxConcurrent", 64);
+        ReflectionTestUtils.setField(admission, "virtualThreads", virtualThreads);
+        ReflectionTestUtils.setField(admission, "formatLimitsSpec", "PDF=2,EXCEL=2");
+        ReflectionTestUtils.setField(admission, "typeLimitsSpec", "");
+        ReflectionTestUtils.setField(admission, "laneWeightsSpec", "INTERACTIVE=4,SCHEDULED=1");
+        ReflectionTestUtils.setField(admission, "interactiveReserve", 0);
+        ReflectionTestUtils.setField(admission, "queueCapacity", 50);
+        ReflectionTestUtils.setField(admission, "scheduledQueueCapacity", generations);
+        ReflectionTestUtils.setField(admission, "maxWaitMs", 30_000L);
+        ReflectionTestUtils.setField(admission, "largeJobMs", 300_000L);
+        ReflectionTestUtils.setField(admission, "maxLargeJobs", 1);
+        ReflectionTestUtils.setField(admission, "bypassLimitMs", 10_000L);
+        admission.parseLimits();
+        workers = ReportGenerationExecutor.newWorkerPool(virtualThreads, 4, 100);
+    }
+
+    @TearDown
+    public void tearDown() {
+        workers.shutdownNow();
+    }
+
+    @Benchmark
+    public void generateBatch() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(generations);
+        for (int i = 0; i < generations; i++) {
+            GenerationAdmissionService.Ticket ticket = admission.enqueue(GenerationAdmissionService.Lane.SCHEDULED,
+                    null, ReportType.EXPENSE, ReportFormat.CSV, blockingMs);
+            ticket.whenGranted(() -> workers.execute(() -> {
+                try {
+                    generate();
+                } finally {
+                    ticket.close();
+                    done.countDown();
+                }
+            }));
+        }
+        done.await();
+    }
+
+    private void generate() {
+        try {
+            Thread.sleep(blockingMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Blackhole.consumeCPU(10_000);
+    }
+}
@@ -0,0 +1,130 @@
+package ca.buildsystem.reports.service;
+
+import ca.buildsystem.reports.model.IdempotencyRecord;
+import ca.buildsystem.reports.repository.IdempotencyRecordRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.persistenceunit.PersistenceManagedTypes;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+
+import jakarta.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IdempotencyKeyStoreTest {
+
+    private static final LocalDateTime EXPIRES_AT = LocalDateTime.now().plusHours(1);
+
+    private AnnotationConfigApplicationContext context;
+    private IdempotencyKeyStore store;
+
+    @BeforeEach
+    void setUp() {
+        context = new AnnotationConfigApplicationContext(StoreConfiguration.class);
+        store = context.getBean(IdempotencyKeyStore.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        context.close();
+    }
+
+    @Test
+    void claimsAFreeKeyOnce() {
+        assertThat(store.tryClaim("user:key", "hash", EXPIRES_AT)).isTrue();
+        assertThat(store.tryClaim("user:key", "hash", EXPIRES_AT)).isFalse();
+        assertThat(store.find("user:key")).get()
+                .extracting(IdempotencyRecord::getStatus)
+                .isEqualTo(IdempotencyRecord.IN_PROGRESS);
+    }
+
+    @Test
+    void letsExactlyOneOfConcurrentClaimsWin() throws Exception {
+        int claimants = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(claimants);
+        try {
+            for (int round = 0; round < 20; round++) {
+                String key = "user:" + UUID.randomUUID();
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<Boolean>> claims = new ArrayList<>();
+                for (int i = 0; i < claimants; i++) {
+                    claims.add(executor.submit(() -> {
+                        start.await();
+                        return store.tryClaim(key, "hash", EXPIRES_AT);
+                    }));
+                }
+                start.countDown();
+
+                // A loser gets false rather than an exception from an aborted transaction
+                int won = 0;
+                for (Future<Boolean> claim : claims) {
+                    if (claim.get()) {
+                        won++;
+                    }
+                }
+                assertThat(won).as("claims won for %s", key).isEqualTo(1);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * The store and its repository on an in-memory database in PostgreSQL mode.
+     */
+    @Configuration
+    @EnableTransactionManagement
+    @EnableJpaRepositories(basePackageClasses = IdempotencyRecordRepository.class,
+            includeFilters = @ComponentScan.Filter(type = FilterType.ASSIGNABLE_TYPE,
+                    classes = IdempotencyRecordRepository.class))
+    static class StoreConfiguration {
+
+        @Bean
+        DataSource dataSource() {
+            return new DriverManagerDataSource("jdbc:h2:mem:" + UUID.randomUUID()
+                    + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000", "sa", "");
+        }
+
+        @Bean
+        LocalContainerEntityManagerFactoryBean entityManagerFactory(DataSource dataSource) {
+            LocalContainerEntityManagerFactoryBean factory = new LocalContainerEntityManagerFactoryBean();
+            factory.setDataSource(dataSource);
+            factory.setManagedTypes(PersistenceManagedTypes.of(IdempotencyRecord.class.getName()));
+            factory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+            factory.setJpaPropertyMap(Map.of("hibernate.hbm2ddl.auto", "create"));
+            return factory;
+        }
+
+        @Bean
+        PlatformTransactionManager transactionManager(EntityManagerFactory entityManagerFactory) {
+            return new JpaTransactionManager(entityManagerFactory);
+        }
+
+        @Bean
+        IdempotencyKeyStore idempotencyKeyStore(IdempotencyRecordRepository recordRepository) {
+            return new IdempotencyKeyStore(recordRepository);
+        }
+    }
+}
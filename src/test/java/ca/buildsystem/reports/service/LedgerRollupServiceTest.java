@@ -0,0 +1,243 @@
+package ca.buildsystem.reports.service;
+
+import ca.buildsystem.reports.generation.LedgerBufferFactory;
+import ca.buildsystem.reports.generation.LedgerQuery;
+import ca.buildsystem.reports.generation.LedgerRow;
+import ca.buildsystem.reports.generation.LedgerSource;
+import ca.buildsystem.reports.model.LedgerRollup;
+import ca.buildsystem.reports.model.ReportType;
+import ca.buildsystem.reports.model.RollupGranularity;
+import ca.buildsystem.reports.model.RollupWatermark;
+import ca.buildsystem.reports.repository.LedgerRollupRepository;
+import ca.buildsystem.reports.repository.RollupWatermarkRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class LedgerRollupServiceTest {
+
+    private static final ReportType TYPE = ReportType.EXPENSE;
+
+    @TempDir
+    Path storage;
+
+    private final LedgerRollupRepository rollupRepository = mock(LedgerRollupRepository.class);
+    private final RollupWatermarkRepository watermarkRepository = mock(RollupWatermarkRepository.class);
+    private final List<LedgerRollup> rollups = new ArrayList<>();
+    private final FakeLedgerSource source = new FakeLedgerSource();
+    private LedgerRollupService service;
+
+    @BeforeEach
+    void setUp() {
+        LedgerBufferFactory factory = new LedgerBufferFactory();
+        ReflectionTestUtils.setField(factory, "reportStoragePath", storage.toString());
+        ReflectionTestUtils.setField(factory, "sortRunRows", 1000);
+        ReflectionTestUtils.setField(factory, "mergeFanIn", 4);
+        ReflectionTestUtils.setField(factory, "aggregateMaxBuckets", 1000);
+        ReflectionTestUtils.setField(factory, "aggregatePartitions", 4);
+        MemoryGovernor memoryGovernor = new MemoryGovernor();
+        ReflectionTestUtils.setField(memoryGovernor, "heapFraction", 0.1);
+        ReflectionTestUtils.setField(memoryGovernor, "minGrantMb", 4L);
+        memoryGovernor.initBudget();
+        service = new LedgerRollupService(rollupRepository, watermarkRepository, List.of(source), factory,
+                memoryGovernor);
+
+        when(rollupRepository.findForRange(any(), eq(TYPE), any(), any(), any(), any())).thenAnswer(invocation -> {
+            RollupGranularity granularity = invocation.getArgument(0);
+            LocalDate from = invocation.getArgument(2);
+            LocalDate to = invocation.getArgument(3);
+            return rollups.stream()
+                    .filter(rollup -> rollup.getGranularity() == granularity
+                            && !rollup.getPeriodStart().isBefore(from) && !rollup.getPeriodStart().isAfter(to))
+                    .toList();
+        });
+        when(rollupRepository.findByGranularityAndSourceTypeAndPeriodStartAndProjectIdAndClientIdAndCurrencyCode(
+                any(), eq(TYPE), any(), any(), any(), any())).thenAnswer(invocation -> rollups.stream()
+                .filter(rollup -> rollup.getGranularity() == invocation.getArgument(0)
+                        && rollup.getPeriodStart().equals(invocation.getArgument(2))
+                        && rollup.getProjectId().equals(invocation.getArgument(3))
+                        && rollup.getClientId().equals(invocation.getArgument(4))
+                        && rollup.getCurrencyCode().equals(invocation.getArgument(5)))
+                .findFirst());
+        when(rollupRepository.saveAll(any())).thenAnswer(invocation -> {
+            List<LedgerRollup> saved = invocation.getArgument(0);
+            saved.stream().filter(rollup -> rollups.stream().noneMatch(existing -> existing == rollup))
+                    .forEach(rollups::add);
+            return saved;
+        });
+    }
+
+    @Test
+    void readsDaysBeforeTheFirstRollupFromTheLedger() {
+        watermark(LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 31));
+        source.rows.add(row(LocalDate.of(2024, 2, 10), "5"));
+        source.rows.add(row(LocalDate.of(2024, 3, 10), "999"));
+        rollups.add(rollup(RollupGranularity.DAY, LocalDate.of(2024, 3, 10), "7"));
+
+        List<LedgerRow> summary = summary(LocalDate.of(2024, 2, 1), LocalDate.of(2024, 3, 31), RollupGranularity.DAY);
+
+        assertThat(summary).extracting(LedgerRow::getDate)
+                .containsExactly(LocalDate.of(2024, 2, 10), LocalDate.of(2024, 3, 10));
+        assertThat(summary).extracting(LedgerRow::getAmount).usingElementComparator(BigDecimal::compareTo)
+                .containsExactly(new BigDecimal("5"), new BigDecimal("7"));
+        assertThat(source.queries).extracting(LedgerQuery::getFromDate, LedgerQuery::getToDate)
+                .containsExactly(tuple(LocalDate.of(2024, 2, 1), LocalDate.of(2024, 2, 29)));
+    }
+
+    @Test
+    void readsRangesEntirelyBeforeTheRollupsFromTheLedger() {
+        watermark(LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 31));
+        source.rows.add(row(LocalDate.of(2023, 6, 15), "12.5"));
+
+        List<LedgerRow> summary = summary(LocalDate.of(2023, 6, 1), LocalDate.of(2023, 6, 30), RollupGranularity.MONTH);
+
+        assertThat(summary).hasSize(1);
+        assertThat(summary.get(0).getDate()).isEqualTo(LocalDate.of(2023, 6, 1));
+        assertThat(summary.get(0).getAmount()).isEqualByComparingTo("12.5");
+    }
+
+    @Test
+    void combinesMonthlyDailyAndTailTotals() {
+        watermark(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 3, 10));
+        rollups.add(rollup(RollupGranularity.DAY, LocalDate.of(2024, 1, 20), "1"));
+        rollups.add(rollup(RollupGranularity.MONTH, LocalDate.of(2024, 2, 1), "10"));
+        rollups.add(rollup(RollupGranularity.DAY, LocalDate.of(2024, 2, 5), "999"));
+        rollups.add(rollup(RollupGranularity.DAY, LocalDate.of(2024, 3, 2), "100"));
+        source.rows.add(row(LocalDate.of(2024, 3, 20), "1000"));
+
+        List<LedgerRow> summary = summary(LocalDate.of(2024, 1, 15), LocalDate.of(2024, 3, 31), RollupGranularity.MONTH);
+
+        assertThat(summary).extracting(LedgerRow::getDate)
+                .containsExactly(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 2, 1), LocalDate.of(2024, 3, 1));
+        assertThat(summary).extracting(LedgerRow::getAmount).usingElementComparator(BigDecimal::compareTo)
+                .containsExactly(new BigDecimal("1"), new BigDecimal("10"), new BigDecimal("1100"));
+        assertThat(source.queries).extracting(LedgerQuery::getFromDate).containsExactly(LocalDate.of(2024, 3, 11));
+    }
+
+    @Test
+    void foldsACorrectionIntoItsOwnDayOnce() {
+        watermark(LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 31));
+        rollups.add(rollup(RollupGranularity.DAY, LocalDate.of(2024, 3, 10), "7"));
+        rollups.add(rollup(RollupGranularity.MONTH, LocalDate.of(2024, 3, 1), "7"));
+        LedgerRow backDated = row(LocalDate.of(2024, 3, 10), "-2");
+        LedgerRow beforeRollups = row(LocalDate.of(2024, 2, 10), "5");
+        LedgerRow afterWatermark = row(LocalDate.of(2024, 4, 2), "3");
+        source.rows.addAll(List.of(backDated, beforeRollups, afterWatermark));
+
+        service.record(TYPE, List.of(backDated, beforeRollups, afterWatermark));
+
+        assertThat(rollups).extracting(LedgerRollup::getGranularity, LedgerRollup::getPeriodStart)
+                .containsExactly(tuple(RollupGranularity.DAY, LocalDate.of(2024, 3, 10)),
+                        tuple(RollupGranularity.MONTH, LocalDate.of(2024, 3, 1)));
+        List<LedgerRow> summary = summary(LocalDate.of(2024, 2, 1), LocalDate.of(2024, 4, 30), RollupGranularity.DAY);
+        assertThat(summary).extracting(LedgerRow::getDate).containsExactly(
+                LocalDate.of(2024, 2, 10), LocalDate.of(2024, 3, 10), LocalDate.of(2024, 4, 2));
+        assertThat(summary).extracting(LedgerRow::getAmount).usingElementComparator(BigDecimal::compareTo)
+                .containsExactly(new BigDecimal("5"), new BigDecimal("5"), new BigDecimal("3"));
+        assertThat(summary(LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 31), RollupGranularity.MONTH))
+                .extracting(LedgerRow::getAmount).usingElementComparator(BigDecimal::compareTo)
+                .containsExactly(new BigDecimal("5"));
+    }
+
+    @Test
+    void recordsTheFirstRolledUpDay() {
+        when(watermarkRepository.findById(TYPE)).thenReturn(Optional.empty());
+
+        service.rollUpDay(TYPE, LocalDate.of(2020, 1, 1));
+
+        ArgumentCaptor<RollupWatermark> saved = ArgumentCaptor.forClass(RollupWatermark.class);
+        verify(watermarkRepository).save(saved.capture());
+        assertThat(saved.getValue().getRolledFrom()).isEqualTo(LocalDate.of(2020, 1, 1));
+        assertThat(saved.getValue().getRolledThrough()).isEqualTo(LocalDate.of(2020, 1, 1));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void storesMissingKeysAsSentinels() {
+        watermark(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 31));
+
+        service.record(TYPE, List.of(new LedgerRow(LocalDate.of(2024, 1, 1), BigDecimal.ONE, null, null, null, null)));
+
+        ArgumentCaptor<List<LedgerRollup>> saved = ArgumentCaptor.forClass(List.class);
+        verify(rollupRepository, times(2)).saveAll(saved.capture());
+        assertThat(saved.getAllValues().stream().flatMap(List::stream).toList()).hasSize(2).allSatisfy(rollup -> {
+            assertThat(rollup.getProjectId()).isEqualTo(LedgerRollup.NO_ID);
+            assertThat(rollup.getClientId()).isEqualTo(LedgerRollup.NO_ID);
+            assertThat(rollup.getCurrencyCode()).isEqualTo(LedgerRollup.NO_CURRENCY);
+        });
+        verify(rollupRepository).findByGranularityAndSourceTypeAndPeriodStartAndProjectIdAndClientIdAndCurrencyCode(
+                RollupGranularity.DAY, TYPE, LocalDate.of(2024, 1, 1),
+                LedgerRollup.NO_ID, LedgerRollup.NO_ID, LedgerRollup.NO_CURRENCY);
+    }
+
+    private void watermark(LocalDate rolledFrom, LocalDate rolledThrough) {
+        RollupWatermark watermark = RollupWatermark.builder()
+                .sourceType(TYPE).rolledFrom(rolledFrom).rolledThrough(rolledThrough).build();
+        when(watermarkRepository.findById(TYPE)).thenReturn(Optional.of(watermark));
+        when(watermarkRepository.findForUpdate(TYPE)).thenReturn(Optional.of(watermark));
+    }
+
+    private List<LedgerRow> summary(LocalDate from, LocalDate to, RollupGranularity granularity) {
+        List<LedgerRow> rows = new ArrayList<>();
+        service.loadSummary(UUID.randomUUID(), LedgerQuery.builder().type(TYPE).fromDate(from).toDate(to).build(),
+                granularity, rows::add);
+        return rows;
+    }
+
+    private static LedgerRow row(LocalDate date, String amount) {
+        return new LedgerRow(date, new BigDecimal(amount), "CAD", UUID.randomUUID(), null, null);
+    }
+
+    private static LedgerRollup rollup(RollupGranularity granularity, LocalDate periodStart, String total) {
+        return LedgerRollup.builder()
+                .granularity(granularity)
+                .sourceType(TYPE)
+                .periodStart(periodStart)
+                .projectId(LedgerRollup.NO_ID)
+                .clientId(LedgerRollup.NO_ID)
+                .currencyCode("CAD")
+                .totalAmount(new BigDecimal(total))
+                .entryCount(1)
+                .build();
+    }
+
+    private static final class FakeLedgerSource implements LedgerSource {
+
+        private final List<LedgerRow> rows = new ArrayList<>();
+        private final List<LedgerQuery> queries = new ArrayList<>();
+
+        @Override
+        public boolean supports(ReportType type) {
+            return type == TYPE;
+        }
+
+        @Override
+        public void fetch(LedgerQuery query, Consumer<LedgerRow> sink) {
+            queries.add(query);
+            rows.stream()
+                    .filter(row -> !row.getDate().isBefore(query.getFromDate())
+                            && !row.getDate().isAfter(query.getToDate()))
+                    .forEach(sink);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package ca.buildsystem.reports.service;
+
+import ca.buildsystem.reports.dto.ReportResponseDTO;
+import ca.buildsystem.reports.exception.TooManyRequestsException;
+import ca.buildsystem.reports.generation.GenerationProgressBus;
+import ca.buildsystem.reports.model.ReportFormat;
+import ca.buildsystem.reports.model.ReportType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ReportGenerationExecutorTest {
+
+    private final ReportGenerationService reportGenerationService = mock(ReportGenerationService.class);
+    private final ReportService reportService = mock(ReportService.class);
+    private final GenerationAdmissionService admissionService = new GenerationAdmissionService();
+    private ReportGenerationExecutor executor;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(admissionService, "maxConcurrent", 1);
+        ReflectionTestUtils.setField(admissionService, "formatLimitsSpec", "");
+        ReflectionTestUtils.setField(admissionService, "typeLimitsSpec", "");
+        ReflectionTestUtils.setField(admissionService, "laneWeightsSpec", "");
+        ReflectionTestUtils.setField(admissionService, "interactiveReserve", 0);
+        ReflectionTestUtils.setField(admissionService, "queueCapacity", 10);
+        ReflectionTestUtils.setField(admissionService, "scheduledQueueCapacity", 10);
+        ReflectionTestUtils.setField(admissionService, "maxWaitMs", 50L);
+        ReflectionTestUtils.setField(admissionService, "largeJobMs", 60_000L);
+        ReflectionTestUtils.setField(admissionService, "maxLargeJobs", 1);
+        ReflectionTestUtils.setField(admissionService, "bypassLimitMs", 60_000L);
+        admissionService.parseLimits();
+
+        executor = new ReportGenerationExecutor(reportGenerationService, mock(BurstGenerationService.class),
+                reportService, mock(GenerationProgressBus.class), admissionService,
+                mock(GenerationCostEstimator.class));
+        ReflectionTestUtils.setField(executor, "poolSize", 1);
+        ReflectionTestUtils.setField(executor, "queueCapacity", 1);
+        executor.initExecutor();
+        executor.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReflectionTestUtils.setField(executor, "terminationGraceMs", 0L);
+        executor.stop();
+    }
+
+    @Test
+    void claimsACompletedReportBeforeItWaitsForAdmission() {
+        UUID id = completedReport();
+        when(reportGenerationService.regenerateClaimedReport(eq(id), anyBoolean(), any()))
+                .thenReturn(report(id, "COMPLETED"));
+
+        ReportResponseDTO result = executor.regenerate(id, false);
+
+        assertThat(result.getStatus()).isEqualTo("COMPLETED");
+        InOrder order = inOrder(reportGenerationService);
+        order.verify(reportGenerationService).claimForRegeneration(id);
+        order.verify(reportGenerationService).regenerateClaimedReport(eq(id), eq(false), any());
+        verify(reportGenerationService, never()).abandonRegeneration(any(), any());
+    }
+
+    @Test
+    void restoresTheStatusOfACompletedReportWhoseRegenerationIsNotAdmitted() {
+        UUID id = completedReport();
+        GenerationAdmissionService.Ticket blocker = admissionService.enqueue(GenerationAdmissionService.Lane.INTERACTIVE,
+                "other", ReportType.EXPENSE, ReportFormat.CSV, 1000);
+        try {
+            assertThatThrownBy(() -> executor.regenerate(id, false))
+                    .isInstanceOf(TooManyRequestsException.class);
+        } finally {
+            blocker.close();
+        }
+
+        InOrder order = inOrder(reportGenerationService);
+        order.verify(reportGenerationService).claimForRegeneration(id);
+        order.verify(reportGenerationService).abandonRegeneration(id, "COMPLETED");
+        verify(reportGenerationService, never()).regenerateClaimedReport(any(), anyBoolean(), any());
+    }
+
+    private UUID completedReport() {
+        UUID id = UUID.randomUUID();
+        when(reportService.getReportById(id)).thenReturn(Optional.of(report(id, "COMPLETED")));
+        when(reportGenerationService.claimForRegeneration(id)).thenReturn("COMPLETED");
+        return id;
+    }
+
+    private static ReportResponseDTO report(UUID id, String status) {
+        ReportResponseDTO report = new ReportResponseDTO();
+        report.setId(id);
+        report.setType(ReportType.EXPENSE);
+        report.setFormat(ReportFormat.CSV);
+        report.setStatus(status);
+        return report;
+    }
+}
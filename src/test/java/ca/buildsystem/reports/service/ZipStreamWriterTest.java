@@ -0,0 +1,146 @@
+package ca.buildsystem.reports.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ZipStreamWriterTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void writesStoredAndDeflatedEntries() throws IOException {
+        byte[] stored = randomBytes(200_000);
+        byte[] deflated = "amount,currency\n".repeat(10_000).getBytes(StandardCharsets.UTF_8);
+        Path storedFile = Files.write(directory.resolve("report.pdf"), stored);
+        Path deflatedFile = Files.write(directory.resolve("report.csv"), deflated);
+
+        Path archive = write(zip -> {
+            zip.addStored("report.pdf", storedFile);
+            zip.addDeflated("report.csv", deflatedFile);
+        });
+
+        try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+            assertEntry(zipFile, "report.pdf", ZipEntry.STORED, stored);
+            assertEntry(zipFile, "report.csv", ZipEntry.DEFLATED, deflated);
+            assertThat(zipFile.getEntry("report.csv").getCompressedSize()).isLessThan(deflated.length);
+        }
+    }
+
+    @Test
+    void readsBackThroughAZipInputStream() throws IOException {
+        byte[] stored = randomBytes(200_000);
+        byte[] deflated = "amount,currency\n".repeat(10_000).getBytes(StandardCharsets.UTF_8);
+        Path storedFile = Files.write(directory.resolve("report.pdf"), stored);
+        Path emptyFile = Files.createFile(directory.resolve("empty.xlsx"));
+        Path deflatedFile = Files.write(directory.resolve("report.csv"), deflated);
+
+        Path archive = write(zip -> {
+            zip.addStored("report.pdf", storedFile);
+            zip.addStored("empty.xlsx", emptyFile);
+            zip.addDeflated("report.csv", deflatedFile);
+        });
+
+        // A stream reader needs the size of a stored entry in its local header
+        Map<String, byte[]> contents = new LinkedHashMap<>();
+        try (ZipInputStream in = new ZipInputStream(Files.newInputStream(archive))) {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                contents.put(entry.getName(), in.readAllBytes());
+            }
+        }
+        assertThat(contents).containsOnlyKeys("report.pdf", "empty.xlsx", "report.csv");
+        assertThat(contents.get("report.pdf")).isEqualTo(stored);
+        assertThat(contents.get("empty.xlsx")).isEmpty();
+        assertThat(contents.get("report.csv")).isEqualTo(deflated);
+    }
+
+    @Test
+    void writesEmptyFilesAndUnicodeNames() throws IOException {
+        Path empty = Files.createFile(directory.resolve("empty.xlsx"));
+
+        Path archive = write(zip -> {
+            zip.addStored("rapport_\u00e9t\u00e9.xlsx", empty);
+            zip.addDeflated("r\u00e9sum\u00e9.csv", new ByteArrayInputStream(new byte[0]), 0, FileTime.from(Instant.now()));
+        });
+
+        try (ZipFile zipFile = new ZipFile(archive.toFile(), StandardCharsets.UTF_8)) {
+            assertEntry(zipFile, "rapport_\u00e9t\u00e9.xlsx", ZipEntry.STORED, new byte[0]);
+            assertEntry(zipFile, "r\u00e9sum\u00e9.csv", ZipEntry.DEFLATED, new byte[0]);
+        }
+    }
+
+    @Test
+    void writesZip64RecordsForManyEntries() throws IOException {
+        int count = 70_000;
+
+        Path archive = write(zip -> {
+            for (int i = 0; i < count; i++) {
+                byte[] content = String.valueOf(i).getBytes(StandardCharsets.UTF_8);
+                zip.addDeflated(i + ".csv", new ByteArrayInputStream(content), content.length,
+                        FileTime.from(Instant.now()));
+            }
+        });
+
+        try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+            assertThat(zipFile.size()).isEqualTo(count);
+            assertEntry(zipFile, (count - 1) + ".csv", ZipEntry.DEFLATED,
+                    String.valueOf(count - 1).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private Path write(ZipContent content) throws IOException {
+        Path archive = directory.resolve("bundle.zip");
+        try (FileChannel channel = FileChannel.open(archive, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ZipStreamWriter zip = new ZipStreamWriter(channel);
+            content.addTo(zip);
+            zip.finish();
+        }
+        return archive;
+    }
+
+    private static void assertEntry(ZipFile zipFile, String name, int method, byte[] expected) throws IOException {
+        ZipEntry entry = zipFile.getEntry(name);
+        assertThat(entry).as(name).isNotNull();
+        assertThat(entry.getMethod()).isEqualTo(method);
+        assertThat(entry.getSize()).isEqualTo(expected.length);
+        CRC32 crc = new CRC32();
+        crc.update(expected);
+        assertThat(entry.getCrc()).isEqualTo(crc.getValue());
+        try (InputStream in = zipFile.getInputStream(entry)) {
+            assertThat(in.readAllBytes()).isEqualTo(expected);
+        }
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(42).nextBytes(bytes);
+        return bytes;
+    }
+
+    @FunctionalInterface
+    private interface ZipContent {
+        void addTo(ZipStreamWriter zip) throws IOException;
+    }
+}